@@ -0,0 +1,460 @@
+package benchmarks;
+
+import fazebook.BulkLoader;
+import fazebook.EWDGraph;
+import fazebook.Fazebook;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The GraphBenchmark class measures the throughput of the main operations
+ * of the Fazebook class on synthetic friendship graphs, in the manner of a
+ * JMH benchmark: each configuration is run for a number of warmup
+ * iterations that are discarded and then for a number of measured
+ * iterations of a fixed duration, and the mean and the 99.9% confidence
+ * interval of the measured iterations are reported. Every run happens in
+ * the current JVM, so run the class on its own with a fixed heap size.
+ *
+ * The graphs are power-law graphs grown by preferential attachment: users
+ * person1 to person<users> join in turn, and each makes friends with
+ * FRIENDS_PER_USER earlier users picked in proportion to their number of
+ * friends. Like FileCreator.jar, the generator is seeded with 132, so
+ * every run benchmarks the same graph. Each operation is run by 1 or more
+ * threads sharing one Fazebook object, whose own Random is seeded from 132
+ * and its index; when the storage engine is not concurrent, the threads
+ * hold the lock of Fazebook.getLock() around each call, as the callers of
+ * such an object must, which is the lock that readSocialNetworkData()
+ * takes. The operations that change the graph get a freshly built
+ * graph for every iteration, outside of the measured time.
+ *
+ * The benchmarks are addUser, addFriends, getFriends, unfriend,
+ * peopleYouMayWannaKnow, a mix of 90% getFriends and 10% addFriends calls
+ * that measures readers contending with writers, and readSocialNetworkData,
+ * which loads the graph from 4 files of adduser and addfriends commands
+ * into an empty Fazebook object with one reading thread per processor and
+ * is reported in milliseconds per load, and bulkLoad, which builds a new
+ * Fazebook object from the same files with a BulkLoader and one thread per
+ * processor, and is reported once per number of users with CSR as its
+ * storage, since the friendships it loads are served from a GraphSnapshot
+ * whatever the storage engine. Results can be written as JSON in
+ * the layout of the JMH result format, so runs can be compared with the
+ * tools that read it.
+ *
+ * Usage: java benchmarks.GraphBenchmark [-users 10000,100000]
+ *        [-threads 1,4]
+ *        [-storage HASH,COMPACT,CONCURRENT,VERSIONED,DICTIONARY]
+ *        [-benchmarks getFriends,unfriend,...] [-warmup 1] [-iterations 3]
+ *        [-time milliseconds] [-json file]
+ */
+public class GraphBenchmark {
+
+    private static final int FRIENDS_PER_USER = 5;
+    private static final int FILES = 4;
+
+    // Student's t for a two-sided 99.9% interval, by degrees of freedom
+    private static final double[] T_999 = {Double.NaN, 636.62, 31.60, 12.92,
+            8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59};
+
+    // results of the calls, kept so that no call can be optimized away
+    private static final AtomicLong sink = new AtomicLong();
+
+    private enum Benchmark {
+        addUser(true), addFriends(true), getFriends(false), unfriend(true),
+        peopleYouMayWannaKnow(false), mixed(true),
+        readSocialNetworkData(true), bulkLoad(true);
+
+        private boolean mutates;
+
+        Benchmark(boolean mutates) {
+            this.mutates = mutates;
+        }
+    }
+
+    private int[] scales = {10000, 100000};
+    private int[] threadCounts = {1, 4};
+    private List<EWDGraph.Storage> storages =
+            Arrays.asList(EWDGraph.Storage.values());
+    private List<Benchmark> benchmarks = Arrays.asList(Benchmark.values());
+    private int warmup = 1;
+    private int iterations = 3;
+    private long time = 1000;
+    private String json;
+    private List<String> results = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        GraphBenchmark benchmark = new GraphBenchmark();
+        for (int i = 0; i + 1 < args.length; i += 2)
+            benchmark.option(args[i], args[i + 1]);
+        benchmark.run();
+    }
+
+    private void option(String name, String value) {
+        String[] values = value.split(",");
+        switch (name) {
+            case "-users":
+                scales = Arrays.stream(values).mapToInt(Integer::parseInt)
+                        .toArray();
+                break;
+            case "-threads":
+                threadCounts = Arrays.stream(values)
+                        .mapToInt(Integer::parseInt).toArray();
+                break;
+            case "-storage":
+                storages = new ArrayList<>();
+                for (String storage : values)
+                    storages.add(EWDGraph.Storage.valueOf(storage));
+                break;
+            case "-benchmarks":
+                benchmarks = new ArrayList<>();
+                for (String benchmark : values)
+                    benchmarks.add(Benchmark.valueOf(benchmark));
+                break;
+            case "-warmup":
+                warmup = Integer.parseInt(value);
+                break;
+            case "-iterations":
+                iterations = Integer.parseInt(value);
+                break;
+            case "-time":
+                time = Long.parseLong(value);
+                break;
+            case "-json":
+                json = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    private void run() throws Exception {
+        System.out.printf("%-22s %-10s %8s %7s %14s %12s%n", "Benchmark",
+                "storage", "users", "threads", "score", "error");
+        for (int users : scales) {
+            int[] friendships = powerLawFriendships(users, FRIENDS_PER_USER,
+                    new Random(132));
+            List<String> files = benchmarks.contains(
+                    Benchmark.readSocialNetworkData)
+                    || benchmarks.contains(Benchmark.bulkLoad)
+                    ? writeCommandFiles(users, friendships) : List.of();
+            for (EWDGraph.Storage storage : storages) {
+                for (Benchmark benchmark : benchmarks) {
+                    if (benchmark == Benchmark.readSocialNetworkData) {
+                        measureLoad(storage, users, files);
+                        continue;
+                    }
+                    if (benchmark == Benchmark.bulkLoad)
+                        continue;
+                    for (int threads : threadCounts)
+                        measure(benchmark, storage, users, friendships,
+                                threads);
+                }
+            }
+            if (benchmarks.contains(Benchmark.bulkLoad))
+                measureBulkLoad(users, files);
+            for (String file : files)
+                new File(file).delete();
+        }
+        if (json != null) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(json))) {
+                writer.println("[");
+                writer.println(String.join(",\n", results));
+                writer.println("]");
+            }
+        }
+    }
+
+    // Runs the benchmark for every warmup and measured iteration
+    private void measure(Benchmark benchmark, EWDGraph.Storage storage,
+                         int users, int[] friendships, int threads)
+            throws InterruptedException {
+        double[] scores = new double[iterations];
+        Fazebook socialNetwork = null;
+        for (int iteration = -warmup; iteration < iterations; iteration++) {
+            if (socialNetwork == null || benchmark.mutates)
+                socialNetwork = build(storage, users, friendships);
+            double score = iterate(benchmark, socialNetwork,
+                    storage != EWDGraph.Storage.CONCURRENT
+                            && storage != EWDGraph.Storage.VERSIONED
+                            && threads > 1,
+                    users, friendships, threads);
+            if (iteration >= 0)
+                scores[iteration] = score;
+        }
+        report(benchmark, "thrpt", "ops/s", storage, users, threads, scores);
+    }
+
+    // Loads the command files into an empty graph once per iteration
+    private void measureLoad(EWDGraph.Storage storage, int users,
+                             List<String> files) {
+        double[] scores = new double[iterations];
+        for (int iteration = -warmup; iteration < iterations; iteration++) {
+            Fazebook socialNetwork = new Fazebook(storage);
+            System.gc();
+            long start = System.nanoTime();
+            if (!socialNetwork.readSocialNetworkData(files))
+                throw new IllegalStateException("Loading the graph failed");
+            if (iteration >= 0)
+                scores[iteration] = (System.nanoTime() - start) / 1e6;
+            sink.addAndGet(socialNetwork.getAllUsers().size());
+        }
+        report(Benchmark.readSocialNetworkData, "ss", "ms/op", storage, users,
+                Runtime.getRuntime().availableProcessors(), scores);
+    }
+
+    // Builds a new graph from the command files once per iteration
+    private void measureBulkLoad(int users, List<String> files)
+            throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        double[] scores = new double[iterations];
+        try {
+            for (int iteration = -warmup; iteration < iterations;
+                    iteration++) {
+                System.gc();
+                long start = System.nanoTime();
+                Fazebook socialNetwork = new BulkLoader(pool).load(files);
+                if (iteration >= 0)
+                    scores[iteration] = (System.nanoTime() - start) / 1e6;
+                sink.addAndGet(socialNetwork.getAllUsers().size());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        report(Benchmark.bulkLoad, "ss", "ms/op", "CSR", users, threads,
+                scores);
+    }
+
+    // Runs the operation on every thread for the duration of one iteration,
+    // returning the number of operations per second
+    private double iterate(Benchmark benchmark, Fazebook socialNetwork,
+                           boolean locked, int users, int[] friendships,
+                           int threads) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] operations = new long[threads];
+        long[] deadline = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(132 + thread);
+                long done = 0;
+                long seen = 0;
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    // each thread unfriends its own share of the pairs
+                    int pair = (int) (done * threads + thread);
+                    if (benchmark == Benchmark.unfriend
+                            && pair >= friendships.length / 2)
+                        break;
+                    if (locked) {
+                        synchronized (socialNetwork.getLock()) {
+                            seen += call(benchmark, socialNetwork, users,
+                                    friendships, pair, thread, done, random);
+                        }
+                    } else {
+                        seen += call(benchmark, socialNetwork, users,
+                                friendships, pair, thread, done, random);
+                    }
+                    done++;
+                }
+                operations[thread] = done;
+                sink.addAndGet(seen);
+            });
+            workers[t].start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        deadline[0] = start + time * 1000000;
+        go.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return Arrays.stream(operations).sum() / seconds;
+    }
+
+    // Makes one call of the benchmark, returning a number derived from its
+    // result
+    private static long call(Benchmark benchmark, Fazebook socialNetwork,
+                             int users, int[] friendships, int pair,
+                             int thread, long done, Random random) {
+        switch (benchmark) {
+            case addUser:
+                return socialNetwork.addUser("new" + thread + "-" + done)
+                        ? 1 : 0;
+            case addFriends:
+                return socialNetwork.addFriends(person(random, users),
+                        person(random, users)) ? 1 : 0;
+            case getFriends:
+                return socialNetwork.getFriends(person(random, users)).size();
+            case unfriend:
+                return socialNetwork.unfriend(
+                        "person" + (friendships[2 * pair] + 1),
+                        "person" + (friendships[2 * pair + 1] + 1)) ? 1 : 0;
+            case peopleYouMayWannaKnow:
+                return socialNetwork.peopleYouMayWannaKnow(
+                        person(random, users)).size();
+            case mixed:
+                if (random.nextInt(10) == 0)
+                    return socialNetwork.addFriends(person(random, users),
+                            person(random, users)) ? 1 : 0;
+                return socialNetwork.getFriends(person(random, users)).size();
+            default:
+                throw new IllegalArgumentException(benchmark.name());
+        }
+    }
+
+    private static String person(Random random, int users) {
+        return "person" + (random.nextInt(users) + 1);
+    }
+
+    // Prints the result and keeps it in the JMH result format
+    private void report(Benchmark benchmark, String mode, String unit,
+                        Object storage, int users, int threads,
+                        double[] scores) {
+        double mean = Arrays.stream(scores).average().orElse(Double.NaN);
+        double error = Double.NaN;
+        if (scores.length > 1) {
+            double squares = 0;
+            for (double score : scores)
+                squares += (mean - score) * (mean - score);
+            double deviation = Math.sqrt(squares / (scores.length - 1));
+            // beyond the table, the t for 10 degrees of freedom is used,
+            // which only widens the interval
+            error = T_999[Math.min(scores.length - 1, T_999.length - 1)]
+                    * deviation / Math.sqrt(scores.length);
+        }
+        System.out.printf(Locale.ROOT, "%-22s %-10s %8d %7d %14.1f %12.1f %s%n",
+                benchmark, storage, users, threads, mean, error, unit);
+
+        StringBuilder raw = new StringBuilder();
+        for (double score : scores)
+            raw.append(raw.length() == 0 ? "" : ", ").append(number(score));
+        results.add(String.format(Locale.ROOT, "  {%n"
+                + "    \"benchmark\" : \"benchmarks.GraphBenchmark.%s\",%n"
+                + "    \"mode\" : \"%s\",%n"
+                + "    \"threads\" : %d,%n"
+                + "    \"forks\" : 0,%n"
+                + "    \"jvm\" : \"%s\",%n"
+                + "    \"jdkVersion\" : \"%s\",%n"
+                + "    \"warmupIterations\" : %d,%n"
+                + "    \"warmupTime\" : \"%d ms\",%n"
+                + "    \"measurementIterations\" : %d,%n"
+                + "    \"measurementTime\" : \"%d ms\",%n"
+                + "    \"params\" : {%n"
+                + "      \"storage\" : \"%s\",%n"
+                + "      \"users\" : \"%d\"%n"
+                + "    },%n"
+                + "    \"primaryMetric\" : {%n"
+                + "      \"score\" : %s,%n"
+                + "      \"scoreError\" : %s,%n"
+                + "      \"scoreUnit\" : \"%s\",%n"
+                + "      \"rawData\" : [ [ %s ] ]%n"
+                + "    }%n"
+                + "  }", benchmark, mode, threads,
+                System.getProperty("java.home").replace("\\", "\\\\"),
+                System.getProperty("java.version"), warmup, time, iterations,
+                time, storage, users, number(mean), number(error), unit, raw));
+    }
+
+    // JSON has no NaN, so an undefined error is written as null
+    private static String number(double value) {
+        return Double.isNaN(value) ? "null"
+                : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    // Builds a graph of the users and the friendships between them
+    private static Fazebook build(EWDGraph.Storage storage, int users,
+                                  int[] friendships) {
+        Fazebook socialNetwork = new Fazebook(storage);
+        for (int user = 1; user <= users; user++)
+            socialNetwork.addUser("person" + user);
+        List<Map.Entry<String, String>> pairs =
+                new ArrayList<>(friendships.length / 2);
+        for (int i = 0; i < friendships.length; i += 2)
+            pairs.add(new AbstractMap.SimpleImmutableEntry<>(
+                    "person" + (friendships[i] + 1),
+                    "person" + (friendships[i + 1] + 1)));
+        socialNetwork.addFriendsBatch(pairs);
+        System.gc();
+        return socialNetwork;
+    }
+
+    /**
+     * Grows a power-law graph by preferential attachment. Each user after
+     * the first makes friends with up to perUser earlier users, each picked
+     * with a probability proportional to its number of friends so far, by
+     * picking a uniformly random end of the friendships made so far.
+     *
+     * @param users     The number of users, numbered from 0
+     * @param perUser   The number of friendships each user makes on joining
+     * @param random    The source of randomness
+     * @return the pairs of users of every friendship, flattened.
+     */
+    static int[] powerLawFriendships(int users, int perUser, Random random) {
+        int[] ends = new int[2 * perUser * Math.max(0, users - 1)];
+        int count = 0;
+        for (int user = 1; user < users; user++) {
+            for (int i = 0; i < perUser; i++) {
+                // the second user has only the first to pick from
+                int friend = count == 0 ? 0 : ends[random.nextInt(count)];
+                ends[count++] = user;
+                ends[count++] = friend;
+            }
+        }
+        return Arrays.copyOf(ends, count);
+    }
+
+    // Writes every adduser command followed by every addfriends command,
+    // dealt round-robin into FILES temporary files
+    private static List<String> writeCommandFiles(int users,
+                                                  int[] friendships)
+            throws IOException {
+        List<String> files = new ArrayList<>();
+        BufferedWriter[] writers = new BufferedWriter[FILES];
+        try {
+            for (int f = 0; f < FILES; f++) {
+                File file = File.createTempFile("graph-benchmark", ".txt");
+                file.deleteOnExit();
+                files.add(file.getPath());
+                writers[f] = new BufferedWriter(new FileWriter(file));
+            }
+            for (int user = 1; user <= users; user++) {
+                writers[user % FILES].write("adduser person" + user);
+                writers[user % FILES].newLine();
+            }
+            for (int i = 0; i < friendships.length; i += 2) {
+                BufferedWriter writer = writers[(i / 2) % FILES];
+                writer.write("addfriends person" + (friendships[i] + 1)
+                        + " person" + (friendships[i + 1] + 1));
+                writer.newLine();
+            }
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null)
+                    writer.close();
+            }
+        }
+        return files;
+    }
+
+}
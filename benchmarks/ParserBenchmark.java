@@ -0,0 +1,102 @@
+package benchmarks;
+
+import fazebook.EWDGraph;
+import fazebook.Fazebook;
+import fazebook.Reader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The ParserBenchmark class compares the throughput of the SCANNER and
+ * MAPPED parsers of the Reader class. It writes a file of pseudorandom
+ * adduser and addfriends commands, generated from a fixed seed so that every
+ * run reads the same data. The file is then read with each parser several
+ * times, both into a Fazebook object that discards every command, which
+ * measures the parser alone, and into a fresh Fazebook object, which
+ * measures a complete load. The best run of each is reported.
+ *
+ * Usage: java benchmarks.ParserBenchmark [commands] [users] [runs]
+ */
+public class ParserBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        File file = File.createTempFile("parser-benchmark", ".txt");
+        file.deleteOnExit();
+        writeCommands(file, commands, users, new Random(132));
+        System.out.printf("%d commands, %d users, %.1f MB%n", commands, users,
+                file.length() / 1e6);
+
+        for (boolean discard : new boolean[] {true, false}) {
+            System.out.println(discard ? "parse only:" : "full load:");
+            for (Reader.Parser parser : Reader.Parser.values()) {
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < runs; run++) {
+                    Fazebook socialNetwork = discard ? new DiscardingFazebook()
+                            : new Fazebook(EWDGraph.Storage.COMPACT);
+                    long start = System.nanoTime();
+                    new Reader(socialNetwork, file.getPath(), 0,
+                            Long.MAX_VALUE, parser).process();
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                double seconds = best / 1e9;
+                System.out.printf("  %-8s %8.0f ms %8.1f MB/s %12.0f "
+                        + "commands/s%n", parser, best / 1e6,
+                        file.length() / 1e6 / seconds, commands / seconds);
+            }
+        }
+    }
+
+    // A Fazebook object that ignores every command it is given
+    private static class DiscardingFazebook extends Fazebook {
+
+        @Override public boolean addUser(String userName) {
+            return true;
+        }
+
+        @Override public boolean addFriends(String userName1,
+                                            String userName2) {
+            return true;
+        }
+
+        @Override public int addFriendsBatch(
+                Collection<? extends Map.Entry<String, String>> pairs) {
+            return pairs.size();
+        }
+
+        @Override public boolean unfriend(String userName1,
+                                          String userName2) {
+            return true;
+        }
+
+    }
+
+    // Writes one adduser line for every tenth command and addfriends lines
+    // for the rest, between users named person1 to person<users>
+    static void writeCommands(File file, int commands, int users,
+                              Random random) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(
+                new FileWriter(file))) {
+            for (int i = 0; i < commands; i++) {
+                if (i % 10 == 0) {
+                    writer.write("adduser person"
+                            + (random.nextInt(users) + 1));
+                } else {
+                    writer.write("addfriends person"
+                            + (random.nextInt(users) + 1) + " person"
+                            + (random.nextInt(users) + 1));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package benchmarks;
+
+import fazebook.Fazebook;
+import fazebook.WriteAheadLog;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The WalBenchmark class measures the throughput of addFriends() with a
+ * write-ahead log in each SyncMode, and without a log for comparison. Every
+ * configuration is run with one thread and with several threads, since
+ * concurrent callers of an EVERY_OP log share each force of the log. The
+ * friendships are generated from a fixed seed, so every run makes the same
+ * calls, and the number of forces is reported alongside the throughput.
+ *
+ * Every configuration is run for a number of warmup rounds that are
+ * discarded and then for a number of measured rounds, each on a fresh
+ * Fazebook object and log. Each round runs every configuration once,
+ * starting one configuration later than the round before, so that no
+ * configuration always runs first on a cold JVM. The mean and the best
+ * throughput of the measured rounds are reported.
+ *
+ * Usage: java benchmarks.WalBenchmark [operations] [users] [threads]
+ *        [warmup] [iterations]
+ */
+public class WalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int warmup = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        // every mode, with no log first, each with one and several threads
+        List<WriteAheadLog.SyncMode> modes = new ArrayList<>();
+        modes.add(null);
+        modes.addAll(Arrays.asList(WriteAheadLog.SyncMode.values()));
+        int configs = modes.size() * 2;
+        double[][] scores = new double[configs][iterations];
+        long[] forces = new long[configs];
+        for (int round = -warmup; round < iterations; round++) {
+            for (int i = 0; i < configs; i++) {
+                int config = Math.floorMod(round + i, configs);
+                long[] run = run(modes.get(config / 2),
+                        config % 2 == 0 ? 1 : threads, operations, users);
+                if (round >= 0) {
+                    scores[config][round] = operations / (run[0] / 1e9);
+                    forces[config] += run[1];
+                }
+            }
+        }
+
+        System.out.printf("%d addFriends calls, %d users, %d measured "
+                + "rounds%n", operations, users, iterations);
+        for (int config = 0; config < configs; config++) {
+            WriteAheadLog.SyncMode mode = modes.get(config / 2);
+            System.out.printf("  %-9s %2d threads %10.0f ops/s mean %10.0f "
+                    + "ops/s best %8d forces%n",
+                    mode == null ? "no log" : mode,
+                    config % 2 == 0 ? 1 : threads,
+                    Arrays.stream(scores[config]).average().orElse(0),
+                    Arrays.stream(scores[config]).max().orElse(0),
+                    forces[config] / Math.max(1, iterations));
+        }
+    }
+
+    // Makes the addFriends calls with the log in the given mode, or without
+    // a log when mode is null, split evenly across the threads, returning
+    // the elapsed nanoseconds and the number of forces of the log
+    private static long[] run(WriteAheadLog.SyncMode mode, int threads,
+                              int operations, int users)
+            throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("wal-benchmark").toFile();
+        File logFile = new File(dir, "log");
+        Fazebook socialNetwork = new Fazebook();
+        WriteAheadLog log = null;
+        if (mode != null) {
+            log = new WriteAheadLog(logFile.getPath(), mode);
+            socialNetwork.enableWriteAheadLog(log);
+        }
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(132 + t);
+            int calls = operations / threads;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < calls; i++)
+                    socialNetwork.addFriends("user" + random.nextInt(users),
+                            "user" + random.nextInt(users));
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers)
+            worker.start();
+        for (Thread worker : workers)
+            worker.join();
+        if (log != null)
+            log.close();
+        long elapsed = System.nanoTime() - start;
+
+        logFile.delete();
+        dir.delete();
+        return new long[] {elapsed, log == null ? 0 : log.getSyncs()};
+    }
+
+}
@@ -0,0 +1,265 @@
+package fazebook;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The AdjacencyStore interface describes the storage engine that sits behind
+ * an EWDGraph object. An EWDGraph validates its arguments and then delegates
+ * the actual bookkeeping of vertices and weighted, directed edges to an
+ * implementation of this interface, which allows the memory layout of the
+ * graph to be chosen independently of the public graph operations. Vertices
+ * are never removed from a store once added, and every stored edge weight is
+ * strictly positive, so a weight of zero is used to signal a missing edge.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices held
+ *              by the current store.
+ */
+interface AdjacencyStore<V> {
+
+    /**
+     * Adds the specified vertex to the store if it is not already present.
+     *
+     * @param vertex    The vertex to be added.
+     * @return true if the vertex was added; false if it was already present.
+     */
+    boolean addVertex(V vertex);
+
+    /**
+     * Checks whether the specified vertex is present in the store.
+     *
+     * @param vertex    The vertex to be checked.
+     * @return true if the vertex is present; false otherwise.
+     */
+    boolean containsVertex(V vertex);
+
+    /**
+     * Adds or updates the edge from srcVert to destVert, adding either
+     * vertex first if it is not yet present in the store.
+     *
+     * @param srcVert   The source vertex of the edge.
+     * @param destVert  The destination vertex of the edge.
+     * @param weight    The strictly positive weight of the edge.
+     * @return true if a new edge was created; false if an existing edge had
+     *         its weight updated.
+     */
+    boolean putEdge(V srcVert, V destVert, int weight);
+
+    /**
+     * Adds or updates the edges from srcVert to every vertex of destVerts,
+     * all with the same weight, adding any vertex that is not yet present.
+     * Stores override this method to look up the source vertex once and to
+     * size its adjacency for the whole group up front.
+     *
+     * @param srcVert   The source vertex of every edge.
+     * @param destVerts The destination vertices, none of which may equal
+     *                  srcVert.
+     * @param weight    The strictly positive weight of every edge.
+     * @return the number of new edges that were created.
+     */
+    default int putEdges(V srcVert, List<V> destVerts, int weight) {
+        int created = 0;
+        for (V destVert : destVerts) {
+            if (putEdge(srcVert, destVert, weight))
+                created++;
+        }
+        return created;
+    }
+
+    /**
+     * Removes the edge from srcVert to destVert if it exists.
+     *
+     * @param srcVert   The source vertex of the edge.
+     * @param destVert  The destination vertex of the edge.
+     * @return true if an edge was removed; false otherwise.
+     */
+    boolean removeEdge(V srcVert, V destVert);
+
+    /**
+     * Retrieves the weight of the edge from srcVert to destVert.
+     *
+     * @param srcVert   The source vertex of the edge.
+     * @param destVert  The destination vertex of the edge.
+     * @return the weight of the edge, or 0 if there is no such edge.
+     */
+    int getWeight(V srcVert, V destVert);
+
+    /**
+     * Retrieves the number of outgoing edges of the specified vertex.
+     *
+     * @param vertex    The vertex whose out-degree is desired.
+     * @return the out-degree of the vertex, or 0 if it is not present.
+     */
+    int degree(V vertex);
+
+    /**
+     * @return the number of vertices held by the store.
+     */
+    int vertexCount();
+
+    /**
+     * @return the number of directed edges held by the store.
+     */
+    long edgeCount();
+
+    /**
+     * Copies the vertices of the store into a new Collection that is
+     * independent of the store.
+     *
+     * @return a new Collection containing every vertex.
+     */
+    Collection<V> copyVertices();
+
+    /**
+     * Copies the neighbors of the specified vertex into a new Collection
+     * that is independent of the store.
+     *
+     * @param vertex    The vertex whose neighbors are desired.
+     * @return a new Collection containing the neighbors of the vertex, which
+     *         is empty if the vertex is not present.
+     */
+    Collection<V> copyNeighbors(V vertex);
+
+    /**
+     * Retrieves an unmodifiable, live view of the vertices of the store. The
+     * view reflects later changes to the store and allocates nothing per
+     * call beyond the view itself.
+     *
+     * @return an unmodifiable view of every vertex.
+     */
+    Collection<V> vertexView();
+
+    /**
+     * Retrieves an unmodifiable, live view of the neighbors of the specified
+     * vertex, whose contains() method is as fast as an edge lookup.
+     *
+     * @param vertex    The vertex whose neighbors are desired.
+     * @return an unmodifiable view of the neighbors of the vertex, which is
+     *         empty if the vertex is not present.
+     */
+    Collection<V> neighborView(V vertex);
+
+    /**
+     * Hands every neighbor of the specified vertex, together with the weight
+     * of the edge leading to it, to the action, without copying the
+     * neighbors into a new Collection.
+     *
+     * @param vertex    The vertex whose neighbors are desired.
+     * @param action    The action to be performed for each neighbor.
+     */
+    void forEachNeighbor(V vertex, ObjIntConsumer<? super V> action);
+
+    /**
+     * Creates a Spliterator over the vertices of the store that reads them
+     * in place. Stores that intern their vertices to dense IDs override
+     * this method to split their range of IDs in halves, which splits more
+     * evenly than the view does.
+     *
+     * @return a Spliterator over every vertex.
+     */
+    default Spliterator<V> vertexSpliterator() {
+        return vertexView().spliterator();
+    }
+
+    /**
+     * Creates a Spliterator over the edges of the store, which reads the
+     * neighbors of each vertex of vertexSpliterator() in place.
+     *
+     * @return a Spliterator over every edge.
+     */
+    default Spliterator<Edge<V>> edgeSpliterator() {
+        return new EdgeSpliterator<>(this, vertexSpliterator());
+    }
+
+    /**
+     * Counts the vertices that are neighbors of both specified vertices,
+     * without copying either adjacency. Stores override this method to
+     * intersect their own representation of the adjacencies directly.
+     *
+     * @param first     The first vertex.
+     * @param second    The second vertex.
+     * @return the number of shared neighbors, or 0 if either vertex is not
+     *         present.
+     */
+    default int countCommonNeighbors(V first, V second) {
+        Collection<V> smaller = neighborView(first);
+        Collection<V> larger = neighborView(second);
+        if (smaller.size() > larger.size()) {
+            Collection<V> swap = smaller;
+            smaller = larger;
+            larger = swap;
+        }
+        int shared = 0;
+        for (V neighbor : smaller) {
+            if (larger.contains(neighbor))
+                shared++;
+        }
+        return shared;
+    }
+
+    /**
+     * Copies the vertices that are neighbors of both specified vertices into
+     * a new Collection that is independent of the store.
+     *
+     * @param first     The first vertex.
+     * @param second    The second vertex.
+     * @return a new Collection containing the shared neighbors, which is
+     *         empty if either vertex is not present.
+     */
+    default Collection<V> copyCommonNeighbors(V first, V second) {
+        Collection<V> smaller = neighborView(first);
+        Collection<V> larger = neighborView(second);
+        if (smaller.size() > larger.size()) {
+            Collection<V> swap = smaller;
+            smaller = larger;
+            larger = swap;
+        }
+        Collection<V> col = new HashSet<>();
+        for (V neighbor : smaller) {
+            if (larger.contains(neighbor))
+                col.add(neighbor);
+        }
+        return col;
+    }
+
+    /**
+     * Copies the vertices that are neighbors of at least one of the
+     * specified vertices into a new Collection that is independent of the
+     * store, each of them once.
+     *
+     * @param sources   The vertices whose neighbors are desired, which may
+     *                  include vertices that are not present.
+     * @return a new Collection containing the union of their neighbors.
+     */
+    default Collection<V> copyNeighborsOfAny(Collection<? extends V> sources) {
+        Collection<V> col = new HashSet<>();
+        for (V source : sources)
+            forEachNeighbor(source, (neighbor, weight) -> col.add(neighbor));
+        return col;
+    }
+
+    /**
+     * Reports whether the store may be read and written by several threads
+     * at once without external synchronization. Stores that are not
+     * thread-safe must be guarded by the caller, which is why this method
+     * defaults to false.
+     *
+     * @return true if the store is thread-safe; false otherwise.
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * Estimates the number of heap bytes retained by the store, including
+     * the vertex objects' references but not the vertex objects themselves.
+     * The estimate assumes a 64-bit JVM with compressed object pointers.
+     *
+     * @return the estimated number of retained heap bytes.
+     */
+    long estimatedHeapBytes();
+
+}
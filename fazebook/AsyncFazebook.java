@@ -0,0 +1,295 @@
+package fazebook;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The AsyncFazebook class runs the friend-list and friend-suggestion
+ * queries of a Fazebook object on an Executor, handing each caller a
+ * CompletableFuture of the result instead of computing it on the caller's
+ * thread. Any Executor may be used, such as a fixed pool, the common
+ * ForkJoinPool, or, on a JVM that has them, an executor that starts a
+ * virtual thread per task.
+ *
+ * Identical queries are coalesced while they are in flight: a query for
+ * the same user as one that has not completed yet waits for that one
+ * rather than being computed again, so a burst of requests for one popular
+ * user costs one computation, whether it arrives while the executor is
+ * busy or while the query is being computed. A query only joins a
+ * computation that has started if no change to the users or friendships
+ * of the Fazebook object completed between the start of that computation
+ * and the request; otherwise it is computed again, so its result never
+ * misses a change made before it was requested. Every caller still gets a
+ * future of its own, which may be cancelled or given a deadline, after
+ * which it completes exceptionally with a CancellationException or a
+ * TimeoutException without affecting the other callers. A computation that
+ * every caller has given up on before it started is never run. The results
+ * are shared between the coalesced callers, so they are unmodifiable.
+ *
+ * When the Fazebook object is not concurrent, each query is run while
+ * holding the lock of Fazebook.getLock(), which readSocialNetworkData()
+ * also holds while it applies each batch, so queries never run in the
+ * middle of a batch.
+ */
+public class AsyncFazebook {
+
+    private Fazebook fazebook;
+    private Executor executor;
+    private ConcurrentHashMap<QueryCache.Key, Computation> inFlight =
+            new ConcurrentHashMap<>();
+    private LongAdder computations = new LongAdder();
+    private LongAdder coalesced = new LongAdder();
+
+    /**
+     * Constructor that creates a facade that runs the queries on the common
+     * ForkJoinPool.
+     *
+     * @param fazebook  The Fazebook object whose queries are run
+     */
+    public AsyncFazebook(Fazebook fazebook) {
+        this(fazebook, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that creates a facade that runs the queries on the
+     * specified executor.
+     *
+     * @param fazebook  The Fazebook object whose queries are run
+     * @param executor  The Executor that the queries are run on, which the
+     *                  facade never shuts down
+     */
+    public AsyncFazebook(Fazebook fazebook, Executor executor) {
+        if (fazebook == null || executor == null)
+            throw new IllegalArgumentException("Parameter is null");
+        this.fazebook = fazebook;
+        this.executor = executor;
+    }
+
+    /**
+     * Retrieves the friends of the parameter userName asynchronously, as
+     * Fazebook.getFriends() does.
+     *
+     * @param userName  A String object representing the name of the desired
+     *                  user
+     * @return  A CompletableFuture of an unmodifiable Java Collection of the
+     *          friends of userName, which is completed with null if
+     *          userName is null.
+     */
+    public CompletableFuture<Collection<String>> getFriends(String userName) {
+        if (userName == null)
+            return CompletableFuture.completedFuture(null);
+        return submit(new QueryCache.Key(QueryCache.Kind.FRIENDS, userName,
+                0, false), () -> fazebook.getFriends(userName));
+    }
+
+    /**
+     * Retrieves the friends of the parameter userName asynchronously, as
+     * getFriends() does, giving up once the deadline has passed.
+     *
+     * @param userName      A String object representing the name of the
+     *                      desired user
+     * @param timeoutMillis The number of milliseconds after which the
+     *                      returned future completes exceptionally with a
+     *                      TimeoutException if it has not completed yet,
+     *                      which must be positive
+     * @return  A CompletableFuture of an unmodifiable Java Collection of the
+     *          friends of userName, which is completed with null if
+     *          userName is null.
+     */
+    public CompletableFuture<Collection<String>> getFriends(String userName,
+            long timeoutMillis) {
+        if (timeoutMillis <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
+        return getFriends(userName).orTimeout(timeoutMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Retrieves the friends of the friends of the parameter userName
+     * asynchronously, as Fazebook.peopleYouMayWannaKnow() does.
+     *
+     * @param userName  A String representing the user in which the friend
+     *                  suggestions should be calculated for
+     * @return  A CompletableFuture of an unmodifiable Java Collection of the
+     *          suggested friends, which is completed with null if userName
+     *          is null or empty.
+     */
+    public CompletableFuture<Collection<String>> peopleYouMayWannaKnow(
+            String userName) {
+        if (userName == null || userName.isEmpty())
+            return CompletableFuture.completedFuture(null);
+        return submit(new QueryCache.Key(
+                QueryCache.Kind.PEOPLE_YOU_MAY_WANNA_KNOW, userName, 0,
+                false), () -> fazebook.peopleYouMayWannaKnow(userName));
+    }
+
+    /**
+     * Retrieves the friends of the friends of the parameter userName
+     * asynchronously, as peopleYouMayWannaKnow() does, giving up once the
+     * deadline has passed.
+     *
+     * @param userName      A String representing the user in which the
+     *                      friend suggestions should be calculated for
+     * @param timeoutMillis The number of milliseconds after which the
+     *                      returned future completes exceptionally with a
+     *                      TimeoutException if it has not completed yet,
+     *                      which must be positive
+     * @return  A CompletableFuture of an unmodifiable Java Collection of the
+     *          suggested friends, which is completed with null if userName
+     *          is null or empty.
+     */
+    public CompletableFuture<Collection<String>> peopleYouMayWannaKnow(
+            String userName, long timeoutMillis) {
+        if (timeoutMillis <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
+        return peopleYouMayWannaKnow(userName).orTimeout(timeoutMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of queries that are waiting for the executor or
+     *         being computed, which identical queries may join.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return the number of queries that were computed, or started to be,
+     *         since the current facade was created.
+     */
+    public long getComputationCount() {
+        return computations.sum();
+    }
+
+    /**
+     * @return the number of queries that waited for an identical query in
+     *         flight instead of being computed, since the current facade was
+     *         created.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    // Hands the caller a future of the query, joining the identical query
+    // in flight if there is one and starting a new computation otherwise
+    private CompletableFuture<Collection<String>> submit(QueryCache.Key key,
+            Supplier<Collection<String>> query) {
+        CompletableFuture<Collection<String>> caller =
+                new CompletableFuture<>();
+        // the result must reflect every change that has returned by now
+        long writes = fazebook.writeCount();
+        while (true) {
+            Computation started = new Computation(key, query);
+            Computation computation = inFlight.putIfAbsent(key, started);
+            if (computation == null) {
+                started.attach(caller, writes);
+                try {
+                    executor.execute(started);
+                } catch (RejectedExecutionException e) {
+                    started.result.completeExceptionally(e);
+                    inFlight.remove(key, started);
+                }
+                return caller;
+            }
+            if (computation.attach(caller, writes)) {
+                coalesced.increment();
+                return caller;
+            }
+            // the computation started before a change the caller must see,
+            // or every caller of it gave up just now, so another one is
+            // started
+            inFlight.remove(key, computation);
+        }
+    }
+
+    /*
+     * One computation of a query, shared by the callers that are waiting for
+     * it, which callers may join until it completes, as long as every change
+     * they must see was complete when it started; once the last of them
+     * gives up before it completes, it is cancelled, and it is skipped if it
+     * has not started yet.
+     */
+    private final class Computation implements Runnable {
+
+        private QueryCache.Key key;
+        private Supplier<Collection<String>> query;
+        private CompletableFuture<Collection<String>> result =
+                new CompletableFuture<>();
+        private int waiting;
+        private boolean started;
+        // the write count of the Fazebook object when the computation started
+        private long writes;
+
+        Computation(QueryCache.Key key, Supplier<Collection<String>> query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        // Makes the caller wait for the result, unless the computation was
+        // cancelled or started before the write count of the caller was
+        // reached, in which case false is returned
+        boolean attach(CompletableFuture<Collection<String>> caller,
+                       long writes) {
+            synchronized (this) {
+                if (result.isCancelled() || started && this.writes < writes)
+                    return false;
+                waiting++;
+            }
+            result.whenComplete((value, failure) -> {
+                if (failure == null)
+                    caller.complete(value);
+                else
+                    caller.completeExceptionally(failure);
+            });
+            caller.whenComplete((value, failure) -> detach());
+            return true;
+        }
+
+        private synchronized void detach() {
+            if (--waiting == 0 && !result.isDone()) {
+                result.cancel(false);
+                inFlight.remove(key, this);
+            }
+        }
+
+        @Override public void run() {
+            synchronized (this) {
+                if (result.isDone())
+                    return;
+                // read before the query, so that a change it may miss has
+                // not been counted yet
+                writes = fazebook.writeCount();
+                started = true;
+            }
+            computations.increment();
+            try {
+                Collection<String> value;
+                if (fazebook.users.isConcurrent()) {
+                    value = query.get();
+                } else {
+                    synchronized (fazebook.getLock()) {
+                        value = query.get();
+                    }
+                }
+                // later callers start a computation of their own
+                inFlight.remove(key, this);
+                result.complete(value == null ? null
+                        : Collections.unmodifiableCollection(value));
+            } catch (RuntimeException | Error e) {
+                inFlight.remove(key, this);
+                result.completeExceptionally(e);
+            }
+        }
+
+    }
+
+}
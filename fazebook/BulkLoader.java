@@ -0,0 +1,303 @@
+package fazebook;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The BulkLoader class builds a new Fazebook object from files of adduser,
+ * addfriends, and unfriend commands, for a cold start, faster than
+ * readSocialNetworkData() fills an empty one, since no friendship is ever
+ * inserted into a mutable graph. Loading takes two passes over the
+ * friendships, with the work of each split between the workers of an
+ * ExecutorService.
+ *
+ * In the first pass, every file is split into chunks at line boundaries, as
+ * by an IngestionEngine, and each chunk is parsed into a buffer of its own:
+ * the names that it mentions, numbered in the order it meets them, and its
+ * friendships as pairs of those numbers. Once the names of every chunk have
+ * been numbered across all chunks, each chunk translates its pairs and
+ * counts both of their directions towards the degree of each user. In the
+ * second pass, the prefix sums of the degrees give every user its range of
+ * one array of friends in compressed sparse row (CSR) form, each chunk
+ * writes both directions of its friendships into those ranges, and each
+ * range is sorted and stripped of duplicates.
+ *
+ * The result is an immutable GraphSnapshot held on the heap, which the
+ * Fazebook object serves as it serves Fazebook.openSnapshot(): reads are
+ * binary searches over contiguous arrays, and later changes copy the
+ * friends of a user into an overlay. The commands of the files are applied
+ * with no order between them, as they are by the chunks of an
+ * IngestionEngine, except that every unfriend command is applied once the
+ * graph is built, so files that unfriend users and then befriend them again
+ * are best read with readSocialNetworkData().
+ */
+public class BulkLoader {
+
+    private ExecutorService executor;
+    private long chunkSize;
+
+    /**
+     * Constructor that creates a loader that splits files into chunks of
+     * IngestionEngine.DEFAULT_CHUNK_SIZE bytes.
+     *
+     * @param executor  The ExecutorService that the work of each pass is
+     *                  submitted to, which the loader never shuts down
+     */
+    public BulkLoader(ExecutorService executor) {
+        this(executor, IngestionEngine.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor that creates a loader that splits files into chunks of
+     * the specified size.
+     *
+     * @param executor  The ExecutorService that the work of each pass is
+     *                  submitted to, which the loader never shuts down
+     * @param chunkSize The approximate number of bytes in each chunk, which
+     *                  must be positive
+     */
+    public BulkLoader(ExecutorService executor, long chunkSize) {
+        if (executor == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Loads every user and friendship of the files into a new Fazebook
+     * object.
+     *
+     * @param filenames The names of the files to load
+     * @return  the loaded Fazebook object.
+     * @throws IOException  if a file could not be read, the files hold more
+     *                      friendships than one array can, or the current
+     *                      thread was interrupted.
+     */
+    public Fazebook load(Collection<String> filenames) throws IOException {
+        if (filenames == null)
+            throw new IllegalArgumentException("Parameter is null");
+        List<Chunk> chunks = new ArrayList<>();
+        for (String filename : filenames) {
+            if (filename == null)
+                throw new IllegalArgumentException("Parameter is null");
+            for (long[] range : IngestionEngine.split(filename, chunkSize))
+                chunks.add(new Chunk(filename, range[0], range[1]));
+        }
+
+        // pass one: parse every chunk, then number the names of all chunks
+        // and count the degree of every user
+        runAll(chunks, Chunk::parse);
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            chunk.ids = new int[chunk.names.size()];
+            for (int i = 0; i < chunk.ids.length; i++) {
+                String name = chunk.names.get(i);
+                Integer id = ids.putIfAbsent(name, names.size());
+                if (id == null) {
+                    id = names.size();
+                    names.add(name);
+                }
+                chunk.ids[i] = id;
+            }
+            chunk.names = null;
+        }
+        int n = names.size();
+        AtomicIntegerArray degrees = new AtomicIntegerArray(n);
+        runAll(chunks, chunk -> chunk.count(degrees));
+
+        // pass two: lay out every user's range of friends, fill the ranges,
+        // and sort and deduplicate each of them
+        long[] offsets = new long[n + 1];
+        for (int id = 0; id < n; id++)
+            offsets[id + 1] = offsets[id] + degrees.get(id);
+        if (offsets[n] > Integer.MAX_VALUE)
+            throw new IOException("Too many friendships to load at once");
+        int[] friends = new int[(int) offsets[n]];
+        AtomicIntegerArray cursors = degrees;
+        for (int id = 0; id < n; id++)
+            cursors.set(id, (int) offsets[id]);
+        runAll(chunks, chunk -> chunk.fill(cursors, friends));
+        int[] unique = new int[n];
+        runAll(ranges(n), range -> {
+            for (int id = range[0]; id < range[1]; id++)
+                unique[id] = sortUnique(friends, (int) offsets[id],
+                        (int) offsets[id + 1]);
+        });
+        // close the gaps left by duplicates, moving each range down
+        long kept = 0;
+        for (int id = 0; id < n; id++) {
+            System.arraycopy(friends, (int) offsets[id], friends, (int) kept,
+                    unique[id]);
+            offsets[id] = kept;
+            kept += unique[id];
+        }
+        offsets[n] = kept;
+
+        Fazebook fazebook = new Fazebook(new EWDGraph<>(
+                new StringComparator(), new SnapshotAdjacencyStore(
+                        GraphSnapshot.of(names.toArray(new String[0]),
+                                offsets, kept == friends.length ? friends
+                                        : Arrays.copyOf(friends, (int) kept),
+                                null))));
+        for (Chunk chunk : chunks) {
+            for (Map.Entry<String, String> pair : chunk.unfriends)
+                fazebook.unfriend(pair.getKey(), pair.getValue());
+        }
+        return fazebook;
+    }
+
+    /*
+     * Runs the task on every item on the executor and waits for all of
+     * them, cancelling the rest when one fails or the current thread is
+     * interrupted.
+     */
+    private <T> void runAll(List<T> items, Task<T> task) throws IOException {
+        List<Future<?>> futures = new ArrayList<>(items.size());
+        try {
+            for (T item : items) {
+                futures.add(executor.submit(() -> {
+                    task.run(item);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<?> future : futures)
+                future.cancel(true);
+        }
+    }
+
+    // Splits the IDs from 0 to n into about four ranges per processor
+    private static List<int[]> ranges(int n) {
+        int parts = 4 * Runtime.getRuntime().availableProcessors();
+        int size = Math.max(1024, (n + parts - 1) / parts);
+        List<int[]> ranges = new ArrayList<>();
+        for (int start = 0; start < n; start += size)
+            ranges.add(new int[] {start, Math.min(n, start + size)});
+        return ranges;
+    }
+
+    // Sorts the range and moves its distinct values to its start, returning
+    // how many there are
+    private static int sortUnique(int[] values, int start, int end) {
+        Arrays.sort(values, start, end);
+        int unique = 0;
+        for (int i = start; i < end; i++) {
+            if (unique == 0 || values[start + unique - 1] != values[i])
+                values[start + unique++] = values[i];
+        }
+        return unique;
+    }
+
+    private interface Task<T> {
+
+        void run(T item) throws IOException;
+
+    }
+
+    /*
+     * The commands of one chunk of a file, with the names it mentions in the
+     * order it met them, their IDs across all chunks once they are numbered,
+     * and its friendships as pairs of indexes into its names.
+     */
+    private static class Chunk implements MappedCommandParser.Handler {
+
+        private String filename;
+        private long start;
+        private long end;
+        private List<String> names = new ArrayList<>();
+        private Map<String, Integer> local = new HashMap<>();
+        private int[] ids;
+        private int[] pairs = new int[64];
+        private int pairCount;
+        private List<Map.Entry<String, String>> unfriends =
+                new ArrayList<>();
+
+        Chunk(String filename, long start, long end) {
+            this.filename = filename;
+            this.start = start;
+            this.end = end;
+        }
+
+        void parse() throws IOException {
+            try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                    StandardOpenOption.READ)) {
+                new MappedCommandParser(this).parse(channel, start, end);
+            }
+            local = null;
+        }
+
+        // Translates the pairs to IDs and counts both of their directions
+        void count(AtomicIntegerArray degrees) {
+            for (int i = 0; i < pairCount; i++) {
+                pairs[i] = ids[pairs[i]];
+                degrees.getAndIncrement(pairs[i]);
+            }
+            ids = null;
+        }
+
+        void fill(AtomicIntegerArray cursors, int[] friends) {
+            for (int i = 0; i < pairCount; i += 2) {
+                friends[cursors.getAndIncrement(pairs[i])] = pairs[i + 1];
+                friends[cursors.getAndIncrement(pairs[i + 1])] = pairs[i];
+            }
+            pairs = null;
+        }
+
+        @Override public void addUser(String user) {
+            indexOf(user);
+        }
+
+        @Override public void addFriends(String user1, String user2) {
+            // as with addFriends(), a user cannot befriend itself
+            if (user1.equals(user2))
+                return;
+            if (pairCount + 2 > pairs.length)
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            pairs[pairCount++] = indexOf(user1);
+            pairs[pairCount++] = indexOf(user2);
+        }
+
+        @Override public void unfriend(String user1, String user2) {
+            unfriends.add(new AbstractMap.SimpleImmutableEntry<>(user1,
+                    user2));
+        }
+
+        private int indexOf(String name) {
+            Integer index = local.putIfAbsent(name, names.size());
+            if (index != null)
+                return index;
+            names.add(name);
+            return names.size() - 1;
+        }
+
+    }
+
+}
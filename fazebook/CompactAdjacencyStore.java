@@ -0,0 +1,641 @@
+package fazebook;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The CompactAdjacencyStore class is a memory-efficient storage engine for
+ * the EWDGraph class. Every vertex is interned to a dense integer ID through
+ * an open-addressing table, and the outgoing edges of each vertex are kept
+ * in a primitive int array of neighbor IDs, sorted in ascending order, with a
+ * parallel int array of weights. Compared to the HashAdjacencyStore class,
+ * this removes the hash table node, the boxed weight, and the inner HashMap
+ * that every edge and vertex would otherwise cost, at the price of an
+ * O(degree) shift when an edge is inserted or removed. Edge lookups are
+ * binary searches over the sorted neighbor array.
+ *
+ * A vertex whose degree passes HUB_DEGREE, a hub, has its neighbor IDs
+ * moved into an IntBitmap instead, with the one weight that most of its
+ * edges share, so that the adjacency of a hub costs about 2 bytes per edge
+ * rather than 8 and an edge is inserted without shifting the whole array.
+ * A hub whose degree falls below half of HUB_DEGREE goes back to arrays.
+ * Intersections and unions of adjacencies work on the IDs directly: sorted
+ * arrays are merged, or searched when one is much smaller than the other,
+ * and hubs are probed or combined container by container. This class is
+ * not thread-safe.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices held
+ *              by the current store.
+ */
+class CompactAdjacencyStore<V> implements AdjacencyStore<V> {
+
+    /** The degree above which the neighbors of a vertex move to a bitmap. */
+    static final int HUB_DEGREE = 1024;
+
+    private static final int[] EMPTY = new int[0];
+
+    // open-addressing table from vertex to ID; a slot holds -1 when empty
+    private Object[] slotKeys = new Object[16];
+    private int[] slotIds = filled(16);
+
+    // per-ID vertex, sorted neighbor IDs, parallel weights, out-degree, and
+    // the hub that holds the neighbors instead, if any; the vertices are
+    // only kept by the methods that intern them
+    private Object[] vertices = new Object[16];
+    private int[][] neighbors = new int[16][];
+    private int[][] weights = new int[16][];
+    private int[] degrees = new int[16];
+    private Hub[] hubs = new Hub[16];
+    private int size;
+    private long edges;
+
+    @Override public boolean addVertex(V vertex) {
+        int before = size;
+        intern(vertex);
+        return size != before;
+    }
+
+    @Override public boolean containsVertex(V vertex) {
+        return idOf(vertex) >= 0;
+    }
+
+    @Override public boolean putEdge(V srcVert, V destVert, int weight) {
+        return putEdge(intern(srcVert), intern(destVert), weight);
+    }
+
+    // Adds or updates the edge between two interned vertices
+    boolean putEdge(int src, int dest, int weight) {
+        if (hubs[src] != null)
+            return putHubEdge(src, dest, weight);
+        int pos = Arrays.binarySearch(neighbors[src], 0, degrees[src], dest);
+        if (pos >= 0) {
+            // the edge already exists, so only the weight is updated
+            weights[src][pos] = weight;
+            return false;
+        }
+        pos = -pos - 1;
+        int degree = degrees[src];
+        if (degree == neighbors[src].length) {
+            int capacity = Math.max(4, degree * 2);
+            neighbors[src] = Arrays.copyOf(neighbors[src], capacity);
+            weights[src] = Arrays.copyOf(weights[src], capacity);
+        }
+        // shift the larger neighbor IDs right to keep the array sorted
+        System.arraycopy(neighbors[src], pos, neighbors[src], pos + 1,
+                degree - pos);
+        System.arraycopy(weights[src], pos, weights[src], pos + 1,
+                degree - pos);
+        neighbors[src][pos] = dest;
+        weights[src][pos] = weight;
+        degrees[src]++;
+        edges++;
+        if (degrees[src] > HUB_DEGREE)
+            toHub(src);
+        return true;
+    }
+
+    /*
+     * Interns and sorts the destinations of the whole group, then merges
+     * them into the sorted neighbor array in a single pass, rather than
+     * shifting the array once per edge.
+     */
+    @Override public int putEdges(V srcVert, List<V> destVerts, int weight) {
+        int src = intern(srcVert);
+        int[] dests = new int[destVerts.size()];
+        for (int i = 0; i < dests.length; i++)
+            dests[i] = intern(destVerts.get(i));
+        if (hubs[src] != null) {
+            int created = 0;
+            for (int dest : dests) {
+                if (putHubEdge(src, dest, weight))
+                    created++;
+            }
+            return created;
+        }
+        Arrays.sort(dests);
+        // duplicates within the group collapse into one edge
+        int unique = 0;
+        for (int i = 0; i < dests.length; i++) {
+            if (unique == 0 || dests[unique - 1] != dests[i])
+                dests[unique++] = dests[i];
+        }
+        int degree = degrees[src];
+        int[] oldNeighbors = neighbors[src];
+        int[] oldWeights = weights[src];
+        int[] newNeighbors = new int[Math.max(4, degree + unique)];
+        int[] newWeights = new int[newNeighbors.length];
+        int i = 0, j = 0, k = 0;
+        while (i < degree || j < unique) {
+            if (j == unique || (i < degree && oldNeighbors[i] < dests[j])) {
+                newNeighbors[k] = oldNeighbors[i];
+                newWeights[k++] = oldWeights[i++];
+            } else {
+                // an existing edge only has its weight updated
+                if (i < degree && oldNeighbors[i] == dests[j])
+                    i++;
+                newNeighbors[k] = dests[j++];
+                newWeights[k++] = weight;
+            }
+        }
+        int created = k - degree;
+        neighbors[src] = newNeighbors;
+        weights[src] = newWeights;
+        degrees[src] = k;
+        edges += created;
+        if (k > HUB_DEGREE)
+            toHub(src);
+        return created;
+    }
+
+    @Override public boolean removeEdge(V srcVert, V destVert) {
+        int src = idOf(srcVert);
+        int dest = idOf(destVert);
+        if (src < 0 || dest < 0)
+            return false;
+        if (hubs[src] != null) {
+            if (!hubs[src].remove(dest))
+                return false;
+            degrees[src]--;
+            edges--;
+            if (degrees[src] < HUB_DEGREE / 2)
+                fromHub(src);
+            return true;
+        }
+        int pos = Arrays.binarySearch(neighbors[src], 0, degrees[src], dest);
+        if (pos < 0)
+            return false;
+        int tail = degrees[src] - pos - 1;
+        System.arraycopy(neighbors[src], pos + 1, neighbors[src], pos, tail);
+        System.arraycopy(weights[src], pos + 1, weights[src], pos, tail);
+        degrees[src]--;
+        edges--;
+        return true;
+    }
+
+    @Override public int getWeight(V srcVert, V destVert) {
+        int src = idOf(srcVert);
+        int dest = idOf(destVert);
+        if (src < 0 || dest < 0)
+            return 0;
+        if (hubs[src] != null)
+            return hubs[src].weightOf(dest);
+        int pos = Arrays.binarySearch(neighbors[src], 0, degrees[src], dest);
+        return pos < 0 ? 0 : weights[src][pos];
+    }
+
+    @Override public int degree(V vertex) {
+        int id = idOf(vertex);
+        return id < 0 ? 0 : degrees[id];
+    }
+
+    @Override public int vertexCount() {
+        return size;
+    }
+
+    @Override public long edgeCount() {
+        return edges;
+    }
+
+    @Override public Collection<V> copyVertices() {
+        Collection<V> col = new HashSet<>();
+        for (int i = 0; i < size; i++)
+            col.add(vertexOf(i));
+        return col;
+    }
+
+    @Override public Collection<V> copyNeighbors(V vertex) {
+        Collection<V> col = new HashSet<>();
+        int id = idOf(vertex);
+        if (id >= 0 && hubs[id] != null)
+            hubs[id].ids.forEach(dest -> col.add(vertexOf(dest)));
+        else if (id >= 0) {
+            for (int i = 0; i < degrees[id]; i++)
+                col.add(vertexOf(neighbors[id][i]));
+        }
+        return col;
+    }
+
+    /*
+     * The views read the fields of the store on every access, since the
+     * arrays behind them are replaced whenever they grow.
+     */
+    @Override public Collection<V> vertexView() {
+        return new AbstractCollection<V>() {
+            @Override public int size() {
+                return size;
+            }
+
+            @Override public boolean contains(Object vertex) {
+                return vertex != null && idOf(vertex) >= 0;
+            }
+
+            @Override public Iterator<V> iterator() {
+                return new IdIterator(-1);
+            }
+        };
+    }
+
+    @Override public Spliterator<V> vertexSpliterator() {
+        return new IdSpliterator<>(size, this::vertexOf, 0);
+    }
+
+    @Override public Collection<V> neighborView(V vertex) {
+        int id = idOf(vertex);
+        if (id < 0)
+            return Collections.emptySet();
+        return new AbstractCollection<V>() {
+            @Override public int size() {
+                return degrees[id];
+            }
+
+            @Override public boolean contains(Object neighbor) {
+                if (neighbor == null)
+                    return false;
+                int dest = idOf(neighbor);
+                if (dest < 0)
+                    return false;
+                if (hubs[id] != null)
+                    return hubs[id].ids.contains(dest);
+                return Arrays.binarySearch(neighbors[id], 0, degrees[id],
+                        dest) >= 0;
+            }
+
+            @Override public Iterator<V> iterator() {
+                return new IdIterator(id);
+            }
+        };
+    }
+
+    @Override public void forEachNeighbor(V vertex,
+                                          ObjIntConsumer<? super V> action) {
+        int id = idOf(vertex);
+        if (id >= 0 && hubs[id] != null) {
+            Hub hub = hubs[id];
+            hub.ids.forEach(dest -> action.accept(vertexOf(dest),
+                    hub.otherWeights == null ? hub.weight
+                            : hub.weightOf(dest)));
+        } else if (id >= 0) {
+            for (int i = 0; i < degrees[id]; i++)
+                action.accept(vertexOf(neighbors[id][i]), weights[id][i]);
+        }
+    }
+
+    @Override public int countCommonNeighbors(V first, V second) {
+        int a = idOf(first);
+        int b = idOf(second);
+        if (a < 0 || b < 0)
+            return 0;
+        int[] shared = new int[1];
+        forEachCommon(a, b, dest -> shared[0]++);
+        return shared[0];
+    }
+
+    @Override public Collection<V> copyCommonNeighbors(V first, V second) {
+        Collection<V> col = new HashSet<>();
+        int a = idOf(first);
+        int b = idOf(second);
+        if (a >= 0 && b >= 0)
+            forEachCommon(a, b, dest -> col.add(vertexOf(dest)));
+        return col;
+    }
+
+    /*
+     * Gathers the neighbor IDs of every vertex that keeps arrays into one
+     * array, which is sorted so that each ID is turned back into its vertex
+     * once however many of the vertices share it, and ORs the bitmaps of the
+     * hubs together for the same reason.
+     */
+    @Override public Collection<V> copyNeighborsOfAny(
+            Collection<? extends V> sources) {
+        int[] ids = EMPTY;
+        int n = 0;
+        IntBitmap hubIds = null;
+        for (V source : sources) {
+            int id = idOf(source);
+            if (id < 0)
+                continue;
+            if (hubs[id] != null) {
+                if (hubIds == null)
+                    hubIds = new IntBitmap();
+                hubIds.or(hubs[id].ids);
+                continue;
+            }
+            if (n + degrees[id] > ids.length)
+                ids = Arrays.copyOf(ids, Math.max(n + degrees[id], n * 2));
+            System.arraycopy(neighbors[id], 0, ids, n, degrees[id]);
+            n += degrees[id];
+        }
+        Arrays.sort(ids, 0, n);
+        Collection<V> col = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || ids[i] != ids[i - 1])
+                col.add(vertexOf(ids[i]));
+        }
+        if (hubIds != null)
+            hubIds.forEach(dest -> col.add(vertexOf(dest)));
+        return col;
+    }
+
+    /*
+     * Every array costs a 16 byte header. The intern table costs 8 bytes per
+     * slot and the vertices 4 bytes per ID, the other per-ID arrays cost 16
+     * bytes per vertex, and each adjacency
+     * costs its two array headers plus 8 bytes per allocated edge slot, or
+     * the bitmap and weights of its hub.
+     */
+    @Override public long estimatedHeapBytes() {
+        long bytes = indexHeapBytes() + 4 * 16 + neighbors.length * 16L;
+        for (int i = 0; i < size; i++) {
+            if (hubs[i] != null)
+                bytes += hubs[i].estimatedHeapBytes();
+            else if (neighbors[i].length > 0)
+                bytes += 2 * 16 + neighbors[i].length * 8L;
+        }
+        return bytes;
+    }
+
+    /*
+     * Iterates over every vertex when source is -1, and over the neighbors
+     * of the vertex with ID source otherwise.
+     */
+    private class IdIterator implements Iterator<V> {
+
+        private int source;
+        private int next;
+        private PrimitiveIterator.OfInt hubIds;
+
+        IdIterator(int source) {
+            this.source = source;
+            if (source >= 0 && hubs[source] != null)
+                hubIds = hubs[source].ids.iterator();
+        }
+
+        @Override public boolean hasNext() {
+            if (hubIds != null)
+                return hubIds.hasNext();
+            return next < (source < 0 ? size : degrees[source]);
+        }
+
+        @Override public V next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (hubIds != null)
+                return vertexOf(hubIds.nextInt());
+            int id = source < 0 ? next : neighbors[source][next];
+            next++;
+            return vertexOf(id);
+        }
+
+    }
+
+    /*
+     * The neighbors of a hub: their IDs, the weight that most of their edges
+     * share, found by a majority vote when the hub is created, and the
+     * weights of the edges that differ from it, which stays null while there
+     * are none, as it always does for Fazebook, whose edges all weigh 1.
+     */
+    private static class Hub {
+
+        IntBitmap ids = new IntBitmap();
+        int weight;
+        Map<Integer, Integer> otherWeights;
+
+        int weightOf(int dest) {
+            if (!ids.contains(dest))
+                return 0;
+            if (otherWeights != null)
+                return otherWeights.getOrDefault(dest, weight);
+            return weight;
+        }
+
+        boolean put(int dest, int destWeight) {
+            boolean created = ids.add(dest);
+            if (destWeight != weight) {
+                if (otherWeights == null)
+                    otherWeights = new HashMap<>();
+                otherWeights.put(dest, destWeight);
+            } else if (otherWeights != null) {
+                otherWeights.remove(dest);
+            }
+            return created;
+        }
+
+        boolean remove(int dest) {
+            if (!ids.remove(dest))
+                return false;
+            if (otherWeights != null)
+                otherWeights.remove(dest);
+            return true;
+        }
+
+        // Each weight that differs costs a HashMap node and two boxed ints
+        long estimatedHeapBytes() {
+            long bytes = 32 + ids.estimatedHeapBytes();
+            if (otherWeights != null)
+                bytes += 64 + otherWeights.size() * 64L;
+            return bytes;
+        }
+
+    }
+
+    private boolean putHubEdge(int src, int dest, int weight) {
+        if (!hubs[src].put(dest, weight))
+            return false;
+        degrees[src]++;
+        edges++;
+        return true;
+    }
+
+    // Moves the neighbors of the vertex from its arrays into a hub
+    private void toHub(int id) {
+        Hub hub = new Hub();
+        int[] ids = neighbors[id];
+        int[] idWeights = weights[id];
+        int votes = 0;
+        for (int i = 0; i < degrees[id]; i++) {
+            if (votes == 0)
+                hub.weight = idWeights[i];
+            votes += idWeights[i] == hub.weight ? 1 : -1;
+        }
+        for (int i = 0; i < degrees[id]; i++)
+            hub.put(ids[i], idWeights[i]);
+        hubs[id] = hub;
+        neighbors[id] = EMPTY;
+        weights[id] = EMPTY;
+    }
+
+    // Moves the neighbors of a hub back into sorted arrays
+    private void fromHub(int id) {
+        Hub hub = hubs[id];
+        int[] ids = new int[Math.max(4, degrees[id])];
+        int[] idWeights = new int[ids.length];
+        int[] next = new int[1];
+        hub.ids.forEach(dest -> {
+            ids[next[0]] = dest;
+            idWeights[next[0]++] = hub.weightOf(dest);
+        });
+        neighbors[id] = ids;
+        weights[id] = idWeights;
+        hubs[id] = null;
+    }
+
+    // Hands every ID that is a neighbor of both vertices to the action
+    private void forEachCommon(int a, int b, IntConsumer action) {
+        if (hubs[a] != null && hubs[b] != null) {
+            hubs[a].ids.forEachAnd(hubs[b].ids, action);
+        } else if (hubs[a] != null || hubs[b] != null) {
+            IntBitmap hubIds = (hubs[a] != null ? hubs[a] : hubs[b]).ids;
+            int other = hubs[a] != null ? b : a;
+            for (int i = 0; i < degrees[other]; i++) {
+                if (hubIds.contains(neighbors[other][i]))
+                    action.accept(neighbors[other][i]);
+            }
+        } else {
+            intersect(neighbors[a], degrees[a], neighbors[b], degrees[b],
+                    action);
+        }
+    }
+
+    /*
+     * Merges two sorted arrays of IDs, unless one is more than 32 times
+     * longer than the other, in which case the longer one is binary searched
+     * for each ID of the shorter one from where the last search ended.
+     */
+    private static void intersect(int[] a, int aSize, int[] b, int bSize,
+                                  IntConsumer action) {
+        if (aSize > bSize) {
+            intersect(b, bSize, a, aSize, action);
+            return;
+        }
+        if ((long) aSize * 32 < bSize) {
+            int from = 0;
+            for (int i = 0; i < aSize && from < bSize; i++) {
+                int pos = Arrays.binarySearch(b, from, bSize, a[i]);
+                if (pos >= 0) {
+                    action.accept(a[i]);
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+            return;
+        }
+        int i = 0, j = 0;
+        while (i < aSize && j < bSize) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                action.accept(a[i]);
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /*
+     * The methods below map vertices to IDs and back, and are overridden by
+     * stores that keep their vertices in another form, such as the
+     * DictionaryAdjacencyStore class.
+     */
+
+    // Returns the ID of the vertex, or -1 if the vertex was never interned
+    int idOf(Object vertex) {
+        int mask = slotKeys.length - 1;
+        int slot = spread(vertex.hashCode()) & mask;
+        while (slotIds[slot] >= 0) {
+            if (slotKeys[slot].equals(vertex))
+                return slotIds[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Returns the ID of the vertex, assigning the next dense ID to it first
+    // if it was never interned
+    int intern(V vertex) {
+        int mask = slotKeys.length - 1;
+        int slot = spread(vertex.hashCode()) & mask;
+        while (slotIds[slot] >= 0) {
+            if (slotKeys[slot].equals(vertex))
+                return slotIds[slot];
+            slot = (slot + 1) & mask;
+        }
+        int id = nextId();
+        if (id == vertices.length)
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+        vertices[id] = vertex;
+        slotKeys[slot] = vertex;
+        slotIds[slot] = id;
+        // keep the intern table at most half full
+        if (size * 2 > slotKeys.length)
+            rehash(slotKeys.length * 2);
+        return id;
+    }
+
+    // Returns the vertex with the ID
+    @SuppressWarnings("unchecked")
+    V vertexOf(int id) {
+        return (V) vertices[id];
+    }
+
+    // Returns the heap bytes of the intern table and the vertices
+    long indexHeapBytes() {
+        return 3 * 16 + slotKeys.length * 8L + vertices.length * 4L;
+    }
+
+    // Gives the next dense ID an empty adjacency, growing the per-ID arrays
+    // if they are full, and returns it
+    final int nextId() {
+        int id = size++;
+        if (id == neighbors.length) {
+            int capacity = neighbors.length * 2;
+            neighbors = Arrays.copyOf(neighbors, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+            hubs = Arrays.copyOf(hubs, capacity);
+        }
+        neighbors[id] = EMPTY;
+        weights[id] = EMPTY;
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        Object[] keys = new Object[capacity];
+        int[] ids = filled(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(vertices[id].hashCode()) & mask;
+            while (ids[slot] >= 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = vertices[id];
+            ids[slot] = id;
+        }
+        slotKeys = keys;
+        slotIds = ids;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int[] filled(int capacity) {
+        int[] ids = new int[capacity];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
+}
@@ -0,0 +1,150 @@
+package fazebook;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The ConcurrentAdjacencyStore class is a thread-safe storage engine for the
+ * EWDGraph class. It keeps the same layout as the HashAdjacencyStore class,
+ * but both the outer map of vertices and the inner map of neighbors of each
+ * vertex are ConcurrentHashMaps. ConcurrentHashMap locks individual hash
+ * bins rather than the whole table, so threads that add edges for different
+ * source vertices do not block each other, and readers never block at all.
+ * Reads are weakly consistent: a Collection copied while a friendship is
+ * being added may contain one direction of the friendship but not the other.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices held
+ *              by the current store.
+ */
+class ConcurrentAdjacencyStore<V> implements AdjacencyStore<V> {
+
+    private ConcurrentHashMap<V, ConcurrentHashMap<V, Integer>> adjacencyMap =
+            new ConcurrentHashMap<>();
+    private LongAdder edges = new LongAdder();
+
+    @Override public boolean addVertex(V vertex) {
+        return adjacencyMap.putIfAbsent(vertex,
+                new ConcurrentHashMap<V, Integer>()) == null;
+    }
+
+    @Override public boolean containsVertex(V vertex) {
+        return adjacencyMap.containsKey(vertex);
+    }
+
+    @Override public boolean putEdge(V srcVert, V destVert, int weight) {
+        // Add the destination first so that it is never visible as a
+        // neighbor before it is visible as a vertex
+        adjacencyMap.computeIfAbsent(destVert,
+                vertex -> new ConcurrentHashMap<>());
+        boolean created = adjacencyMap.computeIfAbsent(srcVert,
+                vertex -> new ConcurrentHashMap<>()).put(destVert, weight)
+                == null;
+        if (created)
+            edges.increment();
+        return created;
+    }
+
+    @Override public int putEdges(V srcVert, List<V> destVerts, int weight) {
+        for (V destVert : destVerts)
+            adjacencyMap.computeIfAbsent(destVert,
+                    vertex -> new ConcurrentHashMap<>());
+        ConcurrentHashMap<V, Integer> neighbors = adjacencyMap.computeIfAbsent(
+                srcVert, vertex -> new ConcurrentHashMap<>(destVerts.size()));
+        int created = 0;
+        for (V destVert : destVerts) {
+            if (neighbors.put(destVert, weight) == null)
+                created++;
+        }
+        edges.add(created);
+        return created;
+    }
+
+    @Override public boolean removeEdge(V srcVert, V destVert) {
+        ConcurrentHashMap<V, Integer> neighbors = adjacencyMap.get(srcVert);
+        boolean removed = neighbors != null
+                && neighbors.remove(destVert) != null;
+        if (removed)
+            edges.decrement();
+        return removed;
+    }
+
+    @Override public int getWeight(V srcVert, V destVert) {
+        ConcurrentHashMap<V, Integer> neighbors = adjacencyMap.get(srcVert);
+        if (neighbors == null)
+            return 0;
+        Integer weight = neighbors.get(destVert);
+        return weight == null ? 0 : weight;
+    }
+
+    @Override public int degree(V vertex) {
+        ConcurrentHashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        return neighbors == null ? 0 : neighbors.size();
+    }
+
+    @Override public int vertexCount() {
+        return adjacencyMap.size();
+    }
+
+    @Override public long edgeCount() {
+        return edges.sum();
+    }
+
+    @Override public Collection<V> copyVertices() {
+        return new HashSet<>(adjacencyMap.keySet());
+    }
+
+    @Override public Collection<V> copyNeighbors(V vertex) {
+        ConcurrentHashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        if (neighbors == null)
+            return new HashSet<>();
+        return new HashSet<>(neighbors.keySet());
+    }
+
+    @Override public Collection<V> vertexView() {
+        return Collections.unmodifiableSet(adjacencyMap.keySet());
+    }
+
+    @Override public Collection<V> neighborView(V vertex) {
+        ConcurrentHashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        if (neighbors == null)
+            return Collections.emptySet();
+        return Collections.unmodifiableSet(neighbors.keySet());
+    }
+
+    @Override public void forEachNeighbor(V vertex,
+                                          ObjIntConsumer<? super V> action) {
+        ConcurrentHashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        if (neighbors != null) {
+            for (Map.Entry<V, Integer> edge : neighbors.entrySet())
+                action.accept(edge.getKey(), edge.getValue());
+        }
+    }
+
+    @Override public boolean isThreadSafe() {
+        return true;
+    }
+
+    /*
+     * A ConcurrentHashMap has the same bucket and node costs as a HashMap,
+     * plus a header that is 16 bytes larger.
+     */
+    @Override public long estimatedHeapBytes() {
+        long bytes = HashAdjacencyStore.hashMapBytes(adjacencyMap.size())
+                + 16;
+        for (ConcurrentHashMap<V, Integer> neighbors : adjacencyMap.values()) {
+            bytes += HashAdjacencyStore.hashMapBytes(neighbors.size()) + 16;
+            for (Integer weight : neighbors.values()) {
+                if (weight > 127)
+                    bytes += 16;
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,191 @@
+package fazebook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The ConnectedComponents class splits the vertices of an EWDGraph object
+ * into its connected components, ignoring the direction of the edges, and
+ * answers which component each vertex belongs to and how large each
+ * component is. The components are found with a concurrent union-find over
+ * the dense IDs of the vertices, run across every worker of a ForkJoinPool:
+ * each worker unites the ends of the edges of a range of vertices, linking
+ * roots with compare-and-set, and finds roots iteratively with path halving,
+ * so there is no recursion however large the components are. A root is
+ * always linked under the root with the smaller ID, which keeps the trees
+ * acyclic without locks and makes the root of each component its vertex
+ * with the smallest ID.
+ *
+ * The components are numbered from 0 in the order of those smallest IDs.
+ * The graph must not be changed while the components are being computed,
+ * unless it is concurrent, in which case changes made meanwhile may or may
+ * not be reflected.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices of
+ *              the graph.
+ */
+public class ConnectedComponents<V> {
+
+    private VertexIndex<V> index;
+    private int[] components;
+    private int[] sizes;
+
+    /**
+     * Constructor that computes the components of the specified graph on
+     * the common ForkJoinPool.
+     *
+     * @param graph     The EWDGraph object whose components are computed
+     */
+    public ConnectedComponents(EWDGraph<V> graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that computes the components of the specified graph on the
+     * specified ForkJoinPool.
+     *
+     * @param graph     The EWDGraph object whose components are computed
+     * @param pool      The ForkJoinPool that the computation runs on
+     */
+    public ConnectedComponents(EWDGraph<V> graph, ForkJoinPool pool) {
+        if (graph == null || pool == null)
+            throw new IllegalArgumentException("Parameter is null");
+        // the index is only read once it is built, so workers may share it
+        Iterable<V> vertices = graph.getEWDGraphVerticesView();
+        index = new VertexIndex<>(graph.getNumEWDGraphVertices());
+        for (V vertex : vertices)
+            index.intern(vertex);
+        int n = index.size();
+
+        AtomicIntegerArray parents = new AtomicIntegerArray(n);
+        for (int id = 0; id < n; id++)
+            parents.set(id, id);
+        ParallelRange.forEach(pool, n, id -> graph.forEachNeighbor(
+                index.vertexAt(id), (neighbor, weight) -> {
+                    int other = index.idOf(neighbor);
+                    // a vertex added after the index was built is skipped
+                    if (other >= 0)
+                        union(parents, id, other);
+                }));
+
+        // roots are the smallest IDs of their components, so each root is
+        // numbered before any other vertex of its component is reached
+        components = new int[n];
+        int count = 0;
+        for (int id = 0; id < n; id++) {
+            int root = find(parents, id);
+            components[id] = root == id ? count++ : components[root];
+        }
+        sizes = new int[count];
+        for (int id = 0; id < n; id++)
+            sizes[components[id]]++;
+    }
+
+    /**
+     * @param vertex    A vertex of the graph
+     * @return the number of the component of the vertex; -1 if the vertex
+     *         was not present in the graph.
+     */
+    public int getComponent(V vertex) {
+        if (vertex == null)
+            throw new IllegalArgumentException("Parameter is null");
+        int id = index.idOf(vertex);
+        return id < 0 ? -1 : components[id];
+    }
+
+    /**
+     * @return the number of components, each of which has at least one
+     *         vertex.
+     */
+    public int getComponentCount() {
+        return sizes.length;
+    }
+
+    /**
+     * @param component     The number of a component
+     * @return the number of vertices in the component.
+     */
+    public int getComponentSize(int component) {
+        if (component < 0 || component >= sizes.length)
+            throw new IllegalArgumentException("No such component");
+        return sizes[component];
+    }
+
+    /**
+     * Retrieves the vertices of the specified component, which takes time
+     * proportional to the number of vertices in the graph.
+     *
+     * @param component     The number of a component
+     * @return a List of the vertices of the component.
+     */
+    public List<V> getMembers(int component) {
+        List<V> members = new ArrayList<>(getComponentSize(component));
+        for (int id = 0; id < components.length; id++) {
+            if (components[id] == component)
+                members.add(index.vertexAt(id));
+        }
+        return members;
+    }
+
+    /**
+     * @return the number of the component with the most vertices, the one
+     *         with the lowest number among equally large ones; -1 if the
+     *         graph had no vertices.
+     */
+    public int getLargestComponent() {
+        int largest = -1;
+        for (int component = 0; component < sizes.length; component++) {
+            if (largest < 0 || sizes[component] > sizes[largest])
+                largest = component;
+        }
+        return largest;
+    }
+
+    /**
+     * @return a SortedMap from each component size to the number of
+     *         components of that size, smallest size first.
+     */
+    public SortedMap<Integer, Integer> getSizeHistogram() {
+        SortedMap<Integer, Integer> histogram = new TreeMap<>();
+        for (int size : sizes)
+            histogram.merge(size, 1, Integer::sum);
+        return histogram;
+    }
+
+    // Returns the root of the ID, pointing every other visited ID at its
+    // grandparent on the way up
+    private static int find(AtomicIntegerArray parents, int id) {
+        while (true) {
+            int parent = parents.get(id);
+            if (parent == id)
+                return id;
+            int grandparent = parents.get(parent);
+            if (grandparent != parent)
+                parents.compareAndSet(id, parent, grandparent);
+            id = grandparent;
+        }
+    }
+
+    // Links the roots of the two IDs, retrying if either root was linked
+    // by another worker in the meantime
+    private static void union(AtomicIntegerArray parents, int a, int b) {
+        while (true) {
+            a = find(parents, a);
+            b = find(parents, b);
+            if (a == b)
+                return;
+            if (a < b) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            if (parents.compareAndSet(a, a, b))
+                return;
+        }
+    }
+
+}
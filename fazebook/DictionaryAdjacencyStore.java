@@ -0,0 +1,73 @@
+package fazebook;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The DictionaryAdjacencyStore class is the storage engine of the DICTIONARY
+ * Storage of the EWDGraph class. It keeps its edges exactly as the
+ * CompactAdjacencyStore class does, but interns its vertices, which must be
+ * Strings, through a NameDictionary, so that every name is stored once as
+ * UTF-8 bytes outside the Java heap instead of as a String object on it.
+ * Reading a vertex back, for example while iterating over neighbors,
+ * decodes a new String, which is the price of the smaller heap. Names may
+ * also be interned and looked up straight from their UTF-8 bytes. This
+ * class is not thread-safe.
+ */
+class DictionaryAdjacencyStore extends CompactAdjacencyStore<String> {
+
+    private NameDictionary names = new NameDictionary();
+
+    /**
+     * Interns the name held in the UTF-8 bytes of a slice of the source,
+     * without creating a String for it.
+     *
+     * @param source    The buffer holding the UTF-8 bytes of the name.
+     * @param offset    The index of the first byte of the name in source.
+     * @param length    The number of bytes of the name.
+     * @return the ID of the name in the current store.
+     */
+    int intern(ByteBuffer source, int offset, int length) {
+        int id = names.intern(source, offset, length);
+        if (id == vertexCount())
+            nextId();
+        return id;
+    }
+
+    /**
+     * @param source    The buffer holding the UTF-8 bytes of the name.
+     * @param offset    The index of the first byte of the name in source.
+     * @param length    The number of bytes of the name.
+     * @return the ID of the name in the current store, or -1 if it is not
+     *         present.
+     */
+    int idOf(ByteBuffer source, int offset, int length) {
+        return names.find(source, offset, length);
+    }
+
+    /**
+     * @return the number of bytes allocated outside the heap for the names.
+     */
+    long offHeapBytes() {
+        return names.offHeapBytes();
+    }
+
+    @Override int idOf(Object vertex) {
+        return vertex instanceof String ? names.find((String) vertex) : -1;
+    }
+
+    @Override int intern(String vertex) {
+        int id = names.intern(vertex);
+        if (id == vertexCount())
+            nextId();
+        return id;
+    }
+
+    @Override String vertexOf(int id) {
+        return names.name(id);
+    }
+
+    @Override long indexHeapBytes() {
+        return names.estimatedHeapBytes();
+    }
+
+}
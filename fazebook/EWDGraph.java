@@ -1,9 +1,15 @@
 package fazebook;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
 Name: Cameron Vu (UID: 121227508)
@@ -19,22 +25,54 @@ Honor Pledge: I pledge on my honor that I have not given or received any
  * HashSets are used in order to construct vertices and edges, as well as to 
  * evaluate and retrieve data from the current EWDGraph object. Similarly, the 
  * EWDGraph class utilizes two fields -- a field adjacencyMap, which
- * represent the HashMap that stores the vertices and edges as keys and
- * values respectively, and the comparator field, which is instantiated 
- * in the EWDGraph constructor and stored for later use in the 
- * consolidateVertices() method. In all, the EWDGraph class contains methods
- * that allow modifications to the directed graph whilst also allowing 
- * for information pertaining to the current object, such as a Collections of
- * vertices, a Collection of neighbors, and an edge weight, just to name 
- * a few, to be found and returned to the user. 
+ * represents the AdjacencyStore that stores the vertices and edges, and the
+ * comparator field, which is instantiated in the EWDGraph constructor and
+ * stored for later use in the consolidateVertices() method. In all, the
+ * EWDGraph class contains methods that allow modifications to the directed
+ * graph whilst also allowing for information pertaining to the current
+ * object, such as a Collections of vertices, a Collection of neighbors, and
+ * an edge weight, just to name a few, to be found and returned to the user.
+ * 
+ * The vertices and edges themselves are kept by an AdjacencyStore, the
+ * storage engine chosen through the Storage argument of the constructor.
+ * The HASH engine keeps the original HashMap layout, while the COMPACT
+ * engine interns vertices to dense integer IDs and keeps edges in primitive
+ * int arrays, which costs a fraction of the heap per edge on large graphs,
+ * switching the edges of high-degree vertices to compressed bitmaps.
+ * The CONCURRENT engine keeps ConcurrentHashMaps, so that it can be read and
+ * written by several threads at once. The VERSIONED engine is also
+ * thread-safe, and keeps the older versions of each vertex's edges that are
+ * still being read, so that snapshot() can give a consistent view of the
+ * graph at one point in time while it goes on changing; the other engines
+ * are not thread-safe.
  * 
  * @param <V>   A generic that specifies the object type that is specific to
  *              the current EWDGraph object, which must be consistent
  *              throughout operations on the current object.
  */
 public class EWDGraph<V> {
+
+    /**
+     * The storage engines that an EWDGraph object may keep its vertices and
+     * edges in. HASH keeps a HashMap of neighbors and boxed weights for each
+     * vertex, while COMPACT keeps sorted primitive int arrays of interned
+     * vertex IDs and weights for each vertex, or a compressed bitmap of
+     * neighbor IDs once its degree passes 1024. CONCURRENT keeps a
+     * ConcurrentHashMap of neighbors for each vertex and is safe to use from
+     * several threads without locking. VERSIONED keeps immutable versions
+     * of the int arrays of each vertex, so that it is safe to use from
+     * several threads too, with reads that never wait for writes, and is
+     * the only engine that supports snapshot(). DICTIONARY keeps the edges
+     * as COMPACT does, and the vertices, which must be Strings, as UTF-8
+     * bytes outside the Java heap, decoding a new String whenever a vertex
+     * is read back.
+     */
+    public enum Storage {
+        HASH, COMPACT, CONCURRENT, VERSIONED, DICTIONARY
+    }
     
-    private HashMap<V, HashMap<V, Integer>> adjacencyMap;
+    private AdjacencyStore<V> adjacencyMap;
+    private Comparator<V> comparator;
 
     /**
      * Constructor that initializes the adjacencyMap field which is used to
@@ -46,11 +84,44 @@ public class EWDGraph<V> {
      *                      consolidateVertices() method.
      */
     public EWDGraph(Comparator<V> comparator) {
-        if (comparator == null)
+        this(comparator, Storage.HASH);
+    }
+
+    /**
+     * Constructor that initializes the adjacencyMap field with the storage
+     * engine specified by the storage parameter, which determines how the
+     * vertices and edges of the current graph are laid out in memory.
+     * 
+     * @param comparator    A Comparator object of type V that is stored in
+     *                      the class field comparator for later use in the
+     *                      consolidateVertices() method.
+     * @param storage       The storage engine used to hold the vertices and
+     *                      edges of the current graph.
+     */
+    @SuppressWarnings("unchecked")
+    public EWDGraph(Comparator<V> comparator, Storage storage) {
+        if (comparator == null || storage == null)
             throw new IllegalArgumentException("Parameter is null");
-        adjacencyMap = new HashMap<>();
+        this.comparator = comparator;
+        if (storage == Storage.COMPACT)
+            adjacencyMap = new CompactAdjacencyStore<>();
+        else if (storage == Storage.CONCURRENT)
+            adjacencyMap = new ConcurrentAdjacencyStore<>();
+        else if (storage == Storage.VERSIONED)
+            adjacencyMap = new VersionedAdjacencyStore<>();
+        else if (storage == Storage.DICTIONARY)
+            adjacencyMap = (AdjacencyStore<V>) new DictionaryAdjacencyStore();
+        else
+            adjacencyMap = new HashAdjacencyStore<>();
     }
-    
+
+    // Constructor for graphs backed by a store that is not one of the
+    // Storage engines, such as a mapped snapshot
+    EWDGraph(Comparator<V> comparator, AdjacencyStore<V> store) {
+        this.comparator = comparator;
+        this.adjacencyMap = store;
+    }
+
     /**
      * Adds the desired vertex to the current graph by adding the parameter 
      * to the adjacencyMap as the key. The vertex is not added if the value
@@ -64,14 +135,7 @@ public class EWDGraph<V> {
     public boolean newEWDGraphVertex(V vertexData) {
         if (vertexData == null)
             throw new IllegalArgumentException();
-        boolean added = true;
-        // If the vertex is not already present, add the specified vertexData
-        if (!adjacencyMap.containsKey(vertexData)) {
-            adjacencyMap.put(vertexData, new HashMap<V, Integer>());
-        } else {
-            added = false;
-        }
-        return added;
+        return adjacencyMap.addVertex(vertexData);
     }
 
     /**
@@ -86,7 +150,7 @@ public class EWDGraph<V> {
     public boolean isEWDGraphVertex(V vertexData) {
         if (vertexData == null)
             throw new IllegalArgumentException("Parameter is null");
-        return adjacencyMap.containsKey(vertexData);
+        return adjacencyMap.containsVertex(vertexData);
     }
 
     /**
@@ -101,8 +165,7 @@ public class EWDGraph<V> {
     public Collection<V> getEWDGraphVertices() {
         // Instantiate a new Collection that is independent of the current 
         // graph object.
-        Collection<V> col = new HashSet<>(adjacencyMap.keySet());
-        return col;
+        return adjacencyMap.copyVertices();
     }
 
     /**
@@ -132,17 +195,53 @@ public class EWDGraph<V> {
         if (weight <= 0 || srcVert.equals(destVert)) {
             added = false;
         } else {
-            // If either the source or destination vertices are not added,
-            // then add them respectively
-            if (!adjacencyMap.containsKey(srcVert)) {
-                this.newEWDGraphVertex(srcVert);
-            }
-            if (!adjacencyMap.containsKey(destVert)) {
-                this.newEWDGraphVertex(destVert);
+            // The store adds either vertex that is not yet present before
+            // adding or updating the edge itself
+            adjacencyMap.putEdge(srcVert, destVert, weight);
+        }
+        return added;
+    }
+
+    /**
+     * Adds the desired edges with the specified weight, each going from the
+     * key to the value of one Map.Entry of the parameter edges. The edges
+     * are first grouped by their source vertex, so that each source vertex
+     * is looked up once and its adjacency is sized once for its whole group,
+     * rather than once per edge as with newEWDGraphEdge(). As with that
+     * method, missing vertices are added, existing edges have their weight
+     * updated, and edges from a vertex to itself are skipped. No edge is
+     * added if the weight is invalid.
+     * 
+     * @param edges     A Collection of Map.Entry objects whose keys are the
+     *                  source vertices and whose values are the destination
+     *                  vertices of the desired edges.
+     * @param weight    A primitive integer representing the weight of every
+     *                  desired edge.
+     * @return the number of distinct edges that were added or updated,
+     *         which counts an edge that appears more than once in the
+     *         parameter edges once.
+     */
+    public int addEdges(Collection<? extends Map.Entry<V, V>> edges,
+                        int weight) {
+        if (edges == null)
+            throw new IllegalArgumentException("Parameter is null");
+        // Group the distinct destination vertices by their source vertex,
+        // keeping the order in which the vertices first appear
+        Map<V, Set<V>> bySource = new LinkedHashMap<>();
+        for (Map.Entry<V, V> edge : edges) {
+            if (edge.getKey() == null || edge.getValue() == null)
+                throw new IllegalArgumentException("Parameter is null");
+            if (!edge.getKey().equals(edge.getValue()))
+                bySource.computeIfAbsent(edge.getKey(),
+                        vertex -> new LinkedHashSet<>()).add(edge.getValue());
+        }
+        int added = 0;
+        if (weight > 0) {
+            for (Map.Entry<V, Set<V>> group : bySource.entrySet()) {
+                adjacencyMap.putEdges(group.getKey(),
+                        new ArrayList<>(group.getValue()), weight);
+                added += group.getValue().size();
             }
-            // Add the neighboring vertex and the associated weight to the
-            // value in the HashMap that corresponds to the source vertex 
-            adjacencyMap.get(srcVert).put(destVert, weight);
         }
         return added;
     }
@@ -163,15 +262,7 @@ public class EWDGraph<V> {
     public boolean removeEWDGraphEdge(V srcVert, V destVert) {
         if (srcVert == null || destVert == null)
             throw new IllegalArgumentException("Parameter is null");
-        boolean removed = true;
-        if (!adjacencyMap.containsKey(srcVert) || 
-            !adjacencyMap.containsKey(destVert) || 
-            !adjacencyMap.get(srcVert).containsKey(destVert)) {
-            removed = false;
-        } else {
-            adjacencyMap.get(srcVert).remove(destVert);
-        }
-        return removed;
+        return adjacencyMap.removeEdge(srcVert, destVert);
     }
 
     /**
@@ -188,15 +279,264 @@ public class EWDGraph<V> {
     public Collection<V> getNeighborsOfVertex(V vertexData) {
         if (vertexData == null)
             throw new IllegalArgumentException("Parameter is null");
-        if (!adjacencyMap.containsKey(vertexData)) {
-            Collection<V> col = new HashSet<>();
-            return col;
-        }
         // Instantiate a new Collection that is independent of the current 
         // graph object.
-        Collection<V> col = new HashSet<>(
-                adjacencyMap.get(vertexData).keySet());
-        return col;
+        return adjacencyMap.copyNeighbors(vertexData);
+    }
+
+    /**
+     * Retrieves an unmodifiable, live view of the vertices of the current
+     * EWDGraph object. Unlike getEWDGraphVertices(), nothing is copied, so
+     * the view reflects every later change to the graph; the view of a graph
+     * that is not concurrent must not be iterated while the graph changes.
+     * 
+     * @return An unmodifiable Collection view of the vertices that are
+     *         present in the current EWDGraph object.
+     */
+    public Collection<V> getEWDGraphVerticesView() {
+        return adjacencyMap.vertexView();
+    }
+
+    /**
+     * Retrieves a sequential Stream of the vertices of the current EWDGraph
+     * object, which reads them in place rather than copying them as
+     * getEWDGraphVertices() does. Calling parallel() on the Stream splits
+     * the vertices across the cores of the common ForkJoinPool; the COMPACT,
+     * VERSIONED, and DICTIONARY engines split them into exact halves by
+     * their IDs. As with getEWDGraphVerticesView(), the Stream of a graph
+     * that is not concurrent must not be run while the graph changes.
+     * 
+     * @return A Stream of the vertices that are present in the current
+     *         EWDGraph object.
+     */
+    public Stream<V> vertices() {
+        return StreamSupport.stream(adjacencyMap.vertexSpliterator(), false);
+    }
+
+    /**
+     * Retrieves a sequential Stream of the edges of the current EWDGraph
+     * object, each as an Edge holding its source vertex, destination
+     * vertex, and weight, which reads the neighbors of each vertex in place
+     * rather than copying them as getNeighborsOfVertex() does. The Stream
+     * splits as vertices() does, and its size is the number of edges until
+     * it is split, so count() costs nothing on a graph that is not
+     * concurrent. As with vertices(), the Stream of a graph that is not
+     * concurrent must not be run while the graph changes.
+     * 
+     * @return A Stream of the edges that are present in the current
+     *         EWDGraph object.
+     */
+    public Stream<Edge<V>> edges() {
+        return StreamSupport.stream(adjacencyMap.edgeSpliterator(), false);
+    }
+
+    /**
+     * Retrieves an unmodifiable, live view of the neighbors of the vertex
+     * specified by the vertexData parameter. Unlike getNeighborsOfVertex(),
+     * nothing is copied, and the contains() method of the view is as fast
+     * as isEWDGraphEdge().
+     * 
+     * @param vertexData    An object of type V that represents the desired 
+     *                      vertex.
+     * @return An unmodifiable Collection view of the neighbors of the
+     *         specified vertex; empty if the vertex does not exist.
+     */
+    public Collection<V> getNeighborsOfVertexView(V vertexData) {
+        if (vertexData == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return adjacencyMap.neighborView(vertexData);
+    }
+
+    /**
+     * Checks if there is an edge going from the source vertex to the
+     * destination vertex in the current EWDGraph object, without
+     * retrieving or copying the neighbors of the source vertex.
+     * 
+     * @param srcVert   An object of type V representing the source vertex
+     *                  that the edge is associated with. 
+     * @param destVert  An object of type V representing the destination vertex
+     *                  that the edge is associated with. 
+     * @return true if the edge is present in the current graph; false
+     *         otherwise.
+     */
+    public boolean isEWDGraphEdge(V srcVert, V destVert) {
+        if (srcVert == null || destVert == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return adjacencyMap.getWeight(srcVert, destVert) > 0;
+    }
+
+    /**
+     * Retrieves the number of neighbors of the vertex specified by the
+     * vertexData parameter, without retrieving the neighbors themselves.
+     * 
+     * @param vertexData    An object of type V that represents the desired 
+     *                      vertex.
+     * @return the number of neighbors of the specified vertex; 0 if the
+     *         vertex does not exist in the data structure.
+     */
+    public int degree(V vertexData) {
+        if (vertexData == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return adjacencyMap.degree(vertexData);
+    }
+
+    /**
+     * Hands every neighbor of the vertex specified by the vertexData
+     * parameter, together with the weight of the edge leading to it, to the
+     * action parameter, without copying the neighbors. The action must not
+     * modify the current graph unless the graph is concurrent.
+     * 
+     * @param vertexData    An object of type V that represents the desired 
+     *                      vertex.
+     * @param action        The action to be performed for each neighbor and
+     *                      edge weight.
+     */
+    public void forEachNeighbor(V vertexData,
+                                ObjIntConsumer<? super V> action) {
+        if (vertexData == null || action == null)
+            throw new IllegalArgumentException("Parameter is null");
+        adjacencyMap.forEachNeighbor(vertexData, action);
+    }
+
+    /**
+     * Counts the vertices that are neighbors of both vertices specified by
+     * the first and second parameters, by intersecting their adjacencies in
+     * place rather than copying either of them.
+     * 
+     * @param first     An object of type V that represents the first vertex.
+     * @param second    An object of type V that represents the second vertex.
+     * @return the number of neighbors the two vertices share; 0 if either
+     *         vertex does not exist in the data structure.
+     */
+    public int countCommonNeighbors(V first, V second) {
+        if (first == null || second == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return adjacencyMap.countCommonNeighbors(first, second);
+    }
+
+    /**
+     * Retrieves and returns an object that contains the vertices that are
+     * neighbors of both vertices specified by the first and second
+     * parameters, independent of the current graph object.
+     * 
+     * @param first     An object of type V that represents the first vertex.
+     * @param second    An object of type V that represents the second vertex.
+     * @return An object containing the shared neighbors; empty if either
+     *         vertex does not exist in the data structure.
+     */
+    public Collection<V> getCommonNeighbors(V first, V second) {
+        if (first == null || second == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return adjacencyMap.copyCommonNeighbors(first, second);
+    }
+
+    /**
+     * Retrieves and returns an object that contains every vertex that is a
+     * neighbor of at least one of the vertices specified by the vertices
+     * parameter, each of them once, independent of the current graph object.
+     * Vertices that do not exist in the current graph are ignored.
+     * 
+     * @param vertices  A Collection of objects of type V that represent the
+     *                  vertices whose neighbors are desired.
+     * @return An object containing the union of the neighbors.
+     */
+    public Collection<V> getNeighborsOfAny(Collection<V> vertices) {
+        if (vertices == null)
+            throw new IllegalArgumentException("Parameter is null");
+        for (V vertex : vertices) {
+            if (vertex == null)
+                throw new IllegalArgumentException("Parameter is null");
+        }
+        return adjacencyMap.copyNeighborsOfAny(vertices);
+    }
+
+    // Returns the comparator that the current graph was constructed with
+    Comparator<V> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Retrieves and returns the weight of the edge going from the source
+     * vertex to the destination vertex. If either vertex is not present in
+     * the current object or there is no edge between them, 0 is returned,
+     * since every edge that is stored has a positive weight.
+     * 
+     * @param srcVert   An object of type V representing the source vertex
+     *                  that the edge is associated with. 
+     * @param destVert  An object of type V representing the destination vertex
+     *                  that the edge is associated with. 
+     * @return the weight of the edge; 0 if there is no such edge.
+     */
+    public int getEWDGraphEdgeWeight(V srcVert, V destVert) {
+        if (srcVert == null || destVert == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return adjacencyMap.getWeight(srcVert, destVert);
+    }
+
+    /**
+     * @return the number of vertices in the current EWDGraph object.
+     */
+    public int getNumEWDGraphVertices() {
+        return adjacencyMap.vertexCount();
+    }
+
+    /**
+     * @return the number of directed edges in the current EWDGraph object.
+     */
+    public long getNumEWDGraphEdges() {
+        return adjacencyMap.edgeCount();
+    }
+
+    /**
+     * Reports whether the current EWDGraph object may be read and modified
+     * by several threads at once without any external synchronization,
+     * which depends on the storage engine it was constructed with.
+     * 
+     * @return true if the current graph is thread-safe; false otherwise.
+     */
+    public boolean isConcurrent() {
+        return adjacencyMap.isThreadSafe();
+    }
+
+    /**
+     * Reports whether the current EWDGraph object supports snapshot(), which
+     * is true only for the VERSIONED storage engine.
+     * 
+     * @return true if the current graph is versioned; false otherwise.
+     */
+    public boolean isVersioned() {
+        return adjacencyMap instanceof VersionedAdjacencyStore;
+    }
+
+    /**
+     * Takes a snapshot of the current EWDGraph object: a read-only EWDGraph
+     * that holds the vertices and edges of the current graph as of the last
+     * completed change, and never reflects later ones, however long it is
+     * read. Taking a snapshot copies nothing and only waits for a change in
+     * progress to complete. The snapshot keeps the versions of the edges it
+     * reads alive, so it must be closed once it is no longer read.
+     * 
+     * @return the snapshot of the current graph.
+     * @throws UnsupportedOperationException  if the current graph is not
+     *                                        versioned.
+     */
+    public EWDGraphSnapshot<V> snapshot() {
+        if (!isVersioned())
+            throw new UnsupportedOperationException("Graph is not versioned");
+        return new EWDGraphSnapshot<>(comparator,
+                ((VersionedAdjacencyStore<V>) adjacencyMap).snapshot());
+    }
+
+    /**
+     * Estimates the number of heap bytes retained by the storage engine of
+     * the current EWDGraph object, not counting the vertex objects
+     * themselves. Dividing the result by getNumEWDGraphEdges() gives the
+     * heap cost per edge of the chosen storage engine.
+     * 
+     * @return the estimated number of heap bytes used by the current graph.
+     */
+    public long estimatedHeapBytes() {
+        return adjacencyMap.estimatedHeapBytes();
     }
 
 }
\ No newline at end of file
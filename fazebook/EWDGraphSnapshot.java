@@ -0,0 +1,46 @@
+package fazebook;
+
+import java.lang.ref.Cleaner;
+import java.util.Comparator;
+
+/**
+ * The EWDGraphSnapshot class is a read-only EWDGraph that holds a versioned
+ * graph as of the moment that snapshot() was called on it. Every query of
+ * the EWDGraph class may be run against a snapshot, and every analysis that
+ * takes an EWDGraph, such as ConnectedComponents, sees one consistent graph
+ * however long it runs and however much the original graph changes in the
+ * meantime. Methods that would change the snapshot throw an
+ * UnsupportedOperationException.
+ *
+ * The versions read by a snapshot are kept until it is closed. A snapshot
+ * that becomes unreachable without being closed is closed once it has been
+ * garbage collected, but that may take arbitrarily long, so snapshots
+ * should be closed, for example with a try-with-resources statement.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices held
+ *              by the current snapshot.
+ */
+public class EWDGraphSnapshot<V> extends EWDGraph<V>
+        implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private Cleaner.Cleanable cleanable;
+
+    // Constructor for the snapshot of a versioned graph, which releases the
+    // reads of the store once the snapshot is closed or collected
+    EWDGraphSnapshot(Comparator<V> comparator,
+                     VersionedAdjacencyStore<V>.Reads reads) {
+        super(comparator, reads);
+        cleanable = CLEANER.register(this, reads::release);
+    }
+
+    /**
+     * Closes the current snapshot, after which it must no longer be read.
+     * Closing it again has no effect.
+     */
+    @Override public void close() {
+        cleanable.clean();
+    }
+
+}
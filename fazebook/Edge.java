@@ -0,0 +1,56 @@
+package fazebook;
+
+import java.util.Objects;
+
+/**
+ * The Edge class holds one weighted, directed edge of an EWDGraph object as
+ * it is handed out by the edges() stream of the graph: the source vertex,
+ * the destination vertex, and the weight of the edge between them. An Edge
+ * is a copy of the edge at the time it was read, and does not change with
+ * the graph.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices of
+ *              the edge.
+ */
+public class Edge<V> {
+
+    private V source;
+    private V destination;
+    private int weight;
+
+    Edge(V source, V destination, int weight) {
+        this.source = source;
+        this.destination = destination;
+        this.weight = weight;
+    }
+
+    public V getSource() {
+        return source;
+    }
+
+    public V getDestination() {
+        return destination;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override public boolean equals(Object other) {
+        if (!(other instanceof Edge))
+            return false;
+        Edge<?> edge = (Edge<?>) other;
+        return source.equals(edge.source)
+                && destination.equals(edge.destination)
+                && weight == edge.weight;
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(source, destination, weight);
+    }
+
+    @Override public String toString() {
+        return source + " -> " + destination + " (" + weight + ")";
+    }
+
+}
@@ -0,0 +1,105 @@
+package fazebook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * The EdgeSpliterator class hands out the edges of a storage engine by
+ * walking a spliterator of its source vertices and handing out the edges of
+ * each through forEachNeighbor(), so no edge is copied into a Collection
+ * beyond those of the one vertex that tryAdvance() is in the middle of.
+ * Splitting splits the source vertices, so the edges divide across the
+ * workers of a parallel stream as well as the vertices do.
+ *
+ * The size of an unsplit spliterator is the number of edges in the store,
+ * which is exact unless the store changes while the edges are read, and is
+ * reported as SIZED when the store is not thread-safe or the vertices are
+ * IMMUTABLE. A split gives each half a share of the remaining edges in
+ * proportion to its share of the remaining vertices, which is only an
+ * estimate, since the degrees of the vertices differ.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices.
+ */
+class EdgeSpliterator<V> implements Spliterator<Edge<V>> {
+
+    private AdjacencyStore<V> store;
+    private Spliterator<V> sources;
+    private long estimate;
+    private int characteristics;
+
+    // the edges of the source vertex that tryAdvance() is in the middle of
+    private List<Edge<V>> pending = new ArrayList<>();
+    private int next;
+
+    /**
+     * Constructor that creates a spliterator over every edge of the store.
+     *
+     * @param store     The store whose edges are desired.
+     * @param sources   The spliterator of the vertices of the store.
+     */
+    EdgeSpliterator(AdjacencyStore<V> store, Spliterator<V> sources) {
+        this(store, sources, store.edgeCount(), NONNULL | DISTINCT
+                | (sources.characteristics() & (IMMUTABLE | CONCURRENT)));
+        if (sources.hasCharacteristics(SIZED) && (!store.isThreadSafe()
+                || sources.hasCharacteristics(IMMUTABLE)))
+            characteristics |= SIZED;
+    }
+
+    private EdgeSpliterator(AdjacencyStore<V> store, Spliterator<V> sources,
+                            long estimate, int characteristics) {
+        this.store = store;
+        this.sources = sources;
+        this.estimate = estimate;
+        this.characteristics = characteristics;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super Edge<V>> action) {
+        while (next == pending.size()) {
+            pending.clear();
+            next = 0;
+            if (!sources.tryAdvance(source -> store.forEachNeighbor(source,
+                    (destination, weight) -> pending.add(
+                            new Edge<>(source, destination, weight)))))
+                return false;
+        }
+        if (estimate > 0)
+            estimate--;
+        action.accept(pending.get(next++));
+        return true;
+    }
+
+    @Override public void forEachRemaining(
+            Consumer<? super Edge<V>> action) {
+        while (next < pending.size())
+            action.accept(pending.get(next++));
+        sources.forEachRemaining(source -> store.forEachNeighbor(source,
+                (destination, weight) -> action.accept(
+                        new Edge<>(source, destination, weight))));
+        estimate = 0;
+    }
+
+    @Override public Spliterator<Edge<V>> trySplit() {
+        long before = sources.estimateSize();
+        Spliterator<V> prefix = sources.trySplit();
+        if (prefix == null)
+            return null;
+        // the edges left in pending stay with the current spliterator
+        long split = Math.max(0, estimate - (pending.size() - next));
+        long share = before <= 0 ? split / 2 : (long) ((double) split
+                * Math.min(before, prefix.estimateSize()) / before);
+        characteristics &= ~SIZED;
+        estimate -= share;
+        return new EdgeSpliterator<>(store, prefix, share, characteristics);
+    }
+
+    @Override public long estimateSize() {
+        return estimate;
+    }
+
+    @Override public int characteristics() {
+        return characteristics;
+    }
+
+}
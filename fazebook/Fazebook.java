@@ -1,7 +1,24 @@
 package fazebook;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /*
 Name: Cameron Vu (UID: 121227508)
@@ -16,14 +33,171 @@ Honor Pledge: I pledge on my honor that I have not given or received any
  * the class field named users, which is a EWDGraph object. The class calls
  * to many methods written in the EWDGraph class, which allow the current
  * Fazebook object to create users and initialize or terminate friendships
- * between two users. Lastly, the Thread class is extended in order to
- * utilize threads and concurrency in the last method, where files are read
- * and appropriate action is taken based on the contents of the file.
+ * between two users. Lastly, the readSocialNetworkData() methods utilize
+ * threads and concurrency through the IngestionEngine class, where files
+ * are read by a bounded pool of workers and appropriate action is taken
+ * based on the contents of the file.
  */
 public class Fazebook extends Thread {
 
-    EWDGraph<String> users = new EWDGraph<>(new StringComparator());
-    
+    EWDGraph<String> users;
+
+    // the cache of query results, which is null unless it has been enabled
+    private volatile QueryCache cache;
+
+    // the log of mutations, which is null unless it has been enabled
+    private volatile WriteAheadLog log;
+
+    // the influence scores, which are null unless they have been enabled
+    private volatile PageRank<String> influence;
+
+    // the metrics of the operations, which are null unless enabled
+    private volatile FazebookMetrics metrics;
+
+    // the number of mutations applied, which grows once each is complete
+    private AtomicLong writes = new AtomicLong();
+
+    /**
+     * Constructor that initializes the users field to an empty EWDGraph
+     * object that uses the CONCURRENT storage engine, so that the Reader
+     * threads started by readSocialNetworkData() can add users and
+     * friendships without locking, while queries run at the same time.
+     */
+    public Fazebook() {
+        this(EWDGraph.Storage.CONCURRENT);
+    }
+
+    /**
+     * Constructor that initializes the users field to an empty EWDGraph
+     * object that uses the specified storage engine. The COMPACT engine
+     * should be preferred for large social networks, since it keeps each
+     * friendship in primitive int arrays rather than in a HashMap entry.
+     * Engines that are not concurrent are guarded by a lock while files are
+     * being read by readSocialNetworkData().
+     * 
+     * @param storage   The storage engine used by the users field
+     */
+    public Fazebook(EWDGraph.Storage storage) {
+        users = new EWDGraph<>(new StringComparator(), storage);
+    }
+
+    // Constructor for the users field of a Fazebook opened from a snapshot
+    Fazebook(EWDGraph<String> users) {
+        this.users = users;
+    }
+
+    /**
+     * Opens a Fazebook object directly on the snapshot file written by
+     * saveSnapshot(). The file is memory-mapped rather than read, so users
+     * and friendships are paged in as they are queried, and the object is
+     * usable almost immediately regardless of the size of the snapshot.
+     * The snapshot file is never modified; later changes are kept in memory
+     * and are thread-safe, like those of the CONCURRENT storage engine.
+     *
+     * @param filename  The name of the snapshot file
+     * @param verify    true to verify the checksums of the whole file before
+     *                  opening it, which reads the file once; false to verify
+     *                  only the header
+     * @return  the Fazebook object backed by the snapshot.
+     * @throws IOException  if the file could not be read, is not a snapshot,
+     *                      or is corrupted.
+     */
+    public static Fazebook openSnapshot(String filename, boolean verify)
+            throws IOException {
+        GraphSnapshot snapshot = GraphSnapshot.open(filename, verify);
+        return new Fazebook(new EWDGraph<>(new StringComparator(),
+                new SnapshotAdjacencyStore(snapshot)));
+    }
+
+    /**
+     * Reads every user and friendship of the snapshot file written by
+     * saveSnapshot() into a new Fazebook object that uses the specified
+     * storage engine. Unlike openSnapshot(), the whole file is verified and
+     * loaded up front, and the object no longer depends on the file.
+     *
+     * @param filename  The name of the snapshot file
+     * @param storage   The storage engine used by the users field
+     * @return  the loaded Fazebook object.
+     * @throws IOException  if the file could not be read, is not a snapshot,
+     *                      or is corrupted.
+     */
+    public static Fazebook loadSnapshot(String filename,
+                                        EWDGraph.Storage storage)
+            throws IOException {
+        GraphSnapshot snapshot = GraphSnapshot.open(filename, true);
+        if (storage == EWDGraph.Storage.DICTIONARY) {
+            // the names go from the file to the dictionary as bytes
+            DictionaryAdjacencyStore store = new DictionaryAdjacencyStore();
+            snapshot.copyTo(store);
+            return new Fazebook(new EWDGraph<>(new StringComparator(),
+                    store));
+        }
+        Fazebook fazebook = new Fazebook(storage);
+        List<Map.Entry<String, String>> edges = new ArrayList<>();
+        for (int id = 0; id < snapshot.getVertexCount(); id++) {
+            String user = snapshot.name(id);
+            fazebook.users.newEWDGraphVertex(user);
+            for (long e = snapshot.edgeStart(id); e < snapshot.edgeEnd(id);
+                    e++) {
+                String friend = snapshot.name(snapshot.destination(e));
+                int weight = snapshot.weight(e);
+                if (weight == 1) {
+                    edges.add(new AbstractMap.SimpleImmutableEntry<>(user,
+                            friend));
+                } else {
+                    fazebook.users.newEWDGraphEdge(user, friend, weight);
+                }
+            }
+            // friendships all have weight 1 and go through the bulk path
+            if (edges.size() >= 4096) {
+                fazebook.users.addEdges(edges, 1);
+                edges.clear();
+            }
+        }
+        fazebook.users.addEdges(edges, 1);
+        return fazebook;
+    }
+
+    /**
+     * Retrieves the object that the current Fazebook object is locked on
+     * when its storage engine is not concurrent, which is the graph of its
+     * users: readSocialNetworkData() holds this lock while it applies each
+     * batch of commands, as do the analyses that read every user. Threads
+     * that share a Fazebook object whose engine is not concurrent must hold
+     * the same lock around each call.
+     * 
+     * @return  the object to synchronize on.
+     */
+    public Object getLock() {
+        return users;
+    }
+
+    /**
+     * Writes every user and friendship of the current Fazebook object to a
+     * binary snapshot file, which openSnapshot() and loadSnapshot() read
+     * back. The snapshot is written to a temporary file that replaces the
+     * specified file only once it is complete. Engines that are not
+     * concurrent are locked while the snapshot is written, and the
+     * VERSIONED engine is written from an EWDGraphSnapshot, so the file
+     * holds the users of one point in time while changes go on.
+     *
+     * @param filename  The name of the snapshot file
+     * @throws IOException  if the file could not be written.
+     */
+    public void saveSnapshot(String filename) throws IOException {
+        if (users.isVersioned()) {
+            try (EWDGraphSnapshot<String> snapshot = users.snapshot()) {
+                GraphSnapshot.write(snapshot, filename);
+            }
+        } else if (users.isConcurrent()) {
+            GraphSnapshot.write(users, filename);
+        } else {
+            synchronized (users) {
+                GraphSnapshot.write(users, filename);
+            }
+        }
+    }
+
     /**
      * Adds a new user by the name of the parameter userName to the current
      * Fazebook object through modifications to the EWDGraph field
@@ -39,7 +213,15 @@ public class Fazebook extends Thread {
     public boolean addUser(String userName) {
         if (userName.isEmpty() || userName == null)
             return false;
-        return users.newEWDGraphVertex(userName);
+        return logged(FazebookMetrics.Operation.ADD_USER,
+                WriteAheadLog.ADD_USER, List.of(userName), () -> {
+            if (!users.newEWDGraphVertex(userName))
+                return false;
+            PageRank<String> influence = this.influence;
+            if (influence != null)
+                influence.vertexAdded(userName);
+            return true;
+        });
     }
 
     /**
@@ -53,6 +235,35 @@ public class Fazebook extends Thread {
         return users.getEWDGraphVertices();
     }
 
+    /**
+     * Retrieves a sequential Stream of the users of the current Fazebook
+     * object, which reads them in place rather than copying them as
+     * getAllUsers() does, so that offline jobs such as exports and audits
+     * can run over every user with parallel(). The VERSIONED engine is read
+     * through a snapshot, which is released when the Stream is closed; with
+     * the engines that are not concurrent, the Stream must not be run while
+     * the current object changes.
+     * 
+     * @return  A Java Stream of the Strings of the current users.
+     */
+    public Stream<String> users() {
+        return stream(EWDGraph::vertices);
+    }
+
+    /**
+     * Retrieves a sequential Stream of the friendships of the current
+     * Fazebook object, each as an Edge from a user to one of the user's
+     * friends, so every friendship made with addFriends() appears once in
+     * each direction. The friends of each user are read in place rather than
+     * copied as getFriends() does, and the Stream is read through a
+     * snapshot and closed as users() is.
+     * 
+     * @return  A Java Stream of the friendships of the current users.
+     */
+    public Stream<Edge<String>> friendships() {
+        return stream(EWDGraph::edges);
+    }
+
     /**
      * Creates a friendship between the two specified users represented by
      * the parameters userName1 and userName2, respectively. Friendships are
@@ -73,9 +284,64 @@ public class Fazebook extends Thread {
              || userName2 == null) {
             friends = false;
         } else {
-            users.newEWDGraphEdge(userName1, userName2, 1);
-            users.newEWDGraphEdge(userName2, userName1, 1);
+            logged(FazebookMetrics.Operation.ADD_FRIENDS,
+                    WriteAheadLog.ADD_FRIENDS, List.of(userName1, userName2),
+                    () -> {
+                        users.newEWDGraphEdge(userName1, userName2, 1);
+                        users.newEWDGraphEdge(userName2, userName1, 1);
+                        changed(List.of(Map.entry(userName1, userName2),
+                                Map.entry(userName2, userName1)));
+                        return true;
+                    });
+        }
+        return friends;
+    }
+
+    /**
+     * Creates a friendship between the two users of each pair in the
+     * parameter pairs, exactly as addFriends() would for each pair, but with
+     * a single call to the addEdges() method of the users field, which
+     * groups the friendships by user and sizes each user's friends once.
+     * Pairs that contain a null or empty user name are skipped.
+     * 
+     * @param pairs     A Collection of Map.Entry objects, each holding the
+     *                  names of the two users of one friendship as its key
+     *                  and value
+     * @return  the number of friendships that were established.
+     */
+    public int addFriendsBatch(
+            Collection<? extends Map.Entry<String, String>> pairs) {
+        if (pairs == null)
+            return 0;
+        List<Map.Entry<String, String>> edges =
+                new ArrayList<>(pairs.size() * 2);
+        int friends = 0;
+        for (Map.Entry<String, String> pair : pairs) {
+            String userName1 = pair.getKey();
+            String userName2 = pair.getValue();
+            if (userName1 != null && userName2 != null
+                    && !userName1.isEmpty() && !userName2.isEmpty()) {
+                // a friendship is an edge in each direction
+                edges.add(Map.entry(userName1, userName2));
+                edges.add(Map.entry(userName2, userName1));
+                friends++;
+            }
+        }
+        // the edges alternate between the two directions of each friendship,
+        // so every other edge names the users of one friendship in order
+        List<String> names = new ArrayList<>();
+        if (log != null) {
+            for (int i = 0; i < edges.size(); i += 2) {
+                names.add(edges.get(i).getKey());
+                names.add(edges.get(i).getValue());
+            }
         }
+        logged(FazebookMetrics.Operation.ADD_FRIENDS_BATCH,
+                WriteAheadLog.ADD_FRIENDS, names, () -> {
+            users.addEdges(edges, 1);
+            changed(edges);
+            return !edges.isEmpty();
+        });
         return friends;
     }
 
@@ -87,14 +353,119 @@ public class Fazebook extends Thread {
      * 
      * @param userName  A String object representing the name of the desired
      *                  user in the current Fazebook object
-     * @return  A Java Collection object containing the users that the 
-     *          parameter userName is friends with.
+     * @return  A new Java Collection object containing the users that the
+     *          parameter userName is friends with, which the caller may
+     *          modify whether or not the query cache is enabled.
      */
     public Collection<String> getFriends(String userName) {
         if (userName == null)
             return null;
-        else 
-            return users.getNeighborsOfVertex(userName);
+        return timed(FazebookMetrics.Operation.GET_FRIENDS, () -> {
+            QueryCache cache = this.cache;
+            if (cache == null)
+                return users.getNeighborsOfVertex(userName);
+            // the cached friends are shared, so the caller gets a copy
+            return new HashSet<>(cached(cache, new QueryCache.Key(
+                    QueryCache.Kind.FRIENDS, userName, 0, false), userName,
+                    false, () -> Collections.unmodifiableCollection(
+                            users.getNeighborsOfVertex(userName))));
+        });
+    }
+
+    /**
+     * Retrieves an unmodifiable, live view of the friends of the parameter
+     * userName. Unlike getFriends(), the friends are not copied, so the view
+     * reflects later changes to the current Fazebook object.
+     * 
+     * @param userName  A String object representing the name of the desired
+     *                  user in the current Fazebook object
+     * @return  An unmodifiable Java Collection view of the users that the
+     *          parameter userName is friends with; null if userName is null.
+     */
+    public Collection<String> getFriendsView(String userName) {
+        if (userName == null)
+            return null;
+        return users.getNeighborsOfVertexView(userName);
+    }
+
+    /**
+     * Checks whether the user represented by userName1 counts the user
+     * represented by userName2 as a friend, with a single lookup rather than
+     * by retrieving the friends of userName1.
+     * 
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @return  true if userName2 is a friend of userName1; false otherwise,
+     *          including when either name is null.
+     */
+    public boolean areFriends(String userName1, String userName2) {
+        if (userName1 == null || userName2 == null)
+            return false;
+        return users.isEWDGraphEdge(userName1, userName2);
+    }
+
+    /**
+     * Retrieves the mutual friends of the users represented by userName1 and
+     * userName2: the users that both of them count as friends.
+     * 
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @return  A Java Collection object containing the mutual friends, which
+     *          is empty if either user does not exist; null if either name
+     *          is null.
+     */
+    public Collection<String> getMutualFriends(String userName1,
+                                               String userName2) {
+        if (userName1 == null || userName2 == null)
+            return null;
+        return consistent(graph ->
+                graph.getCommonNeighbors(userName1, userName2));
+    }
+
+    /**
+     * Counts the mutual friends of the users represented by userName1 and
+     * userName2 without retrieving the mutual friends themselves.
+     * 
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @return  the number of mutual friends; 0 if either user does not exist
+     *          or either name is null.
+     */
+    public int countMutualFriends(String userName1, String userName2) {
+        if (userName1 == null || userName2 == null)
+            return 0;
+        return consistent(graph ->
+                graph.countCommonNeighbors(userName1, userName2));
+    }
+
+    /**
+     * Retrieves the number of friends of the parameter userName without
+     * retrieving the friends themselves.
+     * 
+     * @param userName  A String object representing the name of the desired
+     *                  user in the current Fazebook object
+     * @return  the number of friends of the user; 0 if the user does not
+     *          exist or userName is null.
+     */
+    public int getFriendCount(String userName) {
+        if (userName == null)
+            return 0;
+        return users.degree(userName);
+    }
+
+    /**
+     * Hands each friend of the parameter userName to the action parameter,
+     * without copying the friends of the user.
+     * 
+     * @param userName  A String object representing the name of the desired
+     *                  user in the current Fazebook object
+     * @param action    The action to be performed for each friend
+     */
+    public void forEachFriend(String userName, Consumer<String> action) {
+        if (userName == null || action == null)
+            throw new IllegalArgumentException("Parameter is null");
+        users.forEachNeighbor(userName, (friend, weight) ->
+                action.accept(friend));
     }
 
     /**
@@ -112,15 +483,17 @@ public class Fazebook extends Thread {
      *          otherwise.
      */
     public boolean unfriend(String userName1, String userName2) {
-        boolean unfriend = true;
         if (userName1.isEmpty() || userName2.isEmpty() || userName1 == null
-                || userName2 == null || !users.isEWDGraphVertex(userName1)
-                || !users.isEWDGraphVertex(userName2)
-                || !getFriends(userName1).contains(userName2))
-            unfriend = false;
-        else
-            users.removeEWDGraphEdge(userName1, userName2);
-        return unfriend;
+                || userName2 == null)
+            return false;
+        return logged(FazebookMetrics.Operation.UNFRIEND,
+                WriteAheadLog.UNFRIEND, List.of(userName1, userName2), () -> {
+                    if (!areFriends(userName1, userName2))
+                        return false;
+                    users.removeEWDGraphEdge(userName1, userName2);
+                    changed(List.of(Map.entry(userName1, userName2)));
+                    return true;
+                });
     }
 
     /**
@@ -136,19 +509,531 @@ public class Fazebook extends Thread {
     public Collection<String> peopleYouMayWannaKnow(String userName) {
         if (userName == null || userName.isEmpty()) 
            return null;
-        
-        Collection<String> friends = getFriends(userName);
-        Collection<String> suggested = new HashSet<>();
-        // iterate through each friend and add their friends
-        for (String friend : friends) {
-            if (!friend.equals(userName)) {
-                suggested.addAll(users.getNeighborsOfVertex(friend));
+        return timed(FazebookMetrics.Operation.PEOPLE_YOU_MAY_WANNA_KNOW,
+                () -> {
+                    QueryCache cache = this.cache;
+                    if (cache != null) {
+                        return new HashSet<>(cached(cache, new QueryCache.Key(
+                                QueryCache.Kind.PEOPLE_YOU_MAY_WANNA_KNOW,
+                                userName, 0, false), userName, true, () ->
+                                Collections.unmodifiableCollection(
+                                        computePeopleYouMayWannaKnow(
+                                                userName))));
+                    }
+                    return computePeopleYouMayWannaKnow(userName);
+                });
+    }
+
+    // Computes the friends of the friends of the specified user
+    private Collection<String> computePeopleYouMayWannaKnow(String userName) {
+        return consistent(graph -> {
+            // the union of the friend lists is taken by the storage engine,
+            // which a COMPACT graph does on interned IDs and bitmaps, so
+            // each suggestion is added to the result once rather than once
+            // per mutual friend
+            Collection<String> suggested = graph.getNeighborsOfAny(
+                    graph.getNeighborsOfVertexView(userName));
+            // the userName will always be added, so remove it at the end and
+            // return the result
+            suggested.remove(userName);
+            return suggested;
+        });
+    }
+
+    /**
+     * Retrieves and returns the best k friend suggestions for the parameter
+     * userName, ranked by the number of mutual friends each suggested user
+     * shares with the specified user. Unlike peopleYouMayWannaKnow(), the
+     * specified user's current friends are never suggested, and the friend
+     * lists are visited in place rather than copied.
+     * 
+     * @param userName  A String representing the user in which the friend
+     *                  suggestions should be calculated for
+     * @param k         The maximum number of suggestions to be returned
+     * @return  A List of at most k suggestions, ordered from best to worst;
+     *          null if userName is null or empty.
+     */
+    public List<Suggestion<String>> suggestFriends(String userName, int k) {
+        return suggestFriends(userName, k, false);
+    }
+
+    /**
+     * Retrieves and returns the best k friend suggestions for the parameter
+     * userName. When weighted is true, each mutual friend contributes the
+     * product of the weights of the two friendships connecting the users to
+     * the score of a suggestion, rather than contributing one.
+     * 
+     * @param userName  A String representing the user in which the friend
+     *                  suggestions should be calculated for
+     * @param k         The maximum number of suggestions to be returned
+     * @param weighted  true to score suggestions by friendship weights; false
+     *                  to score them by their number of mutual friends
+     * @return  A List of at most k suggestions, ordered from best to worst;
+     *          null if userName is null or empty.
+     */
+    public List<Suggestion<String>> suggestFriends(String userName, int k,
+                                                   boolean weighted) {
+        if (userName == null || userName.isEmpty())
+            return null;
+        return timed(FazebookMetrics.Operation.SUGGEST_FRIENDS, () -> {
+            QueryCache cache = this.cache;
+            if (cache == null) {
+                return consistent(graph -> new FriendSuggester<>(graph)
+                        .suggest(userName, k, weighted));
+            }
+            return new ArrayList<>(cached(cache, new QueryCache.Key(
+                    QueryCache.Kind.SUGGESTIONS, userName, k, weighted),
+                    userName, true, () -> Collections.unmodifiableList(
+                            consistent(graph -> new FriendSuggester<>(graph)
+                                    .suggest(userName, k, weighted)))));
+        });
+    }
+
+    /**
+     * Finds the number of friendships that separate the two specified users,
+     * which is 1 for friends and 2 for friends of friends.
+     *
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @return  the number of friendships on a shortest chain of friends from
+     *          userName1 to userName2; 0 if they are the same user; -1 if
+     *          either user does not exist or they are not connected.
+     */
+    public int degreesOfSeparation(String userName1, String userName2) {
+        return degreesOfSeparation(userName1, userName2, PathFinder.UNLIMITED);
+    }
+
+    /**
+     * Finds the number of friendships that separate the two specified users,
+     * giving up once every chain of at most maxDepth friendships has been
+     * searched.
+     *
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @param maxDepth      The maximum number of friendships to search
+     *                      through, or PathFinder.UNLIMITED
+     * @return  the number of friendships on a shortest chain of friends from
+     *          userName1 to userName2; 0 if they are the same user; -1 if
+     *          either user does not exist or they are further apart than
+     *          maxDepth.
+     */
+    public int degreesOfSeparation(String userName1, String userName2,
+                                   int maxDepth) {
+        if (userName1 == null || userName2 == null)
+            return -1;
+        return consistent(graph -> new PathFinder<>(graph).distance(
+                userName1, userName2, maxDepth));
+    }
+
+    /**
+     * Finds a shortest chain of friends from the first specified user to the
+     * second.
+     *
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @return  A List of the users on the chain, starting with userName1 and
+     *          ending with userName2; empty if either user does not exist or
+     *          they are not connected; null if either name is null.
+     */
+    public List<String> shortestFriendPath(String userName1,
+                                           String userName2) {
+        return shortestFriendPath(userName1, userName2, PathFinder.UNLIMITED);
+    }
+
+    /**
+     * Finds a shortest chain of at most maxDepth friendships from the first
+     * specified user to the second.
+     *
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @param maxDepth      The maximum number of friendships on the chain,
+     *                      or PathFinder.UNLIMITED
+     * @return  A List of the users on the chain, starting with userName1 and
+     *          ending with userName2; empty if either user does not exist or
+     *          they are further apart than maxDepth; null if either name is
+     *          null.
+     */
+    public List<String> shortestFriendPath(String userName1, String userName2,
+                                           int maxDepth) {
+        if (userName1 == null || userName2 == null)
+            return null;
+        return consistent(graph -> new PathFinder<>(graph).path(userName1,
+                userName2, maxDepth));
+    }
+
+    /**
+     * Finds the chain of friends from the first specified user to the second
+     * whose friendships have the least total weight, using the weights that
+     * the friendships were made with.
+     *
+     * @param userName1     A String object representing the first user
+     * @param userName2     A String object representing the second user
+     * @return  A List of the users on the chain, starting with userName1 and
+     *          ending with userName2; empty if either user does not exist or
+     *          they are not connected; null if either name is null.
+     */
+    public List<String> shortestWeightedFriendPath(String userName1,
+                                                   String userName2) {
+        if (userName1 == null || userName2 == null)
+            return null;
+        return consistent(graph -> new PathFinder<>(graph).weightedPath(
+                userName1, userName2));
+    }
+
+    /**
+     * Splits the users of the current Fazebook object into groups that are
+     * connected through chains of friends, computed in parallel on the
+     * common ForkJoinPool. Engines that are not concurrent are locked while
+     * the groups are computed, and the VERSIONED engine is read through a
+     * snapshot, so the groups are those of one point in time.
+     *
+     * @return  the ConnectedComponents of the users, which give the group of
+     *          each user and a histogram of the group sizes.
+     */
+    public ConnectedComponents<String> findFriendGroups() {
+        if (users.isConcurrent())
+            return consistent(ConnectedComponents::new);
+        synchronized (users) {
+            return new ConnectedComponents<>(users);
+        }
+    }
+
+    /**
+     * Counts the triangles of friends among the users of the current
+     * Fazebook object, which are three users who are all friends of each
+     * other, along with how clustered the friends of each user are. The
+     * counting runs in parallel on the common ForkJoinPool. Engines that are
+     * not concurrent are locked while the triangles are counted, and the
+     * VERSIONED engine is read through a snapshot.
+     *
+     * @return  the TriangleCounter of the users, which gives the triangles
+     *          and clustering coefficient of each user and of the whole
+     *          Fazebook object.
+     */
+    public TriangleCounter<String> countTriangles() {
+        if (users.isConcurrent())
+            return consistent(TriangleCounter::new);
+        synchronized (users) {
+            return new TriangleCounter<>(users);
+        }
+    }
+
+    /**
+     * Enables influence scores for the users of the current Fazebook object,
+     * replacing any that were enabled before. The scores are PageRank
+     * scores, which are high for users whose friends are influential, and
+     * are first computed in parallel over every friendship. From then on,
+     * every change to a friendship updates only the scores it affects,
+     * within the time budget; scores it had no time for are brought up to
+     * date by later changes.
+     *
+     * @param tolerance         The largest change to the score of a user,
+     *                          times the number of users, that may be left
+     *                          unapplied, which must be positive
+     * @param timeBudgetMillis  The longest that computing the scores, or
+     *                          updating them after a change, may take, which
+     *                          must be positive
+     * @return  the PageRank that was enabled.
+     */
+    public PageRank<String> enableInfluenceScores(double tolerance,
+                                                  long timeBudgetMillis) {
+        PageRank<String> influence;
+        if (users.isConcurrent()) {
+            influence = new PageRank<>(users, 0.85, tolerance,
+                    timeBudgetMillis, ForkJoinPool.commonPool());
+        } else {
+            synchronized (users) {
+                influence = new PageRank<>(users, 0.85, tolerance,
+                        timeBudgetMillis, ForkJoinPool.commonPool());
             }
         }
-        // the userName will always be added, so remove it at the end and 
-        // return the result
-        suggested.remove(userName);
-        return suggested;
+        this.influence = influence;
+        return influence;
+    }
+
+    /**
+     * Disables the influence scores, which are no longer updated.
+     */
+    public void disableInfluenceScores() {
+        influence = null;
+    }
+
+    /**
+     * Retrieves the influence score of the specified user.
+     *
+     * @param userName  A String object representing the name of the desired
+     *                  user in the current Fazebook object
+     * @return  the influence score of the user, where the scores of all users
+     *          sum to at most 1; 0 if the user does not exist.
+     * @throws IllegalStateException    if influence scores are not enabled.
+     */
+    public double getInfluenceScore(String userName) {
+        if (userName == null)
+            return 0;
+        return influenceScores().getScore(userName);
+    }
+
+    /**
+     * Retrieves the users with the highest influence scores.
+     *
+     * @param count     The maximum number of users to be returned
+     * @return  A List of at most count users, the most influential first.
+     * @throws IllegalStateException    if influence scores are not enabled.
+     */
+    public List<String> getTopInfluencers(int count) {
+        return influenceScores().getTop(count);
+    }
+
+    private PageRank<String> influenceScores() {
+        PageRank<String> influence = this.influence;
+        if (influence == null)
+            throw new IllegalStateException("Influence scores are disabled");
+        return influence;
+    }
+
+    /**
+     * Enables the recording of metrics for the current Fazebook object,
+     * replacing any metrics that were enabled before. From then on, the
+     * latency of every call of the operations in FazebookMetrics.Operation
+     * is recorded, as are the commands read and the waits for the graph lock
+     * of the Reader threads that read files into the current object.
+     *
+     * @return  the FazebookMetrics that was enabled.
+     */
+    public FazebookMetrics enableMetrics() {
+        FazebookMetrics enabled = new FazebookMetrics();
+        metrics = enabled;
+        return enabled;
+    }
+
+    /**
+     * Disables the recording of metrics.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * @return  the FazebookMetrics that is enabled; null if metrics are
+     *          disabled.
+     */
+    public FazebookMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables caching of the results of getFriends(), peopleYouMayWannaKnow()
+     * and suggestFriends(), replacing any cache that was enabled before.
+     * While the cache is enabled, those methods still return a new
+     * Collection that the caller may modify, copied from the cached result,
+     * and adding or terminating a friendship invalidates only the cached
+     * results of users within two hops of the users involved.
+     * 
+     * @param maxEntries    The maximum number of cached results
+     * @param maxBytes      The maximum estimated number of heap bytes
+     *                      retained by the cached results
+     * @return  the QueryCache that was enabled, whose hit, miss, eviction
+     *          and invalidation counters may be read at any time.
+     */
+    public QueryCache enableQueryCache(int maxEntries, long maxBytes) {
+        QueryCache enabled = new QueryCache(maxEntries, maxBytes);
+        cache = enabled;
+        return enabled;
+    }
+
+    /**
+     * Disables caching of query results and discards the cached results.
+     */
+    public void disableQueryCache() {
+        cache = null;
+    }
+
+    /**
+     * @return  the QueryCache that is enabled; null if caching is disabled.
+     */
+    public QueryCache getQueryCache() {
+        return cache;
+    }
+
+    /*
+     * Returns the cached result of the query, computing and caching it on a
+     * miss. The result depends on the friends of userName, and also on the
+     * friends of each of its friends when twoHop is true.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Collection<?>> T cached(QueryCache cache,
+                                               QueryCache.Key key,
+                                               String userName,
+                                               boolean twoHop,
+                                               Supplier<T> query) {
+        T result = (T) cache.lookup(key);
+        if (result == null) {
+            long epoch = cache.epoch();
+            result = query.get();
+            Collection<String> dependencies = new ArrayList<>();
+            dependencies.add(userName);
+            if (twoHop)
+                users.forEachNeighbor(userName, (friend, weight) ->
+                        dependencies.add(friend));
+            cache.store(key, result, result.size(), dependencies, epoch);
+        }
+        return result;
+    }
+
+    /**
+     * Enables a write-ahead log of every later change to the users and
+     * friendships of the current Fazebook object, after first replaying the
+     * records the log already holds, which brings the current object up to
+     * date with the log. Changes are then recorded in the order in which
+     * they are made, and each change returns once its record is as durable
+     * as the SyncMode of the log requires. The current object must not be
+     * changed while the log is being enabled.
+     *
+     * @param log   The WriteAheadLog to be enabled
+     * @return  the number of records replayed from the log.
+     * @throws IOException  if the log could not be read.
+     */
+    public long enableWriteAheadLog(WriteAheadLog log) throws IOException {
+        if (log == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (this.log != null)
+            throw new IllegalStateException("A log is already enabled");
+        long replayed = log.replay(this);
+        this.log = log;
+        return replayed;
+    }
+
+    /**
+     * @return  the WriteAheadLog that is enabled; null if no log is enabled.
+     */
+    public WriteAheadLog getWriteAheadLog() {
+        return log;
+    }
+
+    /**
+     * Writes a snapshot of the current Fazebook object and then discards the
+     * records of its write-ahead log that the snapshot covers, so that the
+     * log only grows with the changes made since the last checkpoint.
+     * Changes may continue while the snapshot is written, since their
+     * records are kept. Without a log, this is the same as saveSnapshot().
+     *
+     * @param snapshotFile  The name of the snapshot file
+     * @throws IOException  if the snapshot or the log could not be written.
+     */
+    public void checkpoint(String snapshotFile) throws IOException {
+        WriteAheadLog log = this.log;
+        if (log == null) {
+            saveSnapshot(snapshotFile);
+        } else {
+            // every change before the mark is in the snapshot, and every
+            // change after it is in the log, so replaying the rest of the
+            // log on top of the snapshot reproduces the current object
+            long mark = log.mark();
+            saveSnapshot(snapshotFile);
+            log.truncate(mark);
+        }
+    }
+
+    /**
+     * Recovers a Fazebook object after a restart by opening the snapshot
+     * file, if it exists, and enabling the specified log on it, which
+     * replays every change recorded since the snapshot was taken.
+     *
+     * @param snapshotFile  The name of the snapshot file written by
+     *                      checkpoint()
+     * @param log           The WriteAheadLog enabled on the previous object
+     * @return  the recovered Fazebook object, with the log enabled.
+     * @throws IOException  if the snapshot or the log could not be read.
+     */
+    public static Fazebook recover(String snapshotFile, WriteAheadLog log)
+            throws IOException {
+        if (snapshotFile == null || log == null)
+            throw new IllegalArgumentException("Parameter is null");
+        Fazebook fazebook = Files.exists(Paths.get(snapshotFile))
+                ? openSnapshot(snapshotFile, true) : new Fazebook();
+        fazebook.enableWriteAheadLog(log);
+        return fazebook;
+    }
+
+    // Applies the mutation, recording it in the log if one is enabled and
+    // timing it as the operation if metrics are enabled, and counts it in
+    // the writes once it is complete
+    private boolean logged(FazebookMetrics.Operation operation, byte type,
+                           List<String> names, BooleanSupplier mutation) {
+        FazebookMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        WriteAheadLog log = this.log;
+        boolean applied;
+        try {
+            applied = log == null ? mutation.getAsBoolean()
+                    : log.apply(type, names, mutation);
+        } finally {
+            writes.incrementAndGet();
+        }
+        if (metrics != null)
+            metrics.record(operation, System.nanoTime() - start);
+        return applied;
+    }
+
+    // Returns the number of mutations applied so far, which only grows once
+    // a mutation is complete, so a query that starts when the count is the
+    // same as it is now sees every mutation that has returned by now
+    long writeCount() {
+        return writes.get();
+    }
+
+    // Runs the query against a snapshot of the users when they are
+    // versioned, so that it reads one point in time while changes go on,
+    // and against the users themselves otherwise
+    private <T> T consistent(Function<EWDGraph<String>, T> query) {
+        if (!users.isVersioned())
+            return query.apply(users);
+        try (EWDGraphSnapshot<String> snapshot = users.snapshot()) {
+            return query.apply(snapshot);
+        }
+    }
+
+    // Opens the stream against a snapshot of the users when they are
+    // versioned, releasing the snapshot once the stream is closed, and
+    // against the users themselves otherwise
+    private <T> Stream<T> stream(
+            Function<EWDGraph<String>, Stream<T>> query) {
+        if (!users.isVersioned())
+            return query.apply(users);
+        EWDGraphSnapshot<String> snapshot = users.snapshot();
+        return query.apply(snapshot).onClose(snapshot::close);
+    }
+
+    // Runs the query, timing it as the operation if metrics are enabled
+    private <T> T timed(FazebookMetrics.Operation operation,
+                        Supplier<T> query) {
+        FazebookMetrics metrics = this.metrics;
+        if (metrics == null)
+            return query.get();
+        long start = System.nanoTime();
+        try {
+            return query.get();
+        } finally {
+            metrics.record(operation, System.nanoTime() - start);
+        }
+    }
+
+    // Discards the cached results that depend on the friends of userName
+    private void invalidate(String userName) {
+        QueryCache cache = this.cache;
+        if (cache != null)
+            cache.invalidate(userName);
+    }
+
+    // Brings the cache and the influence scores up to date after the edges
+    // from each key to its value were added or removed together
+    private void changed(List<Map.Entry<String, String>> edges) {
+        // every edge starts at a user whose friends changed
+        for (Map.Entry<String, String> edge : edges)
+            invalidate(edge.getKey());
+        PageRank<String> influence = this.influence;
+        if (influence != null)
+            influence.edgesChanged(edges);
     }
 
     /**
@@ -156,11 +1041,11 @@ public class Fazebook extends Thread {
      * within the current Fazebook object. The method reads the files 
      * that are specified by the parameter filenames and either adds the
      * specified user or creates and initializes a friendship between two
-     * specified users by reading the first word of the file, which would
-     * be either addusers or addfriends, respectively. This method utilizes
-     * Java's Threads and also utilizes the overridden run() method in the 
-     * Reader class, which determines the behavior of the current Fazebook
-     * object depending on the contents of the file.
+     * specified users by reading the first word of each line, which would
+     * be either adduser or addfriends, respectively. The files are read by
+     * an IngestionEngine backed by a fixed pool with one thread per
+     * available processor, rather than by one thread per file, and the pool
+     * is shut down once every file has been read.
      * 
      * @param filenames   A Java Collection of the filenames that are desired
      *                    for processing
@@ -172,35 +1057,87 @@ public class Fazebook extends Thread {
         if (filenames == null) {
             read = false;
         } else {
-            // Collection that holds all of the threads
-            Collection<Reader> threads = new HashSet<>();
-
-            // Creates and starts a thread for each file from parameter
-            // filenames
-            for (String filename : filenames) {
-                // Ensure that the current Fazebook object is being passed into
-                // the constructor for the Reader class of the new thread
-                Reader thread = new Reader(this, filename);
-
-                // Add the thread to the threads Collection to be used later and
-                // start the thread's run() method in the Reader class
-                threads.add(thread);
-                thread.start();
-            }
-
-            // Ensures that all threads are finished running
-            for (Reader thread : threads) {
-                try {
-                    thread.join();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            ExecutorService pool = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors());
+            try {
+                read = readSocialNetworkData(filenames,
+                        new IngestionEngine(pool)).allSucceeded();
+            } finally {
+                pool.shutdown();
             }
         }
         return read;
     }
-}
 
+    /**
+     * Reads the files that are specified by the parameter filenames into the
+     * current Fazebook object with the given IngestionEngine, which
+     * determines the ExecutorService, the chunk size, and the bound on the
+     * number of chunks in flight. Unlike readSocialNetworkData(Collection),
+     * the outcome of every file is reported individually.
+     * 
+     * @param filenames   A Java Collection of the filenames that are desired
+     *                    for processing
+     * @param engine      The IngestionEngine used to read the files
+     * @return  An IngestionReport with the outcome of every file; null if
+     *          either parameter is null.
+     */
+    public IngestionReport readSocialNetworkData(Collection<String> filenames,
+                                                 IngestionEngine engine) {
+        if (filenames == null || engine == null)
+            return null;
+        return timed(FazebookMetrics.Operation.READ_SOCIAL_NETWORK_DATA,
+                () -> engine.ingest(this, filenames));
+    }
 
-   
+    /**
+     * Loads the files that are specified by the parameter filenames into a
+     * new Fazebook object with a BulkLoader backed by a fixed pool with one
+     * thread per available processor, which builds the friendships as one
+     * immutable array rather than adding them one batch at a time as
+     * readSocialNetworkData() does, and is faster for a cold start. Later
+     * changes to the returned object are kept in memory next to that array,
+     * as with openSnapshot().
+     * 
+     * @param filenames   A Java Collection of the filenames that are desired
+     *                    for processing
+     * @return  the loaded Fazebook object.
+     * @throws IOException  if a file could not be read.
+     */
+    public static Fazebook loadSocialNetworkData(Collection<String> filenames)
+            throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        try {
+            return new BulkLoader(pool).load(filenames);
+        } finally {
+            pool.shutdown();
+        }
+    }
 
+    /**
+     * Follows the files that are specified by the parameter filenames as
+     * other processes append commands to them, applying each new adduser,
+     * addfriends, or unfriend command to the current Fazebook object shortly
+     * after its line is complete. The files are followed by a TailFollower
+     * on a daemon thread of its own, which resumes from the offsets saved in
+     * offsetsFile by an earlier follower, and which runs until its close()
+     * method is called.
+     * 
+     * @param filenames     A Java Collection of the filenames to follow
+     * @param offsetsFile   The name of the file that the offsets reached in
+     *                      each file are saved to; null to not save them
+     * @return  the TailFollower that follows the files.
+     * @throws IOException  if the offsets file exists but could not be read.
+     */
+    public TailFollower followSocialNetworkData(Collection<String> filenames,
+                                                String offsetsFile)
+            throws IOException {
+        TailFollower follower = new TailFollower(this, filenames,
+                offsetsFile);
+        Thread thread = new Thread(follower, "tail-follower");
+        thread.setDaemon(true);
+        thread.start();
+        return follower;
+    }
+}
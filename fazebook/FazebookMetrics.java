@@ -0,0 +1,259 @@
+package fazebook;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The FazebookMetrics class records how often the operations of a Fazebook
+ * object are called and how long they take, in a LatencyHistogram for each
+ * operation, along with how many commands the Reader threads of the object
+ * read and how long they waited for the lock on its graph. A Fazebook
+ * object records into the FazebookMetrics returned by its enableMetrics()
+ * method; when metrics are disabled, its operations do not read the clock
+ * at all.
+ *
+ * The metrics can be read directly, written out as text every so often by
+ * startReporting(), or registered with the platform MBeanServer by
+ * registerMBean(), after which they can be read over JMX through the
+ * FazebookMetricsMXBean interface.
+ */
+public class FazebookMetrics implements FazebookMetricsMXBean {
+
+    /**
+     * The operations whose latencies are recorded.
+     */
+    public enum Operation {
+        ADD_USER, ADD_FRIENDS, ADD_FRIENDS_BATCH, GET_FRIENDS, UNFRIEND,
+        PEOPLE_YOU_MAY_WANNA_KNOW, SUGGEST_FRIENDS, READ_SOCIAL_NETWORK_DATA
+    }
+
+    private LatencyHistogram[] latencies =
+            new LatencyHistogram[Operation.values().length];
+    private LatencyHistogram lockWaits = new LatencyHistogram();
+    private LongAdder commands = new LongAdder();
+    private LongAdder friendships = new LongAdder();
+    private ScheduledExecutorService reporter;
+    private ObjectName name;
+
+    /**
+     * Constructor that creates metrics with nothing recorded.
+     */
+    public FazebookMetrics() {
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = new LatencyHistogram();
+    }
+
+    /**
+     * @param operation     An operation of a Fazebook object
+     * @return the LatencyHistogram of the operation.
+     */
+    public LatencyHistogram getLatency(Operation operation) {
+        if (operation == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * @return the LatencyHistogram of the waits of Reader threads for the
+     *         lock on the graph, which they only take when the graph is not
+     *         concurrent.
+     */
+    public LatencyHistogram getLockWaits() {
+        return lockWaits;
+    }
+
+    // Records one call of the operation
+    void record(Operation operation, long nanos) {
+        latencies[operation.ordinal()].record(nanos);
+    }
+
+    void recordLockWait(long nanos) {
+        lockWaits.record(nanos);
+    }
+
+    // Records a batch of commands applied by a Reader
+    void recordBatch(int commands, int friendships) {
+        this.commands.add(commands);
+        this.friendships.add(friendships);
+    }
+
+    @Override public Map<String, Long> getCounts() {
+        return perOperation(LatencyHistogram::getCount);
+    }
+
+    @Override public Map<String, Double> getMeanNanos() {
+        Map<String, Double> means = new LinkedHashMap<>();
+        for (Operation operation : Operation.values())
+            means.put(operation.name(), getLatency(operation).getMeanNanos());
+        return means;
+    }
+
+    @Override public Map<String, Long> getP50Nanos() {
+        return perOperation(latency -> latency.getPercentileNanos(50));
+    }
+
+    @Override public Map<String, Long> getP99Nanos() {
+        return perOperation(latency -> latency.getPercentileNanos(99));
+    }
+
+    @Override public Map<String, Long> getP999Nanos() {
+        return perOperation(latency -> latency.getPercentileNanos(99.9));
+    }
+
+    @Override public Map<String, Long> getMaxNanos() {
+        return perOperation(LatencyHistogram::getMaxNanos);
+    }
+
+    @Override public long getLockWaitNanos() {
+        return lockWaits.getTotalNanos();
+    }
+
+    @Override public long getLockWaitP99Nanos() {
+        return lockWaits.getPercentileNanos(99);
+    }
+
+    @Override public long getCommandsRead() {
+        return commands.sum();
+    }
+
+    @Override public long getFriendshipsRead() {
+        return friendships.sum();
+    }
+
+    @Override public double getCommandsPerSecond() {
+        return perIngestionSecond(getCommandsRead());
+    }
+
+    @Override public double getFriendshipsPerSecond() {
+        return perIngestionSecond(getFriendshipsRead());
+    }
+
+    @Override public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT,
+                "%-26s %10s %10s %10s %10s %10s %10s%n", "operation (us)",
+                "count", "mean", "p50", "p99", "p99.9", "max"));
+        for (Operation operation : Operation.values())
+            appendLatency(report, operation.name(), getLatency(operation));
+        appendLatency(report, "READER_LOCK_WAIT", lockWaits);
+        report.append(String.format(Locale.ROOT, "ingestion: %d commands "
+                + "(%.0f/s), %d friendships (%.0f/s)%n", getCommandsRead(),
+                getCommandsPerSecond(), getFriendshipsRead(),
+                getFriendshipsPerSecond()));
+        return report.toString();
+    }
+
+    @Override public void reset() {
+        for (LatencyHistogram latency : latencies)
+            latency.reset();
+        lockWaits.reset();
+        commands.reset();
+        friendships.reset();
+    }
+
+    /**
+     * Writes a report of every metric to the specified stream every period,
+     * from a daemon thread, replacing any reporting started before.
+     *
+     * @param out           The PrintStream that reports are written to
+     * @param periodMillis  The time between reports, which must be positive
+     */
+    public synchronized void startReporting(PrintStream out,
+                                            long periodMillis) {
+        if (out == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (periodMillis <= 0)
+            throw new IllegalArgumentException("Parameter is out of range");
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(getReport()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the reports started by startReporting(), if any.
+     */
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdown();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Registers the current metrics with the platform MBeanServer under the
+     * specified name, such as "fazebook:type=Metrics".
+     *
+     * @param objectName    The ObjectName to register under
+     * @return the ObjectName that was registered.
+     * @throws JMException  if the name is malformed or already registered.
+     */
+    public synchronized ObjectName registerMBean(String objectName)
+            throws JMException {
+        if (objectName == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (name != null)
+            throw new IllegalStateException("Metrics are already registered");
+        ObjectName registered = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                registered);
+        name = registered;
+        return registered;
+    }
+
+    /**
+     * Unregisters the current metrics from the platform MBeanServer, if they
+     * were registered.
+     *
+     * @throws JMException  if the metrics could not be unregistered.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    private Map<String, Long> perOperation(
+            ToLongFunction<LatencyHistogram> metric) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Operation operation : Operation.values())
+            values.put(operation.name(),
+                    metric.applyAsLong(getLatency(operation)));
+        return values;
+    }
+
+    // Divides by the time spent in readSocialNetworkData(); overlapping
+    // calls each count their own time
+    private double perIngestionSecond(long count) {
+        long nanos = getLatency(Operation.READ_SOCIAL_NETWORK_DATA)
+                .getTotalNanos();
+        return nanos == 0 ? 0 : count / (nanos / 1e9);
+    }
+
+    private static void appendLatency(StringBuilder report, String name,
+                                      LatencyHistogram latency) {
+        report.append(String.format(Locale.ROOT,
+                "%-26s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+                latency.getCount(), latency.getMeanNanos() / 1e3,
+                latency.getPercentileNanos(50) / 1e3,
+                latency.getPercentileNanos(99) / 1e3,
+                latency.getPercentileNanos(99.9) / 1e3,
+                latency.getMaxNanos() / 1e3));
+    }
+
+}
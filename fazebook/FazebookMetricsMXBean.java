@@ -0,0 +1,88 @@
+package fazebook;
+
+import java.util.Map;
+
+/**
+ * The FazebookMetricsMXBean interface is the management interface of the
+ * FazebookMetrics class, through which its counters and latencies can be
+ * read over JMX, for example with JConsole. The maps are keyed by the name
+ * of each FazebookMetrics.Operation.
+ */
+public interface FazebookMetricsMXBean {
+
+    /**
+     * @return the number of calls of each operation.
+     */
+    Map<String, Long> getCounts();
+
+    /**
+     * @return the mean latency of each operation, in nanoseconds.
+     */
+    Map<String, Double> getMeanNanos();
+
+    /**
+     * @return the median latency of each operation, in nanoseconds.
+     */
+    Map<String, Long> getP50Nanos();
+
+    /**
+     * @return the 99th percentile latency of each operation, in
+     *         nanoseconds.
+     */
+    Map<String, Long> getP99Nanos();
+
+    /**
+     * @return the 99.9th percentile latency of each operation, in
+     *         nanoseconds.
+     */
+    Map<String, Long> getP999Nanos();
+
+    /**
+     * @return the longest latency of each operation, in nanoseconds.
+     */
+    Map<String, Long> getMaxNanos();
+
+    /**
+     * @return the total time that Reader threads waited for the graph lock,
+     *         in nanoseconds.
+     */
+    long getLockWaitNanos();
+
+    /**
+     * @return the 99th percentile of the waits of Reader threads for the
+     *         graph lock, in nanoseconds.
+     */
+    long getLockWaitP99Nanos();
+
+    /**
+     * @return the number of commands read by Reader threads.
+     */
+    long getCommandsRead();
+
+    /**
+     * @return the number of addfriends commands read by Reader threads.
+     */
+    long getFriendshipsRead();
+
+    /**
+     * @return the commands read per second of readSocialNetworkData().
+     */
+    double getCommandsPerSecond();
+
+    /**
+     * @return the addfriends commands read per second of
+     *         readSocialNetworkData().
+     */
+    double getFriendshipsPerSecond();
+
+    /**
+     * @return every metric as text, as written by periodic reports.
+     */
+    String getReport();
+
+    /**
+     * Discards every metric recorded so far.
+     */
+    void reset();
+
+}
@@ -0,0 +1,97 @@
+package fazebook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The FriendSuggester class ranks the friends of friends of a vertex in an
+ * EWDGraph object by how strongly they are connected to it. The neighbors of
+ * the vertex and of each of its neighbors are visited in place through the
+ * graph, and the candidates are counted in a ScoreTable, so no neighbor
+ * Collection is ever copied. The vertex itself and its current neighbors are
+ * excluded from the candidates, and only the best k candidates are kept in a
+ * bounded heap, so ranking costs O(n log k) for n candidates.
+ *
+ * Unweighted scoring ranks each candidate by its number of mutual neighbors.
+ * Weighted scoring instead adds, for each mutual neighbor, the product of
+ * the weight of the edge to the mutual neighbor and the weight of the edge
+ * from the mutual neighbor to the candidate. Ties are broken by the number
+ * of mutual neighbors and then by the comparator of the graph.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices of
+ *              the graph.
+ */
+public class FriendSuggester<V> {
+
+    private EWDGraph<V> graph;
+    private Comparator<Suggestion<V>> ranking;
+
+    /**
+     * Constructor that creates a suggester for the specified graph.
+     *
+     * @param graph     The EWDGraph object that suggestions are made from
+     */
+    public FriendSuggester(EWDGraph<V> graph) {
+        if (graph == null)
+            throw new IllegalArgumentException("Parameter is null");
+        this.graph = graph;
+        Comparator<V> byVertex = graph.getComparator();
+        // best suggestions first
+        ranking = Comparator.comparingDouble((Suggestion<V> s) -> s.getScore())
+                .thenComparingInt(s -> s.getMutualFriends()).reversed()
+                .thenComparing(s -> s.getUser(), byVertex);
+    }
+
+    /**
+     * Retrieves the best k suggestions for the specified vertex, best first.
+     * The result is empty if the vertex is not present in the graph, has no
+     * friends of friends that are not already its friends, or k is not
+     * positive.
+     *
+     * @param vertex    The vertex that suggestions are made for
+     * @param k         The maximum number of suggestions to be returned
+     * @param weighted  true to score candidates by edge weights; false to
+     *                  score them by their number of mutual neighbors
+     * @return a List of at most k suggestions, ordered from best to worst.
+     */
+    public List<Suggestion<V>> suggest(V vertex, int k, boolean weighted) {
+        if (vertex == null)
+            throw new IllegalArgumentException("Parameter is null");
+        List<Suggestion<V>> result = new ArrayList<>();
+        if (k <= 0 || !graph.isEWDGraphVertex(vertex))
+            return result;
+
+        ScoreTable<V> candidates = new ScoreTable<>(graph.degree(vertex) * 8);
+        candidates.exclude(vertex);
+        graph.forEachNeighbor(vertex, (friend, weight) ->
+                candidates.exclude(friend));
+        graph.forEachNeighbor(vertex, (friend, toFriend) ->
+                graph.forEachNeighbor(friend, (candidate, toCandidate) ->
+                        candidates.add(candidate, weighted
+                                ? (double) toFriend * toCandidate : 1)));
+
+        // the worst of the best k seen so far is at the head of the heap
+        PriorityQueue<Suggestion<V>> best = new PriorityQueue<>(k + 1,
+                ranking.reversed());
+        for (int slot = 0; slot < candidates.capacity(); slot++) {
+            if (candidates.isCandidate(slot)) {
+                Suggestion<V> suggestion = new Suggestion<>(
+                        candidates.keyAt(slot), candidates.countAt(slot),
+                        candidates.scoreAt(slot));
+                if (best.size() < k) {
+                    best.add(suggestion);
+                } else if (ranking.compare(suggestion, best.peek()) < 0) {
+                    best.poll();
+                    best.add(suggestion);
+                }
+            }
+        }
+        result.addAll(best);
+        Collections.sort(result, ranking);
+        return result;
+    }
+
+}
@@ -0,0 +1,459 @@
+package fazebook;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.LongConsumer;
+
+/**
+ * The GraphGenerator class generates large, heavy-tailed friendship graphs
+ * for load testing, and writes them either as files of adduser and
+ * addfriends commands, split into shards that can be read in parallel by
+ * readSocialNetworkData(), or as a single snapshot that can be opened with
+ * Fazebook.openSnapshot(). The users are named person1 to person<users>,
+ * like the users of the files made by FileCreator.jar.
+ *
+ * Two models are offered. In the BARABASI_ALBERT model, users join one at
+ * a time, and each makes an equal share of the friendships with earlier
+ * users picked in proportion to their number of friends, so that the users
+ * who joined first become hubs. In the RMAT model, every friendship picks
+ * its two users by repeatedly choosing a quadrant of the adjacency matrix
+ * with the skewed probabilities of the Graph500 benchmark, and the user
+ * numbers are then scrambled so that the hubs are spread over the names.
+ * Neither model makes a user friends with itself, but either may make the
+ * same friendship more than once; a snapshot keeps one copy of each.
+ *
+ * Every friendship is computed on its own from the seed and its number,
+ * without reference to the friendships generated before it: a
+ * Barabasi-Albert friendship picks a random earlier friendship end and,
+ * when that end is itself a picked user, computes that earlier pick again.
+ * So any range of friendships can be generated by any worker, the output
+ * is the same whatever the parallelism, and generating takes memory
+ * proportional to the number of users at most, never to the number of
+ * friendships. Command shards are written by separate workers of a
+ * ForkJoinPool; a snapshot is written by generating every friendship once
+ * per pass, keeping only those of the users that the pass covers, so a
+ * pass holds a bounded number of edges.
+ */
+public class GraphGenerator {
+
+    /**
+     * The model that the friendships are generated by.
+     */
+    public enum Model {
+        BARABASI_ALBERT, RMAT
+    }
+
+    /** The directed edges held by one snapshot pass by default, 2^24. */
+    public static final int DEFAULT_PASS_EDGES = 1 << 24;
+
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+    // the R-MAT quadrant probabilities; the last quadrant gets the rest
+    private static final double A = 0.57;
+    private static final double B = 0.19;
+    private static final double C = 0.19;
+    // friendships generated by each task
+    private static final int BLOCK = 4096;
+
+    private Model model;
+    private int users;
+    private long friendships;
+    private long seed;
+    private ForkJoinPool pool;
+    private int scale;
+
+    /**
+     * Constructor that creates a generator that runs on the common
+     * ForkJoinPool.
+     *
+     * @param model         The model that the friendships are generated by
+     * @param users         The number of users, which must be at least 2
+     * @param friendships   The number of friendships, which must not be
+     *                      negative, nor more than Long.MAX_VALUE over the
+     *                      number of users
+     * @param seed          The seed that determines the graph
+     */
+    public GraphGenerator(Model model, int users, long friendships,
+                          long seed) {
+        this(model, users, friendships, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that creates a generator that runs on the specified
+     * ForkJoinPool.
+     *
+     * @param model         The model that the friendships are generated by
+     * @param users         The number of users, which must be at least 2
+     * @param friendships   The number of friendships, which must not be
+     *                      negative, nor more than Long.MAX_VALUE over the
+     *                      number of users
+     * @param seed          The seed that determines the graph
+     * @param pool          The ForkJoinPool that the generation runs on
+     */
+    public GraphGenerator(Model model, int users, long friendships, long seed,
+                          ForkJoinPool pool) {
+        if (model == null || pool == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (users < 2 || friendships < 0
+                || friendships > Long.MAX_VALUE / (users - 1))
+            throw new IllegalArgumentException("Parameter is out of range");
+        this.model = model;
+        this.users = users;
+        this.friendships = friendships;
+        this.seed = seed;
+        this.pool = pool;
+        scale = 64 - Long.numberOfLeadingZeros(users - 1);
+    }
+
+    /**
+     * @return the number of users.
+     */
+    public int getUsers() {
+        return users;
+    }
+
+    /**
+     * @return the number of friendships generated, counting each time the
+     *         same friendship is made.
+     */
+    public long getFriendships() {
+        return friendships;
+    }
+
+    /**
+     * Writes the graph as files of commands, each file holding the adduser
+     * commands of an equal share of the users followed by the addfriends
+     * commands of an equal share of the friendships. The files are named
+     * prefix-0.txt to prefix-(shards - 1).txt and are written in parallel.
+     *
+     * @param prefix    The path and name that the files start with
+     * @param shards    The number of files, which must be positive
+     * @return a List of the names of the files, in order.
+     * @throws IOException  if a file could not be written.
+     */
+    public List<String> writeCommands(String prefix, int shards)
+            throws IOException {
+        if (prefix == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (shards <= 0)
+            throw new IllegalArgumentException("Parameter is out of range");
+        List<String> files = new ArrayList<>(shards);
+        List<Future<Void>> written = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            String file = prefix + "-" + shard + ".txt";
+            long firstUser = (long) users * shard / shards;
+            long lastUser = (long) users * (shard + 1) / shards;
+            long first = share(friendships, shard, shards);
+            long last = share(friendships, shard + 1, shards);
+            files.add(file);
+            written.add(pool.submit(() -> {
+                try (CommandWriter out = new CommandWriter(
+                        new FileOutputStream(file))) {
+                    for (long user = firstUser; user < lastUser; user++)
+                        out.addUser((int) user);
+                    for (long e = first; e < last; e++) {
+                        long pair = friendship(e);
+                        out.addFriends((int) (pair >>> 32), (int) pair);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> shard : written)
+            await(shard);
+        return files;
+    }
+
+    /**
+     * Writes the graph as a snapshot with the default number of edges per
+     * pass.
+     *
+     * @param filename  The name of the snapshot file
+     * @throws IOException  if the file could not be written.
+     */
+    public void writeSnapshot(String filename) throws IOException {
+        writeSnapshot(filename, DEFAULT_PASS_EDGES);
+    }
+
+    /**
+     * Writes the graph as a snapshot, in which every friendship is an edge
+     * with a weight of 1 in each direction. The users are split into ranges
+     * with at most passEdges edges between them, unless a single user has
+     * more, and all friendships are generated once for each range, so the
+     * memory used beyond that of the users is at most passEdges ints.
+     *
+     * @param filename      The name of the snapshot file
+     * @param passEdges     The number of edges held by each pass, which must
+     *                      be positive
+     * @throws IOException  if the file could not be written.
+     */
+    public void writeSnapshot(String filename, int passEdges)
+            throws IOException {
+        if (filename == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (passEdges <= 0)
+            throw new IllegalArgumentException("Parameter is out of range");
+        // count the edges of each user, including repeated friendships,
+        // which bounds the room each user needs in a pass
+        AtomicIntegerArray counts = new AtomicIntegerArray(users);
+        forEachFriendship(pair -> {
+            counts.incrementAndGet((int) (pair >>> 32));
+            counts.incrementAndGet((int) pair);
+        });
+
+        try (GraphSnapshot.RowWriter out = new GraphSnapshot.RowWriter(
+                filename, users, id -> "person" + (id + 1), 1)) {
+            int[] ends = new int[0];
+            int lo = 0;
+            while (lo < users) {
+                int hi = lo;
+                long total = 0;
+                while (hi < users && (hi == lo
+                        || total + counts.get(hi) <= passEdges))
+                    total += counts.get(hi++);
+                if (total > Integer.MAX_VALUE)
+                    throw new IOException("User has too many friendships");
+                if (ends.length < total)
+                    ends = new int[(int) total];
+                pass(out, counts, lo, hi, ends);
+                lo = hi;
+            }
+            out.finish();
+        }
+    }
+
+    // Gathers, sorts and writes the edges of the users from lo to hi
+    private void pass(GraphSnapshot.RowWriter out, AtomicIntegerArray counts,
+                      int lo, int hi, int[] ends) throws IOException {
+        int[] offsets = new int[hi - lo + 1];
+        AtomicIntegerArray cursors = new AtomicIntegerArray(hi - lo);
+        for (int user = lo; user < hi; user++) {
+            offsets[user - lo + 1] = offsets[user - lo] + counts.get(user);
+            cursors.set(user - lo, offsets[user - lo]);
+        }
+        forEachFriendship(pair -> {
+            int user1 = (int) (pair >>> 32);
+            int user2 = (int) pair;
+            if (user1 >= lo && user1 < hi)
+                ends[cursors.getAndIncrement(user1 - lo)] = user2;
+            if (user2 >= lo && user2 < hi)
+                ends[cursors.getAndIncrement(user2 - lo)] = user1;
+        });
+
+        // a friendship made more than once is kept once
+        int[] lengths = new int[hi - lo];
+        ParallelRange.forEach(pool, hi - lo, id -> {
+            Arrays.sort(ends, offsets[id], offsets[id + 1]);
+            int length = 0;
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                if (length == 0 || ends[offsets[id] + length - 1] != ends[i])
+                    ends[offsets[id] + length++] = ends[i];
+            }
+            lengths[id] = length;
+        });
+        for (int id = 0; id < hi - lo; id++)
+            out.addRow(ends, offsets[id], offsets[id] + lengths[id]);
+    }
+
+    // Runs the action for every friendship, packed as in friendship(), in
+    // parallel and in no particular order
+    private void forEachFriendship(LongConsumer action) {
+        long blocks = (friendships + BLOCK - 1) / BLOCK;
+        if (blocks > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many friendships");
+        ParallelRange.forEach(pool, (int) blocks, block -> {
+            long end = Math.min(friendships, (block + 1L) * BLOCK);
+            for (long e = (long) block * BLOCK; e < end; e++)
+                action.accept(friendship(e));
+        });
+    }
+
+    // Returns the users of the friendship with the specified number, the
+    // first in the high 32 bits and the second in the low 32 bits
+    long friendship(long e) {
+        if (model == Model.BARABASI_ALBERT)
+            return (long) source(e) << 32 | target(e);
+        return rmat(e);
+    }
+
+    // Returns the user that made the Barabasi-Albert friendship; every user
+    // but the first makes an equal share of the friendships, give or take 1
+    private int source(long e) {
+        return (int) (e * (users - 1) / friendships) + 1;
+    }
+
+    /*
+     * Returns the user that the Barabasi-Albert friendship was made with.
+     * The ends of the friendships before it are numbered from 0, the users
+     * that made friendship f at 2f and those it was made with at 2f + 1,
+     * and a random end is picked, which picks each user in proportion to
+     * its number of friends. An end that is itself a pick is computed again
+     * the same way, for a friendship with half the number or less, so the
+     * expected number of steps is constant. A pick of the user making the
+     * friendship is drawn again.
+     */
+    private int target(long e) {
+        if (e == 0)
+            return 0;
+        int source = source(e);
+        long state = seed ^ e * GOLDEN;
+        while (true) {
+            state += GOLDEN;
+            long end = (mix(state) >>> 1) % (2 * e);
+            int user = (end & 1) == 0 ? source(end >>> 1) : target(end >>> 1);
+            if (user != source)
+                return user;
+        }
+    }
+
+    // Returns the R-MAT friendship, packed as in friendship(), drawing again
+    // whenever a user is beyond the last or both users are the same
+    private long rmat(long e) {
+        long state = seed ^ e * GOLDEN;
+        long mask = (1L << scale) - 1;
+        while (true) {
+            long user1 = 0;
+            long user2 = 0;
+            for (int level = 0; level < scale; level++) {
+                state += GOLDEN;
+                double p = (mix(state) >>> 11) * 0x1.0p-53;
+                user1 <<= 1;
+                user2 <<= 1;
+                if (p >= A + B + C) {
+                    user1 |= 1;
+                    user2 |= 1;
+                } else if (p >= A + B) {
+                    user1 |= 1;
+                } else if (p >= A) {
+                    user2 |= 1;
+                }
+            }
+            user1 = scramble(user1, mask);
+            user2 = scramble(user2, mask);
+            if (user1 < users && user2 < users && user1 != user2)
+                return user1 << 32 | user2;
+        }
+    }
+
+    // A bijection of the numbers up to mask, which spreads the R-MAT hubs,
+    // all of which would otherwise have low numbers
+    private long scramble(long user, long mask) {
+        user = (user * GOLDEN + seed) & mask;
+        user ^= user >>> ((scale + 1) / 2);
+        return (user * 0xbf58476d1ce4e5b9L) & mask;
+    }
+
+    // The SplitMix64 finalizer, which makes each state a random long
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Returns the start of the part-th of parts equal shares of total
+    private static long share(long total, int part, int parts) {
+        return (long) ((double) total * part / parts);
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Writing was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /*
+     * Writes commands as ASCII through a buffer, formatting the numbers of
+     * the users directly rather than through Strings.
+     */
+    private static class CommandWriter implements AutoCloseable {
+
+        private static final byte[] ADD_USER =
+                "adduser person".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] ADD_FRIENDS =
+                "addfriends person".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] PERSON =
+                " person".getBytes(StandardCharsets.US_ASCII);
+
+        private OutputStream out;
+        private byte[] buffer = new byte[1 << 16];
+        private int size;
+
+        CommandWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void addUser(int user) throws IOException {
+            put(ADD_USER);
+            putNumber(user + 1);
+            putNewline();
+        }
+
+        void addFriends(int user1, int user2) throws IOException {
+            put(ADD_FRIENDS);
+            putNumber(user1 + 1);
+            put(PERSON);
+            putNumber(user2 + 1);
+            putNewline();
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void putNumber(long number) throws IOException {
+            ensure(20);
+            int start = size;
+            do {
+                buffer[size++] = (byte) ('0' + number % 10);
+                number /= 10;
+            } while (number > 0);
+            // the digits were written backwards
+            for (int i = start, j = size - 1; i < j; i++, j--) {
+                byte digit = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = digit;
+            }
+        }
+
+        private void putNewline() throws IOException {
+            ensure(1);
+            buffer[size++] = '\n';
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.length - size < bytes) {
+                out.write(buffer, 0, size);
+                size = 0;
+            }
+        }
+
+        @Override public void close() throws IOException {
+            try {
+                out.write(buffer, 0, size);
+            } finally {
+                out.close();
+            }
+        }
+
+    }
+
+}
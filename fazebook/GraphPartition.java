@@ -0,0 +1,82 @@
+package fazebook;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The GraphPartition interface is one shard of the users and friendships of
+ * a ShardedFazebook object. A partition holds the users that hash to it and
+ * the friends of each of those users, so a friendship between users of two
+ * partitions is held as one direction in each.
+ *
+ * Every method takes and returns only names and counts, and every batch
+ * method does its work in one call, so that a partition can live behind a
+ * transport such as RemotePartition as well as in the same JVM as
+ * LocalPartition. Implementations must be thread-safe.
+ */
+public interface GraphPartition {
+
+    /**
+     * Adds the user to the current partition.
+     *
+     * @param userName  The name of the user
+     * @return  true if the user was added; false if it already existed.
+     */
+    boolean addUser(String userName);
+
+    /**
+     * @param userName  The name of the user
+     * @return  true if the user is in the current partition.
+     */
+    boolean hasUser(String userName);
+
+    /**
+     * Adds each friend of the parameter edges to the friends of its user, the
+     * key of its Map.Entry, adding the user first if it does not exist. The
+     * friend, the value of the Map.Entry, may belong to another partition and
+     * may be added to the current one as a user without friends.
+     *
+     * @param edges     The users and friends to add
+     * @return  the number of distinct friends that were added or updated.
+     */
+    int addFriends(Collection<? extends Map.Entry<String, String>> edges);
+
+    /**
+     * Removes the friend from the friends of the user.
+     *
+     * @param userName      The name of the user
+     * @param friendName    The name of the friend
+     * @return  true if the friend was removed; false if the user did not
+     *          count it as a friend.
+     */
+    boolean removeFriend(String userName, String friendName);
+
+    /**
+     * @param userName      The name of the user
+     * @param friendName    The name of the friend
+     * @return  true if the user counts the friend as a friend.
+     */
+    boolean isFriend(String userName, String friendName);
+
+    /**
+     * @param userName  The name of the user
+     * @return  a copy of the friends of the user, which is empty if the user
+     *          does not exist.
+     */
+    Collection<String> getFriends(String userName);
+
+    /**
+     * Retrieves the friends of each of the users in one call.
+     *
+     * @param userNames The names of the users
+     * @return  a copy of the friends of each user, keyed by its name.
+     */
+    Map<String, Collection<String>> getFriends(Collection<String> userNames);
+
+    /**
+     * @return  a copy of the users of the current partition, which may
+     *          include friends of other partitions added by addFriends().
+     */
+    Collection<String> getUsers();
+
+}
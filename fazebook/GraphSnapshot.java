@@ -0,0 +1,652 @@
+package fazebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * The GraphSnapshot class writes an EWDGraph of user names to a compact
+ * binary file and maps such a file back into memory. The file holds a
+ * dictionary of the vertices, which are numbered from 0 in the order they
+ * are written, followed by the edges in compressed sparse row (CSR) form:
+ * the edges of each vertex are stored contiguously, sorted by destination,
+ * and an offsets array gives the first edge of every vertex. A hash index
+ * from names to vertex numbers is stored with the dictionary, so nothing has
+ * to be rebuilt when a snapshot is opened; every section is memory-mapped,
+ * and names are only decoded when they are first needed.
+ *
+ * The file begins with a 64 byte header, all in big-endian order:
+ *
+ *   magic, version, vertex count, index capacity      4 ints
+ *   edge count, name bytes                            2 longs
+ *   dictionary CRC32, edges CRC32, header CRC32       3 longs
+ *   reserved                                          1 long
+ *
+ * followed by the sections, each starting on an 8 byte boundary:
+ *
+ *   name offsets    int[vertices + 1]
+ *   names           byte[name bytes], UTF-8
+ *   index           int[index capacity], vertex number + 1 or 0 if empty
+ *   edge offsets    long[vertices + 1]
+ *   destinations    int[edges]
+ *   weights         int[edges]
+ *
+ * The header checksum is always verified when a snapshot is opened, and the
+ * section checksums are verified too unless the caller asks for a lazy open.
+ * Each section must be smaller than 2 GiB, which limits a snapshot to about
+ * 500 million directed edges.
+ *
+ * The BulkLoader class builds snapshots of the same form on the heap, with
+ * no file behind them, which are served in the same way.
+ */
+public class GraphSnapshot {
+
+    static final int MAGIC = 0x465a4253;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private int vertexCount;
+    private long edgeCount;
+    private IntBuffer nameOffsets;
+    private ByteBuffer names;
+    private IntBuffer index;
+    private LongBuffer edgeOffsets;
+    private IntBuffer destinations;
+    private IntBuffer weights;
+
+    // names decoded so far; racy writes are harmless as Strings are immutable
+    private String[] decoded;
+
+    private GraphSnapshot() {
+    }
+
+    /*
+     * Creates a snapshot held on the heap rather than mapped from a file,
+     * from the names of the vertices and their edges in CSR form, sorted by
+     * destination. The names are kept as the Strings given, so the name
+     * sections stay null, and null weights give every edge the weight 1.
+     */
+    static GraphSnapshot of(String[] names, long[] edgeOffsets,
+                            int[] destinations, int[] weights) {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        int n = names.length;
+        int capacity = indexCapacity(n);
+        int[] index = new int[capacity];
+        for (int id = 0; id < n; id++) {
+            int slot = slot(names[id], capacity);
+            while (index[slot] != 0)
+                slot = (slot + 1) & (capacity - 1);
+            index[slot] = id + 1;
+        }
+        snapshot.vertexCount = n;
+        snapshot.edgeCount = edgeOffsets[n];
+        snapshot.index = IntBuffer.wrap(index);
+        snapshot.edgeOffsets = LongBuffer.wrap(edgeOffsets);
+        snapshot.destinations = IntBuffer.wrap(destinations);
+        snapshot.weights = weights == null ? null : IntBuffer.wrap(weights);
+        snapshot.decoded = names;
+        return snapshot;
+    }
+
+    /**
+     * Writes the vertices and edges of the specified graph to a snapshot file.
+     * The file is first written under a temporary name and then moved into
+     * place, so a crash never leaves a partial snapshot under filename. A
+     * concurrent graph may change while it is written; edges to vertices
+     * added after writing began are left out.
+     *
+     * @param graph     The EWDGraph object to be written
+     * @param filename  The name of the snapshot file
+     * @throws IOException  if the file could not be written.
+     */
+    public static void write(EWDGraph<String> graph, String filename)
+            throws IOException {
+        if (graph == null || filename == null)
+            throw new IllegalArgumentException("Parameter is null");
+
+        // number the vertices and gather their sorted edges
+        List<String> vertices = new ArrayList<>(
+                graph.getEWDGraphVerticesView());
+        Map<String, Integer> ids = new HashMap<>(vertices.size() * 2);
+        for (int id = 0; id < vertices.size(); id++)
+            ids.put(vertices.get(id), id);
+        int n = vertices.size();
+        long[] edgeOffsets = new long[n + 1];
+        int[][] targets = new int[n][];
+        int[][] edgeWeights = new int[n][];
+        for (int id = 0; id < n; id++) {
+            List<int[]> edges = new ArrayList<>();
+            graph.forEachNeighbor(vertices.get(id), (neighbor, weight) -> {
+                Integer target = ids.get(neighbor);
+                if (target != null)
+                    edges.add(new int[] {target, weight});
+            });
+            edges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            targets[id] = new int[edges.size()];
+            edgeWeights[id] = new int[edges.size()];
+            for (int i = 0; i < edges.size(); i++) {
+                targets[id][i] = edges.get(i)[0];
+                edgeWeights[id][i] = edges.get(i)[1];
+            }
+            edgeOffsets[id + 1] = edgeOffsets[id] + edges.size();
+        }
+        long m = edgeOffsets[n];
+
+        Path target = Paths.get(filename);
+        Path temp = Paths.get(filename + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SectionWriter out = new SectionWriter(channel, HEADER_BYTES);
+            CRC32 dictionaryCrc = new CRC32();
+            out.checksum(dictionaryCrc);
+            Dictionary dictionary = writeDictionary(out, n, vertices::get);
+            CRC32 edgesCrc = new CRC32();
+            out.checksum(edgesCrc);
+            for (long offset : edgeOffsets)
+                out.putLong(offset);
+            for (int[] row : targets) {
+                for (int t : row)
+                    out.putInt(t);
+            }
+            out.align();
+            for (int[] row : edgeWeights) {
+                for (int w : row)
+                    out.putInt(w);
+            }
+            out.align();
+            out.flush();
+            writeHeader(channel, n, dictionary, m, dictionaryCrc.getValue(),
+                    edgesCrc.getValue());
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Writes the name offsets, names and index sections of the vertices
+    private static Dictionary writeDictionary(SectionWriter out, int n,
+            IntFunction<String> names) throws IOException {
+        int[] nameOffsets = new int[n + 1];
+        for (int id = 0; id < n; id++) {
+            long end = (long) nameOffsets[id]
+                    + names.apply(id).getBytes(StandardCharsets.UTF_8).length;
+            if (end > Integer.MAX_VALUE)
+                throw new IOException("Names exceed 2 GiB");
+            nameOffsets[id + 1] = (int) end;
+        }
+        int capacity = indexCapacity(n);
+        int[] index = new int[capacity];
+        for (int id = 0; id < n; id++) {
+            int slot = slot(names.apply(id), capacity);
+            while (index[slot] != 0)
+                slot = (slot + 1) & (capacity - 1);
+            index[slot] = id + 1;
+        }
+
+        for (int offset : nameOffsets)
+            out.putInt(offset);
+        out.align();
+        for (int id = 0; id < n; id++)
+            out.putBytes(names.apply(id).getBytes(StandardCharsets.UTF_8));
+        out.align();
+        for (int slot : index)
+            out.putInt(slot);
+        out.align();
+        return new Dictionary(nameOffsets[n], capacity);
+    }
+
+    // Writes the header, whose checksums are known once the sections are
+    // written, and forces the file to disk
+    private static void writeHeader(FileChannel channel, int n,
+                                    Dictionary dictionary, long m,
+                                    long dictionaryCrc, long edgesCrc)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n)
+              .putInt(dictionary.capacity).putLong(m)
+              .putLong(dictionary.nameBytes).putLong(dictionaryCrc)
+              .putLong(edgesCrc);
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(header.array(), 0, header.position());
+        header.putLong(headerCrc.getValue());
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+        channel.force(true);
+    }
+
+    /**
+     * Maps the specified snapshot file into memory. Only the header is read
+     * eagerly; the sections are paged in by the operating system as they are
+     * used. When verify is true the checksum of every section is computed
+     * first, which reads the whole file once.
+     *
+     * @param filename  The name of the snapshot file
+     * @param verify    true to verify the checksums of every section
+     * @return the mapped GraphSnapshot.
+     * @throws IOException  if the file could not be read, is not a snapshot,
+     *                      or is corrupted.
+     */
+    public static GraphSnapshot open(String filename, boolean verify)
+            throws IOException {
+        if (filename == null)
+            throw new IllegalArgumentException("Parameter is null");
+        GraphSnapshot snapshot = new GraphSnapshot();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES)
+                throw new IOException("Snapshot " + filename + " is truncated");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()
+                    && channel.read(header, header.position()) > 0) {
+                // keep reading until the header is complete
+            }
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, HEADER_BYTES - 16);
+            header.flip();
+            if (header.getInt() != MAGIC)
+                throw new IOException(filename + " is not a snapshot");
+            if (header.getInt() != VERSION)
+                throw new IOException("Unsupported snapshot version");
+            int n = header.getInt();
+            int capacity = header.getInt();
+            long m = header.getLong();
+            long nameBytes = header.getLong();
+            long dictionaryCrc = header.getLong();
+            long edgesCrc = header.getLong();
+            if (header.getLong() != headerCrc.getValue())
+                throw new IOException("Snapshot " + filename
+                        + " has a corrupted header");
+
+            long position = HEADER_BYTES;
+            long dictionaryStart = position;
+            ByteBuffer nameOffsets = map(channel, position, 4L * (n + 1));
+            position = align(position + 4L * (n + 1));
+            ByteBuffer names = map(channel, position, nameBytes);
+            position = align(position + nameBytes);
+            ByteBuffer index = map(channel, position, 4L * capacity);
+            position = align(position + 4L * capacity);
+            long edgesStart = position;
+            ByteBuffer edgeOffsets = map(channel, position, 8L * (n + 1));
+            position += 8L * (n + 1);
+            ByteBuffer destinations = map(channel, position, 4L * m);
+            position = align(position + 4L * m);
+            ByteBuffer weights = map(channel, position, 4L * m);
+            position = align(position + 4L * m);
+            if (position > channel.size())
+                throw new IOException("Snapshot " + filename + " is truncated");
+
+            if (verify) {
+                if (crc(channel, dictionaryStart, edgesStart) != dictionaryCrc)
+                    throw new IOException("Snapshot " + filename
+                            + " has a corrupted dictionary");
+                if (crc(channel, edgesStart, position) != edgesCrc)
+                    throw new IOException("Snapshot " + filename
+                            + " has corrupted edges");
+            }
+
+            snapshot.vertexCount = n;
+            snapshot.edgeCount = m;
+            snapshot.nameOffsets = nameOffsets.asIntBuffer();
+            snapshot.names = names;
+            snapshot.index = index.asIntBuffer();
+            snapshot.edgeOffsets = edgeOffsets.asLongBuffer();
+            snapshot.destinations = destinations.asIntBuffer();
+            snapshot.weights = weights.asIntBuffer();
+            snapshot.decoded = new String[n];
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the number of vertices in the snapshot.
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return the number of directed edges in the snapshot.
+     */
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    // Returns the name of the vertex with the specified number
+    String name(int id) {
+        String name = decoded[id];
+        if (name == null) {
+            int start = nameOffsets.get(id);
+            byte[] bytes = new byte[nameOffsets.get(id + 1) - start];
+            names.get(start, bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            decoded[id] = name;
+        }
+        return name;
+    }
+
+    // Copies every vertex and edge into the store, interning each name
+    // straight from its mapped bytes rather than decoding it
+    void copyTo(DictionaryAdjacencyStore store) {
+        int[] ids = new int[vertexCount];
+        for (int id = 0; id < vertexCount; id++) {
+            if (names == null) {
+                ids[id] = store.intern(name(id));
+            } else {
+                int start = nameOffsets.get(id);
+                ids[id] = store.intern(names, start,
+                        nameOffsets.get(id + 1) - start);
+            }
+        }
+        for (int id = 0; id < vertexCount; id++) {
+            for (long e = edgeStart(id); e < edgeEnd(id); e++)
+                store.putEdge(ids[id], ids[destination(e)], weight(e));
+        }
+    }
+
+    // Returns the number of the vertex with the specified name, or -1
+    int idOf(Object name) {
+        int capacity = index.capacity();
+        int slot = slot(name, capacity);
+        int entry;
+        while ((entry = index.get(slot)) != 0) {
+            if (name(entry - 1).equals(name))
+                return entry - 1;
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+
+    // Returns the position of the first edge of the vertex
+    long edgeStart(int id) {
+        return edgeOffsets.get(id);
+    }
+
+    // Returns the position just past the last edge of the vertex
+    long edgeEnd(int id) {
+        return edgeOffsets.get(id + 1);
+    }
+
+    int destination(long edge) {
+        return destinations.get((int) edge);
+    }
+
+    int weight(long edge) {
+        return weights == null ? 1 : weights.get((int) edge);
+    }
+
+    // Returns the position of the edge from src to dest, or -1 if there is
+    // none, by binary search over the sorted destinations of src
+    long findEdge(int src, int dest) {
+        long low = edgeStart(src);
+        long high = edgeEnd(src) - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int value = destination(mid);
+            if (value < dest)
+                low = mid + 1;
+            else if (value > dest)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    // String.hashCode() is specified, so the index is portable across JVMs
+    private static int slot(Object name, int capacity) {
+        int hash = name.hashCode() * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & (capacity - 1);
+    }
+
+    private static int indexCapacity(int n) {
+        int capacity = 16;
+        while (capacity < n * 2L)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position,
+                                        long size) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Snapshot section exceeds 2 GiB");
+        if (position + size > channel.size())
+            throw new IOException("Snapshot is truncated");
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    private static long crc(FileChannel channel, long start, long end)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0)
+                throw new IOException("Snapshot is truncated");
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+
+    // the sizes of the dictionary that the header records
+    private static class Dictionary {
+
+        private long nameBytes;
+        private int capacity;
+
+        Dictionary(long nameBytes, int capacity) {
+            this.nameBytes = nameBytes;
+            this.capacity = capacity;
+        }
+
+    }
+
+    /*
+     * Writes a snapshot one vertex at a time, for graphs too large to be
+     * held in memory. The edges of every vertex are added in order of
+     * vertex number, each sorted by destination, and all have the same
+     * weight. As the number of edges is only known at the end, the edge
+     * offsets are written last, and the edges checksum is computed by
+     * reading the edges back. Like write(), the file is written under a
+     * temporary name and moved into place by finish().
+     */
+    static class RowWriter implements Closeable {
+
+        private Path target;
+        private Path temp;
+        private FileChannel channel;
+        private SectionWriter out;
+        private int n;
+        private int weight;
+        private Dictionary dictionary;
+        private long dictionaryCrc;
+        private long offsetsStart;
+        private long[] edgeOffsets;
+        private int rows;
+        private boolean finished;
+
+        RowWriter(String filename, int n, IntFunction<String> names,
+                  int weight) throws IOException {
+            target = Paths.get(filename);
+            temp = Paths.get(filename + ".tmp");
+            // the edges are read back to compute their checksum
+            channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.n = n;
+            this.weight = weight;
+            out = new SectionWriter(channel, HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            out.checksum(crc);
+            dictionary = writeDictionary(out, n, names);
+            out.checksum(new CRC32());
+            dictionaryCrc = crc.getValue();
+            // leave room for the offsets, which are written by finish()
+            offsetsStart = out.position();
+            out.skip(8L * (n + 1));
+            edgeOffsets = new long[n + 1];
+        }
+
+        /**
+         * Adds the edges of the next vertex.
+         *
+         * @param destinations  The array holding the sorted destinations
+         * @param from          The index of the first destination
+         * @param to            The index after the last destination
+         * @throws IOException  if the edges could not be written.
+         */
+        void addRow(int[] destinations, int from, int to) throws IOException {
+            if (rows == n)
+                throw new IllegalStateException("Every vertex has its edges");
+            for (int i = from; i < to; i++)
+                out.putInt(destinations[i]);
+            edgeOffsets[rows + 1] = edgeOffsets[rows] + (to - from);
+            rows++;
+        }
+
+        /**
+         * Writes the rest of the snapshot once the edges of every vertex have
+         * been added, and moves it into place.
+         *
+         * @throws IOException  if the snapshot could not be written.
+         */
+        void finish() throws IOException {
+            if (rows != n)
+                throw new IllegalStateException("Vertices are missing edges");
+            long m = edgeOffsets[n];
+            out.align();
+            for (long i = 0; i < m; i++)
+                out.putInt(weight);
+            out.align();
+            out.flush();
+            long end = out.position();
+            SectionWriter offsets = new SectionWriter(channel, offsetsStart);
+            for (long offset : edgeOffsets)
+                offsets.putLong(offset);
+            offsets.flush();
+            writeHeader(channel, n, dictionary, m, dictionaryCrc,
+                    crc(channel, offsetsStart, end));
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        /**
+         * Closes the file, deleting it unless finish() has succeeded.
+         */
+        @Override public void close() throws IOException {
+            channel.close();
+            if (!finished)
+                Files.deleteIfExists(temp);
+        }
+
+    }
+
+    /*
+     * Writes big-endian values through a buffer, padding each section to
+     * an 8 byte boundary and feeding every byte to the current checksum.
+     */
+    private static class SectionWriter {
+
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long position;
+        private long written;
+        private CRC32 crc = new CRC32();
+
+        SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        // Starts feeding the bytes written from now on to the checksum
+        void checksum(CRC32 crc) throws IOException {
+            flush();
+            this.crc = crc;
+        }
+
+        // Returns the position in the file of the next byte to be written
+        long position() {
+            return position + buffer.position();
+        }
+
+        // Leaves the specified number of bytes unwritten, and out of the
+        // checksum
+        void skip(long bytes) throws IOException {
+            flush();
+            position += bytes;
+            written += bytes;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            written += 4;
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+            written += 8;
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int i = 0; i < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - i);
+                buffer.put(bytes, i, length);
+                i += length;
+                written += length;
+            }
+        }
+
+        void align() throws IOException {
+            while ((HEADER_BYTES + written) % 8 != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+                written++;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining())
+                position += channel.write(buffer, position);
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package fazebook;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The HashAdjacencyStore class is the original storage engine of the EWDGraph
+ * class. Each vertex is a key of the adjacencyMap field, and the value of
+ * each key is a HashMap from the neighboring vertices to the boxed weights of
+ * the edges that lead to them. The layout is simple and fast for small
+ * graphs, but it costs a hash table node per edge plus an inner HashMap per
+ * vertex, which is what the CompactAdjacencyStore class is designed to avoid.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices held
+ *              by the current store.
+ */
+class HashAdjacencyStore<V> implements AdjacencyStore<V> {
+
+    private HashMap<V, HashMap<V, Integer>> adjacencyMap = new HashMap<>();
+    private long edges;
+
+    @Override public boolean addVertex(V vertex) {
+        boolean added = true;
+        // If the vertex is not already present, add the specified vertex
+        if (!adjacencyMap.containsKey(vertex)) {
+            adjacencyMap.put(vertex, new HashMap<V, Integer>());
+        } else {
+            added = false;
+        }
+        return added;
+    }
+
+    @Override public boolean containsVertex(V vertex) {
+        return adjacencyMap.containsKey(vertex);
+    }
+
+    @Override public boolean putEdge(V srcVert, V destVert, int weight) {
+        // If either the source or destination vertices are not added,
+        // then add them respectively
+        if (!adjacencyMap.containsKey(srcVert)) {
+            addVertex(srcVert);
+        }
+        if (!adjacencyMap.containsKey(destVert)) {
+            addVertex(destVert);
+        }
+        // Add the neighboring vertex and the associated weight to the
+        // value in the HashMap that corresponds to the source vertex
+        boolean created = adjacencyMap.get(srcVert).put(destVert, weight)
+                == null;
+        if (created)
+            edges++;
+        return created;
+    }
+
+    @Override public int putEdges(V srcVert, List<V> destVerts, int weight) {
+        HashMap<V, Integer> neighbors = adjacencyMap.get(srcVert);
+        if (neighbors == null) {
+            // size the new vertex's map for the whole group at once
+            neighbors = new HashMap<>(destVerts.size() * 4 / 3 + 1);
+            adjacencyMap.put(srcVert, neighbors);
+        }
+        int created = 0;
+        for (V destVert : destVerts) {
+            if (!adjacencyMap.containsKey(destVert))
+                addVertex(destVert);
+            if (neighbors.put(destVert, weight) == null)
+                created++;
+        }
+        edges += created;
+        return created;
+    }
+
+    @Override public boolean removeEdge(V srcVert, V destVert) {
+        HashMap<V, Integer> neighbors = adjacencyMap.get(srcVert);
+        boolean removed = neighbors != null
+                && neighbors.remove(destVert) != null;
+        if (removed)
+            edges--;
+        return removed;
+    }
+
+    @Override public int getWeight(V srcVert, V destVert) {
+        HashMap<V, Integer> neighbors = adjacencyMap.get(srcVert);
+        if (neighbors == null)
+            return 0;
+        Integer weight = neighbors.get(destVert);
+        return weight == null ? 0 : weight;
+    }
+
+    @Override public int degree(V vertex) {
+        HashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        return neighbors == null ? 0 : neighbors.size();
+    }
+
+    @Override public int vertexCount() {
+        return adjacencyMap.size();
+    }
+
+    @Override public long edgeCount() {
+        return edges;
+    }
+
+    @Override public Collection<V> copyVertices() {
+        return new HashSet<>(adjacencyMap.keySet());
+    }
+
+    @Override public Collection<V> copyNeighbors(V vertex) {
+        HashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        if (neighbors == null)
+            return new HashSet<>();
+        return new HashSet<>(neighbors.keySet());
+    }
+
+    @Override public Collection<V> vertexView() {
+        return Collections.unmodifiableSet(adjacencyMap.keySet());
+    }
+
+    @Override public Collection<V> neighborView(V vertex) {
+        HashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        if (neighbors == null)
+            return Collections.emptySet();
+        return Collections.unmodifiableSet(neighbors.keySet());
+    }
+
+    @Override public void forEachNeighbor(V vertex,
+                                          ObjIntConsumer<? super V> action) {
+        HashMap<V, Integer> neighbors = adjacencyMap.get(vertex);
+        if (neighbors != null) {
+            for (Map.Entry<V, Integer> edge : neighbors.entrySet())
+                action.accept(edge.getKey(), edge.getValue());
+        }
+    }
+
+    /*
+     * Every HashMap costs its 48 byte header plus a 4 byte slot per table
+     * bucket, and every entry costs a 32 byte node. Weights above 127 fall
+     * outside of the Integer cache and cost a further 16 byte box each.
+     */
+    @Override public long estimatedHeapBytes() {
+        long bytes = hashMapBytes(adjacencyMap.size());
+        for (HashMap<V, Integer> neighbors : adjacencyMap.values()) {
+            bytes += hashMapBytes(neighbors.size());
+            for (Integer weight : neighbors.values()) {
+                if (weight > 127)
+                    bytes += 16;
+            }
+        }
+        return bytes;
+    }
+
+    // Estimates the size of a HashMap holding the given number of entries,
+    // assuming the default load factor of 0.75
+    static long hashMapBytes(int size) {
+        long buckets = 0;
+        if (size > 0) {
+            buckets = 16;
+            while (buckets * 3 / 4 < size)
+                buckets <<= 1;
+        }
+        return 48 + 16 + buckets * 4 + (long) size * 32;
+    }
+
+}
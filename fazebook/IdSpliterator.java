@@ -0,0 +1,81 @@
+package fazebook;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * The IdSpliterator class hands out the vertices of a storage engine that
+ * interns its vertices to dense IDs, by walking a range of IDs and looking
+ * up the vertex of each. Splitting cuts the range in halves, so a parallel
+ * stream of the vertices divides them evenly across its workers, and the
+ * size of every piece is known exactly. The range is fixed when the
+ * spliterator is created, so vertices that are interned afterwards are not
+ * handed out.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices.
+ */
+class IdSpliterator<V> implements Spliterator<V> {
+
+    private int origin;
+    private int fence;
+    private IntFunction<V> vertexOf;
+    private int characteristics;
+
+    /**
+     * Constructor that creates a spliterator over the IDs from 0 up to but
+     * excluding fence.
+     *
+     * @param fence             The end of the range of IDs.
+     * @param vertexOf          The function that looks up the vertex of an
+     *                          ID.
+     * @param characteristics   The characteristics to report besides SIZED,
+     *                          SUBSIZED, NONNULL, and DISTINCT, such as
+     *                          IMMUTABLE for a snapshot.
+     */
+    IdSpliterator(int fence, IntFunction<V> vertexOf, int characteristics) {
+        this(0, fence, vertexOf, characteristics | SIZED | SUBSIZED | NONNULL
+                | DISTINCT);
+    }
+
+    private IdSpliterator(int origin, int fence, IntFunction<V> vertexOf,
+                          int characteristics) {
+        this.origin = origin;
+        this.fence = fence;
+        this.vertexOf = vertexOf;
+        this.characteristics = characteristics;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super V> action) {
+        if (origin >= fence)
+            return false;
+        action.accept(vertexOf.apply(origin++));
+        return true;
+    }
+
+    @Override public void forEachRemaining(Consumer<? super V> action) {
+        int end = fence;
+        for (int id = origin; id < end; id++)
+            action.accept(vertexOf.apply(id));
+        origin = end;
+    }
+
+    @Override public Spliterator<V> trySplit() {
+        int middle = (origin + fence) >>> 1;
+        if (middle <= origin)
+            return null;
+        Spliterator<V> prefix = new IdSpliterator<>(origin, middle, vertexOf,
+                characteristics);
+        origin = middle;
+        return prefix;
+    }
+
+    @Override public long estimateSize() {
+        return fence - origin;
+    }
+
+    @Override public int characteristics() {
+        return characteristics;
+    }
+
+}
@@ -0,0 +1,344 @@
+package fazebook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The IngestionEngine class reads adduser, addfriends, and unfriend files
+ * into a Fazebook object with a bounded pool of workers, rather than with
+ * one thread per file. Each file is split at line boundaries into chunks of
+ * roughly chunkSize bytes, and every chunk is read by a Reader that is
+ * submitted to the ExecutorService given to the constructor, so a single
+ * large file is read by several workers at once just as several small files
+ * are. Any ExecutorService may be used, including a virtual thread per task
+ * executor on runtimes that provide one.
+ *
+ * The engine applies backpressure by allowing at most maxInFlight chunks to
+ * be queued or running at any time; the thread calling ingest() blocks until
+ * a chunk finishes before submitting the next. An ingestion stops early when
+ * cancel() is called or the calling thread is interrupted, and in every case
+ * ingest() returns an IngestionReport with the outcome of each file.
+ *
+ * Chunks rely on each command being on its own line, which is the format
+ * produced by every writer of these files.
+ */
+public class IngestionEngine {
+
+    /** The chunk size used when none is specified, which is 8 MiB. */
+    public static final long DEFAULT_CHUNK_SIZE = 8L << 20;
+
+    private ExecutorService executor;
+    private long chunkSize;
+    private int maxInFlight;
+    private Reader.Parser parser;
+    private int batchSize;
+    private Set<Run> runs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor that creates an engine with the default chunk size and at
+     * most two chunks in flight per available processor.
+     *
+     * @param executor  The ExecutorService that chunks are submitted to,
+     *                  which the engine never shuts down
+     */
+    public IngestionEngine(ExecutorService executor) {
+        this(executor, DEFAULT_CHUNK_SIZE,
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor that creates an engine with the specified ExecutorService,
+     * chunk size, and bound on the number of chunks in flight.
+     *
+     * @param executor      The ExecutorService that chunks are submitted to,
+     *                      which the engine never shuts down
+     * @param chunkSize     The approximate number of bytes in each chunk,
+     *                      which must be positive
+     * @param maxInFlight   The maximum number of chunks that may be queued or
+     *                      running at once, which must be positive
+     */
+    public IngestionEngine(ExecutorService executor, long chunkSize,
+                           int maxInFlight) {
+        this(executor, chunkSize, maxInFlight, Reader.Parser.MAPPED);
+    }
+
+    /**
+     * Constructor that creates an engine with the specified ExecutorService,
+     * chunk size, bound on the number of chunks in flight, and the parser
+     * that every chunk is tokenized with.
+     *
+     * @param executor      The ExecutorService that chunks are submitted to,
+     *                      which the engine never shuts down
+     * @param chunkSize     The approximate number of bytes in each chunk,
+     *                      which must be positive
+     * @param maxInFlight   The maximum number of chunks that may be queued or
+     *                      running at once, which must be positive
+     * @param parser        The parser used by the Reader of every chunk
+     */
+    public IngestionEngine(ExecutorService executor, long chunkSize,
+                           int maxInFlight, Reader.Parser parser) {
+        this(executor, chunkSize, maxInFlight, parser,
+                Reader.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor that creates an engine with the specified ExecutorService,
+     * chunk size, bound on the number of chunks in flight, parser, and the
+     * number of commands that the Reader of every chunk applies at once.
+     *
+     * @param executor      The ExecutorService that chunks are submitted to,
+     *                      which the engine never shuts down
+     * @param chunkSize     The approximate number of bytes in each chunk,
+     *                      which must be positive
+     * @param maxInFlight   The maximum number of chunks that may be queued or
+     *                      running at once, which must be positive
+     * @param parser        The parser used by the Reader of every chunk
+     * @param batchSize     The number of commands applied at once by the
+     *                      Reader of every chunk, which must be positive
+     */
+    public IngestionEngine(ExecutorService executor, long chunkSize,
+                           int maxInFlight, Reader.Parser parser,
+                           int batchSize) {
+        if (executor == null || parser == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (chunkSize <= 0 || maxInFlight <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+        this.parser = parser;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reads the files specified by the parameter filenames into the given
+     * Fazebook object and reports the outcome of each file. A file that
+     * cannot be opened or read is reported as FAILED without affecting the
+     * other files. If the ingestion is cancelled or the calling thread is
+     * interrupted, no further chunks are submitted, running chunks are
+     * interrupted, the unfinished files are reported as CANCELLED, and the
+     * interrupt status of the calling thread is preserved.
+     *
+     * @param fazebook      The Fazebook object to be added to
+     * @param filenames     A Java Collection of the filenames that are desired
+     *                      for processing
+     * @return an IngestionReport with the outcome of every file.
+     */
+    public IngestionReport ingest(Fazebook fazebook,
+                                  Collection<String> filenames) {
+        if (fazebook == null || filenames == null)
+            throw new IllegalArgumentException("Parameter is null");
+        Run run = new Run();
+        runs.add(run);
+        Semaphore permits = new Semaphore(maxInFlight);
+        List<FileState> states = new ArrayList<>();
+        for (String filename : filenames)
+            states.add(new FileState(filename));
+        try {
+            submit:
+            for (FileState state : states) {
+                String filename = state.filename;
+                if (run.cancelled)
+                    break;
+                try {
+                    state.chunks = split(filename, chunkSize);
+                } catch (IOException e) {
+                    state.error.set(e);
+                    continue;
+                }
+                for (long[] chunk : state.chunks) {
+                    if (run.cancelled)
+                        break submit;
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        run.cancel();
+                        Thread.currentThread().interrupt();
+                        break submit;
+                    }
+                    // the permit is released when the chunk finishes or is
+                    // cancelled, even if it never started running
+                    FutureTask<Void> task = new FutureTask<Void>(() -> {
+                        try {
+                            if (!run.cancelled) {
+                                Reader reader = new Reader(fazebook,
+                                        filename, chunk[0], chunk[1], parser,
+                                        batchSize);
+                                state.commands.add(reader.process());
+                                state.completed.incrementAndGet();
+                            }
+                        } catch (Throwable t) {
+                            // chunks interrupted by a cancellation are
+                            // reported as cancelled rather than failed
+                            if (!run.cancelled)
+                                state.error.compareAndSet(null, t);
+                        }
+                    }, null) {
+                        @Override protected void done() {
+                            permits.release();
+                        }
+                    };
+                    run.futures.add(task);
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        state.error.compareAndSet(null, e);
+                        task.cancel(false);
+                    }
+                }
+            }
+            // Ensures that all submitted chunks are finished running
+            for (Future<?> future : run.submitted()) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    run.cancel();
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException | CancellationException e) {
+                    // chunks record their own errors, and cancelled chunks
+                    // are reported as cancelled below
+                }
+            }
+        } finally {
+            runs.remove(run);
+        }
+        IngestionReport report = new IngestionReport();
+        for (FileState state : states)
+            report.add(state.toResult());
+        return report;
+    }
+
+    /**
+     * Cancels every ingestion that is currently running on the current
+     * engine. Chunks that have not started are skipped, and running chunks
+     * are interrupted and stop before their next command.
+     */
+    public void cancel() {
+        for (Run run : runs)
+            run.cancel();
+    }
+
+    /**
+     * Splits the specified file into byte ranges of about chunkSize bytes,
+     * moving the end of each range forward to just past the next newline so
+     * that no line is shared between two ranges.
+     *
+     * @param filename      The name of the file to be split
+     * @param chunkSize     The approximate number of bytes in each range
+     * @return a List of ranges, each of which holds the inclusive start and
+     *         exclusive end offset of one chunk.
+     * @throws IOException  if the file could not be opened or read.
+     */
+    static List<long[]> split(String filename, long chunkSize)
+            throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long start = 0;
+            while (start < size) {
+                long end = start + chunkSize;
+                if (end >= size) {
+                    end = size;
+                } else {
+                    end = nextLineStart(channel, buffer, end - 1, size);
+                }
+                chunks.add(new long[] {start, end});
+                start = end;
+            }
+        }
+        return chunks;
+    }
+
+    // Returns the offset just past the first newline at or after position,
+    // or size if there is no such newline
+    private static long nextLineStart(FileChannel channel, ByteBuffer buffer,
+                                      long position, long size)
+            throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // The state shared by the caller and the chunks of one call to ingest()
+    private static class Run {
+
+        volatile boolean cancelled;
+        // added to by the thread calling ingest(), but read by any thread
+        // calling cancel()
+        List<Future<?>> futures = Collections.synchronizedList(
+                new ArrayList<>());
+
+        Future<?>[] submitted() {
+            return futures.toArray(new Future<?>[0]);
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (Future<?> future : submitted())
+                future.cancel(true);
+        }
+
+    }
+
+    // The progress of reading one requested file
+    private static class FileState {
+
+        String filename;
+        // null until the file has been split into chunks
+        List<long[]> chunks;
+        AtomicInteger completed = new AtomicInteger();
+        LongAdder commands = new LongAdder();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        FileState(String filename) {
+            this.filename = filename;
+        }
+
+        IngestionReport.FileResult toResult() {
+            IngestionReport.Status status;
+            if (error.get() != null)
+                status = IngestionReport.Status.FAILED;
+            else if (chunks != null && completed.get() == chunks.size())
+                status = IngestionReport.Status.SUCCEEDED;
+            else
+                status = IngestionReport.Status.CANCELLED;
+            return new IngestionReport.FileResult(filename, status,
+                    chunks == null ? 0 : chunks.size(), commands.sum(),
+                    status == IngestionReport.Status.FAILED ? error.get()
+                            : null);
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package fazebook;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The IngestionReport class describes the outcome of one call to the ingest()
+ * method of the IngestionEngine class. The report keeps a FileResult for
+ * each file that was requested, in the order that the files were requested,
+ * so that callers can tell which files were read completely, which failed
+ * and why, and which were cancelled before they could be read.
+ */
+public class IngestionReport {
+
+    /**
+     * The possible outcomes of reading one file. A file SUCCEEDED when every
+     * chunk of it was read, FAILED when any chunk could not be read, and was
+     * CANCELLED when the ingestion was cancelled or interrupted before every
+     * chunk of it was read.
+     */
+    public enum Status {
+        SUCCEEDED, FAILED, CANCELLED
+    }
+
+    /**
+     * The FileResult class holds the outcome of reading one file: its status,
+     * the number of chunks it was split into, the number of commands that
+     * were acted upon, and the first error encountered, if any.
+     */
+    public static class FileResult {
+
+        private String filename;
+        private Status status;
+        private int chunks;
+        private long commands;
+        private Throwable error;
+
+        FileResult(String filename, Status status, int chunks, long commands,
+                   Throwable error) {
+            this.filename = filename;
+            this.status = status;
+            this.chunks = chunks;
+            this.commands = commands;
+            this.error = error;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public long getCommands() {
+            return commands;
+        }
+
+        /**
+         * @return the first error encountered while reading the file, or
+         *         null if the file succeeded.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override public String toString() {
+            return filename + ": " + status + " (" + commands + " commands in "
+                    + chunks + " chunks" + (error == null ? ""
+                    : ", " + error) + ")";
+        }
+
+    }
+
+    private List<FileResult> results = new ArrayList<>();
+
+    void add(FileResult result) {
+        results.add(result);
+    }
+
+    /**
+     * @return the FileResult objects of every requested file, in the order
+     *         that the files were requested.
+     */
+    public Collection<FileResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * @param filename  The name of a requested file
+     * @return the FileResult of the first request for the specified file, or
+     *         null if the file was not requested.
+     */
+    public FileResult getResult(String filename) {
+        for (FileResult result : results) {
+            if (result.getFilename().equals(filename))
+                return result;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if every requested file was read completely; false
+     *         otherwise.
+     */
+    public boolean allSucceeded() {
+        for (FileResult result : results) {
+            if (result.getStatus() != Status.SUCCEEDED)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the total number of commands acted upon across all files.
+     */
+    public long getTotalCommands() {
+        long total = 0;
+        for (FileResult result : results)
+            total += result.getCommands();
+        return total;
+    }
+
+    @Override public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (FileResult result : results)
+            builder.append(result).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,448 @@
+package fazebook;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * The IntBitmap class is a compressed set of non-negative ints in the style
+ * of a Roaring bitmap. The values are split into chunks of 65536 that share
+ * their high 16 bits, and every chunk that holds a value has a container of
+ * its own: a sorted array of the low 16 bits of its values while it holds at
+ * most ARRAY_MAX of them, and a bitmap of 1024 longs once it holds more. A
+ * sparse chunk therefore costs 2 bytes per value and a dense one never more
+ * than 8 KB, and intersections and unions are computed container by
+ * container, a word at a time between bitmaps. This class is not
+ * thread-safe.
+ */
+class IntBitmap {
+
+    // the most values that an array container holds
+    static final int ARRAY_MAX = 4096;
+
+    private static final int BITMAP_WORDS = 1024;
+
+    // per container, sorted by the high 16 bits of its values: those bits,
+    // the container, either a char[] or a long[], and its number of values
+    private char[] keys = new char[4];
+    private Object[] containers = new Object[4];
+    private int[] cardinalities = new int[4];
+    private int count;
+    private int cardinality;
+
+    /**
+     * Adds the value to the current set.
+     *
+     * @param value The non-negative value to add
+     * @return true if the value was added; false if it was already present.
+     */
+    boolean add(int value) {
+        int index = find(value >>> 16);
+        if (index < 0)
+            index = insert(-index - 1, (char) (value >>> 16), new char[4], 0);
+        char low = (char) value;
+        Object container = containers[index];
+        if (container instanceof long[]) {
+            long[] bits = (long[]) container;
+            if ((bits[low >>> 6] & (1L << low)) != 0)
+                return false;
+            bits[low >>> 6] |= 1L << low;
+        } else {
+            char[] values = (char[]) container;
+            int n = cardinalities[index];
+            int pos = Arrays.binarySearch(values, 0, n, low);
+            if (pos >= 0)
+                return false;
+            if (n == ARRAY_MAX) {
+                long[] bits = toBitmap(values, n);
+                bits[low >>> 6] |= 1L << low;
+                containers[index] = bits;
+            } else {
+                pos = -pos - 1;
+                if (n == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_MAX, n * 2));
+                    containers[index] = values;
+                }
+                System.arraycopy(values, pos, values, pos + 1, n - pos);
+                values[pos] = low;
+            }
+        }
+        cardinalities[index]++;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Removes the value from the current set.
+     *
+     * @param value The value to remove
+     * @return true if the value was removed; false if it was not present.
+     */
+    boolean remove(int value) {
+        int index = find(value >>> 16);
+        if (index < 0)
+            return false;
+        char low = (char) value;
+        Object container = containers[index];
+        int n = cardinalities[index];
+        if (container instanceof long[]) {
+            long[] bits = (long[]) container;
+            if ((bits[low >>> 6] & (1L << low)) == 0)
+                return false;
+            bits[low >>> 6] &= ~(1L << low);
+            // a bitmap that fits an array again becomes one
+            if (n - 1 == ARRAY_MAX)
+                containers[index] = toArray(bits, n - 1);
+        } else {
+            char[] values = (char[]) container;
+            int pos = Arrays.binarySearch(values, 0, n, low);
+            if (pos < 0)
+                return false;
+            System.arraycopy(values, pos + 1, values, pos, n - pos - 1);
+        }
+        cardinality--;
+        if (--cardinalities[index] == 0) {
+            count--;
+            System.arraycopy(keys, index + 1, keys, index, count - index);
+            System.arraycopy(containers, index + 1, containers, index,
+                    count - index);
+            System.arraycopy(cardinalities, index + 1, cardinalities, index,
+                    count - index);
+            containers[count] = null;
+        }
+        return true;
+    }
+
+    /**
+     * @param value The value to check
+     * @return true if the value is in the current set.
+     */
+    boolean contains(int value) {
+        if (value < 0)
+            return false;
+        int index = find(value >>> 16);
+        if (index < 0)
+            return false;
+        char low = (char) value;
+        Object container = containers[index];
+        if (container instanceof long[])
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        return Arrays.binarySearch((char[]) container, 0,
+                cardinalities[index], low) >= 0;
+    }
+
+    /**
+     * @return the number of values in the current set.
+     */
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Hands every value of the current set to the action in ascending order.
+     *
+     * @param action    The action to be performed for each value
+     */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < count; i++) {
+            int high = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof long[]) {
+                long[] bits = (long[]) container;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long remaining = bits[word];
+                    while (remaining != 0) {
+                        action.accept(high | word << 6
+                                | Long.numberOfTrailingZeros(remaining));
+                        remaining &= remaining - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) container;
+                for (int j = 0; j < cardinalities[i]; j++)
+                    action.accept(high | values[j]);
+            }
+        }
+    }
+
+    /**
+     * @return an iterator over the values of the current set in ascending
+     *         order, which must not be used once the set changes.
+     */
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index;
+            private int position;
+            private long word;
+
+            @Override public boolean hasNext() {
+                while (index < count) {
+                    Object container = containers[index];
+                    if (container instanceof long[]) {
+                        long[] bits = (long[]) container;
+                        // position is the index of the word after the
+                        // current one
+                        while (word == 0 && position < BITMAP_WORDS)
+                            word = bits[position++];
+                        if (word != 0)
+                            return true;
+                    } else if (position < cardinalities[index]) {
+                        return true;
+                    }
+                    index++;
+                    position = 0;
+                }
+                return false;
+            }
+
+            @Override public int nextInt() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int high = keys[index] << 16;
+                if (containers[index] instanceof long[]) {
+                    int low = (position - 1) << 6
+                            | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    return high | low;
+                }
+                return high | ((char[]) containers[index])[position++];
+            }
+        };
+    }
+
+    /**
+     * Adds every value of the other set to the current one.
+     *
+     * @param other The set whose values are added
+     */
+    void or(IntBitmap other) {
+        for (int i = 0; i < other.count; i++) {
+            Object theirs = other.containers[i];
+            int index = find(other.keys[i]);
+            if (index < 0) {
+                Object copy = theirs instanceof long[]
+                        ? ((long[]) theirs).clone()
+                        : Arrays.copyOf((char[]) theirs,
+                                other.cardinalities[i]);
+                insert(-index - 1, other.keys[i], copy,
+                        other.cardinalities[i]);
+                cardinality += other.cardinalities[i];
+                continue;
+            }
+            Object ours = containers[index];
+            int before = cardinalities[index];
+            int after;
+            if (ours instanceof char[] && theirs instanceof char[]) {
+                char[] merged = union((char[]) ours, before,
+                        (char[]) theirs, other.cardinalities[i]);
+                after = merged.length;
+                containers[index] = after > ARRAY_MAX
+                        ? toBitmap(merged, after) : merged;
+            } else {
+                long[] bits = ours instanceof long[] ? (long[]) ours
+                        : toBitmap((char[]) ours, before);
+                if (theirs instanceof long[]) {
+                    long[] theirBits = (long[]) theirs;
+                    for (int word = 0; word < BITMAP_WORDS; word++)
+                        bits[word] |= theirBits[word];
+                } else {
+                    char[] values = (char[]) theirs;
+                    for (int j = 0; j < other.cardinalities[i]; j++)
+                        bits[values[j] >>> 6] |= 1L << values[j];
+                }
+                after = 0;
+                for (long word : bits)
+                    after += Long.bitCount(word);
+                containers[index] = bits;
+            }
+            cardinalities[index] = after;
+            cardinality += after - before;
+        }
+    }
+
+    /**
+     * Counts the values that are in both the current set and the other one,
+     * without building their intersection.
+     *
+     * @param other The set to intersect with
+     * @return the number of values the two sets share.
+     */
+    int andCardinality(IntBitmap other) {
+        int shared = 0;
+        int i = 0, j = 0;
+        while (i < count && j < other.count) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                shared += andCardinality(containers[i], cardinalities[i],
+                        other.containers[j], other.cardinalities[j]);
+                i++;
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Hands every value that is in both the current set and the other one
+     * to the action in ascending order.
+     *
+     * @param other     The set to intersect with
+     * @param action    The action to be performed for each shared value
+     */
+    void forEachAnd(IntBitmap other, IntConsumer action) {
+        int i = 0, j = 0;
+        while (i < count && j < other.count) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                int high = keys[i] << 16;
+                Object ours = containers[i];
+                Object theirs = other.containers[j];
+                if (ours instanceof long[] && theirs instanceof long[]) {
+                    long[] a = (long[]) ours;
+                    long[] b = (long[]) theirs;
+                    for (int word = 0; word < BITMAP_WORDS; word++) {
+                        long both = a[word] & b[word];
+                        while (both != 0) {
+                            action.accept(high | word << 6
+                                    | Long.numberOfTrailingZeros(both));
+                            both &= both - 1;
+                        }
+                    }
+                } else if (ours instanceof char[]) {
+                    char[] values = (char[]) ours;
+                    for (int k = 0; k < cardinalities[i]; k++) {
+                        if (other.contains(high | values[k]))
+                            action.accept(high | values[k]);
+                    }
+                } else {
+                    char[] values = (char[]) theirs;
+                    for (int k = 0; k < other.cardinalities[j]; k++) {
+                        if (contains(high | values[k]))
+                            action.accept(high | values[k]);
+                    }
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /*
+     * Every array costs a 16 byte header: the object and its three arrays,
+     * 10 bytes per container slot, and the values of each container.
+     */
+    long estimatedHeapBytes() {
+        long bytes = 16 + 3 * 16 + keys.length * 10L;
+        for (int i = 0; i < count; i++) {
+            Object container = containers[i];
+            bytes += 16 + (container instanceof long[] ? BITMAP_WORDS * 8L
+                    : ((char[]) container).length * 2L);
+        }
+        return bytes;
+    }
+
+    // Returns the index of the container of the high bits, or -(insertion
+    // point) - 1 if there is none
+    private int find(int high) {
+        return Arrays.binarySearch(keys, 0, count, (char) high);
+    }
+
+    private int insert(int index, char key, Object container, int size) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            containers = Arrays.copyOf(containers, count * 2);
+            cardinalities = Arrays.copyOf(cardinalities, count * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, count - index);
+        System.arraycopy(containers, index, containers, index + 1,
+                count - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1,
+                count - index);
+        keys[index] = key;
+        containers[index] = container;
+        cardinalities[index] = size;
+        count++;
+        return index;
+    }
+
+    private static int andCardinality(Object a, int aSize, Object b,
+                                      int bSize) {
+        int shared = 0;
+        if (a instanceof long[] && b instanceof long[]) {
+            long[] aBits = (long[]) a;
+            long[] bBits = (long[]) b;
+            for (int word = 0; word < BITMAP_WORDS; word++)
+                shared += Long.bitCount(aBits[word] & bBits[word]);
+        } else if (a instanceof long[] || b instanceof long[]) {
+            long[] bits = (long[]) (a instanceof long[] ? a : b);
+            char[] values = (char[]) (a instanceof long[] ? b : a);
+            int size = a instanceof long[] ? bSize : aSize;
+            for (int i = 0; i < size; i++) {
+                if ((bits[values[i] >>> 6] & (1L << values[i])) != 0)
+                    shared++;
+            }
+        } else {
+            char[] aValues = (char[]) a;
+            char[] bValues = (char[]) b;
+            int i = 0, j = 0;
+            while (i < aSize && j < bSize) {
+                if (aValues[i] < bValues[j]) {
+                    i++;
+                } else if (aValues[i] > bValues[j]) {
+                    j++;
+                } else {
+                    shared++;
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return shared;
+    }
+
+    // Merges two sorted arrays of values into a sorted array that holds
+    // each value once and has no spare capacity
+    private static char[] union(char[] a, int aSize, char[] b, int bSize) {
+        char[] merged = new char[aSize + bSize];
+        int i = 0, j = 0, k = 0;
+        while (i < aSize || j < bSize) {
+            if (j == bSize || (i < aSize && a[i] < b[j])) {
+                merged[k++] = a[i++];
+            } else {
+                if (i < aSize && a[i] == b[j])
+                    i++;
+                merged[k++] = b[j++];
+            }
+        }
+        return k == merged.length ? merged : Arrays.copyOf(merged, k);
+    }
+
+    private static long[] toBitmap(char[] values, int size) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int i = 0; i < size; i++)
+            bits[values[i] >>> 6] |= 1L << values[i];
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int size) {
+        char[] values = new char[size];
+        int k = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                values[k++] = (char) (word << 6
+                        | Long.numberOfTrailingZeros(remaining));
+                remaining &= remaining - 1;
+            }
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,165 @@
+package fazebook;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations in nanoseconds in buckets
+ * whose width grows with the duration, in the manner of an HDR histogram:
+ * durations below 64 ns have a bucket each, and every larger power of two
+ * is split into 32 buckets, so a percentile is reported within about 3% of
+ * the true duration whatever its magnitude, with fewer than 2,000 buckets
+ * in all. Finding the bucket of a duration takes a few shifts.
+ *
+ * Recording is cheap enough to be left on under load: each thread adds to
+ * one of several stripes of bucket counts, picked by its ID, so threads
+ * rarely contend for a counter, and the stripes are only summed when the
+ * histogram is read. A histogram read while durations are recorded may
+ * reflect some of them and not others.
+ */
+public class LatencyHistogram {
+
+    // each power of two above 2^SUB_BITS is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+    private static final int STRIPES = stripes();
+
+    private AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private LongAdder total = new LongAdder();
+    private LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor that creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Records a duration; negative durations are recorded as 0.
+     *
+     * @param nanos     The duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        stripes[stripe].incrementAndGet(bucket(nanos));
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * @return the number of durations recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (long bucket : counts())
+            count += bucket;
+        return count;
+    }
+
+    /**
+     * @return the sum of the durations recorded, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    /**
+     * @return the mean of the durations recorded, in nanoseconds; 0 if there
+     *         are none.
+     */
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotalNanos() / count;
+    }
+
+    /**
+     * @return the longest duration recorded, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Retrieves the duration that the specified percentage of the recorded
+     * durations do not exceed, rounded up to the end of its bucket.
+     *
+     * @param percentile    The percentage, from 0 to 100
+     * @return the duration in nanoseconds; 0 if there are none.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Parameter is out of range");
+        long[] counts = counts();
+        long count = 0;
+        for (long bucket : counts)
+            count += bucket;
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank)
+                return Math.min(highest(bucket), getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Discards every recorded duration.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++)
+                stripe.set(bucket, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+    // Sums the stripes
+    private long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++)
+                counts[bucket] += stripe.get(bucket);
+        }
+        return counts;
+    }
+
+    /*
+     * Durations below 2^(SUB_BITS + 1) have a bucket each. Above that, the
+     * highest SUB_BITS + 1 bits of a duration pick its bucket within its
+     * power of two, so the buckets of a power of two follow on from those
+     * of the one below.
+     */
+    static int bucket(long nanos) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos | SUB_BUCKETS);
+        int shift = magnitude - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (nanos >>> shift);
+    }
+
+    // Returns the longest duration that falls in the bucket
+    static long highest(int bucket) {
+        int shift = Math.max(0, (bucket >>> SUB_BITS) - 1);
+        long lowest = (long) (bucket - (shift << SUB_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    // A power of two at least twice the number of processors, so threads
+    // seldom share a stripe, but no more than 16
+    private static int stripes() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < 2 * processors && stripes < 16)
+            stripes <<= 1;
+        return stripes;
+    }
+
+}
@@ -0,0 +1,81 @@
+package fazebook;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The LocalPartition class is a GraphPartition held in the current JVM by
+ * an EWDGraph of its own. A partition whose storage engine is not concurrent
+ * is guarded by a lock of its own, so the partitions of a ShardedFazebook
+ * object never wait for each other.
+ */
+public class LocalPartition implements GraphPartition {
+
+    private EWDGraph<String> users;
+
+    /**
+     * Constructor that creates an empty partition using the specified
+     * storage engine.
+     *
+     * @param storage   The storage engine of the partition
+     */
+    public LocalPartition(EWDGraph.Storage storage) {
+        if (storage == null)
+            throw new IllegalArgumentException("Parameter is null");
+        users = new EWDGraph<>(new StringComparator(), storage);
+    }
+
+    @Override public boolean addUser(String userName) {
+        return locked(() -> users.newEWDGraphVertex(userName));
+    }
+
+    @Override public boolean hasUser(String userName) {
+        return locked(() -> users.isEWDGraphVertex(userName));
+    }
+
+    @Override public int addFriends(
+            Collection<? extends Map.Entry<String, String>> edges) {
+        return locked(() -> users.addEdges(edges, 1));
+    }
+
+    @Override public boolean removeFriend(String userName,
+                                          String friendName) {
+        return locked(() -> users.removeEWDGraphEdge(userName, friendName));
+    }
+
+    @Override public boolean isFriend(String userName, String friendName) {
+        return locked(() -> users.isEWDGraphEdge(userName, friendName));
+    }
+
+    @Override public Collection<String> getFriends(String userName) {
+        return locked(() -> users.getNeighborsOfVertex(userName));
+    }
+
+    @Override public Map<String, Collection<String>> getFriends(
+            Collection<String> userNames) {
+        if (userNames == null)
+            throw new IllegalArgumentException("Parameter is null");
+        // the lock is taken once for the whole batch
+        return locked(() -> {
+            Map<String, Collection<String>> friends = new HashMap<>();
+            for (String userName : userNames)
+                friends.put(userName, users.getNeighborsOfVertex(userName));
+            return friends;
+        });
+    }
+
+    @Override public Collection<String> getUsers() {
+        return locked(users::getEWDGraphVertices);
+    }
+
+    private <T> T locked(Supplier<T> action) {
+        if (users.isConcurrent())
+            return action.get();
+        synchronized (users) {
+            return action.get();
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package fazebook;
+
+/**
+ * The LoopbackTransport class is a PartitionTransport that answers each
+ * request in the calling thread by handing it to a partition in the same
+ * JVM. Requests and responses are still encoded, so a ShardedFazebook
+ * object built on RemotePartitions over loopback transports behaves exactly
+ * as it would with its partitions in other JVMs, which makes it useful for
+ * testing.
+ */
+public class LoopbackTransport implements PartitionTransport {
+
+    private GraphPartition partition;
+
+    /**
+     * Constructor that creates a transport to the specified partition.
+     *
+     * @param partition The partition that answers requests
+     */
+    public LoopbackTransport(GraphPartition partition) {
+        if (partition == null)
+            throw new IllegalArgumentException("Parameter is null");
+        this.partition = partition;
+    }
+
+    @Override public byte[] call(byte[] request) {
+        if (request == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return RemotePartition.handle(partition, request);
+    }
+
+}
@@ -0,0 +1,232 @@
+package fazebook;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The MappedCommandParser class reads adduser, addfriends, and unfriend
+ * commands from a byte range of a file by memory-mapping the range and
+ * scanning it byte by byte, which avoids the regular expressions, the
+ * intermediate CharBuffer, and the per-token Strings that java.util.Scanner
+ * creates. Command keywords are recognized by comparing their bytes in
+ * place, so no String is ever created for them, and user names are decoded
+ * through a cache keyed by their bytes, so that a name that appears many
+ * times in the range is decoded once and the same String is handed to the
+ * Handler every time.
+ *
+ * Tokens are separated by ASCII whitespace exactly as they are for Scanner,
+ * and tokens that are neither a keyword nor the argument of one are skipped.
+ * A parser holds mutable scratch state and must only be used by one thread
+ * at a time; the IngestionEngine gives every chunk a parser of its own.
+ */
+class MappedCommandParser {
+
+    /**
+     * The Handler interface receives the commands found by a parser, in the
+     * order that they appear in the file.
+     */
+    interface Handler {
+
+        void addUser(String user);
+
+        void addFriends(String user1, String user2);
+
+        void unfriend(String user1, String user2);
+
+    }
+
+    // the largest region of a file that is mapped at once
+    static final int WINDOW = 64 << 20;
+
+    private static final byte[] ADDUSER =
+            "adduser".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ADDFRIENDS =
+            "addfriends".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UNFRIEND =
+            "unfriend".getBytes(StandardCharsets.US_ASCII);
+
+    // the kinds of command
+    private static final int ADD_USER = 0;
+    private static final int ADD_FRIENDS = 1;
+    private static final int REMOVE_FRIEND = 2;
+
+    // the number of names the cache holds before it stops caching new ones
+    private static final int MAX_CACHED_NAMES = 1 << 20;
+
+    private Handler handler;
+    private byte[] scratch = new byte[64];
+
+    // the number of names still expected by the last keyword, the kind of
+    // its command, and the first name of a command of two names once it has
+    // been read
+    private int expected;
+    private int command;
+    private String firstName;
+
+    // open-addressing cache from the bytes of a name to the decoded name
+    private byte[][] cachedBytes = new byte[1024][];
+    private String[] cachedNames = new String[1024];
+    private int cached;
+
+    MappedCommandParser(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Parses the commands in the bytes of the channel from start (inclusive)
+     * to end (exclusive), mapping at most WINDOW bytes at a time. A token
+     * that crosses the end of a window is parsed again from the start of the
+     * next window, so windows need not be aligned to anything.
+     *
+     * @param channel   The FileChannel of the file to be parsed
+     * @param start     The offset of the first byte to be parsed
+     * @param end       The offset just past the last byte to be parsed,
+     *                  which is clamped to the size of the file
+     * @return the number of commands handed to the Handler.
+     * @throws IOException  if the file could not be mapped, a token is longer
+     *                      than a window, or the current thread was
+     *                      interrupted.
+     */
+    long parse(FileChannel channel, long start, long end) throws IOException {
+        end = Math.min(end, channel.size());
+        long commands = 0;
+        long position = start;
+        while (position < end) {
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedIOException("Parsing was interrupted");
+            int length = (int) Math.min(WINDOW, end - position);
+            boolean last = position + length == end;
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, position, length);
+            int i = 0;
+            int consumed = length;
+            while (true) {
+                while (i < length && isWhitespace(buffer.get(i)))
+                    i++;
+                if (i == length)
+                    break;
+                int tokenStart = i;
+                while (i < length && !isWhitespace(buffer.get(i)))
+                    i++;
+                if (i == length && !last) {
+                    // the token may continue in the next window
+                    consumed = tokenStart;
+                    break;
+                }
+                if (token(buffer, tokenStart, i - tokenStart))
+                    commands++;
+            }
+            if (consumed == 0)
+                throw new IOException("Token longer than " + WINDOW
+                        + " bytes at offset " + position);
+            position += consumed;
+        }
+        return commands;
+    }
+
+    // Acts upon one token and returns true if it completed a command
+    private boolean token(MappedByteBuffer buffer, int offset, int length) {
+        if (expected == 0) {
+            if (matches(buffer, offset, length, ADDUSER)) {
+                expected = 1;
+                command = ADD_USER;
+            } else if (matches(buffer, offset, length, ADDFRIENDS)) {
+                expected = 2;
+                command = ADD_FRIENDS;
+            } else if (matches(buffer, offset, length, UNFRIEND)) {
+                expected = 2;
+                command = REMOVE_FRIEND;
+            }
+            return false;
+        }
+        String name = name(buffer, offset, length);
+        if (--expected > 0) {
+            firstName = name;
+            return false;
+        }
+        if (command == ADD_USER) {
+            handler.addUser(name);
+        } else {
+            if (command == ADD_FRIENDS)
+                handler.addFriends(firstName, name);
+            else
+                handler.unfriend(firstName, name);
+            firstName = null;
+        }
+        return true;
+    }
+
+    // Returns the decoded name held in the specified bytes, reusing the
+    // String of an earlier occurrence of the same bytes when it is cached
+    private String name(MappedByteBuffer buffer, int offset, int length) {
+        if (scratch.length < length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        buffer.get(offset, scratch, 0, length);
+        int mask = cachedBytes.length - 1;
+        int slot = hash(scratch, length) & mask;
+        while (cachedBytes[slot] != null) {
+            if (Arrays.equals(cachedBytes[slot], 0, cachedBytes[slot].length,
+                    scratch, 0, length))
+                return cachedNames[slot];
+            slot = (slot + 1) & mask;
+        }
+        String name = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        if (cached < MAX_CACHED_NAMES) {
+            cachedBytes[slot] = Arrays.copyOf(scratch, length);
+            cachedNames[slot] = name;
+            // keep the cache at most half full
+            if (++cached * 2 > cachedBytes.length)
+                growCache();
+        }
+        return name;
+    }
+
+    private void growCache() {
+        byte[][] oldBytes = cachedBytes;
+        String[] oldNames = cachedNames;
+        cachedBytes = new byte[oldBytes.length * 2][];
+        cachedNames = new String[oldNames.length * 2];
+        int mask = cachedBytes.length - 1;
+        for (int i = 0; i < oldBytes.length; i++) {
+            if (oldBytes[i] != null) {
+                int slot = hash(oldBytes[i], oldBytes[i].length) & mask;
+                while (cachedBytes[slot] != null)
+                    slot = (slot + 1) & mask;
+                cachedBytes[slot] = oldBytes[i];
+                cachedNames[slot] = oldNames[i];
+            }
+        }
+    }
+
+    // Names such as person1 and person2 differ only in their last bytes, so
+    // the polynomial hash is scrambled to spread them across the table
+    private static int hash(byte[] bytes, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + bytes[i];
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(MappedByteBuffer buffer, int offset,
+                                   int length, byte[] keyword) {
+        if (length != keyword.length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != keyword[i])
+                return false;
+        }
+        return true;
+    }
+
+    // ASCII whitespace and control characters; bytes of multi-byte UTF-8
+    // sequences are negative and are never whitespace
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+}
@@ -0,0 +1,266 @@
+package fazebook;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The NameDictionary class assigns dense integer IDs, starting from 0, to
+ * names, and keeps each name once as UTF-8 bytes in direct ByteBuffers
+ * outside the Java heap. The heap only holds, per name, the location of its
+ * bytes and its hash, and an open-addressing table from hash to ID, so a
+ * dictionary of millions of names costs the garbage collector a handful of
+ * primitive arrays rather than a String and a byte array per name.
+ *
+ * Names are looked up either as Strings or straight from a slice of a
+ * ByteBuffer holding their UTF-8 bytes, such as a memory-mapped file, so
+ * that a name read from a file never has to become a String to be found or
+ * added. Looking up a String of ASCII characters allocates nothing; name()
+ * decodes a new String on every call. This class is not thread-safe.
+ */
+class NameDictionary {
+
+    // the size of the first block of names, and the largest size that the
+    // blocks double to
+    private static final int FIRST_BLOCK = 4096;
+    private static final int MAX_BLOCK = 1 << 20;
+
+    // the blocks holding the names, each as a varint length and its bytes
+    private ByteBuffer[] blocks = new ByteBuffer[4];
+    private int blockCount;
+    private long offHeapBytes;
+
+    // per ID, the block of the name in the high 32 bits and the offset of
+    // its length in the low 32 bits, and the hash of the name
+    private long[] locations = new long[16];
+    private int[] hashes = new int[16];
+    private int size;
+
+    // open-addressing table that holds ID + 1 in each slot, or 0 if empty
+    private int[] table = new int[32];
+
+    /**
+     * @param name  The name to be looked up.
+     * @return the ID of the name, or -1 if it has none.
+     */
+    int find(String name) {
+        if (!isAscii(name)) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            return find(ByteBuffer.wrap(encoded), 0, encoded.length);
+        }
+        // the bytes of an ASCII name are its chars, so it is hashed and
+        // compared without being encoded
+        int hash = 1;
+        for (int i = 0; i < name.length(); i++)
+            hash = 31 * hash + name.charAt(i);
+        hash = scramble(hash);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0;
+                slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(id, name))
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * @param source    The buffer holding the UTF-8 bytes of the name.
+     * @param offset    The index of the first byte of the name in source.
+     * @param length    The number of bytes of the name.
+     * @return the ID of the name, or -1 if it has none.
+     */
+    int find(ByteBuffer source, int offset, int length) {
+        return find(source, offset, length, hash(source, offset, length));
+    }
+
+    /**
+     * @param name  The name to be looked up.
+     * @return the ID of the name, assigning it the next ID first if it has
+     *         none.
+     */
+    int intern(String name) {
+        int id = find(name);
+        if (id >= 0)
+            return id;
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer source = ByteBuffer.wrap(encoded);
+        return add(source, 0, encoded.length,
+                hash(source, 0, encoded.length));
+    }
+
+    /**
+     * @param source    The buffer holding the UTF-8 bytes of the name.
+     * @param offset    The index of the first byte of the name in source.
+     * @param length    The number of bytes of the name.
+     * @return the ID of the name, assigning it the next ID first if it has
+     *         none.
+     */
+    int intern(ByteBuffer source, int offset, int length) {
+        int hash = hash(source, offset, length);
+        int id = find(source, offset, length, hash);
+        return id >= 0 ? id : add(source, offset, length, hash);
+    }
+
+    /**
+     * @param id    The ID of a name.
+     * @return a new String holding the name with the ID.
+     */
+    String name(int id) {
+        ByteBuffer names = blocks[(int) (locations[id] >>> 32)];
+        int position = (int) locations[id];
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = names.get(position++);
+            length |= (b & 0x7f) << shift;
+            if (b >= 0)
+                break;
+        }
+        byte[] encoded = new byte[length];
+        names.get(position, encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of names in the current dictionary.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes allocated outside the heap for the names.
+     */
+    long offHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /*
+     * Every array costs a 16 byte header, each ID slot costs 12 bytes of
+     * location and hash, each table slot 4 bytes, and each block a
+     * DirectByteBuffer object of about 64 bytes.
+     */
+    long estimatedHeapBytes() {
+        return 4 * 16 + locations.length * 12L + table.length * 4L
+                + blocks.length * 4L + blockCount * 64L;
+    }
+
+    private int find(ByteBuffer source, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0;
+                slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(id, source, offset, length))
+                return id;
+        }
+        return -1;
+    }
+
+    // Appends the name to the last block, starting a new one if it does not
+    // fit, and gives it the next ID
+    private int add(ByteBuffer source, int offset, int length, int hash) {
+        ByteBuffer block = blockCount == 0 ? null : blocks[blockCount - 1];
+        // a varint length takes at most 5 bytes
+        int needed = length + 5;
+        if (block == null || block.remaining() < needed) {
+            int capacity = block == null ? FIRST_BLOCK
+                    : Math.min(MAX_BLOCK, block.capacity() * 2);
+            block = ByteBuffer.allocateDirect(Math.max(capacity, needed));
+            if (blockCount == blocks.length)
+                blocks = Arrays.copyOf(blocks, blockCount * 2);
+            blocks[blockCount++] = block;
+            offHeapBytes += block.capacity();
+        }
+        int id = size++;
+        if (id == locations.length) {
+            locations = Arrays.copyOf(locations, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        locations[id] = (long) (blockCount - 1) << 32 | block.position();
+        hashes[id] = hash;
+        int remaining = length;
+        while (remaining >= 0x80) {
+            block.put((byte) (remaining & 0x7f | 0x80));
+            remaining >>>= 7;
+        }
+        block.put((byte) remaining);
+        block.put(block.position(), source, offset, length);
+        block.position(block.position() + length);
+        insert(id);
+        // keep the table at most half full
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < size; i++)
+                insert(i);
+        }
+        return id;
+    }
+
+    private void insert(int id) {
+        int mask = table.length - 1;
+        int slot = hashes[id] & mask;
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = id + 1;
+    }
+
+    // Compares the name with the ID to an ASCII name
+    private boolean equals(int id, String name) {
+        ByteBuffer names = blocks[(int) (locations[id] >>> 32)];
+        int position = (int) locations[id];
+        // a name shorter than 128 bytes has a one byte length; longer names
+        // are rare enough to be decoded
+        if (name.length() >= 0x80)
+            return name.equals(name(id));
+        if (names.get(position++) != name.length())
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (names.get(position + i) != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean equals(int id, ByteBuffer source, int offset,
+                           int length) {
+        ByteBuffer names = blocks[(int) (locations[id] >>> 32)];
+        int position = (int) locations[id];
+        int stored = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = names.get(position++);
+            stored |= (b & 0x7f) << shift;
+            if (b >= 0)
+                break;
+        }
+        if (stored != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (names.get(position + i) != source.get(offset + i))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80)
+                return false;
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer source, int offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + source.get(offset + i);
+        return scramble(hash);
+    }
+
+    // Names such as person1 and person2 differ only in their last bytes, so
+    // the polynomial hash is scrambled to spread them across the table
+    private static int scramble(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,423 @@
+package fazebook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/**
+ * The PageRank class keeps a PageRank score for every vertex of an EWDGraph
+ * object up to date as edges are added and removed. A vertex is influential
+ * if influential vertices have edges to it: each vertex passes the damping
+ * factor times its score on to its neighbors, split evenly between them,
+ * and every vertex also receives a constant 1 minus the damping factor.
+ * The scores are reported divided by the number of vertices, so that they
+ * sum to at most 1; vertices without neighbors pass nothing on.
+ *
+ * The scores are first computed by power iteration, in parallel on a
+ * ForkJoinPool over a transposed, primitive copy of the edges. After that,
+ * the class keeps a residual for every vertex, which is how far its score
+ * is from what its neighbors' scores imply, and edgeChanged() only adjusts
+ * the residuals of the vertices whose incoming share changed. Residuals
+ * larger than the tolerance are then pushed into the scores and on to the
+ * neighbors, which touches only the part of the graph that the change
+ * affects noticeably. Pushes follow the class's own copy of the edges as
+ * dense int IDs, which a reported change updates along with the residuals,
+ * so they cost no lookups in the graph. Each computation stops once every
+ * residual is within the tolerance or the time budget is spent, in which
+ * case the remaining residuals are pushed by the next call.
+ *
+ * All methods are synchronized on the current object. Changes to the graph
+ * that were not reported are not reflected until they are, or until
+ * recompute() is called.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices of
+ *              the graph.
+ */
+public class PageRank<V> {
+
+    private EWDGraph<V> graph;
+    private double damping;
+    private double tolerance;
+    private long budgetNanos;
+    private ForkJoinPool pool;
+
+    private VertexIndex<V> index;
+    private double[] scores;
+    private double[] residuals;
+    // the IDs of the neighbors of each vertex as of the last change that was
+    // reported, which residuals are pushed along, in the first degrees[id]
+    // slots of its array
+    private int[][] neighbors;
+    private int[] degrees;
+    private int[] queue = new int[64];
+    private int head;
+    private int tail;
+    private BitSet queued = new BitSet();
+    private List<V> topCache;
+    private int topCacheSize;
+
+    /**
+     * Constructor that computes the scores of the specified graph with a
+     * damping factor of 0.85, a tolerance of 1e-6, and no time budget, on
+     * the common ForkJoinPool.
+     *
+     * @param graph     The EWDGraph object whose vertices are scored
+     */
+    public PageRank(EWDGraph<V> graph) {
+        this(graph, 0.85, 1e-6, Long.MAX_VALUE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that computes the scores of the specified graph with the
+     * specified parameters.
+     *
+     * @param graph             The EWDGraph object whose vertices are scored
+     * @param damping           The fraction of its score that a vertex passes
+     *                          on, which must be in [0, 1)
+     * @param tolerance         The largest change in an unnormalized score,
+     *                          whose mean is at most 1, that may be left
+     *                          unapplied, which must be positive
+     * @param timeBudgetMillis  The longest that a single computation may run
+     *                          for, which must be positive
+     * @param pool              The ForkJoinPool that the power iteration
+     *                          runs on
+     */
+    public PageRank(EWDGraph<V> graph, double damping, double tolerance,
+                    long timeBudgetMillis, ForkJoinPool pool) {
+        if (graph == null || pool == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (damping < 0 || damping >= 1 || tolerance <= 0
+                || timeBudgetMillis <= 0)
+            throw new IllegalArgumentException("Parameter is out of range");
+        this.graph = graph;
+        this.damping = damping;
+        this.tolerance = tolerance;
+        this.budgetNanos = timeBudgetMillis > Long.MAX_VALUE / 1000000
+                ? Long.MAX_VALUE : timeBudgetMillis * 1000000;
+        this.pool = pool;
+        recompute();
+    }
+
+    /**
+     * Discards the current scores and computes them again from the whole
+     * graph by parallel power iteration, within the time budget.
+     *
+     * @return true if every residual is within the tolerance; false if the
+     *         time budget ran out first.
+     */
+    public synchronized boolean recompute() {
+        long start = System.nanoTime();
+        index = new VertexIndex<>(graph.getNumEWDGraphVertices());
+        for (V vertex : graph.getEWDGraphVerticesView())
+            index.intern(vertex);
+        int n = index.size();
+        neighbors = new int[n][];
+        degrees = new int[n];
+        ParallelRange.forEach(pool, n, id -> {
+            int[] ids = new int[graph.degree(index.vertexAt(id))];
+            int[] degree = new int[1];
+            graph.forEachNeighbor(index.vertexAt(id), (neighbor, weight) -> {
+                int dest = index.idOf(neighbor);
+                // a neighbor added after the index was built is left out,
+                // as is one beyond the degree read above
+                if (dest >= 0 && degree[0] < ids.length)
+                    ids[degree[0]++] = dest;
+            });
+            neighbors[id] = ids;
+            degrees[id] = degree[0];
+        });
+
+        // transpose the edges into arrays of the sources of each vertex,
+        // so that each worker only writes the scores of its own vertices
+        AtomicIntegerArray counts = new AtomicIntegerArray(n);
+        ParallelRange.forEach(pool, n, id -> {
+            for (int i = 0; i < degrees[id]; i++)
+                counts.incrementAndGet(neighbors[id][i]);
+        });
+        int[] offsets = new int[n + 1];
+        for (int id = 0; id < n; id++) {
+            long end = (long) offsets[id] + counts.get(id);
+            if (end > Integer.MAX_VALUE)
+                throw new IllegalStateException("Graph has too many edges");
+            offsets[id + 1] = (int) end;
+            counts.set(id, offsets[id]);
+        }
+        int[] sources = new int[offsets[n]];
+        ParallelRange.forEach(pool, n, id -> {
+            for (int i = 0; i < degrees[id]; i++)
+                sources[counts.getAndIncrement(neighbors[id][i])] = id;
+        });
+
+        scores = new double[n];
+        Arrays.fill(scores, 1);
+        double[] next = new double[n];
+        boolean converged = false;
+        while (!converged && System.nanoTime() - start < budgetNanos) {
+            double[] current = scores;
+            DoubleAccumulator change = new DoubleAccumulator(Math::max, 0);
+            ParallelRange.forEach(pool, n, id -> {
+                next[id] = pull(current, sources, offsets, id);
+                change.accumulate(Math.abs(next[id] - current[id]));
+            });
+            System.arraycopy(next, 0, scores, 0, n);
+            converged = change.get() <= tolerance;
+        }
+
+        // the residuals are what one more iteration would still change
+        residuals = new double[n];
+        double[] current = scores;
+        ParallelRange.forEach(pool, n, id -> residuals[id] =
+                pull(current, sources, offsets, id) - current[id]);
+        queue = new int[64];
+        head = 0;
+        tail = 0;
+        queued.clear();
+        for (int id = 0; id < n; id++)
+            enqueueIfLarge(id);
+        topCache = null;
+        return push(start);
+    }
+
+    /**
+     * Updates the scores after an edge from the source vertex to the
+     * destination vertex was added or removed. A vertex that is new to the
+     * scores is added, starting from a score of 0.
+     *
+     * @param src       The source vertex of the edge that changed
+     * @param dest      The destination vertex of the edge that changed
+     * @return true if every residual is within the tolerance; false if the
+     *         time budget ran out first.
+     */
+    public synchronized boolean edgeChanged(V src, V dest) {
+        long start = System.nanoTime();
+        record(src, dest);
+        return push(start);
+    }
+
+    /**
+     * Updates the scores after every edge from the key to the value of the
+     * specified entries was added or removed. All of the changes are taken
+     * into account before any residual is pushed on, so residuals that
+     * several of them change are pushed once rather than once per change.
+     *
+     * @param edges     The source and destination vertices of the edges that
+     *                  changed
+     * @return true if every residual is within the tolerance; false if the
+     *         time budget ran out first.
+     */
+    public synchronized boolean edgesChanged(
+            Iterable<? extends Map.Entry<V, V>> edges) {
+        if (edges == null)
+            throw new IllegalArgumentException("Parameter is null");
+        long start = System.nanoTime();
+        for (Map.Entry<V, V> edge : edges)
+            record(edge.getKey(), edge.getValue());
+        return push(start);
+    }
+
+    /**
+     * Adds the specified vertex to the scores, if it is new to them.
+     *
+     * @param vertex    The vertex that was added to the graph
+     * @return true if every residual is within the tolerance; false if the
+     *         time budget ran out first.
+     */
+    public synchronized boolean vertexAdded(V vertex) {
+        if (vertex == null)
+            throw new IllegalArgumentException("Parameter is null");
+        ensure(vertex);
+        return push(System.nanoTime());
+    }
+
+    /**
+     * Pushes any residuals that a previous computation left, within the
+     * time budget.
+     *
+     * @return true if every residual is within the tolerance; false if the
+     *         time budget ran out first.
+     */
+    public synchronized boolean converge() {
+        return push(System.nanoTime());
+    }
+
+    /**
+     * @return true if every residual is within the tolerance.
+     */
+    public synchronized boolean isConverged() {
+        return head == tail;
+    }
+
+    /**
+     * @param vertex    A vertex of the graph
+     * @return the score of the vertex; 0 if it is not scored.
+     */
+    public synchronized double getScore(V vertex) {
+        if (vertex == null)
+            throw new IllegalArgumentException("Parameter is null");
+        int id = index.idOf(vertex);
+        return id < 0 ? 0 : scores[id] / index.size();
+    }
+
+    /**
+     * Retrieves the vertices with the highest scores, highest first. The
+     * result is kept until the scores next change, so repeated calls cost
+     * nothing, and otherwise costs one pass over the scores with a heap of
+     * count vertices.
+     *
+     * @param count     The maximum number of vertices to be returned
+     * @return an unmodifiable List of at most count vertices.
+     */
+    public synchronized List<V> getTop(int count) {
+        if (count <= 0)
+            return Collections.emptyList();
+        if (topCache != null && topCacheSize >= count)
+            return topCache.subList(0, Math.min(count, topCache.size()));
+        // the lowest of the best scores so far is at the head of the heap
+        PriorityQueue<Integer> best = new PriorityQueue<>(count + 1,
+                (a, b) -> Double.compare(scores[a], scores[b]));
+        for (int id = 0; id < index.size(); id++) {
+            if (best.size() < count) {
+                best.add(id);
+            } else if (scores[id] > scores[best.peek()]) {
+                best.poll();
+                best.add(id);
+            }
+        }
+        List<V> top = new ArrayList<>(best.size());
+        while (!best.isEmpty())
+            top.add(index.vertexAt(best.poll()));
+        Collections.reverse(top);
+        topCache = Collections.unmodifiableList(top);
+        topCacheSize = count;
+        return topCache;
+    }
+
+    // Adjusts the residuals for the change to the edge from src to dest,
+    // without pushing them on
+    private void record(V src, V dest) {
+        if (src == null || dest == null)
+            throw new IllegalArgumentException("Parameter is null");
+        int u = ensure(src);
+        int w = ensure(dest);
+        int before = degrees[u];
+        int[] ids = neighbors[u];
+        int position = 0;
+        while (position < before && ids[position] != w)
+            position++;
+        boolean added = graph.isEWDGraphEdge(src, dest);
+        if (added == position < before)
+            return;
+        int after = added ? before + 1 : before - 1;
+        double score = scores[u];
+        // the share of every other neighbor changes with the degree
+        if (before > 0 && after > 0) {
+            double delta = damping * score * (1.0 / after - 1.0 / before);
+            for (int i = 0; i < before; i++) {
+                if (ids[i] != w)
+                    addResidual(ids[i], delta);
+            }
+        }
+        if (added) {
+            if (before == ids.length)
+                neighbors[u] = ids = Arrays.copyOf(ids,
+                        Math.max(4, before * 2));
+            ids[before] = w;
+            addResidual(w, damping * score / after);
+        } else {
+            ids[position] = ids[before - 1];
+            addResidual(w, -damping * score / before);
+        }
+        degrees[u] = after;
+        topCache = null;
+    }
+
+    // The unnormalized score of the vertex implied by the given scores
+    private double pull(double[] current, int[] sources, int[] offsets,
+                        int id) {
+        double sum = 0;
+        for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+            sum += current[sources[i]] / degrees[sources[i]];
+        }
+        return 1 - damping + damping * sum;
+    }
+
+    /*
+     * Moves the residual of each queued vertex into its score and splits it
+     * between its neighbors' residuals, until no residual is larger than
+     * the tolerance or the time budget since start is spent.
+     */
+    private boolean push(long start) {
+        while (head != tail) {
+            if (System.nanoTime() - start >= budgetNanos)
+                return false;
+            int id = queue[head];
+            head = (head + 1) & (queue.length - 1);
+            queued.clear(id);
+            double residual = residuals[id];
+            if (Math.abs(residual) <= tolerance)
+                continue;
+            scores[id] += residual;
+            residuals[id] = 0;
+            topCache = null;
+            double share = damping * residual / Math.max(1, degrees[id]);
+            int[] ids = neighbors[id];
+            for (int i = 0; i < degrees[id]; i++)
+                addResidual(ids[i], share);
+        }
+        return true;
+    }
+
+    private void addResidual(int id, double amount) {
+        residuals[id] += amount;
+        enqueueIfLarge(id);
+    }
+
+    private void enqueueIfLarge(int id) {
+        if (Math.abs(residuals[id]) <= tolerance || queued.get(id))
+            return;
+        queued.set(id);
+        queue[tail] = id;
+        tail = (tail + 1) & (queue.length - 1);
+        if (tail == head) {
+            // the ring is full, so unroll it into one twice as large
+            int[] larger = new int[queue.length * 2];
+            int first = queue.length - head;
+            System.arraycopy(queue, head, larger, 0, first);
+            System.arraycopy(queue, 0, larger, first, head);
+            head = 0;
+            tail = queue.length;
+            queue = larger;
+        }
+    }
+
+    // Returns the ID of the vertex, first adding it with a score of 0 and
+    // the constant share as its residual if it is new to the scores
+    private int ensure(V vertex) {
+        int id = index.idOf(vertex);
+        if (id >= 0)
+            return id;
+        id = index.intern(vertex);
+        if (id >= scores.length) {
+            int capacity = Math.max(16, scores.length * 2);
+            scores = Arrays.copyOf(scores, capacity);
+            residuals = Arrays.copyOf(residuals, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+            neighbors = Arrays.copyOf(neighbors, capacity);
+        }
+        // its edges are reported through edgeChanged() as they are made
+        neighbors[id] = new int[0];
+        degrees[id] = 0;
+        residuals[id] = 1 - damping;
+        topCache = null;
+        enqueueIfLarge(id);
+        return id;
+    }
+
+}
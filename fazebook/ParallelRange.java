@@ -0,0 +1,56 @@
+package fazebook;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * The ParallelRange class runs a body once for each int in a range on a
+ * ForkJoinPool, splitting the range in halves until the pieces are no
+ * larger than a grain size, so that idle workers can steal the halves that
+ * busy workers have not started yet. The graph analytics use it to process
+ * the vertices of a graph by their dense IDs across all cores, without
+ * creating a task per vertex.
+ */
+class ParallelRange extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private int start;
+    private int end;
+    private int grain;
+    private IntConsumer body;
+
+    private ParallelRange(int start, int end, int grain, IntConsumer body) {
+        this.start = start;
+        this.end = end;
+        this.grain = grain;
+        this.body = body;
+    }
+
+    /**
+     * Runs the body for every int from 0 up to but excluding n on the pool,
+     * returning once every run has completed.
+     *
+     * @param pool  The ForkJoinPool to run on.
+     * @param n     The end of the range.
+     * @param body  The body to be run for each int.
+     */
+    static void forEach(ForkJoinPool pool, int n, IntConsumer body) {
+        // a few pieces per worker balances the load without many tasks
+        int grain = Math.max(256, n / (pool.getParallelism() * 16));
+        pool.invoke(new ParallelRange(0, n, grain, body));
+    }
+
+    @Override protected void compute() {
+        if (end - start <= grain) {
+            for (int i = start; i < end; i++)
+                body.accept(i);
+        } else {
+            int middle = (start + end) >>> 1;
+            invokeAll(new ParallelRange(start, middle, grain, body),
+                    new ParallelRange(middle, end, grain, body));
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package fazebook;
+
+import java.io.IOException;
+
+/**
+ * The PartitionTransport interface carries the requests of a RemotePartition
+ * to the partition it stands for and carries back the responses. A transport
+ * to another JVM sends each request over its connection, and the other JVM
+ * answers it with RemotePartition.handle(); LoopbackTransport answers it in
+ * the same JVM.
+ */
+public interface PartitionTransport {
+
+    /**
+     * Sends the request and waits for its response.
+     *
+     * @param request   The encoded request
+     * @return  the encoded response.
+     * @throws IOException  if the request could not be sent or answered.
+     */
+    byte[] call(byte[] request) throws IOException;
+
+}
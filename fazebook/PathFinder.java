@@ -0,0 +1,362 @@
+package fazebook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The PathFinder class finds shortest paths between two vertices of an
+ * EWDGraph object. Unweighted paths are found with a bidirectional breadth
+ * first search, which expands one level of the smaller of a frontier grown
+ * from the source and a frontier grown from the destination, and stops at
+ * the first level in which the two meet. On graphs with high-degree hubs
+ * this visits a small fraction of the vertices that a search from the
+ * source alone would. Weighted paths are found with Dijkstra's algorithm
+ * over the weights of the edges. The visited vertices of a search are
+ * numbered through a VertexIndex, so that their visited bits, distances, and
+ * parents are kept in a BitSet and primitive arrays rather than in HashSets
+ * and HashMaps.
+ *
+ * The graph only keeps the outgoing edges of each vertex, so the frontier
+ * grown from the destination follows the outgoing edges of each vertex and
+ * keeps those neighbors that have an edge back to it. This is exact when
+ * every edge has a reverse edge, as every friendship made by the addFriends()
+ * method of the Fazebook class does, but a one-sided edge, such as the one
+ * left behind by unfriend(), is only followed by the frontier grown from the
+ * source.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices of
+ *              the graph.
+ */
+public class PathFinder<V> {
+
+    /**
+     * The maximum depth that places no limit on the length of a path.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final int FORWARD = 0;
+    private static final int BACKWARD = 1;
+
+    private EWDGraph<V> graph;
+
+    /**
+     * Constructor that creates a path finder for the specified graph.
+     *
+     * @param graph     The EWDGraph object that paths are found in
+     */
+    public PathFinder(EWDGraph<V> graph) {
+        if (graph == null)
+            throw new IllegalArgumentException("Parameter is null");
+        this.graph = graph;
+    }
+
+    /**
+     * Finds the number of edges on a shortest path from the source vertex to
+     * the destination vertex.
+     *
+     * @param src       The vertex the path starts at
+     * @param dest      The vertex the path ends at
+     * @param maxDepth  The maximum number of edges on the path, or UNLIMITED
+     * @return the number of edges on a shortest path, which is 0 when the
+     *         vertices are equal; -1 if either vertex is not present in the
+     *         graph or there is no path of at most maxDepth edges.
+     */
+    public int distance(V src, V dest, int maxDepth) {
+        Search search = search(src, dest, maxDepth);
+        return search == null ? -1 : search.length;
+    }
+
+    /**
+     * Finds a shortest path from the source vertex to the destination vertex.
+     *
+     * @param src       The vertex the path starts at
+     * @param dest      The vertex the path ends at
+     * @param maxDepth  The maximum number of edges on the path, or UNLIMITED
+     * @return a List of the vertices on a shortest path, starting with src
+     *         and ending with dest; empty if either vertex is not present in
+     *         the graph or there is no path of at most maxDepth edges.
+     */
+    public List<V> path(V src, V dest, int maxDepth) {
+        Search search = search(src, dest, maxDepth);
+        if (search == null)
+            return new ArrayList<>();
+        List<V> path = new ArrayList<>(search.length + 1);
+        for (int id = search.meeting; id >= 0;
+                id = search.parents[FORWARD][id])
+            path.add(search.index.vertexAt(id));
+        Collections.reverse(path);
+        for (int id = search.parents[BACKWARD][search.meeting]; id >= 0;
+                id = search.parents[BACKWARD][id])
+            path.add(search.index.vertexAt(id));
+        return path;
+    }
+
+    /**
+     * Finds a path from the source vertex to the destination vertex whose
+     * edges have the least total weight.
+     *
+     * @param src       The vertex the path starts at
+     * @param dest      The vertex the path ends at
+     * @return a List of the vertices on the lightest path, starting with src
+     *         and ending with dest; empty if either vertex is not present in
+     *         the graph or there is no path.
+     */
+    public List<V> weightedPath(V src, V dest) {
+        List<V> path = new ArrayList<>();
+        dijkstra(src, dest, path);
+        return path;
+    }
+
+    /**
+     * Finds the least total weight of the edges of a path from the source
+     * vertex to the destination vertex.
+     *
+     * @param src       The vertex the path starts at
+     * @param dest      The vertex the path ends at
+     * @return the total weight of the lightest path, which is 0 when the
+     *         vertices are equal; -1 if either vertex is not present in the
+     *         graph or there is no path.
+     */
+    public long weightedDistance(V src, V dest) {
+        return dijkstra(src, dest, null);
+    }
+
+    // Returns the search in which the frontiers met, or null if they did not
+    private Search search(V src, V dest, int maxDepth) {
+        if (src == null || dest == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("Parameter is negative");
+        if (!graph.isEWDGraphVertex(src) || !graph.isEWDGraphVertex(dest))
+            return null;
+        Search search = new Search();
+        int source = search.visit(FORWARD, src, -1);
+        int target = search.visit(BACKWARD, dest, -1);
+        if (source == target) {
+            search.meeting = source;
+            return search;
+        }
+        search.frontiers[FORWARD] = new int[] {source};
+        search.frontiers[BACKWARD] = new int[] {target};
+        while (search.sizes[FORWARD] > 0 && search.sizes[BACKWARD] > 0
+                && search.depths[FORWARD] + search.depths[BACKWARD]
+                        < maxDepth) {
+            int side = search.sizes[FORWARD] <= search.sizes[BACKWARD]
+                    ? FORWARD : BACKWARD;
+            if (search.expand(side))
+                return search;
+        }
+        return null;
+    }
+
+    /*
+     * The state of one bidirectional search. Each side has a BitSet of the
+     * IDs it has visited, the distance and parent of each visited ID, and
+     * the IDs of its current frontier.
+     */
+    private class Search {
+
+        private VertexIndex<V> index = new VertexIndex<>(64);
+        private BitSet[] visited = {new BitSet(), new BitSet()};
+        private int[][] distances = {new int[64], new int[64]};
+        private int[][] parents = {new int[64], new int[64]};
+        private int[][] frontiers = new int[2][];
+        private int[] sizes = {1, 1};
+        private int[] depths = new int[2];
+        private int meeting = -1;
+        private int length;
+
+        // the next frontier of the side being expanded, and its size
+        private int[] next;
+        private int nextSize;
+
+        // Marks the vertex as visited by the side, returning its ID
+        int visit(int side, V vertex, int parent) {
+            int id = index.intern(vertex);
+            if (id >= distances[side].length) {
+                int capacity = Math.max(id + 1, distances[side].length * 2);
+                for (int s = FORWARD; s <= BACKWARD; s++) {
+                    distances[s] = Arrays.copyOf(distances[s], capacity);
+                    parents[s] = Arrays.copyOf(parents[s], capacity);
+                }
+            }
+            visited[side].set(id);
+            distances[side][id] = parent < 0 ? 0
+                    : distances[side][parent] + 1;
+            parents[side][id] = parent;
+            return id;
+        }
+
+        // Expands the frontier of the side by one level, returning true if
+        // it met the other side, in which case meeting and length are set
+        boolean expand(int side) {
+            int other = 1 - side;
+            int[] frontier = frontiers[side];
+            int size = sizes[side];
+            next = new int[Math.max(16, size * 2)];
+            nextSize = 0;
+            length = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int id = frontier[i];
+                V vertex = index.vertexAt(id);
+                graph.forEachNeighbor(vertex, (neighbor, weight) -> {
+                    if (side == BACKWARD
+                            && !graph.isEWDGraphEdge(neighbor, vertex))
+                        return;
+                    int known = index.idOf(neighbor);
+                    if (known >= 0 && visited[side].get(known))
+                        return;
+                    int reached = visit(side, neighbor, id);
+                    if (nextSize == next.length)
+                        next = Arrays.copyOf(next, nextSize * 2);
+                    next[nextSize++] = reached;
+                    if (visited[other].get(reached)) {
+                        int total = distances[side][reached]
+                                + distances[other][reached];
+                        if (total < length) {
+                            length = total;
+                            meeting = reached;
+                        }
+                    }
+                });
+            }
+            frontiers[side] = next;
+            sizes[side] = nextSize;
+            depths[side]++;
+            return meeting >= 0;
+        }
+
+    }
+
+    /*
+     * Runs Dijkstra's algorithm from src until dest is settled, adding the
+     * vertices of the lightest path to path if it is not null, and returns
+     * its total weight, or -1 if there is none.
+     */
+    private long dijkstra(V src, V dest, List<V> path) {
+        if (src == null || dest == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (!graph.isEWDGraphVertex(src) || !graph.isEWDGraphVertex(dest))
+            return -1;
+        WeightedSearch search = new WeightedSearch();
+        int target = search.run(src, dest);
+        if (target < 0)
+            return -1;
+        if (path != null) {
+            for (int id = target; id >= 0; id = search.parents[id])
+                path.add(search.index.vertexAt(id));
+            Collections.reverse(path);
+        }
+        return search.distances[target];
+    }
+
+    /*
+     * The state of one run of Dijkstra's algorithm: the tentative distance
+     * and parent of each ID, a BitSet of the settled IDs, and a heap of IDs
+     * ordered by distance. The heap may hold stale entries for IDs whose
+     * distance has since decreased, which are skipped when they are polled.
+     */
+    private class WeightedSearch {
+
+        private VertexIndex<V> index = new VertexIndex<>(64);
+        private BitSet settled = new BitSet();
+        private long[] distances = new long[0];
+        private int[] parents = new int[0];
+        private Heap heap = new Heap();
+
+        // Returns the ID of dest once it is settled, or -1 if it never is
+        int run(V src, V dest) {
+            int target = index.intern(dest);
+            relax(src, -1, 0);
+            while (heap.size() > 0) {
+                long distance = heap.peekKey();
+                int id = heap.poll();
+                if (settled.get(id) || distance > distances[id])
+                    continue;
+                settled.set(id);
+                if (id == target)
+                    return target;
+                graph.forEachNeighbor(index.vertexAt(id), (neighbor, weight) ->
+                        relax(neighbor, id, distance + weight));
+            }
+            return -1;
+        }
+
+        // Lowers the distance of the vertex to the given one if it is lower
+        private void relax(V vertex, int parent, long distance) {
+            int id = index.intern(vertex);
+            if (id >= distances.length) {
+                int old = distances.length;
+                int capacity = Math.max(64, Math.max(id + 1, old * 2));
+                distances = Arrays.copyOf(distances, capacity);
+                Arrays.fill(distances, old, capacity, Long.MAX_VALUE);
+                parents = Arrays.copyOf(parents, capacity);
+            }
+            if (!settled.get(id) && distance < distances[id]) {
+                distances[id] = distance;
+                parents[id] = parent;
+                heap.add(distance, id);
+            }
+        }
+
+    }
+
+    /*
+     * A binary min-heap of int values ordered by long keys, kept in two
+     * parallel primitive arrays so that no entry is boxed.
+     */
+    private static class Heap {
+
+        private long[] keys = new long[64];
+        private int[] values = new int[64];
+        private int size;
+
+        void add(long key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && keys[(i - 1) / 2] > key) {
+                keys[i] = keys[(i - 1) / 2];
+                values[i] = values[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        long peekKey() {
+            return keys[0];
+        }
+
+        int poll() {
+            int top = values[0];
+            long key = keys[--size];
+            int value = values[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child])
+                    child++;
+                if (keys[child] >= key)
+                    break;
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+
+        int size() {
+            return size;
+        }
+
+    }
+
+}
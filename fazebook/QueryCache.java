@@ -0,0 +1,235 @@
+package fazebook;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The QueryCache class is a bounded, least-recently-used cache of the results
+ * of the friend-list and friend-suggestion queries of a Fazebook object. The
+ * cache is capped both by its number of entries and by an estimate of the
+ * heap its results retain, and the least recently used entries are evicted
+ * first when either cap is exceeded.
+ *
+ * Every entry records the users whose friends were read to compute it: the
+ * user itself for a friend list, and the user and each of its friends for a
+ * suggestion. When the friends of a user change, invalidate() removes
+ * exactly the entries that read that user's friends, which are the entries
+ * of users within two hops of it, and leaves every other entry in place. A
+ * result computed while an invalidation happened is not stored, so the cache
+ * never holds a result that predates a change it depends on. All methods are
+ * synchronized on the cache.
+ */
+public class QueryCache {
+
+    // the kinds of query whose results are cached
+    enum Kind {
+        FRIENDS, PEOPLE_YOU_MAY_WANNA_KNOW, SUGGESTIONS
+    }
+
+    // identifies one query: its kind, user, and suggestion parameters
+    static final class Key {
+
+        private Kind kind;
+        private String user;
+        private int k;
+        private boolean weighted;
+
+        Key(Kind kind, String user, int k, boolean weighted) {
+            this.kind = kind;
+            this.user = user;
+            this.k = k;
+            this.weighted = weighted;
+        }
+
+        @Override public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return kind == key.kind && user.equals(key.user) && k == key.k
+                    && weighted == key.weighted;
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(kind, user, k, weighted);
+        }
+
+    }
+
+    // one cached result and the users whose friends it was computed from
+    private static final class Entry {
+
+        private Object value;
+        private Collection<String> dependencies;
+        private long bytes;
+
+        Entry(Object value, Collection<String> dependencies, long bytes) {
+            this.value = value;
+            this.dependencies = dependencies;
+            this.bytes = bytes;
+        }
+
+    }
+
+    private int maxEntries;
+    private long maxBytes;
+    private LinkedHashMap<Key, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private Map<String, Set<Key>> dependents = new HashMap<>();
+    private long bytes;
+    private long epoch;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructor that creates an empty cache with the specified caps.
+     *
+     * @param maxEntries    The maximum number of cached results, which must
+     *                      be positive
+     * @param maxBytes      The maximum estimated heap retained by the cached
+     *                      results, which must be positive
+     */
+    public QueryCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * Returns the cached result of the query, or null if it is not cached,
+     * counting a hit or a miss respectively.
+     */
+    synchronized Object lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /*
+     * Returns the number of invalidations so far, which callers read before
+     * computing a result and pass back to store().
+     */
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    /*
+     * Caches the result of the query unless an invalidation happened since
+     * the given epoch was read, evicting the least recently used entries
+     * until the cache is within its caps again.
+     */
+    synchronized void store(Key key, Object value, int resultSize,
+                            Collection<String> dependencies, long since) {
+        if (since != epoch)
+            return;
+        // an entry costs its key, its LinkedHashMap node, and a reference per
+        // result element and per dependency, both here and in dependents
+        long entryBytes = 128 + 8L * resultSize + 48L * dependencies.size();
+        remove(key);
+        Entry entry = new Entry(value, dependencies, entryBytes);
+        entries.put(key, entry);
+        bytes += entryBytes;
+        for (String user : dependencies)
+            dependents.computeIfAbsent(user, u -> new HashSet<>()).add(key);
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            // the first key in access order is the least recently used
+            remove(entries.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes every cached result that was computed from the friends of the
+     * specified user, which must be called whenever those friends change.
+     *
+     * @param user  The user whose friends have changed
+     */
+    public synchronized void invalidate(String user) {
+        epoch++;
+        Set<Key> keys = dependents.remove(user);
+        if (keys != null) {
+            for (Key key : keys) {
+                if (remove(key))
+                    invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Removes every cached result.
+     */
+    public synchronized void clear() {
+        epoch++;
+        entries.clear();
+        dependents.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated number of heap bytes retained by the cached
+     *         results and their bookkeeping.
+     */
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    @Override public synchronized String toString() {
+        return "QueryCache[entries=" + entries.size() + ", bytes=" + bytes
+                + ", hits=" + hits + ", misses=" + misses + ", evictions="
+                + evictions + ", invalidations=" + invalidations + "]";
+    }
+
+    // Removes the entry of the key, returning true if there was one
+    private boolean remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry == null)
+            return false;
+        forget(key, entry);
+        return true;
+    }
+
+    // Removes the bookkeeping of an entry that has left the entries map
+    private void forget(Key key, Entry entry) {
+        bytes -= entry.bytes;
+        for (String user : entry.dependencies) {
+            Set<Key> keys = dependents.get(user);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty())
+                    dependents.remove(user);
+            }
+        }
+    }
+
+}
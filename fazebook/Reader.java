@@ -1,75 +1,302 @@
 package fazebook;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /*
 Name: Cameron Vu (UID: 121227508)
-Honor Pledge: I pledge on my honor that I have not given or received any 
+Honor Pledge: I pledge on my honor that I have not given or received any
               unauthorized assistance on this assignment.
 */
 
 /**
  * The Reader class supplements the Fazebook class by allowing the use of
- * Threads and concurrency. This class contains two class fields by the names
+ * Threads and concurrency. This class contains class fields by the names
  * fazebook and filename, which represent the current Fazebook object for the
- * threads to operate on and the name of the file, respectively. The main 
- * functionality of this class is to override Java's run() method for threads
- * and ensure that synchronization and concurrency is correctly implemented
- * in order to allow multiple files in the Fazebook class to be read and acted
- * upon simultaneously with no risk of incorrectly overridden data or data 
- * races. 
+ * threads to operate on and the name of the file, respectively, as well as
+ * the start and end fields, which limit the Reader to a byte range of the
+ * file so that the IngestionEngine can split one large file into chunks
+ * that are read by several workers. The main functionality of this class is
+ * to implement Java's run() method for threads and executors and ensure that
+ * synchronization and concurrency is correctly implemented in order to allow
+ * multiple files in the Fazebook class to be read and acted upon
+ * simultaneously with no risk of incorrectly overridden data or data races.
  */
-public class Reader extends Thread {
+public class Reader implements Runnable {
 
-    private Fazebook fazebook; 
+    /**
+     * The parsers that a Reader may tokenize its file with. SCANNER uses
+     * java.util.Scanner over a stream of the file, while MAPPED memory-maps
+     * the file and scans its bytes with a MappedCommandParser, which is
+     * several times faster on large files.
+     */
+    public enum Parser {
+        SCANNER, MAPPED
+    }
+
+    /** The number of commands applied at once when none is specified. */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private Fazebook fazebook;
     private String filename;
+    private long start;
+    private long end;
+    private Parser parser;
+    private int batchSize;
+
+    // the commands read but not yet applied to the Fazebook object
+    private List<String> pendingUsers = new ArrayList<>();
+    private List<Map.Entry<String, String>> pendingFriends =
+            new ArrayList<>();
+    private List<Map.Entry<String, String>> pendingUnfriends =
+            new ArrayList<>();
 
     // Constructor to initialize the Fazebook instance and filename of the
-    // current file being read 
+    // current file being read
     public Reader(Fazebook fazebook, String filename) {
+        this(fazebook, filename, 0, Long.MAX_VALUE);
+    }
+
+    // Constructor to initialize the Fazebook instance and filename of the
+    // current file being read, limited to the bytes from start (inclusive)
+    // to end (exclusive); both offsets must fall on line boundaries
+    public Reader(Fazebook fazebook, String filename, long start, long end) {
+        this(fazebook, filename, start, end, Parser.MAPPED);
+    }
+
+    // Constructor to initialize the Fazebook instance, filename, and byte
+    // range of the current file being read, and the parser to read it with
+    public Reader(Fazebook fazebook, String filename, long start, long end,
+                  Parser parser) {
+        this(fazebook, filename, start, end, parser, DEFAULT_BATCH_SIZE);
+    }
+
+    // Constructor to initialize the Fazebook instance, filename, byte range,
+    // and parser of the current file being read, and the number of commands
+    // that are applied to the Fazebook instance at once, which must be
+    // positive
+    public Reader(Fazebook fazebook, String filename, long start, long end,
+                  Parser parser, int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
         this.fazebook = fazebook;
         this.filename = filename;
+        this.start = start;
+        this.end = end;
+        this.parser = parser;
+        this.batchSize = batchSize;
     }
 
     /*
-     * Overrides Java's run() method and determines the behavior of the current
-     * thread by reading the first word in the file; if the word is adduser
-     * or addfriends, then a user is added or a friendship is created between
-     * the proceeding names in the files, respectively. This method supports
-     * concurrency and handles synchronization by locking the methods that
-     * call to addUser() and addFriends() to ensure that there is no data race
-     * between working threads. 
+     * Implements Java's run() method by calling process(), and reports
+     * any IOException on the standard error stream, as a thread cannot
+     * throw a checked exception.
      */
     @Override public void run() {
         try {
-            File file = new File(filename);
-            Scanner myReader = new Scanner(file);
-            // Traverse the Collection of filenames and read the first
-            // word in the file to determine the next action
+            process();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Determines the behavior of the current Reader by reading the first word
+     * of each command in the byte range of the file; if the word is adduser,
+     * addfriends, or unfriend, then a user is added, a friendship is created,
+     * or a friendship is terminated with unfriend() between the proceeding
+     * names in the files, respectively. Commands are collected into batches
+     * of batchSize commands, and each batch is applied with addUser(), a
+     * single call to addFriendsBatch(), and unfriend(), in that order; a
+     * batch is applied early when an addfriends command follows an unfriend
+     * command, so that the commands of a file take effect in the order they
+     * appear in it. Commands in different chunks of a file have no order
+     * between them, so files that unfriend are best read in order, as
+     * TailFollower does, rather than split by an IngestionEngine. When the
+     * graph of the Fazebook object is concurrent, the working threads apply
+     * batches without any locking; otherwise, each batch is locked on the
+     * graph once to ensure that there is no data race between working
+     * threads. Commands read before an error or interruption are still
+     * applied. The file is tokenized with the Parser given to the
+     * constructor, which is MAPPED unless specified otherwise. The method
+     * stops with an InterruptedIOException if the current thread is
+     * interrupted.
+     *
+     * @return the number of commands that were read and acted upon.
+     * @throws IOException  if the file could not be read or the current
+     *                      thread was interrupted.
+     */
+    public long process() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            if (parser == Parser.MAPPED)
+                return processMapped(channel);
+            return processScanned(channel);
+        } finally {
+            flush();
+        }
+    }
+
+    // Reads the commands in the range by memory-mapping the file
+    private long processMapped(FileChannel channel) throws IOException {
+        MappedCommandParser mapped = new MappedCommandParser(
+                new MappedCommandParser.Handler() {
+                    @Override public void addUser(String user) {
+                        applyAddUser(user);
+                    }
+
+                    @Override public void addFriends(String user1,
+                                                     String user2) {
+                        applyAddFriends(user1, user2);
+                    }
+
+                    @Override public void unfriend(String user1,
+                                                   String user2) {
+                        applyUnfriend(user1, user2);
+                    }
+                });
+        return mapped.parse(channel, start, end);
+    }
+
+    // Reads the commands in the range with a Scanner
+    private long processScanned(FileChannel channel) throws IOException {
+        long commands = 0;
+        try (Scanner myReader = new Scanner(new BufferedInputStream(
+                new RangeInputStream(channel, start, end)))) {
+            // Traverse the commands in the range and read the first
+            // word of each to determine the next action
             while (myReader.hasNext()) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedIOException("Reading " + filename
+                            + " was interrupted");
                 String data = myReader.next();
                 if (data.equals("adduser")) {
-                    String user = myReader.next();
-                    // Synchronize access to the graph object shared between
-                    // the working threads
-                    synchronized (fazebook.users) { 
-                        fazebook.addUser(user);
-                    }
+                    applyAddUser(myReader.next());
+                    commands++;
                 } else if (data.equals("addfriends")) {
                     String user1 = myReader.next();
                     String user2 = myReader.next();
-                    // Synchronize access to the graph object shared between
-                    // the working threads
-                    synchronized (fazebook.users) { 
-                        fazebook.addFriends(user1, user2);
-                    }
+                    applyAddFriends(user1, user2);
+                    commands++;
+                } else if (data.equals("unfriend")) {
+                    String user1 = myReader.next();
+                    String user2 = myReader.next();
+                    applyUnfriend(user1, user2);
+                    commands++;
                 }
             }
-            myReader.close();
-        } catch (IOException e) {
-            System.err.println(e.getMessage());
+            // Scanner hides the IOExceptions of its source, so rethrow them
+            if (myReader.ioException() != null)
+                throw myReader.ioException();
+        }
+        return commands;
+    }
+
+    private void applyAddUser(String user) {
+        pendingUsers.add(user);
+        flushIfFull();
+    }
+
+    private void applyAddFriends(String user1, String user2) {
+        // unfriends are applied after the friendships of their batch, so a
+        // friendship that follows them must wait for the next batch
+        if (!pendingUnfriends.isEmpty())
+            flush();
+        pendingFriends.add(new AbstractMap.SimpleImmutableEntry<>(user1,
+                user2));
+        flushIfFull();
+    }
+
+    private void applyUnfriend(String user1, String user2) {
+        pendingUnfriends.add(new AbstractMap.SimpleImmutableEntry<>(user1,
+                user2));
+        flushIfFull();
+    }
+
+    private void flushIfFull() {
+        if (pendingUsers.size() + pendingFriends.size()
+                + pendingUnfriends.size() >= batchSize)
+            flush();
+    }
+
+    // Applies every pending command to the Fazebook instance
+    private void flush() {
+        if (pendingUsers.isEmpty() && pendingFriends.isEmpty()
+                && pendingUnfriends.isEmpty())
+            return;
+        FazebookMetrics metrics = fazebook.getMetrics();
+        if (fazebook.users.isConcurrent()) {
+            applyPending();
+        } else {
+            // Synchronize access to the graph object shared between the
+            // working threads, once for the whole batch
+            long start = metrics == null ? 0 : System.nanoTime();
+            synchronized (fazebook.users) {
+                if (metrics != null)
+                    metrics.recordLockWait(System.nanoTime() - start);
+                applyPending();
+            }
         }
+        if (metrics != null)
+            metrics.recordBatch(pendingUsers.size() + pendingFriends.size()
+                    + pendingUnfriends.size(), pendingFriends.size());
+        pendingUsers.clear();
+        pendingFriends.clear();
+        pendingUnfriends.clear();
+    }
+
+    private void applyPending() {
+        for (String user : pendingUsers)
+            fazebook.addUser(user);
+        if (!pendingFriends.isEmpty())
+            fazebook.addFriendsBatch(pendingFriends);
+        for (Map.Entry<String, String> pair : pendingUnfriends)
+            fazebook.unfriend(pair.getKey(), pair.getValue());
+    }
+
+    /*
+     * An InputStream over the bytes of a FileChannel from start (inclusive)
+     * to end (exclusive), which reads with positional reads so that several
+     * streams may share nothing but the file itself.
+     */
+    private static class RangeInputStream extends InputStream {
+
+        private FileChannel channel;
+        private long position;
+        private long end;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override public int read(byte[] b, int off, int len)
+                throws IOException {
+            if (position >= end)
+                return -1;
+            len = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+
     }
 
 }
@@ -0,0 +1,264 @@
+package fazebook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The RemotePartition class is a GraphPartition that stands for a partition
+ * reached through a PartitionTransport, which may live in another JVM. Each
+ * call is encoded as one request: an operation code followed by its
+ * arguments, with names written in modified UTF-8 as by DataOutputStream.
+ * The side holding the partition answers each request with handle(), whose
+ * response starts with a status, so an IllegalArgumentException thrown by
+ * the partition is thrown again by the caller, and any other failure as an
+ * IllegalStateException. A request that the transport fails to carry throws
+ * an UncheckedIOException.
+ */
+public class RemotePartition implements GraphPartition {
+
+    // the operation codes of requests
+    private static final byte ADD_USER = 1;
+    private static final byte HAS_USER = 2;
+    private static final byte ADD_FRIENDS = 3;
+    private static final byte REMOVE_FRIEND = 4;
+    private static final byte IS_FRIEND = 5;
+    private static final byte GET_FRIENDS = 6;
+    private static final byte GET_FRIENDS_BATCH = 7;
+    private static final byte GET_USERS = 8;
+
+    // the statuses of responses
+    private static final byte OK = 0;
+    private static final byte ILLEGAL_ARGUMENT = 1;
+    private static final byte FAILED = 2;
+
+    private PartitionTransport transport;
+
+    /**
+     * Constructor that creates a partition whose requests are sent through
+     * the specified transport.
+     *
+     * @param transport The transport to the partition
+     */
+    public RemotePartition(PartitionTransport transport) {
+        if (transport == null)
+            throw new IllegalArgumentException("Parameter is null");
+        this.transport = transport;
+    }
+
+    @Override public boolean addUser(String userName) {
+        return call(ADD_USER, out -> writeName(out, userName),
+                DataInputStream::readBoolean);
+    }
+
+    @Override public boolean hasUser(String userName) {
+        return call(HAS_USER, out -> writeName(out, userName),
+                DataInputStream::readBoolean);
+    }
+
+    @Override public int addFriends(
+            Collection<? extends Map.Entry<String, String>> edges) {
+        if (edges == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return call(ADD_FRIENDS, out -> {
+            out.writeInt(edges.size());
+            for (Map.Entry<String, String> edge : edges) {
+                writeName(out, edge.getKey());
+                writeName(out, edge.getValue());
+            }
+        }, DataInputStream::readInt);
+    }
+
+    @Override public boolean removeFriend(String userName,
+                                          String friendName) {
+        return call(REMOVE_FRIEND, out -> {
+            writeName(out, userName);
+            writeName(out, friendName);
+        }, DataInputStream::readBoolean);
+    }
+
+    @Override public boolean isFriend(String userName, String friendName) {
+        return call(IS_FRIEND, out -> {
+            writeName(out, userName);
+            writeName(out, friendName);
+        }, DataInputStream::readBoolean);
+    }
+
+    @Override public Collection<String> getFriends(String userName) {
+        return call(GET_FRIENDS, out -> writeName(out, userName),
+                RemotePartition::readNames);
+    }
+
+    @Override public Map<String, Collection<String>> getFriends(
+            Collection<String> userNames) {
+        if (userNames == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return call(GET_FRIENDS_BATCH, out -> writeNames(out, userNames),
+                in -> {
+                    int users = in.readInt();
+                    Map<String, Collection<String>> friends =
+                            new HashMap<>(users * 2);
+                    for (int i = 0; i < users; i++)
+                        friends.put(in.readUTF(), readNames(in));
+                    return friends;
+                });
+    }
+
+    @Override public Collection<String> getUsers() {
+        return call(GET_USERS, out -> { }, RemotePartition::readNames);
+    }
+
+    /**
+     * Answers a request sent by a RemotePartition by calling the specified
+     * partition. A failure of the partition is encoded in the response
+     * rather than thrown.
+     *
+     * @param partition The partition that answers the request
+     * @param request   The encoded request
+     * @return  the encoded response.
+     */
+    public static byte[] handle(GraphPartition partition, byte[] request) {
+        if (partition == null || request == null)
+            throw new IllegalArgumentException("Parameter is null");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            try {
+                out.writeByte(OK);
+                dispatch(partition, new DataInputStream(
+                        new ByteArrayInputStream(request)), out);
+            } catch (IllegalArgumentException e) {
+                bytes.reset();
+                out.writeByte(ILLEGAL_ARGUMENT);
+                out.writeUTF(String.valueOf(e.getMessage()));
+            } catch (RuntimeException | IOException e) {
+                bytes.reset();
+                out.writeByte(FAILED);
+                out.writeUTF(String.valueOf(e));
+            }
+        } catch (IOException e) {
+            // a ByteArrayOutputStream is never closed or full
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void dispatch(GraphPartition partition,
+                                 DataInputStream in, DataOutputStream out)
+            throws IOException {
+        byte operation = in.readByte();
+        switch (operation) {
+            case ADD_USER:
+                out.writeBoolean(partition.addUser(in.readUTF()));
+                break;
+            case HAS_USER:
+                out.writeBoolean(partition.hasUser(in.readUTF()));
+                break;
+            case ADD_FRIENDS:
+                int count = in.readInt();
+                List<Map.Entry<String, String>> edges =
+                        new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    edges.add(new AbstractMap.SimpleImmutableEntry<>(
+                            in.readUTF(), in.readUTF()));
+                out.writeInt(partition.addFriends(edges));
+                break;
+            case REMOVE_FRIEND:
+                out.writeBoolean(partition.removeFriend(in.readUTF(),
+                        in.readUTF()));
+                break;
+            case IS_FRIEND:
+                out.writeBoolean(partition.isFriend(in.readUTF(),
+                        in.readUTF()));
+                break;
+            case GET_FRIENDS:
+                writeNames(out, partition.getFriends(in.readUTF()));
+                break;
+            case GET_FRIENDS_BATCH:
+                Map<String, Collection<String>> friends =
+                        partition.getFriends(readNames(in));
+                out.writeInt(friends.size());
+                for (Map.Entry<String, Collection<String>> user
+                        : friends.entrySet()) {
+                    out.writeUTF(user.getKey());
+                    writeNames(out, user.getValue());
+                }
+                break;
+            case GET_USERS:
+                writeNames(out, partition.getUsers());
+                break;
+            default:
+                throw new IOException("Unknown operation " + operation);
+        }
+    }
+
+    private <T> T call(byte operation, Encoder request, Decoder<T> response) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(operation);
+            request.write(out);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    transport.call(bytes.toByteArray())));
+            byte status = in.readByte();
+            if (status == ILLEGAL_ARGUMENT)
+                throw new IllegalArgumentException(in.readUTF());
+            if (status != OK)
+                throw new IllegalStateException("Partition failed: "
+                        + in.readUTF());
+            return response.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes a name, rejecting null as a local partition would
+    private static void writeName(DataOutputStream out, String name)
+            throws IOException {
+        if (name == null)
+            throw new IllegalArgumentException("Parameter is null");
+        out.writeUTF(name);
+    }
+
+    // Writes the names, or -1 for null
+    private static void writeNames(DataOutputStream out,
+                                   Collection<String> names)
+            throws IOException {
+        if (names == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(names.size());
+        for (String name : names)
+            writeName(out, name);
+    }
+
+    private static Collection<String> readNames(DataInputStream in)
+            throws IOException {
+        int count = in.readInt();
+        if (count < 0)
+            return null;
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            names.add(in.readUTF());
+        return names;
+    }
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Decoder<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+}
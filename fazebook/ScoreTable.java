@@ -0,0 +1,132 @@
+package fazebook;
+
+/**
+ * The ScoreTable class is an open-addressing hash table from keys to a
+ * primitive int count and a primitive double score, used to accumulate
+ * per-candidate totals without boxing an Integer or a Double and without
+ * allocating a map entry for each candidate. Keys may also be excluded, after
+ * which every later addition for them is ignored. Callers iterate over the
+ * table by slot, skipping slots for which isCandidate() is false.
+ *
+ * @param <V>   A generic that specifies the object type of the keys.
+ */
+class ScoreTable<V> {
+
+    // the count of an excluded key
+    private static final int EXCLUDED = -1;
+
+    private Object[] keys;
+    private int[] counts;
+    private double[] scores;
+    private int size;
+
+    /**
+     * Constructor that creates a table sized for the expected number of keys.
+     *
+     * @param expected  The expected number of keys, used to size the table.
+     */
+    ScoreTable(int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Adds one to the count of the key and the given amount to its score,
+     * unless the key has been excluded.
+     *
+     * @param key       The key to be added to.
+     * @param score     The amount to be added to the score of the key.
+     */
+    void add(V key, double score) {
+        int slot = slotOf(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            size++;
+        } else if (counts[slot] == EXCLUDED) {
+            return;
+        }
+        counts[slot]++;
+        scores[slot] += score;
+        if (size * 2 > keys.length)
+            rehash();
+    }
+
+    /**
+     * Excludes the key, discarding anything already added for it.
+     *
+     * @param key       The key to be excluded.
+     */
+    void exclude(V key) {
+        int slot = slotOf(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            size++;
+        }
+        counts[slot] = EXCLUDED;
+        scores[slot] = 0;
+        if (size * 2 > keys.length)
+            rehash();
+    }
+
+    /**
+     * @return the number of slots, which bounds the slots to iterate over.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param slot  A slot of the table.
+     * @return true if the slot holds a key that has not been excluded.
+     */
+    boolean isCandidate(int slot) {
+        return keys[slot] != null && counts[slot] != EXCLUDED;
+    }
+
+    @SuppressWarnings("unchecked")
+    V keyAt(int slot) {
+        return (V) keys[slot];
+    }
+
+    int countAt(int slot) {
+        return counts[slot];
+    }
+
+    double scoreAt(int slot) {
+        return scores[slot];
+    }
+
+    // Returns the slot holding the key, or the empty slot it belongs in
+    private int slotOf(Object key) {
+        int mask = keys.length - 1;
+        int hash = key.hashCode() * 0x9e3779b9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(key))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash() {
+        Object[] oldKeys = keys;
+        int[] oldCounts = counts;
+        double[] oldScores = scores;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                scores[slot] = oldScores[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        counts = new int[capacity];
+        scores = new double[capacity];
+    }
+
+}
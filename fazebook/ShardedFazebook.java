@@ -0,0 +1,331 @@
+package fazebook;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * The ShardedFazebook class is a social network like Fazebook whose users
+ * are split across several GraphPartitions by a hash of their names, so that
+ * no single EWDGraph, heap, or lock holds all of them. Each partition holds
+ * its users and their friends; a friendship between users of two partitions
+ * is held as one direction in each, and is added to both at once.
+ *
+ * The friends of a user are read from its own partition in one call.
+ * Queries that read the friends of several users, such as
+ * peopleYouMayWannaKnow() and getAllUsers(), group the users by partition
+ * and call every partition involved in parallel, once each, on the
+ * ExecutorService given to the constructor, then merge the results.
+ *
+ * The partitions may be LocalPartitions in the current JVM or
+ * RemotePartitions in others. The users of a partition are picked from the
+ * hash code of the name, which is the same in every JVM, so every process
+ * that agrees on the order of the partitions agrees on where each user is.
+ * Changes that span two partitions are not atomic: a concurrent query may
+ * see one direction of a new friendship before the other.
+ */
+public class ShardedFazebook {
+
+    private GraphPartition[] partitions;
+    private ExecutorService executor;
+
+    /**
+     * Constructor that creates the specified number of empty LocalPartitions
+     * using the COMPACT storage engine, and queries them in parallel on the
+     * common ForkJoinPool.
+     *
+     * @param shards    The number of partitions, which must be positive
+     */
+    public ShardedFazebook(int shards) {
+        this(shards, EWDGraph.Storage.COMPACT);
+    }
+
+    /**
+     * Constructor that creates the specified number of empty LocalPartitions
+     * using the specified storage engine, and queries them in parallel on
+     * the common ForkJoinPool.
+     *
+     * @param shards    The number of partitions, which must be positive
+     * @param storage   The storage engine of every partition
+     */
+    public ShardedFazebook(int shards, EWDGraph.Storage storage) {
+        this(localPartitions(shards, storage), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that splits users across the specified partitions, in
+     * order, and queries them in parallel on the specified ExecutorService.
+     *
+     * @param partitions    The partitions, of which there must be at least
+     *                      one
+     * @param executor      The ExecutorService that calls partitions, which
+     *                      the current object never shuts down
+     */
+    public ShardedFazebook(List<? extends GraphPartition> partitions,
+                           ExecutorService executor) {
+        if (partitions == null || executor == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (partitions.isEmpty())
+            throw new IllegalArgumentException("Parameter is out of range");
+        this.partitions = partitions.toArray(new GraphPartition[0]);
+        for (GraphPartition partition : this.partitions) {
+            if (partition == null)
+                throw new IllegalArgumentException("Parameter is null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * @return  the number of partitions.
+     */
+    public int getShardCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Retrieves the partition that holds the specified user, whether or not
+     * the user exists.
+     *
+     * @param userName  The name of the user
+     * @return  the index of the partition, from 0 to getShardCount() - 1.
+     */
+    public int getShard(String userName) {
+        if (userName == null)
+            throw new IllegalArgumentException("Parameter is null");
+        int hash = userName.hashCode();
+        // spread the high bits, which the low bits of String hashes lack
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash * 0x9E3779B9, partitions.length);
+    }
+
+    /**
+     * Adds the user to its partition. As with Fazebook.addUser(), false is
+     * returned if the user exists or userName is not a valid user name.
+     *
+     * @param userName  The name of the user
+     * @return  true if the user was added; false otherwise.
+     */
+    public boolean addUser(String userName) {
+        if (userName == null || userName.isEmpty())
+            return false;
+        return partition(userName).addUser(userName);
+    }
+
+    /**
+     * Gathers the users of every partition in parallel.
+     *
+     * @return  a Collection of the names of every user.
+     */
+    public Collection<String> getAllUsers() {
+        List<Collection<String>> shards = fanOut(allShards(),
+                shard -> partitions[shard].getUsers());
+        List<String> users = new ArrayList<>();
+        for (int shard = 0; shard < partitions.length; shard++) {
+            // skip the friends of other partitions added with friendships
+            for (String user : shards.get(shard)) {
+                if (getShard(user) == shard)
+                    users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Creates a friendship between the two users, adding either user that
+     * does not exist, as Fazebook.addFriends() does. If the users belong to
+     * different partitions, both partitions are changed in parallel.
+     *
+     * @param userName1     The name of the first user in the friendship
+     * @param userName2     The name of the second user in the friendship
+     * @return  true if the friendship was established; false if either name
+     *          is not a valid user name.
+     */
+    public boolean addFriends(String userName1, String userName2) {
+        if (userName1 == null || userName2 == null || userName1.isEmpty()
+                || userName2.isEmpty())
+            return false;
+        addFriendsBatch(List.of(Map.entry(userName1, userName2)));
+        return true;
+    }
+
+    /**
+     * Creates a friendship between the two users of each pair, as
+     * addFriends() would for each pair, but with one call to each partition
+     * involved, made in parallel. Pairs that contain a null or empty user
+     * name are skipped.
+     *
+     * @param pairs     The names of the two users of each friendship, as the
+     *                  key and value of a Map.Entry
+     * @return  the number of friendships that were established.
+     */
+    public int addFriendsBatch(
+            Collection<? extends Map.Entry<String, String>> pairs) {
+        if (pairs == null)
+            return 0;
+        List<List<Map.Entry<String, String>>> byShard = perShard();
+        int friends = 0;
+        for (Map.Entry<String, String> pair : pairs) {
+            String userName1 = pair.getKey();
+            String userName2 = pair.getValue();
+            if (userName1 != null && userName2 != null
+                    && !userName1.isEmpty() && !userName2.isEmpty()) {
+                // each direction is held by the partition of its user
+                byShard.get(getShard(userName1)).add(
+                        Map.entry(userName1, userName2));
+                byShard.get(getShard(userName2)).add(
+                        Map.entry(userName2, userName1));
+                friends++;
+            }
+        }
+        fanOut(nonEmpty(byShard),
+                shard -> partitions[shard].addFriends(byShard.get(shard)));
+        return friends;
+    }
+
+    /**
+     * Retrieves the friends of the user from its partition.
+     *
+     * @param userName  The name of the user
+     * @return  a Collection of the friends of the user, which is empty if
+     *          the user does not exist; null if userName is null.
+     */
+    public Collection<String> getFriends(String userName) {
+        if (userName == null)
+            return null;
+        return partition(userName).getFriends(userName);
+    }
+
+    /**
+     * @param userName1     The name of the first user
+     * @param userName2     The name of the second user
+     * @return  true if userName2 is a friend of userName1; false otherwise,
+     *          including when either name is null.
+     */
+    public boolean areFriends(String userName1, String userName2) {
+        if (userName1 == null || userName2 == null)
+            return false;
+        return partition(userName1).isFriend(userName1, userName2);
+    }
+
+    /**
+     * Terminates the friendship of userName1 with userName2, as
+     * Fazebook.unfriend() does.
+     *
+     * @param userName1     The name of the first user in the friendship
+     * @param userName2     The name of the second user in the friendship
+     * @return  true if the friendship was terminated; false otherwise.
+     */
+    public boolean unfriend(String userName1, String userName2) {
+        if (userName1 == null || userName2 == null || userName1.isEmpty()
+                || userName2.isEmpty())
+            return false;
+        return partition(userName1).removeFriend(userName1, userName2);
+    }
+
+    /**
+     * Retrieves the friends of the friends of the user, as
+     * Fazebook.peopleYouMayWannaKnow() does. The friends of the user are
+     * grouped by partition, and the friends of each group are retrieved
+     * from its partition in one call, in parallel with the other groups.
+     *
+     * @param userName  The name of the user
+     * @return  a Collection of the suggested friends of the user; null if
+     *          userName is null or empty.
+     */
+    public Collection<String> peopleYouMayWannaKnow(String userName) {
+        if (userName == null || userName.isEmpty())
+            return null;
+        Collection<String> suggested = new HashSet<>();
+        List<List<String>> byShard = perShard();
+        for (String friend : getFriends(userName)) {
+            if (!friend.equals(userName))
+                byShard.get(getShard(friend)).add(friend);
+        }
+        List<Map<String, Collection<String>>> shards = fanOut(
+                nonEmpty(byShard),
+                shard -> partitions[shard].getFriends(byShard.get(shard)));
+        for (Map<String, Collection<String>> shard : shards) {
+            for (Collection<String> friendsOfFriend : shard.values())
+                suggested.addAll(friendsOfFriend);
+        }
+        suggested.remove(userName);
+        return suggested;
+    }
+
+    private GraphPartition partition(String userName) {
+        return partitions[getShard(userName)];
+    }
+
+    private <T> List<List<T>> perShard() {
+        List<List<T>> byShard = new ArrayList<>(partitions.length);
+        for (int shard = 0; shard < partitions.length; shard++)
+            byShard.add(new ArrayList<>());
+        return byShard;
+    }
+
+    private int[] allShards() {
+        int[] shards = new int[partitions.length];
+        for (int shard = 0; shard < shards.length; shard++)
+            shards[shard] = shard;
+        return shards;
+    }
+
+    private static int[] nonEmpty(List<? extends List<?>> byShard) {
+        return IntStream.range(0, byShard.size())
+                .filter(shard -> !byShard.get(shard).isEmpty()).toArray();
+    }
+
+    /*
+     * Calls each of the shards in parallel and returns their results in the
+     * same order. The first shard is called in the current thread, which
+     * spares a hand-off when only one shard is involved.
+     */
+    private <T> List<T> fanOut(int[] shards, IntFunction<T> call) {
+        if (shards.length == 0)
+            return Collections.emptyList();
+        List<Future<T>> pending = new ArrayList<>(shards.length - 1);
+        for (int i = 1; i < shards.length; i++) {
+            int shard = shards[i];
+            pending.add(executor.submit(() -> call.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        results.add(call.apply(shards[0]));
+        for (Future<T> result : pending)
+            results.add(await(result));
+        return results;
+    }
+
+    private static <T> T await(Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for "
+                    + "a partition", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static List<GraphPartition> localPartitions(
+            int shards, EWDGraph.Storage storage) {
+        if (shards <= 0)
+            throw new IllegalArgumentException("Parameter is out of range");
+        List<GraphPartition> partitions = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++)
+            partitions.add(new LocalPartition(storage));
+        return partitions;
+    }
+
+}
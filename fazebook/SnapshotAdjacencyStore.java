@@ -0,0 +1,245 @@
+package fazebook;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The SnapshotAdjacencyStore class is a thread-safe storage engine for the
+ * EWDGraph class that serves a GraphSnapshot directly. The snapshot is
+ * either memory-mapped from a file, so a graph opened from a snapshot is
+ * usable as soon as the file is mapped, or held on the heap, as the
+ * snapshots built by a BulkLoader are. The snapshot itself is never
+ * modified. Instead, the first change to the edges
+ * of a vertex copies its edges from the snapshot into a ConcurrentHashMap
+ * overlay, and from then on the overlay is authoritative for that vertex.
+ * Vertices added after the snapshot was opened live only in the overlay.
+ * Reads of vertices that were never changed cost a binary search over the
+ * edges of the snapshot and allocate nothing but the decoded names.
+ */
+class SnapshotAdjacencyStore implements AdjacencyStore<String> {
+
+    private GraphSnapshot snapshot;
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>>
+            overlay = new ConcurrentHashMap<>();
+    private AtomicInteger addedVertices = new AtomicInteger();
+    private LongAdder edgeDelta = new LongAdder();
+
+    SnapshotAdjacencyStore(GraphSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override public boolean addVertex(String vertex) {
+        if (snapshot.idOf(vertex) >= 0)
+            return false;
+        boolean added = overlay.putIfAbsent(vertex,
+                new ConcurrentHashMap<String, Integer>()) == null;
+        if (added)
+            addedVertices.incrementAndGet();
+        return added;
+    }
+
+    @Override public boolean containsVertex(String vertex) {
+        return overlay.containsKey(vertex) || snapshot.idOf(vertex) >= 0;
+    }
+
+    @Override public boolean putEdge(String srcVert, String destVert,
+                                     int weight) {
+        addVertex(destVert);
+        boolean created = promote(srcVert).put(destVert, weight) == null;
+        if (created)
+            edgeDelta.increment();
+        return created;
+    }
+
+    @Override public boolean removeEdge(String srcVert, String destVert) {
+        if (!containsVertex(srcVert))
+            return false;
+        boolean removed = promote(srcVert).remove(destVert) != null;
+        if (removed)
+            edgeDelta.decrement();
+        return removed;
+    }
+
+    @Override public int getWeight(String srcVert, String destVert) {
+        ConcurrentHashMap<String, Integer> neighbors = overlay.get(srcVert);
+        if (neighbors != null) {
+            Integer weight = neighbors.get(destVert);
+            return weight == null ? 0 : weight;
+        }
+        int src = snapshot.idOf(srcVert);
+        int dest = snapshot.idOf(destVert);
+        if (src < 0 || dest < 0)
+            return 0;
+        long edge = snapshot.findEdge(src, dest);
+        return edge < 0 ? 0 : snapshot.weight(edge);
+    }
+
+    @Override public int degree(String vertex) {
+        ConcurrentHashMap<String, Integer> neighbors = overlay.get(vertex);
+        if (neighbors != null)
+            return neighbors.size();
+        int id = snapshot.idOf(vertex);
+        return id < 0 ? 0
+                : (int) (snapshot.edgeEnd(id) - snapshot.edgeStart(id));
+    }
+
+    @Override public int vertexCount() {
+        return snapshot.getVertexCount() + addedVertices.get();
+    }
+
+    @Override public long edgeCount() {
+        return snapshot.getEdgeCount() + edgeDelta.sum();
+    }
+
+    @Override public Collection<String> copyVertices() {
+        return new HashSet<>(vertexView());
+    }
+
+    @Override public Collection<String> copyNeighbors(String vertex) {
+        return new HashSet<>(neighborView(vertex));
+    }
+
+    @Override public Collection<String> vertexView() {
+        return new AbstractCollection<String>() {
+            @Override public int size() {
+                return vertexCount();
+            }
+
+            @Override public boolean contains(Object vertex) {
+                return vertex instanceof String
+                        && containsVertex((String) vertex);
+            }
+
+            // the snapshot vertices, then the vertices added since
+            @Override public Iterator<String> iterator() {
+                Iterator<String> added = overlay.keySet().stream()
+                        .filter(v -> snapshot.idOf(v) < 0).iterator();
+                return new Iterator<String>() {
+                    private int next;
+
+                    @Override public boolean hasNext() {
+                        return next < snapshot.getVertexCount()
+                                || added.hasNext();
+                    }
+
+                    @Override public String next() {
+                        if (next < snapshot.getVertexCount())
+                            return snapshot.name(next++);
+                        return added.next();
+                    }
+                };
+            }
+        };
+    }
+
+    // the snapshot vertices by ID, then the vertices added since
+    @Override public Spliterator<String> vertexSpliterator() {
+        return Stream.concat(StreamSupport.stream(new IdSpliterator<>(
+                snapshot.getVertexCount(), snapshot::name, 0), false),
+                overlay.keySet().stream().filter(v -> snapshot.idOf(v) < 0))
+                .spliterator();
+    }
+
+    @Override public Collection<String> neighborView(String vertex) {
+        ConcurrentHashMap<String, Integer> neighbors = overlay.get(vertex);
+        if (neighbors != null)
+            return Collections.unmodifiableSet(neighbors.keySet());
+        int id = snapshot.idOf(vertex);
+        if (id < 0)
+            return Collections.emptySet();
+        return new AbstractCollection<String>() {
+            @Override public int size() {
+                return (int) (snapshot.edgeEnd(id) - snapshot.edgeStart(id));
+            }
+
+            @Override public boolean contains(Object neighbor) {
+                if (neighbor == null)
+                    return false;
+                int dest = snapshot.idOf(neighbor);
+                return dest >= 0 && snapshot.findEdge(id, dest) >= 0;
+            }
+
+            @Override public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private long next = snapshot.edgeStart(id);
+
+                    @Override public boolean hasNext() {
+                        return next < snapshot.edgeEnd(id);
+                    }
+
+                    @Override public String next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        return snapshot.name(snapshot.destination(next++));
+                    }
+                };
+            }
+        };
+    }
+
+    @Override public void forEachNeighbor(
+            String vertex, ObjIntConsumer<? super String> action) {
+        ConcurrentHashMap<String, Integer> neighbors = overlay.get(vertex);
+        if (neighbors != null) {
+            for (Map.Entry<String, Integer> edge : neighbors.entrySet())
+                action.accept(edge.getKey(), edge.getValue());
+            return;
+        }
+        int id = snapshot.idOf(vertex);
+        if (id >= 0) {
+            for (long e = snapshot.edgeStart(id); e < snapshot.edgeEnd(id); e++)
+                action.accept(snapshot.name(snapshot.destination(e)),
+                        snapshot.weight(e));
+        }
+    }
+
+    @Override public boolean isThreadSafe() {
+        return true;
+    }
+
+    /*
+     * The mapped snapshot lives outside the heap; only the overlay and the
+     * array of decoded names count, as the names are decoded on demand.
+     */
+    @Override public long estimatedHeapBytes() {
+        long bytes = 16 + 4L * snapshot.getVertexCount()
+                + HashAdjacencyStore.hashMapBytes(overlay.size()) + 16;
+        for (ConcurrentHashMap<String, Integer> neighbors : overlay.values())
+            bytes += HashAdjacencyStore.hashMapBytes(neighbors.size()) + 16;
+        return bytes;
+    }
+
+    // Returns the overlay map of the vertex, copying its edges out of the
+    // snapshot the first time it is changed
+    private ConcurrentHashMap<String, Integer> promote(String vertex) {
+        ConcurrentHashMap<String, Integer> neighbors = overlay.get(vertex);
+        if (neighbors != null)
+            return neighbors;
+        return overlay.computeIfAbsent(vertex, v -> {
+            int id = snapshot.idOf(v);
+            if (id < 0) {
+                addedVertices.incrementAndGet();
+                return new ConcurrentHashMap<>();
+            }
+            ConcurrentHashMap<String, Integer> copy = new ConcurrentHashMap<>(
+                    (int) (snapshot.edgeEnd(id) - snapshot.edgeStart(id)) * 2);
+            for (long e = snapshot.edgeStart(id); e < snapshot.edgeEnd(id); e++)
+                copy.put(snapshot.name(snapshot.destination(e)),
+                        snapshot.weight(e));
+            return copy;
+        });
+    }
+
+}
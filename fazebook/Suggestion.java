@@ -0,0 +1,41 @@
+package fazebook;
+
+/**
+ * The Suggestion class holds one ranked friend suggestion produced by the
+ * FriendSuggester class: the suggested user, the number of mutual friends
+ * that the suggested user shares with the user the suggestion was made for,
+ * and the score the suggestion was ranked by. The score equals the number of
+ * mutual friends unless weighted scoring was requested.
+ *
+ * @param <V>   A generic that specifies the object type of the suggested
+ *              user.
+ */
+public class Suggestion<V> {
+
+    private V user;
+    private int mutualFriends;
+    private double score;
+
+    Suggestion(V user, int mutualFriends, double score) {
+        this.user = user;
+        this.mutualFriends = mutualFriends;
+        this.score = score;
+    }
+
+    public V getUser() {
+        return user;
+    }
+
+    public int getMutualFriends() {
+        return mutualFriends;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override public String toString() {
+        return user + " (" + mutualFriends + " mutual, score " + score + ")";
+    }
+
+}
@@ -0,0 +1,357 @@
+package fazebook;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TailFollower class follows files of adduser, addfriends, and unfriend
+ * commands that other processes keep appending to, and applies each new
+ * command to a Fazebook object shortly after its line is complete. The
+ * follower keeps the offset of the first unread byte of each file, and each
+ * poll() reads every complete line past the offsets with a Reader, which
+ * applies them in batches, so a burst of appended lines is applied as a few
+ * batches rather than one command at a time. A line without its newline is
+ * left for a later poll, and a file that shrinks is taken to have been
+ * truncated and is read again from its start. Files that do not exist yet
+ * are skipped until they do.
+ *
+ * The offsets are saved to the offsets file, if one is given, after every
+ * poll that reads anything, and are loaded from it by the constructor, so a
+ * follower started again after a restart resumes where the last one
+ * stopped. A crash between applying commands and saving their offsets
+ * applies them again on restart, which leaves the Fazebook object as it
+ * was, since the last command about each user or pair of users decides its
+ * outcome.
+ *
+ * The run() method polls whenever a WatchService reports a change to the
+ * directory of a file, and every pollMillis otherwise, in case a change is
+ * missed or the file system does not report changes, until close() is
+ * called or the thread running it is interrupted.
+ */
+public class TailFollower implements Runnable, Closeable {
+
+    /** The time between polls when none is specified, in milliseconds. */
+    public static final long DEFAULT_POLL_MILLIS = 1000;
+
+    // the bytes read at a time when looking for the end of the last line
+    private static final int SCAN_BYTES = 8192;
+
+    private Fazebook fazebook;
+    private List<Path> files = new ArrayList<>();
+    private Path offsetsFile;
+    private long pollMillis;
+    private int batchSize;
+    private Map<Path, Long> offsets = new HashMap<>();
+    private long commands;
+    private volatile boolean closed;
+    private volatile WatchService watcher;
+    private volatile Thread runner;
+
+    /**
+     * Constructor that creates a follower of the specified files that polls
+     * every DEFAULT_POLL_MILLIS and applies commands in batches of
+     * Reader.DEFAULT_BATCH_SIZE.
+     *
+     * @param fazebook      The Fazebook object that commands are applied to
+     * @param filenames     The names of the files to follow
+     * @param offsetsFile   The name of the file that the offsets are saved
+     *                      to and loaded from; null to not save them
+     * @throws IOException  if the offsets file exists but could not be read.
+     */
+    public TailFollower(Fazebook fazebook, Collection<String> filenames,
+                        String offsetsFile) throws IOException {
+        this(fazebook, filenames, offsetsFile, DEFAULT_POLL_MILLIS,
+                Reader.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor that creates a follower of the specified files with the
+     * specified time between polls and number of commands applied at once.
+     *
+     * @param fazebook      The Fazebook object that commands are applied to
+     * @param filenames     The names of the files to follow
+     * @param offsetsFile   The name of the file that the offsets are saved
+     *                      to and loaded from; null to not save them
+     * @param pollMillis    The longest time between polls, which must be
+     *                      positive
+     * @param batchSize     The number of commands applied at once, which must
+     *                      be positive
+     * @throws IOException  if the offsets file exists but could not be read.
+     */
+    public TailFollower(Fazebook fazebook, Collection<String> filenames,
+                        String offsetsFile, long pollMillis, int batchSize)
+            throws IOException {
+        if (fazebook == null || filenames == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (pollMillis <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
+        this.fazebook = fazebook;
+        for (String filename : filenames) {
+            if (filename == null)
+                throw new IllegalArgumentException("Parameter is null");
+            files.add(path(filename));
+        }
+        this.pollMillis = pollMillis;
+        this.batchSize = batchSize;
+        if (offsetsFile != null) {
+            this.offsetsFile = path(offsetsFile);
+            loadOffsets();
+        }
+    }
+
+    /**
+     * Reads every complete line appended to the files since the last poll
+     * and applies its command, then saves the offsets if anything was read.
+     *
+     * @return the number of commands that were read and acted upon.
+     * @throws IOException  if a file could not be read or the offsets could
+     *                      not be saved; the commands read from the files
+     *                      before it are still applied and their offsets
+     *                      kept.
+     */
+    public synchronized long poll() throws IOException {
+        long read = 0;
+        boolean moved = false;
+        try {
+            for (Path file : files) {
+                if (!Files.exists(file))
+                    continue;
+                long offset = offsets.getOrDefault(file, 0L);
+                long end;
+                try (FileChannel channel = FileChannel.open(file,
+                        StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    if (size < offset)
+                        offset = 0;
+                    end = lineEnd(channel, offset, size);
+                }
+                if (end != offsets.getOrDefault(file, 0L))
+                    moved = true;
+                if (end > offset) {
+                    read += new Reader(fazebook, file.toString(), offset, end,
+                            Reader.Parser.MAPPED, batchSize).process();
+                }
+                offsets.put(file, end);
+            }
+        } finally {
+            commands += read;
+            if (moved && offsetsFile != null)
+                saveOffsets();
+        }
+        return read;
+    }
+
+    /**
+     * @param filename  The name of a followed file
+     * @return the offset of the first byte of the file that has not been
+     *         read; 0 if none has.
+     */
+    public synchronized long getOffset(String filename) {
+        if (filename == null)
+            throw new IllegalArgumentException("Parameter is null");
+        return offsets.getOrDefault(path(filename), 0L);
+    }
+
+    /**
+     * @return the number of commands read and acted upon by the current
+     *         follower.
+     */
+    public synchronized long getCommandsApplied() {
+        return commands;
+    }
+
+    /*
+     * Polls until close() is called or the current thread is interrupted,
+     * waiting between polls for a change to the directory of a file or for
+     * pollMillis to pass. An IOException is reported on the standard error
+     * stream, as with Reader, and polling goes on.
+     */
+    @Override public void run() {
+        runner = Thread.currentThread();
+        try {
+            watcher = watch();
+            while (!closed && !Thread.currentThread().isInterrupted()) {
+                try {
+                    poll();
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+                if (!await())
+                    break;
+            }
+        } finally {
+            closeWatcher();
+            runner = null;
+        }
+    }
+
+    /**
+     * Stops the polling of run() and waits for it to return, so that no
+     * command is applied once this method returns.
+     */
+    @Override public void close() {
+        closed = true;
+        closeWatcher();
+        Thread running = runner;
+        if (running != null && running != Thread.currentThread()) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Watches the directories of the files, or returns null if the file
+    // system cannot, in which case the follower only polls
+    private WatchService watch() {
+        Set<Path> directories = new HashSet<>();
+        for (Path file : files)
+            directories.add(file.getParent());
+        WatchService service = null;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            for (Path directory : directories) {
+                if (Files.isDirectory(directory))
+                    directory.register(service,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            if (service != null) {
+                try {
+                    service.close();
+                } catch (IOException ignored) {
+                    // nothing is watched either way
+                }
+            }
+            return null;
+        }
+    }
+
+    // Waits for a change or for pollMillis to pass, and returns false if the
+    // follower should stop
+    private boolean await() {
+        WatchService service = watcher;
+        try {
+            if (service == null) {
+                Thread.sleep(pollMillis);
+                return !closed;
+            }
+            WatchKey key = service.poll(pollMillis, TimeUnit.MILLISECONDS);
+            // drain every pending change, since one poll reads them all
+            while (key != null) {
+                key.pollEvents();
+                key.reset();
+                key = service.poll();
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+
+    private void closeWatcher() {
+        WatchService service = watcher;
+        watcher = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ignored) {
+                // the follower is stopping either way
+            }
+        }
+    }
+
+    /*
+     * Returns the offset just past the last newline between start and end,
+     * or start if there is none, scanning backwards from end since only the
+     * last line can be incomplete.
+     */
+    private static long lineEnd(FileChannel channel, long start, long end)
+            throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BYTES);
+        long position = end;
+        while (position > start) {
+            int length = (int) Math.min(SCAN_BYTES, position - start);
+            long from = position - length;
+            block.clear().limit(length);
+            while (block.hasRemaining()) {
+                if (channel.read(block, from + block.position()) < 0)
+                    return start;
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                if (block.get(i) == '\n')
+                    return from + i + 1;
+            }
+            position = from;
+        }
+        return start;
+    }
+
+    private void loadOffsets() throws IOException {
+        if (!Files.exists(offsetsFile))
+            return;
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(offsetsFile)) {
+            saved.load(in);
+        }
+        try {
+            for (String filename : saved.stringPropertyNames())
+                offsets.put(Paths.get(filename), Long.parseLong(
+                        saved.getProperty(filename)));
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupted offsets file " + offsetsFile,
+                    e);
+        }
+    }
+
+    // Writes the offsets to a temporary file, forces it, and renames it over
+    // the offsets file, so the offsets file is never partly written
+    private void saveOffsets() throws IOException {
+        Properties saved = new Properties();
+        for (Map.Entry<Path, Long> offset : offsets.entrySet())
+            saved.setProperty(offset.getKey().toString(),
+                    Long.toString(offset.getValue()));
+        Path temp = offsetsFile.resolveSibling(offsetsFile.getFileName()
+                + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            saved.store(out, "TailFollower offsets");
+            out.getFD().sync();
+        }
+        Files.move(temp, offsetsFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path path(String filename) {
+        return Paths.get(filename).toAbsolutePath().normalize();
+    }
+
+}
@@ -0,0 +1,239 @@
+package fazebook;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TriangleCounter class counts the triangles of an EWDGraph object,
+ * ignoring the direction of its edges, and derives from them the clustering
+ * coefficient of every vertex and of the whole graph. A triangle is three
+ * vertices that are all neighbors of each other, and the clustering
+ * coefficient of a vertex is the fraction of the pairs of its neighbors
+ * that are neighbors themselves.
+ *
+ * The vertices are ordered by degree, and each edge is kept once, at the
+ * end that comes first in that order, in a sorted int array of the dense
+ * IDs of the other ends. Each triangle is then found exactly once, at its
+ * first vertex, by a merge of two of those arrays. Ordering by degree keeps
+ * the arrays of hubs short, since most of their edges are kept at the
+ * other end, which bounds the work of a merge by the smaller degrees in the
+ * graph. Building the arrays and counting are both split across the workers
+ * of a ForkJoinPool by ranges of vertices, with the per-vertex counts kept
+ * in atomic primitive arrays.
+ *
+ * The graph must not be changed while the triangles are being counted,
+ * unless it is concurrent, in which case changes made meanwhile may or may
+ * not be reflected.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices of
+ *              the graph.
+ */
+public class TriangleCounter<V> {
+
+    private VertexIndex<V> index;
+    private int[] degrees;
+    private long[] triangles;
+    private long total;
+
+    /**
+     * Constructor that counts the triangles of the specified graph on the
+     * common ForkJoinPool.
+     *
+     * @param graph     The EWDGraph object whose triangles are counted
+     */
+    public TriangleCounter(EWDGraph<V> graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that counts the triangles of the specified graph on the
+     * specified ForkJoinPool.
+     *
+     * @param graph     The EWDGraph object whose triangles are counted
+     * @param pool      The ForkJoinPool that the counting runs on
+     */
+    public TriangleCounter(EWDGraph<V> graph, ForkJoinPool pool) {
+        if (graph == null || pool == null)
+            throw new IllegalArgumentException("Parameter is null");
+        index = new VertexIndex<>(graph.getNumEWDGraphVertices());
+        for (V vertex : graph.getEWDGraphVerticesView())
+            index.intern(vertex);
+        int n = index.size();
+        int[] order = new int[n];
+        ParallelRange.forEach(pool, n, id ->
+                order[id] = graph.degree(index.vertexAt(id)));
+
+        // count the edges kept at each vertex, then lay the arrays of every
+        // vertex out back to back, starting at their prefix sums
+        AtomicIntegerArray counts = new AtomicIntegerArray(n);
+        ParallelRange.forEach(pool, n, id -> forEachEdge(graph, order, id,
+                (first, second) -> counts.incrementAndGet(first)));
+        int[] offsets = new int[n + 1];
+        for (int id = 0; id < n; id++) {
+            long end = (long) offsets[id] + counts.get(id);
+            if (end > Integer.MAX_VALUE)
+                throw new IllegalStateException("Graph has too many edges");
+            offsets[id + 1] = (int) end;
+            counts.set(id, offsets[id]);
+        }
+        int[] ends = new int[offsets[n]];
+        ParallelRange.forEach(pool, n, id -> forEachEdge(graph, order, id,
+                (first, second) -> ends[counts.getAndIncrement(first)] =
+                        second));
+
+        // an edge in both directions was kept twice, so each array is
+        // sorted and its duplicates dropped; lengths holds what remains
+        int[] lengths = new int[n];
+        AtomicIntegerArray undirected = new AtomicIntegerArray(n);
+        ParallelRange.forEach(pool, n, id -> {
+            Arrays.sort(ends, offsets[id], offsets[id + 1]);
+            int length = 0;
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                if (length == 0 || ends[offsets[id] + length - 1] != ends[i])
+                    ends[offsets[id] + length++] = ends[i];
+            }
+            lengths[id] = length;
+            undirected.addAndGet(id, length);
+            for (int i = offsets[id]; i < offsets[id] + length; i++)
+                undirected.incrementAndGet(ends[i]);
+        });
+
+        AtomicLongArray counted = new AtomicLongArray(n);
+        LongAdder found = new LongAdder();
+        ParallelRange.forEach(pool, n, first -> {
+            long atFirst = 0;
+            for (int i = offsets[first]; i < offsets[first] + lengths[first];
+                    i++) {
+                int second = ends[i];
+                // merge the two sorted arrays; every common ID closes a
+                // triangle whose first and second vertices are these
+                int a = offsets[first];
+                int aEnd = a + lengths[first];
+                int b = offsets[second];
+                int bEnd = b + lengths[second];
+                long common = 0;
+                while (a < aEnd && b < bEnd) {
+                    if (ends[a] < ends[b]) {
+                        a++;
+                    } else if (ends[a] > ends[b]) {
+                        b++;
+                    } else {
+                        counted.incrementAndGet(ends[a]);
+                        common++;
+                        a++;
+                        b++;
+                    }
+                }
+                if (common > 0) {
+                    atFirst += common;
+                    counted.addAndGet(second, common);
+                }
+            }
+            if (atFirst > 0) {
+                counted.addAndGet(first, atFirst);
+                found.add(atFirst);
+            }
+        });
+
+        degrees = new int[n];
+        triangles = new long[n];
+        for (int id = 0; id < n; id++) {
+            degrees[id] = undirected.get(id);
+            triangles[id] = counted.get(id);
+        }
+        total = found.sum();
+    }
+
+    /**
+     * @return the number of triangles in the graph.
+     */
+    public long getTriangleCount() {
+        return total;
+    }
+
+    /**
+     * @param vertex    A vertex of the graph
+     * @return the number of triangles the vertex is part of; 0 if the vertex
+     *         was not present in the graph.
+     */
+    public long getTriangles(V vertex) {
+        if (vertex == null)
+            throw new IllegalArgumentException("Parameter is null");
+        int id = index.idOf(vertex);
+        return id < 0 ? 0 : triangles[id];
+    }
+
+    /**
+     * @param vertex    A vertex of the graph
+     * @return the fraction of the pairs of neighbors of the vertex that are
+     *         neighbors of each other; 0 if the vertex has fewer than two
+     *         neighbors or was not present in the graph.
+     */
+    public double getClusteringCoefficient(V vertex) {
+        if (vertex == null)
+            throw new IllegalArgumentException("Parameter is null");
+        int id = index.idOf(vertex);
+        return id < 0 ? 0 : coefficient(id);
+    }
+
+    /**
+     * @return the mean of the clustering coefficients of every vertex of the
+     *         graph, counting vertices with fewer than two neighbors as 0.
+     */
+    public double getAverageClusteringCoefficient() {
+        if (degrees.length == 0)
+            return 0;
+        double sum = 0;
+        for (int id = 0; id < degrees.length; id++)
+            sum += coefficient(id);
+        return sum / degrees.length;
+    }
+
+    /**
+     * @return the fraction of the paths of two edges in the graph that are
+     *         closed into a triangle, which is three times the number of
+     *         triangles over the number of such paths.
+     */
+    public double getGlobalClusteringCoefficient() {
+        double paths = 0;
+        for (int degree : degrees)
+            paths += (double) degree * (degree - 1) / 2;
+        return paths == 0 ? 0 : 3 * total / paths;
+    }
+
+    private double coefficient(int id) {
+        int degree = degrees[id];
+        if (degree < 2)
+            return 0;
+        return 2.0 * triangles[id] / ((double) degree * (degree - 1));
+    }
+
+    // receives the IDs of the two ends of an edge, first end first
+    private interface EdgeAction {
+        void accept(int first, int second);
+    }
+
+    // Hands each edge of the vertex to action, skipping edges to vertices
+    // added after the index was built
+    private void forEachEdge(EWDGraph<V> graph, int[] order, int id,
+                             EdgeAction action) {
+        graph.forEachNeighbor(index.vertexAt(id), (neighbor, weight) -> {
+            int other = index.idOf(neighbor);
+            if (other < 0 || other == id)
+                return;
+            if (before(order, id, other))
+                action.accept(id, other);
+            else
+                action.accept(other, id);
+        });
+    }
+
+    // Returns true if vertex a comes before vertex b: by degree, then by ID
+    private static boolean before(int[] order, int a, int b) {
+        return order[a] < order[b] || (order[a] == order[b] && a < b);
+    }
+
+}
@@ -0,0 +1,623 @@
+package fazebook;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The VersionedAdjacencyStore class is a multi-version storage engine for
+ * the EWDGraph class, whose snapshots are consistent, point-in-time views of
+ * the graph that stay unchanged while writers go on changing it. Every
+ * vertex is interned to a dense integer ID, and the outgoing edges of each
+ * vertex are kept in an immutable Version of int arrays of neighbor IDs and
+ * weights. A change to the edges of a vertex never modifies a Version that
+ * readers can see; it installs a new Version stamped with the epoch of the
+ * change, in front of the previous Version of the vertex.
+ *
+ * Appending an edge does not copy the adjacency: versions share their
+ * arrays, and each version only reads as many entries as it held, so an
+ * append writes one entry past the end of the previous version and costs
+ * O(1) amortized. The first entries of the arrays are sorted and searched
+ * in binary; appended entries follow unsorted, and are merged into the
+ * sorted part once TAIL of them have accumulated. Updating a weight or
+ * removing an edge copies the adjacency.
+ *
+ * Writes are serialized by the monitor of the store and each completes an
+ * epoch; reads take no lock at all. A snapshot records the last completed
+ * epoch and the number of vertices, and reads the newest Version of each
+ * vertex whose epoch is not past its own. The older versions of a vertex
+ * are kept only while an open snapshot may read them: every write, and
+ * every release of a snapshot, drops the versions that no open snapshot
+ * reads, so a vertex holds at most one version per open snapshot besides
+ * its newest, and none once the snapshots are released.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices held
+ *              by the current store.
+ */
+class VersionedAdjacencyStore<V> implements AdjacencyStore<V> {
+
+    // the number of unsorted entries that may follow the sorted ones
+    private static final int TAIL = 32;
+
+    private static final int[] EMPTY = new int[0];
+
+    /*
+     * The edges of one vertex as of an epoch. The entries before sorted are
+     * sorted by neighbor ID, and the rest, up to size, are in the order they
+     * were appended. The arrays may be longer than size and be shared with
+     * newer versions, which is why nothing past size is ever read.
+     */
+    private static final class Version {
+
+        private final long epoch;
+        private final int[] targets;
+        private final int[] weights;
+        private final int size;
+        private final int sorted;
+
+        // the previous version that an open snapshot may still read
+        private volatile Version older;
+
+        Version(long epoch, int[] targets, int[] weights, int size,
+                int sorted) {
+            this.epoch = epoch;
+            this.targets = targets;
+            this.weights = weights;
+            this.size = size;
+            this.sorted = sorted;
+        }
+
+        int indexOf(int target) {
+            int pos = Arrays.binarySearch(targets, 0, sorted, target);
+            if (pos >= 0)
+                return pos;
+            for (int i = sorted; i < size; i++) {
+                if (targets[i] == target)
+                    return i;
+            }
+            return -1;
+        }
+
+    }
+
+    private Map<V, Integer> ids = new ConcurrentHashMap<>();
+    private volatile Object[] vertices = new Object[16];
+    private volatile AtomicReferenceArray<Version> heads =
+            new AtomicReferenceArray<>(16);
+    private volatile int size;
+    private volatile long edges;
+
+    // the last epoch whose write is complete
+    private volatile long epoch;
+
+    // the epochs of the open snapshots and how many are open at each, and
+    // the IDs of the vertices that hold older versions; guarded by this
+    private TreeMap<Long, Integer> open = new TreeMap<>();
+    private BitSet history = new BitSet();
+
+    private Reads latest = new Reads(Long.MAX_VALUE, -1, -1);
+
+    @Override public synchronized boolean addVertex(V vertex) {
+        if (ids.containsKey(vertex))
+            return false;
+        long next = epoch + 1;
+        intern(vertex, next);
+        epoch = next;
+        return true;
+    }
+
+    @Override public synchronized boolean putEdge(V srcVert, V destVert,
+                                                  int weight) {
+        long next = epoch + 1;
+        int src = intern(srcVert, next);
+        int dest = intern(destVert, next);
+        Version head = heads.get(src);
+        int pos = head.indexOf(dest);
+        if (pos < 0) {
+            install(src, appended(head, dest, weight, next));
+            edges++;
+        } else if (head.weights[pos] != weight) {
+            install(src, updated(head, pos, weight, next));
+        }
+        epoch = next;
+        return pos < 0;
+    }
+
+    // The whole group is one write, so a snapshot sees all of it or none
+    @Override public synchronized int putEdges(V srcVert, List<V> destVerts,
+                                               int weight) {
+        long next = epoch + 1;
+        int src = intern(srcVert, next);
+        Version head = heads.get(src);
+        Version version = head;
+        int created = 0;
+        for (V destVert : destVerts) {
+            int dest = intern(destVert, next);
+            int pos = version.indexOf(dest);
+            if (pos < 0) {
+                version = appended(version, dest, weight, next);
+                created++;
+            } else if (version.weights[pos] != weight) {
+                version = updated(version, pos, weight, next);
+            }
+        }
+        if (version != head)
+            install(src, version);
+        edges += created;
+        epoch = next;
+        return created;
+    }
+
+    @Override public synchronized boolean removeEdge(V srcVert,
+                                                     V destVert) {
+        Integer src = ids.get(srcVert);
+        Integer dest = ids.get(destVert);
+        if (src == null || dest == null)
+            return false;
+        Version head = heads.get(src);
+        int pos = head.indexOf(dest);
+        if (pos < 0)
+            return false;
+        long next = epoch + 1;
+        install(src, removed(head, pos, next));
+        edges--;
+        epoch = next;
+        return true;
+    }
+
+    @Override public boolean containsVertex(V vertex) {
+        return latest.containsVertex(vertex);
+    }
+
+    @Override public int getWeight(V srcVert, V destVert) {
+        return latest.getWeight(srcVert, destVert);
+    }
+
+    @Override public int degree(V vertex) {
+        return latest.degree(vertex);
+    }
+
+    @Override public int vertexCount() {
+        return size;
+    }
+
+    @Override public long edgeCount() {
+        return edges;
+    }
+
+    @Override public Collection<V> copyVertices() {
+        return latest.copyVertices();
+    }
+
+    @Override public Collection<V> copyNeighbors(V vertex) {
+        return latest.copyNeighbors(vertex);
+    }
+
+    @Override public Collection<V> vertexView() {
+        return latest.vertexView();
+    }
+
+    @Override public Collection<V> neighborView(V vertex) {
+        return latest.neighborView(vertex);
+    }
+
+    @Override public Spliterator<V> vertexSpliterator() {
+        return latest.vertexSpliterator();
+    }
+
+    @Override public void forEachNeighbor(V vertex,
+                                          ObjIntConsumer<? super V> action) {
+        latest.forEachNeighbor(vertex, action);
+    }
+
+    @Override public boolean isThreadSafe() {
+        return true;
+    }
+
+    /*
+     * Each interned vertex costs about 56 bytes in the ID map and 8 bytes of
+     * slots, and each version its 40 byte object plus its arrays, which are
+     * only counted for the newest version that shares them.
+     */
+    @Override public long estimatedHeapBytes() {
+        AtomicReferenceArray<Version> heads = this.heads;
+        int n = size;
+        long bytes = 2 * 16 + heads.length() * 8L + n * 56L;
+        for (int id = 0; id < n; id++) {
+            int[] counted = null;
+            for (Version version = heads.get(id); version != null;
+                    version = version.older) {
+                bytes += 40;
+                if (version.targets != counted
+                        && version.targets.length > 0)
+                    bytes += 2 * 16 + version.targets.length * 8L;
+                counted = version.targets;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Opens a snapshot of the last completed write, which must be released
+     * once it is no longer read so that the versions it holds are dropped.
+     *
+     * @return a read-only store of the graph as of the snapshot.
+     */
+    synchronized Reads snapshot() {
+        open.merge(epoch, 1, Integer::sum);
+        return new Reads(epoch, size, edges);
+    }
+
+    /**
+     * @return the number of snapshots that are open.
+     */
+    synchronized int openSnapshots() {
+        int snapshots = 0;
+        for (int count : open.values())
+            snapshots += count;
+        return snapshots;
+    }
+
+    // Closes a snapshot of the epoch and drops the versions only it read
+    private synchronized void release(long at) {
+        if (open.merge(at, -1, Integer::sum) == 0)
+            open.remove(at);
+        for (int id = history.nextSetBit(0); id >= 0;
+                id = history.nextSetBit(id + 1)) {
+            Version head = heads.get(id);
+            prune(head);
+            if (head.older == null)
+                history.clear(id);
+        }
+    }
+
+    // Returns the ID of the vertex, adding the vertex at the epoch first if
+    // it was never interned
+    private int intern(V vertex, long at) {
+        Integer id = ids.get(vertex);
+        if (id != null)
+            return id;
+        int n = size;
+        if (n == vertices.length) {
+            int capacity = n * 2;
+            AtomicReferenceArray<Version> grown =
+                    new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < n; i++)
+                grown.set(i, heads.get(i));
+            vertices = Arrays.copyOf(vertices, capacity);
+            heads = grown;
+        }
+        vertices[n] = vertex;
+        heads.set(n, new Version(at, EMPTY, EMPTY, 0, 0));
+        ids.put(vertex, n);
+        size = n + 1;
+        return n;
+    }
+
+    // Makes the version the newest of the vertex, in front of the versions
+    // that an open snapshot may read
+    private void install(int id, Version version) {
+        version.older = heads.get(id);
+        prune(version);
+        heads.set(id, version);
+        if (version.older != null)
+            history.set(id);
+        else
+            history.clear(id);
+    }
+
+    /*
+     * Unlinks every version behind head that no open snapshot reads. A
+     * snapshot reads the newest version whose epoch is not past its own, so
+     * a version is read only by the snapshots from its epoch up to the epoch
+     * of the version that replaced it. Readers that are part way along the
+     * chain still reach the versions they need, since an unlinked version
+     * keeps its own link.
+     */
+    private void prune(Version head) {
+        Version newer = head;
+        for (Version version = head.older; version != null;
+                version = version.older) {
+            Long reader = open.ceilingKey(version.epoch);
+            if (reader != null && reader < newer.epoch) {
+                newer.older = version;
+                newer = version;
+            }
+        }
+        newer.older = null;
+    }
+
+    // Returns a version with the edge appended, writing it past the end of
+    // the arrays of the version when they have room
+    private static Version appended(Version version, int target, int weight,
+                                    long at) {
+        if (version.size - version.sorted >= TAIL) {
+            version = merged(version, at);
+        } else if (version.size == version.targets.length) {
+            int capacity = Math.max(4, version.size + (version.size >> 1));
+            version = new Version(at, Arrays.copyOf(version.targets,
+                    capacity), Arrays.copyOf(version.weights, capacity),
+                    version.size, version.sorted);
+        }
+        version.targets[version.size] = target;
+        version.weights[version.size] = weight;
+        return new Version(at, version.targets, version.weights,
+                version.size + 1, version.sorted);
+    }
+
+    // Returns a version with every entry sorted, with room to append
+    private static Version merged(Version version, long at) {
+        int size = version.size;
+        int sorted = version.sorted;
+        int tail = size - sorted;
+        int[] tailTargets = Arrays.copyOfRange(version.targets, sorted, size);
+        int[] tailWeights = Arrays.copyOfRange(version.weights, sorted, size);
+        // insertion sort, since the tail is short
+        for (int i = 1; i < tail; i++) {
+            int target = tailTargets[i];
+            int weight = tailWeights[i];
+            int j = i - 1;
+            while (j >= 0 && tailTargets[j] > target) {
+                tailTargets[j + 1] = tailTargets[j];
+                tailWeights[j + 1] = tailWeights[j];
+                j--;
+            }
+            tailTargets[j + 1] = target;
+            tailWeights[j + 1] = weight;
+        }
+        int capacity = Math.max(4, size + (size >> 1));
+        int[] targets = new int[capacity];
+        int[] weights = new int[capacity];
+        int i = 0, j = 0, k = 0;
+        while (i < sorted || j < tail) {
+            if (j == tail || (i < sorted
+                    && version.targets[i] < tailTargets[j])) {
+                targets[k] = version.targets[i];
+                weights[k++] = version.weights[i++];
+            } else {
+                targets[k] = tailTargets[j];
+                weights[k++] = tailWeights[j++];
+            }
+        }
+        return new Version(at, targets, weights, size, size);
+    }
+
+    private static Version updated(Version version, int pos, int weight,
+                                   long at) {
+        int[] weights = Arrays.copyOf(version.weights, version.size);
+        weights[pos] = weight;
+        return new Version(at, Arrays.copyOf(version.targets, version.size),
+                weights, version.size, version.sorted);
+    }
+
+    // Removing an entry keeps the order of the others, so the sorted entries
+    // stay sorted
+    private static Version removed(Version version, int pos, long at) {
+        int size = version.size - 1;
+        int[] targets = new int[Math.max(4, size)];
+        int[] weights = new int[targets.length];
+        System.arraycopy(version.targets, 0, targets, 0, pos);
+        System.arraycopy(version.weights, 0, weights, 0, pos);
+        System.arraycopy(version.targets, pos + 1, targets, pos, size - pos);
+        System.arraycopy(version.weights, pos + 1, weights, pos, size - pos);
+        return new Version(at, targets, weights, size,
+                pos < version.sorted ? version.sorted - 1 : version.sorted);
+    }
+
+    /*
+     * The reads of the store as of an epoch, which are those of the newest
+     * versions when the epoch is Long.MAX_VALUE and those of a snapshot
+     * otherwise. A snapshot also fixes the number of vertices and edges,
+     * where -1 means the current number.
+     */
+    class Reads implements AdjacencyStore<V> {
+
+        private long at;
+        private int count;
+        private long edgeCount;
+        private AtomicBoolean released = new AtomicBoolean();
+
+        Reads(long at, int count, long edgeCount) {
+            this.at = at;
+            this.count = count;
+            this.edgeCount = edgeCount;
+        }
+
+        /**
+         * Releases the current snapshot, so that the versions only it reads
+         * are dropped; releasing it again has no effect.
+         */
+        void release() {
+            if (count >= 0 && released.compareAndSet(false, true))
+                VersionedAdjacencyStore.this.release(at);
+        }
+
+        @Override public boolean addVertex(V vertex) {
+            throw new UnsupportedOperationException("Snapshot is read-only");
+        }
+
+        @Override public boolean putEdge(V srcVert, V destVert, int weight) {
+            throw new UnsupportedOperationException("Snapshot is read-only");
+        }
+
+        @Override public boolean removeEdge(V srcVert, V destVert) {
+            throw new UnsupportedOperationException("Snapshot is read-only");
+        }
+
+        @Override public boolean containsVertex(V vertex) {
+            return idOf(vertex) >= 0;
+        }
+
+        @Override public int getWeight(V srcVert, V destVert) {
+            int src = idOf(srcVert);
+            int dest = idOf(destVert);
+            if (src < 0 || dest < 0)
+                return 0;
+            Version version = version(src);
+            int pos = version.indexOf(dest);
+            return pos < 0 ? 0 : version.weights[pos];
+        }
+
+        @Override public int degree(V vertex) {
+            int id = idOf(vertex);
+            return id < 0 ? 0 : version(id).size;
+        }
+
+        @Override public int vertexCount() {
+            return count < 0 ? size : count;
+        }
+
+        @Override public long edgeCount() {
+            return edgeCount < 0 ? edges : edgeCount;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public Collection<V> copyVertices() {
+            int n = vertexCount();
+            Object[] vertices = VersionedAdjacencyStore.this.vertices;
+            List<V> copy = new ArrayList<>(n);
+            for (int id = 0; id < n; id++)
+                copy.add((V) vertices[id]);
+            return copy;
+        }
+
+        @Override public Collection<V> copyNeighbors(V vertex) {
+            List<V> copy = new ArrayList<>();
+            forEachNeighbor(vertex, (neighbor, weight) -> copy.add(neighbor));
+            return copy;
+        }
+
+        @Override public Collection<V> vertexView() {
+            return new AbstractCollection<V>() {
+                @Override public int size() {
+                    return vertexCount();
+                }
+
+                @Override public boolean contains(Object vertex) {
+                    return vertex != null && idOf(vertex) >= 0;
+                }
+
+                @Override public Iterator<V> iterator() {
+                    return new IdIterator(null, vertexCount());
+                }
+            };
+        }
+
+        // a snapshot never gains vertices, while the latest view hands out
+        // those interned when the spliterator was created
+        @SuppressWarnings("unchecked")
+        @Override public Spliterator<V> vertexSpliterator() {
+            int n = vertexCount();
+            Object[] vertices = VersionedAdjacencyStore.this.vertices;
+            return new IdSpliterator<>(n, id -> (V) vertices[id],
+                    count < 0 ? 0 : Spliterator.IMMUTABLE);
+        }
+
+        @Override public Collection<V> neighborView(V vertex) {
+            int id = idOf(vertex);
+            if (id < 0)
+                return Collections.emptySet();
+            return new AbstractCollection<V>() {
+                @Override public int size() {
+                    return version(id).size;
+                }
+
+                @Override public boolean contains(Object neighbor) {
+                    if (neighbor == null)
+                        return false;
+                    int dest = idOf(neighbor);
+                    return dest >= 0 && version(id).indexOf(dest) >= 0;
+                }
+
+                @Override public Iterator<V> iterator() {
+                    Version version = version(id);
+                    return new IdIterator(version.targets, version.size);
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public void forEachNeighbor(
+                V vertex, ObjIntConsumer<? super V> action) {
+            int id = idOf(vertex);
+            if (id >= 0) {
+                Version version = version(id);
+                Object[] vertices = VersionedAdjacencyStore.this.vertices;
+                for (int i = 0; i < version.size; i++)
+                    action.accept((V) vertices[version.targets[i]],
+                            version.weights[i]);
+            }
+        }
+
+        @Override public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override public long estimatedHeapBytes() {
+            return VersionedAdjacencyStore.this.estimatedHeapBytes();
+        }
+
+        // Returns the ID of the vertex, or -1 if it was not interned as of
+        // the current epoch
+        private int idOf(Object vertex) {
+            Integer id = ids.get(vertex);
+            return id == null || id >= vertexCount() ? -1 : id;
+        }
+
+        private Version version(int id) {
+            Version version = heads.get(id);
+            while (version.epoch > at) {
+                version = version.older;
+                // only a released snapshot can find its version dropped
+                if (version == null)
+                    throw new IllegalStateException("Snapshot is closed");
+            }
+            return version;
+        }
+
+    }
+
+    /*
+     * Iterates over the IDs held in the first count entries of targets, or
+     * over the IDs from 0 to count when targets is null.
+     */
+    private class IdIterator implements Iterator<V> {
+
+        private int[] targets;
+        private int count;
+        private int next;
+
+        IdIterator(int[] targets, int count) {
+            this.targets = targets;
+            this.count = count;
+        }
+
+        @Override public boolean hasNext() {
+            return next < count;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public V next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int id = targets == null ? next : targets[next];
+            next++;
+            return (V) vertices[id];
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package fazebook;
+
+import java.util.Arrays;
+
+/**
+ * The VertexIndex class assigns dense integer IDs, starting from 0, to the
+ * vertices that a graph algorithm visits, through an open-addressing hash
+ * table. This lets the algorithm keep its per-vertex state, such as visited
+ * bits, distances, and parents, in primitive arrays indexed by ID rather
+ * than in HashMaps and HashSets, whatever storage engine the graph uses.
+ *
+ * @param <V>   A generic that specifies the object type of the vertices.
+ */
+class VertexIndex<V> {
+
+    private Object[] keys;
+    private int[] ids;
+    private Object[] vertices;
+    private int size;
+
+    /**
+     * Constructor that creates an index sized for the expected number of
+     * vertices.
+     *
+     * @param expected  The expected number of vertices, used to size the
+     *                  index.
+     */
+    VertexIndex(int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2)
+            capacity <<= 1;
+        keys = new Object[capacity];
+        ids = new int[capacity];
+        vertices = new Object[Math.max(16, expected)];
+    }
+
+    /**
+     * @param vertex    The vertex to be looked up.
+     * @return the ID of the vertex, assigning it the next ID first if it has
+     *         none.
+     */
+    int intern(V vertex) {
+        int slot = slotOf(vertex);
+        if (keys[slot] != null)
+            return ids[slot];
+        int id = size++;
+        if (id == vertices.length)
+            vertices = Arrays.copyOf(vertices, id * 2);
+        vertices[id] = vertex;
+        keys[slot] = vertex;
+        ids[slot] = id;
+        // keep the table at most half full
+        if (size * 2 > keys.length)
+            rehash();
+        return id;
+    }
+
+    /**
+     * @param vertex    The vertex to be looked up.
+     * @return the ID of the vertex, or -1 if it has none.
+     */
+    int idOf(Object vertex) {
+        int slot = slotOf(vertex);
+        return keys[slot] == null ? -1 : ids[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V vertexAt(int id) {
+        return (V) vertices[id];
+    }
+
+    /**
+     * @return the number of vertices that have an ID.
+     */
+    int size() {
+        return size;
+    }
+
+    // Returns the slot holding the vertex, or the empty slot it belongs in
+    private int slotOf(Object vertex) {
+        int mask = keys.length - 1;
+        int hash = vertex.hashCode() * 0x9e3779b9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(vertex))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash() {
+        keys = new Object[keys.length * 2];
+        ids = new int[keys.length];
+        for (int id = 0; id < size; id++) {
+            int slot = slotOf(vertices[id]);
+            keys[slot] = vertices[id];
+            ids[slot] = id;
+        }
+    }
+
+}
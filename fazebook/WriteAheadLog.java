@@ -0,0 +1,557 @@
+package fazebook;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * The WriteAheadLog class is an append-only log of the mutations made to a
+ * Fazebook object, so that the users and friendships added since the last
+ * snapshot survive a crash. Each addUser, addFriends, and unfriend call that
+ * changes the Fazebook object appends one compact binary record:
+ *
+ *   payload length  int
+ *   payload CRC32   int
+ *   payload         a type byte, then each name as a varint byte length
+ *                   followed by its UTF-8 bytes
+ *
+ * after an 8 byte file header of a magic number and a version. A mutation
+ * and its record are made under the same lock, so the order of the log is
+ * the order in which the mutations were applied, and replaying the log
+ * reproduces the same Fazebook object. Opening an existing log verifies the
+ * checksum of every record and truncates the log at the first record that
+ * is torn or corrupted, which is where the previous process stopped.
+ *
+ * How often the log is forced to disk is set by its SyncMode. Forcing the
+ * log happens outside the append lock, and a force covers every record
+ * appended before it started, so concurrent callers share one force rather
+ * than each paying for their own (group commit).
+ */
+public class WriteAheadLog {
+
+    /**
+     * The policies for forcing the log to disk. EVERY_OP returns from each
+     * mutation only once its record has been forced, so no acknowledged
+     * mutation is ever lost. BATCHED forces the log whenever maxBatch
+     * records are pending, and every maxDelayMillis otherwise, so a crash
+     * loses at most that many or that recent mutations. OS writes the
+     * records to the file every maxDelayMillis but never forces it, leaving
+     * durability to the operating system, which survives a crash of the
+     * process but not of the machine.
+     */
+    public enum SyncMode {
+        EVERY_OP, BATCHED, OS
+    }
+
+    static final byte ADD_USER = 1;
+    static final byte ADD_FRIENDS = 2;
+    static final byte UNFRIEND = 3;
+
+    private static final int MAGIC = 0x465a574c;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+
+    private Path path;
+    private SyncMode mode;
+    private int maxBatch;
+    private FileChannel channel;
+    private ScheduledExecutorService flusher;
+    private CRC32 crc = new CRC32();
+
+    // guards the buffer, the channel position and appended; mutations are
+    // applied while holding it
+    private final Object lock = new Object();
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private long appended;
+
+    // guards synced, syncing and failure
+    private final Object syncLock = new Object();
+    private long synced;
+    private boolean syncing;
+    private IOException failure;
+    private long syncs;
+
+    /**
+     * Constructor that opens the log with the EVERY_OP SyncMode.
+     *
+     * @param filename  The name of the log file, which is created if it does
+     *                  not exist
+     * @throws IOException  if the file could not be opened or is not a log.
+     */
+    public WriteAheadLog(String filename) throws IOException {
+        this(filename, SyncMode.EVERY_OP);
+    }
+
+    /**
+     * Constructor that opens the log with the specified SyncMode, forcing
+     * BATCHED logs every 1024 records or 10 milliseconds.
+     *
+     * @param filename  The name of the log file, which is created if it does
+     *                  not exist
+     * @param mode      The SyncMode of the log
+     * @throws IOException  if the file could not be opened or is not a log.
+     */
+    public WriteAheadLog(String filename, SyncMode mode) throws IOException {
+        this(filename, mode, 1024, 10);
+    }
+
+    /**
+     * Constructor that opens the log with the specified SyncMode and bounds.
+     *
+     * @param filename          The name of the log file, which is created if
+     *                          it does not exist
+     * @param mode              The SyncMode of the log
+     * @param maxBatch          The number of pending records at which a
+     *                          BATCHED log is forced, which must be positive
+     * @param maxDelayMillis    The delay after which pending records of a
+     *                          BATCHED or OS log are forced or written, which
+     *                          must be positive
+     * @throws IOException  if the file could not be opened or is not a log.
+     */
+    public WriteAheadLog(String filename, SyncMode mode, int maxBatch,
+                         long maxDelayMillis) throws IOException {
+        if (filename == null || mode == null)
+            throw new IllegalArgumentException("Parameter is null");
+        if (maxBatch <= 0 || maxDelayMillis <= 0)
+            throw new IllegalArgumentException("Parameter is not positive");
+        this.path = Paths.get(filename);
+        this.mode = mode;
+        this.maxBatch = maxBatch;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            writeHeader(channel);
+        } else {
+            long end = scan(channel, null);
+            channel.truncate(end);
+        }
+        channel.position(channel.size());
+        if (mode != SyncMode.EVERY_OP) {
+            flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushPending,
+                    maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Applies the mutation and, if it changed the Fazebook object, appends
+     * a record of the given type for each group of names, waiting for the
+     * records to be as durable as the SyncMode requires. ADD_USER records
+     * take one name and the others take two, so names holds the names of
+     * every record back to back.
+     */
+    boolean apply(byte type, List<String> names, BooleanSupplier mutation) {
+        int arity = type == ADD_USER ? 1 : 2;
+        long sequence;
+        boolean pending;
+        synchronized (lock) {
+            checkFailure();
+            if (!mutation.getAsBoolean())
+                return false;
+            try {
+                for (int i = 0; i < names.size(); i += arity)
+                    append(type, names, i, arity);
+            } catch (IOException e) {
+                fail(e);
+                throw new UncheckedIOException(e);
+            }
+            sequence = appended;
+            pending = appended - synced() >= maxBatch;
+        }
+        if (mode == SyncMode.EVERY_OP || (mode == SyncMode.BATCHED && pending))
+            awaitDurable(sequence);
+        return true;
+    }
+
+    /*
+     * Hands every record of the log to the Fazebook object, which must not
+     * have the log enabled yet, returning the number of records replayed.
+     */
+    long replay(Fazebook fazebook) throws IOException {
+        synchronized (lock) {
+            flush();
+            return scan(channel, fazebook);
+        }
+    }
+
+    /*
+     * Returns the position of the end of the log, after writing out every
+     * record appended so far. Every mutation applied before this call is
+     * before the returned position, and every mutation applied after it is
+     * after it.
+     */
+    long mark() throws IOException {
+        synchronized (lock) {
+            flush();
+            return channel.position();
+        }
+    }
+
+    /*
+     * Discards the records before the position returned by mark(), once
+     * they are covered by a snapshot. The records after it are copied into a
+     * new log that atomically replaces the current one.
+     */
+    void truncate(long mark) throws IOException {
+        synchronized (syncLock) {
+            // wait for a force of the old channel to finish, and keep any
+            // other force from starting until the new channel is in place
+            while (syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while truncating", e);
+                }
+            }
+            syncing = true;
+        }
+        try {
+            synchronized (lock) {
+                flush();
+                Path temp = Paths.get(path + ".tmp");
+                try (FileChannel copy = FileChannel.open(temp,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    writeHeader(copy);
+                    long position = mark;
+                    long end = channel.position();
+                    while (position < end)
+                        position += channel.transferTo(position, end - position,
+                                copy);
+                    copy.force(true);
+                }
+                channel.close();
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                synchronized (syncLock) {
+                    synced = appended;
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes and forces every pending record, regardless of the SyncMode.
+     *
+     * @throws IOException  if the log could not be written.
+     */
+    public void sync() throws IOException {
+        long sequence;
+        synchronized (lock) {
+            sequence = appended;
+        }
+        awaitDurable(sequence);
+        checkFailure();
+    }
+
+    /**
+     * Forces every pending record and closes the log. The Fazebook object
+     * the log is enabled on must not be changed afterwards.
+     *
+     * @throws IOException  if the log could not be written.
+     */
+    public void close() throws IOException {
+        if (flusher != null)
+            flusher.shutdown();
+        sync();
+        synchronized (lock) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the SyncMode of the log.
+     */
+    public SyncMode getSyncMode() {
+        return mode;
+    }
+
+    /**
+     * @return the number of records appended since the log was opened.
+     */
+    public long getRecords() {
+        synchronized (lock) {
+            return appended;
+        }
+    }
+
+    /**
+     * @return the number of times the log has been forced to disk, which is
+     *         lower than the number of records when commits were grouped.
+     */
+    public long getSyncs() {
+        synchronized (syncLock) {
+            return syncs;
+        }
+    }
+
+    // Appends one record of the names from start, flushing the buffer to
+    // the channel when the record does not fit
+    private void append(byte type, List<String> names, int start, int arity)
+            throws IOException {
+        byte[][] encoded = new byte[arity][];
+        int payload = 1;
+        for (int i = 0; i < arity; i++) {
+            encoded[i] = names.get(start + i).getBytes(StandardCharsets.UTF_8);
+            payload += varintBytes(encoded[i].length) + encoded[i].length;
+        }
+        if (buffer.remaining() < 8 + payload)
+            flush();
+        if (buffer.capacity() < 8 + payload)
+            buffer = ByteBuffer.allocate(
+                    Integer.highestOneBit(8 + payload) * 2);
+        int recordStart = buffer.position();
+        buffer.putInt(payload);
+        buffer.putInt(0);
+        buffer.put(type);
+        for (byte[] name : encoded) {
+            putVarint(buffer, name.length);
+            buffer.put(name);
+        }
+        crc.reset();
+        crc.update(buffer.array(), recordStart + 8, payload);
+        buffer.putInt(recordStart + 4, (int) crc.getValue());
+        appended++;
+    }
+
+    // Writes the buffered records to the channel; the caller holds lock
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    // Returns once every record up to sequence has been forced, forcing the
+    // log itself unless another thread is already doing so
+    private void awaitDurable(long sequence) {
+        synchronized (syncLock) {
+            while (synced < sequence && syncing && failure == null) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(
+                            "Interrupted while waiting for the log", e);
+                }
+            }
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+            if (synced >= sequence)
+                return;
+            syncing = true;
+        }
+        try {
+            force(true);
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+        synchronized (syncLock) {
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+        }
+    }
+
+    // Writes the buffered records out and, when durable is true, forces
+    // them, without holding lock during the force; the caller holds syncing
+    private void force(boolean durable) {
+        try {
+            long target;
+            synchronized (lock) {
+                flush();
+                target = appended;
+            }
+            if (durable) {
+                channel.force(false);
+                synchronized (syncLock) {
+                    synced = Math.max(synced, target);
+                    syncs++;
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Run by the flusher every maxDelayMillis
+    private void flushPending() {
+        synchronized (syncLock) {
+            if (syncing || failure != null)
+                return;
+            syncing = true;
+        }
+        try {
+            boolean pending;
+            synchronized (lock) {
+                pending = buffer.position() > 0 || appended > synced();
+            }
+            if (pending)
+                force(mode == SyncMode.BATCHED);
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    private long synced() {
+        synchronized (syncLock) {
+            return synced;
+        }
+    }
+
+    private void fail(IOException e) {
+        synchronized (syncLock) {
+            if (failure == null)
+                failure = e;
+            syncLock.notifyAll();
+        }
+    }
+
+    // A log that failed to write may have lost records, so it refuses
+    // every later mutation rather than let the log and memory diverge
+    private void checkFailure() {
+        synchronized (syncLock) {
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+        }
+    }
+
+    /*
+     * Reads the records of the log after its header, handing each to the
+     * Fazebook object if it is not null. Returns the position just past the
+     * last intact record when fazebook is null, and the number of records
+     * handed over otherwise.
+     */
+    private long scan(FileChannel channel, Fazebook fazebook)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+            throw new IOException(path + " is not a write-ahead log");
+        if (header.getInt() != VERSION)
+            throw new IOException("Unsupported write-ahead log version");
+
+        // the stream reads through the channel, which must stay open
+        long size = channel.size();
+        channel.position(HEADER_BYTES);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel), 1 << 16));
+        long position = HEADER_BYTES;
+        long count = 0;
+        byte[] payload = new byte[256];
+        CRC32 check = new CRC32();
+        while (size - position >= 8) {
+            int length = in.readInt();
+            int expected = in.readInt();
+            if (length <= 0 || length > size - position - 8)
+                break;
+            if (payload.length < length)
+                payload = new byte[Math.max(length, payload.length * 2)];
+            in.readFully(payload, 0, length);
+            check.reset();
+            check.update(payload, 0, length);
+            if ((int) check.getValue() != expected)
+                break;
+            if (fazebook != null)
+                apply(fazebook, ByteBuffer.wrap(payload, 0, length));
+            position += 8 + length;
+            count++;
+        }
+        channel.position(size);
+        return fazebook == null ? position : count;
+    }
+
+    // Applies the record whose payload starts at the position of in
+    private static void apply(Fazebook fazebook, ByteBuffer in) {
+        byte type = in.get();
+        String first = getName(in);
+        if (type == ADD_USER) {
+            fazebook.addUser(first);
+        } else {
+            String second = getName(in);
+            if (type == ADD_FRIENDS)
+                fazebook.addFriends(first, second);
+            else if (type == UNFRIEND)
+                fazebook.unfriend(first, second);
+        }
+    }
+
+    private static String getName(ByteBuffer in) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        String name = new String(in.array(), in.position(), length,
+                StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return name;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int varintBytes(int value) {
+        int bytes = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+        channel.force(true);
+    }
+
+}
@@ -5,11 +5,55 @@ package tests;
 // that can be used with the imports below.
 import org.junit.*;
 
+import fazebook.AsyncFazebook;
+import fazebook.BulkLoader;
+import fazebook.ConnectedComponents;
+import fazebook.EWDGraph;
+import fazebook.EWDGraphSnapshot;
+import fazebook.Edge;
 import fazebook.Fazebook;
+import fazebook.FazebookMetrics;
+import fazebook.GraphGenerator;
+import fazebook.GraphPartition;
+import fazebook.IngestionEngine;
+import fazebook.IngestionReport;
+import fazebook.LocalPartition;
+import fazebook.LoopbackTransport;
+import fazebook.PageRank;
+import fazebook.PathFinder;
+import fazebook.QueryCache;
+import fazebook.StringComparator;
+import fazebook.Reader;
+import fazebook.RemotePartition;
+import fazebook.ShardedFazebook;
+import fazebook.Suggestion;
+import fazebook.TailFollower;
+import fazebook.TriangleCounter;
+import fazebook.WriteAheadLog;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class StudentTests {
     
@@ -106,4 +150,1048 @@ public class StudentTests {
                                         Arrays.asList("me")));
     }
 
+    @Test public void studentTest10() {
+        Fazebook socialNetwork = new Fazebook(EWDGraph.Storage.COMPACT);
+
+        socialNetwork.addFriends("Sheep", "Lion");
+        socialNetwork.addFriends("Sheep", "Meerkat");
+        socialNetwork.addFriends("Lion", "Meerkat");
+        socialNetwork.unfriend("Sheep", "Lion");
+
+        assertTrue(TestData.compareColl(socialNetwork.getFriends("Sheep"),
+                                        Arrays.asList("Meerkat")));
+        assertTrue(TestData.compareColl(
+                socialNetwork.peopleYouMayWannaKnow("Sheep"),
+                                        Arrays.asList("Lion")));
+    }
+
+    @Test public void studentTest11() {
+        Fazebook socialNetwork = new Fazebook(EWDGraph.Storage.COMPACT);
+
+        socialNetwork.readSocialNetworkData(Arrays.asList("data-public7+8"));
+
+        assertTrue(TestData.compareColl(socialNetwork.getFriends("Numbat"),
+                                        Arrays.asList("Sheep", "Lion",
+                                                      "Penguin", "Quokka")));
+    }
+
+    @Test public void studentTest12() throws InterruptedException {
+        Fazebook socialNetwork = new Fazebook();
+        Thread[] threads = new Thread[4];
+
+        // each thread befriends a different group of animals with Sheep
+        for (int i = 0; i < threads.length; i++) {
+            String prefix = "Animal" + i + "-";
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 500; j++)
+                    socialNetwork.addFriends("Sheep", prefix + j);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(2000, socialNetwork.getFriends("Sheep").size());
+        assertEquals(2001, socialNetwork.getAllUsers().size());
+    }
+
+    @Test public void studentTest13() {
+        Fazebook socialNetwork = new Fazebook();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        // 16 byte chunks split the file into one or two lines per chunk
+        IngestionReport report = socialNetwork.readSocialNetworkData(
+                Arrays.asList("data-public7+8", "no-such-file"),
+                new IngestionEngine(pool, 16, 2));
+        pool.shutdown();
+
+        assertEquals(IngestionReport.Status.SUCCEEDED,
+                     report.getResult("data-public7+8").getStatus());
+        assertTrue(report.getResult("data-public7+8").getChunks() > 1);
+        assertEquals(IngestionReport.Status.FAILED,
+                     report.getResult("no-such-file").getStatus());
+        assertFalse(report.allSucceeded());
+        assertTrue(TestData.compareColl(socialNetwork.getFriends("Numbat"),
+                                        Arrays.asList("Sheep", "Lion",
+                                                      "Penguin", "Quokka")));
+    }
+
+    @Test public void studentTest14() throws IOException {
+        Fazebook scanned = new Fazebook();
+        Fazebook mapped = new Fazebook();
+
+        new Reader(scanned, "data-public7+8", 0, Long.MAX_VALUE,
+                   Reader.Parser.SCANNER).process();
+        new Reader(mapped, "data-public7+8", 0, Long.MAX_VALUE,
+                   Reader.Parser.MAPPED).process();
+
+        assertTrue(TestData.compareColl(mapped.getAllUsers(),
+                                        scanned.getAllUsers()));
+        for (String user : scanned.getAllUsers())
+            assertTrue(TestData.compareColl(mapped.getFriends(user),
+                                            scanned.getFriends(user)));
+    }
+
+    @Test public void studentTest15() {
+        for (EWDGraph.Storage storage : EWDGraph.Storage.values()) {
+            Fazebook socialNetwork = new Fazebook(storage);
+
+            socialNetwork.addFriends("Sheep", "Lion");
+            // includes a duplicate, an existing friendship, and an invalid
+            // pair, none of which should create extra friends
+            int friends = socialNetwork.addFriendsBatch(Arrays.asList(
+                    Map.entry("Sheep", "Meerkat"),
+                    Map.entry("Sheep", "Numbat"),
+                    Map.entry("Numbat", "Sheep"),
+                    Map.entry("Lion", "Sheep"),
+                    Map.entry("Walrus", "")));
+
+            assertEquals(4, friends);
+            assertTrue(TestData.compareColl(socialNetwork.getFriends("Sheep"),
+                                            Arrays.asList("Lion", "Meerkat",
+                                                          "Numbat")));
+            assertTrue(TestData.compareColl(socialNetwork.getFriends("Numbat"),
+                                            Arrays.asList("Sheep")));
+
+            // a pair that appears twice in one batch is one edge
+            EWDGraph<String> graph = new EWDGraph<>(new StringComparator(),
+                    storage);
+            assertEquals(2, graph.addEdges(Arrays.asList(
+                    Map.entry("Sheep", "Lion"), Map.entry("Sheep", "Lion"),
+                    Map.entry("Lion", "Sheep")), 1));
+            assertEquals(2, graph.getNumEWDGraphEdges());
+        }
+    }
+
+    @Test public void studentTest16() {
+        Fazebook socialNetwork = TestData.exampleSocialNetwork2();
+
+        // Penguin, Quokka and Walrus each share one friend with Sheep, so
+        // the tie is broken alphabetically, and Lion is already a friend
+        List<Suggestion<String>> suggestions =
+                socialNetwork.suggestFriends("Sheep", 2);
+
+        assertEquals(2, suggestions.size());
+        assertEquals("Penguin", suggestions.get(0).getUser());
+        assertEquals(1, suggestions.get(0).getMutualFriends());
+        assertEquals("Quokka", suggestions.get(1).getUser());
+        assertTrue(socialNetwork.suggestFriends("Nobody", 3).isEmpty());
+    }
+
+    @Test public void studentTest17() {
+        for (EWDGraph.Storage storage : EWDGraph.Storage.values()) {
+            Fazebook socialNetwork = new Fazebook(storage);
+            socialNetwork.addFriends("Sheep", "Lion");
+            Collection<String> friends = socialNetwork.getFriendsView("Sheep");
+
+            // the view is live and cannot be modified
+            socialNetwork.addFriends("Sheep", "Meerkat");
+            assertTrue(TestData.compareColl(friends,
+                                            Arrays.asList("Lion",
+                                                          "Meerkat")));
+            assertEquals(2, socialNetwork.getFriendCount("Sheep"));
+            assertTrue(socialNetwork.areFriends("Meerkat", "Sheep"));
+            assertFalse(socialNetwork.areFriends("Lion", "Meerkat"));
+            try {
+                friends.add("Walrus");
+                fail();
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test public void studentTest18() {
+        Fazebook socialNetwork = TestData.exampleSocialNetwork2();
+        QueryCache cache = socialNetwork.enableQueryCache(100, 1 << 20);
+
+        socialNetwork.peopleYouMayWannaKnow("Walrus");
+        socialNetwork.peopleYouMayWannaKnow("Otter");
+        assertTrue(TestData.compareColl(
+            socialNetwork.peopleYouMayWannaKnow("Walrus"),
+            Arrays.asList("Sheep", "Numbat")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // Lion is two hops from Walrus but not from Otter
+        socialNetwork.addFriends("Lion", "Quokka");
+        assertEquals(1, cache.getInvalidations());
+        assertTrue(TestData.compareColl(
+            socialNetwork.peopleYouMayWannaKnow("Walrus"),
+            Arrays.asList("Sheep", "Numbat", "Lion")));
+        socialNetwork.peopleYouMayWannaKnow("Otter");
+        assertEquals(2, cache.getHits());
+
+        // a cached result is copied, so changing it changes no later result
+        Collection<String> friends = socialNetwork.getFriends("Walrus");
+        friends.clear();
+        assertFalse(socialNetwork.getFriends("Walrus").isEmpty());
+        assertEquals(3, cache.getHits());
+    }
+
+    @Test public void studentTest19() throws IOException {
+        Fazebook socialNetwork = TestData.exampleSocialNetwork2();
+        File file = File.createTempFile("fazebook", ".snapshot");
+        file.deleteOnExit();
+        socialNetwork.saveSnapshot(file.getPath());
+
+        Fazebook loaded = Fazebook.loadSnapshot(file.getPath(),
+                                                EWDGraph.Storage.COMPACT);
+        Fazebook opened = Fazebook.openSnapshot(file.getPath(), true);
+        for (Fazebook copy : Arrays.asList(loaded, opened)) {
+            assertTrue(TestData.compareColl(copy.getAllUsers(),
+                                            socialNetwork.getAllUsers()));
+            for (String user : socialNetwork.getAllUsers())
+                assertTrue(TestData.compareColl(copy.getFriends(user),
+                        socialNetwork.getFriends(user)));
+        }
+
+        // changes to an opened snapshot are kept in memory only
+        assertTrue(opened.addFriends("Sheep", "Walrus"));
+        assertTrue(opened.unfriend("Lion", "Sheep"));
+        assertTrue(opened.getFriends("Sheep").contains("Walrus"));
+        assertFalse(opened.getFriends("Lion").contains("Sheep"));
+        assertTrue(opened.addUser("Zebra"));
+        assertEquals(socialNetwork.getAllUsers().size() + 1,
+                     opened.getAllUsers().size());
+        assertFalse(Fazebook.openSnapshot(file.getPath(), true)
+                            .getFriends("Sheep").contains("Walrus"));
+    }
+
+    @Test public void studentTest20() throws IOException {
+        Fazebook socialNetwork = TestData.exampleSocialNetwork2();
+        File file = File.createTempFile("fazebook", ".snapshot");
+        file.deleteOnExit();
+        socialNetwork.saveSnapshot(file.getPath());
+
+        // flip a byte in the edges at the end of the file
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 12);
+            int b = raf.read();
+            raf.seek(raf.length() - 12);
+            raf.write(b ^ 0xff);
+        }
+        try {
+            Fazebook.openSnapshot(file.getPath(), true);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            Fazebook.loadSnapshot(file.getPath(), EWDGraph.Storage.HASH);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test public void studentTest21() throws IOException {
+        File dir = Files.createTempDirectory("fazebook").toFile();
+        String snapshot = new File(dir, "snapshot").getPath();
+        String logFile = new File(dir, "log").getPath();
+
+        Fazebook socialNetwork = Fazebook.recover(snapshot,
+                new WriteAheadLog(logFile));
+        socialNetwork.addFriends("Sheep", "Lion");
+        socialNetwork.addFriends("Sheep", "Walrus");
+        socialNetwork.checkpoint(snapshot);
+        socialNetwork.addUser("Quokka");
+        socialNetwork.unfriend("Sheep", "Lion");
+        assertEquals(4, socialNetwork.getWriteAheadLog().getRecords());
+        socialNetwork.getWriteAheadLog().close();
+
+        // a torn record at the end of the log is discarded
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(40);
+            raf.writeInt(7);
+        }
+        // the checkpoint left only the records made after it
+        WriteAheadLog reopened = new WriteAheadLog(logFile);
+        assertEquals(2, new Fazebook().enableWriteAheadLog(reopened));
+        reopened.close();
+
+        Fazebook recovered = Fazebook.recover(snapshot,
+                new WriteAheadLog(logFile, WriteAheadLog.SyncMode.BATCHED));
+        assertTrue(TestData.compareColl(recovered.getAllUsers(),
+                Arrays.asList("Sheep", "Lion", "Walrus", "Quokka")));
+        assertTrue(TestData.compareColl(recovered.getFriends("Sheep"),
+                Arrays.asList("Walrus")));
+        assertTrue(TestData.compareColl(recovered.getFriends("Lion"),
+                Arrays.asList("Sheep")));
+        recovered.getWriteAheadLog().close();
+    }
+
+    @Test public void studentTest22() {
+        Fazebook socialNetwork = TestData.exampleSocialNetwork2();
+
+        assertEquals(3, socialNetwork.degreesOfSeparation("Lion", "Otter"));
+        assertEquals(0, socialNetwork.degreesOfSeparation("Lion", "Lion"));
+        assertEquals(-1, socialNetwork.degreesOfSeparation("Lion", "Nobody"));
+        assertEquals(-1, socialNetwork.degreesOfSeparation("Walrus", "Otter",
+                                                            3));
+        assertEquals(Arrays.asList("Walrus", "Quokka", "Numbat", "Penguin",
+                                   "Otter"),
+                     socialNetwork.shortestFriendPath("Walrus", "Otter"));
+        assertTrue(socialNetwork.shortestFriendPath("Walrus", "Otter", 3)
+                                .isEmpty());
+
+        // the direct edge is heavier than the detour
+        EWDGraph<String> graph = new EWDGraph<>(String::compareTo);
+        graph.newEWDGraphEdge("A", "B", 10);
+        graph.newEWDGraphEdge("A", "C", 1);
+        graph.newEWDGraphEdge("C", "B", 2);
+        PathFinder<String> finder = new PathFinder<>(graph);
+        assertEquals(Arrays.asList("A", "C", "B"),
+                     finder.weightedPath("A", "B"));
+        assertEquals(3, finder.weightedDistance("A", "B"));
+        assertEquals(1, finder.distance("A", "B", PathFinder.UNLIMITED));
+        assertEquals(-1, finder.weightedDistance("B", "A"));
+    }
+
+    @Test public void studentTest23() {
+        for (EWDGraph.Storage storage : EWDGraph.Storage.values()) {
+            Fazebook socialNetwork = new Fazebook(storage);
+            socialNetwork.addFriends("Sheep", "Lion");
+            socialNetwork.addFriends("Lion", "Numbat");
+            socialNetwork.addFriends("Otter", "Walrus");
+            socialNetwork.addUser("Quokka");
+            ConnectedComponents<String> groups =
+                    socialNetwork.findFriendGroups();
+
+            assertEquals(3, groups.getComponentCount());
+            assertEquals(groups.getComponent("Sheep"),
+                         groups.getComponent("Numbat"));
+            assertNotEquals(groups.getComponent("Sheep"),
+                            groups.getComponent("Otter"));
+            assertEquals(-1, groups.getComponent("Nobody"));
+            int largest = groups.getLargestComponent();
+            assertEquals(3, groups.getComponentSize(largest));
+            assertTrue(TestData.compareColl(groups.getMembers(largest),
+                    Arrays.asList("Sheep", "Lion", "Numbat")));
+            assertEquals(Map.of(1, 1, 2, 1, 3, 1), groups.getSizeHistogram());
+        }
+    }
+
+    @Test public void studentTest24() {
+        for (EWDGraph.Storage storage : EWDGraph.Storage.values()) {
+            Fazebook socialNetwork = new Fazebook(storage);
+            // two triangles sharing the Sheep-Lion friendship, and a tail
+            socialNetwork.addFriends("Sheep", "Lion");
+            socialNetwork.addFriends("Sheep", "Numbat");
+            socialNetwork.addFriends("Lion", "Numbat");
+            socialNetwork.addFriends("Sheep", "Otter");
+            socialNetwork.addFriends("Lion", "Otter");
+            socialNetwork.addFriends("Otter", "Walrus");
+            TriangleCounter<String> triangles = socialNetwork.countTriangles();
+
+            assertEquals(2, triangles.getTriangleCount());
+            assertEquals(2, triangles.getTriangles("Sheep"));
+            assertEquals(1, triangles.getTriangles("Numbat"));
+            assertEquals(0, triangles.getTriangles("Walrus"));
+            assertEquals(1.0, triangles.getClusteringCoefficient("Numbat"),
+                         1e-9);
+            // Otter has 3 pairs of friends, one of which are friends
+            assertEquals(1.0 / 3, triangles.getClusteringCoefficient("Otter"),
+                         1e-9);
+            // 6 of the 10 paths of two friendships are closed
+            assertEquals(6.0 / 10,
+                         triangles.getGlobalClusteringCoefficient(), 1e-9);
+        }
+    }
+
+    @Test public void studentTest25() {
+        for (EWDGraph.Storage storage : EWDGraph.Storage.values()) {
+            Fazebook socialNetwork = new Fazebook(storage);
+            // Sheep is friends with everyone else, who are friends in a chain
+            socialNetwork.addFriends("Sheep", "Lion");
+            socialNetwork.addFriends("Sheep", "Numbat");
+            socialNetwork.addFriends("Sheep", "Otter");
+            socialNetwork.addFriends("Sheep", "Walrus");
+            socialNetwork.addFriends("Lion", "Numbat");
+            PageRank<String> influence =
+                    socialNetwork.enableInfluenceScores(1e-9, 1000);
+            assertEquals(List.of("Sheep"),
+                         socialNetwork.getTopInfluencers(1));
+            assertEquals(0, socialNetwork.getInfluenceScore("Nobody"), 0);
+
+            // the updated scores match scores computed from scratch
+            socialNetwork.addFriends("Otter", "Walrus");
+            socialNetwork.unfriend("Sheep", "Lion");
+            socialNetwork.addUser("Koala");
+            socialNetwork.addFriends("Koala", "Otter");
+            assertTrue(influence.isConverged());
+            Map<String, Double> updated = new HashMap<>();
+            for (String user : socialNetwork.getAllUsers())
+                updated.put(user, socialNetwork.getInfluenceScore(user));
+            assertTrue(influence.recompute());
+            for (String user : socialNetwork.getAllUsers())
+                assertEquals(influence.getScore(user), updated.get(user),
+                             1e-6);
+
+            socialNetwork.disableInfluenceScores();
+            assertThrows(IllegalStateException.class,
+                         () -> socialNetwork.getTopInfluencers(1));
+        }
+    }
+
+    @Test public void studentTest26() throws IOException {
+        File dir = Files.createTempDirectory("generator").toFile();
+        for (GraphGenerator.Model model : GraphGenerator.Model.values()) {
+            GraphGenerator generator =
+                    new GraphGenerator(model, 300, 1200, 42);
+            List<String> files = generator.writeCommands(
+                    new File(dir, model + "-a").getPath(), 3);
+            List<String> again = new GraphGenerator(model, 300, 1200, 42)
+                    .writeCommands(new File(dir, model + "-b").getPath(), 3);
+            // the same seed makes the same files
+            for (int i = 0; i < files.size(); i++)
+                assertArrayEquals(Files.readAllBytes(new File(
+                        files.get(i)).toPath()), Files.readAllBytes(
+                        new File(again.get(i)).toPath()));
+
+            Fazebook loaded = new Fazebook(EWDGraph.Storage.COMPACT);
+            assertTrue(loaded.readSocialNetworkData(files));
+            assertEquals(300, loaded.getAllUsers().size());
+            String snapshotFile = new File(dir, model + ".snap").getPath();
+            // a small pass size makes the snapshot take several passes
+            generator.writeSnapshot(snapshotFile, 500);
+            Fazebook opened = Fazebook.openSnapshot(snapshotFile, true);
+            assertEquals(300, opened.getAllUsers().size());
+            int largest = 0;
+            for (String user : loaded.getAllUsers()) {
+                assertFalse(loaded.areFriends(user, user));
+                assertTrue(TestData.compareColl(loaded.getFriends(user),
+                        opened.getFriends(user)));
+                largest = Math.max(largest, loaded.getFriendCount(user));
+            }
+            // the hubs have far more friends than the 8 of an average user
+            assertTrue(largest > 40);
+        }
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test public void studentTest27() throws Exception {
+        Fazebook fb = new Fazebook(EWDGraph.Storage.COMPACT);
+        FazebookMetrics metrics = fb.enableMetrics();
+        assertSame(metrics, fb.getMetrics());
+        fb.addUser("a");
+        fb.addUser("b");
+        fb.addUser("c");
+        fb.addFriends("a", "b");
+        fb.addFriends("b", "c");
+        for (int i = 0; i < 5; i++)
+            fb.getFriends("b");
+        fb.peopleYouMayWannaKnow("a");
+        fb.unfriend("a", "b");
+        Map<String, Long> counts = metrics.getCounts();
+        assertEquals(3, (long) counts.get("ADD_USER"));
+        assertEquals(2, (long) counts.get("ADD_FRIENDS"));
+        assertEquals(5, (long) counts.get("GET_FRIENDS"));
+        assertEquals(1, (long) counts.get("PEOPLE_YOU_MAY_WANNA_KNOW"));
+        assertEquals(1, (long) counts.get("UNFRIEND"));
+        assertTrue(metrics.getP99Nanos().get("GET_FRIENDS") > 0);
+        assertTrue(metrics.getP50Nanos().get("GET_FRIENDS")
+                <= metrics.getMaxNanos().get("GET_FRIENDS"));
+        assertTrue(metrics.getReport().contains("GET_FRIENDS"));
+
+        File dir = Files.createTempDirectory("metrics").toFile();
+        List<String> files = new GraphGenerator(
+                GraphGenerator.Model.BARABASI_ALBERT, 200, 600, 7)
+                .writeCommands(new File(dir, "commands").getPath(), 2);
+        assertTrue(fb.readSocialNetworkData(files));
+        assertEquals(1, (long) metrics.getCounts()
+                .get("READ_SOCIAL_NETWORK_DATA"));
+        assertTrue(metrics.getFriendshipsRead() >= 600);
+        assertTrue(metrics.getCommandsRead() >= 800);
+        assertTrue(metrics.getCommandsPerSecond() > 0);
+        assertTrue(metrics.getLockWaits().getCount() > 0);
+
+        metrics.registerMBean("fazebook:type=Metrics,name=studentTest27");
+        metrics.unregisterMBean();
+        metrics.reset();
+        assertEquals(0, (long) metrics.getCounts().get("GET_FRIENDS"));
+        fb.disableMetrics();
+        assertNull(fb.getMetrics());
+        fb.getFriends("b");
+        assertEquals(0, (long) metrics.getCounts().get("GET_FRIENDS"));
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test public void studentTest28() throws IOException {
+        File dir = Files.createTempDirectory("sharded").toFile();
+        List<String> files = new GraphGenerator(
+                GraphGenerator.Model.BARABASI_ALBERT, 400, 1600, 5)
+                .writeCommands(new File(dir, "commands").getPath(), 1);
+        Fazebook single = new Fazebook(EWDGraph.Storage.COMPACT);
+        assertTrue(single.readSocialNetworkData(files));
+        List<String> lines = Files.readAllLines(new File(files.get(0))
+                .toPath());
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<GraphPartition> remote = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            remote.add(new RemotePartition(new LoopbackTransport(
+                    new LocalPartition(EWDGraph.Storage.HASH))));
+        ShardedFazebook[] sharded = {new ShardedFazebook(4),
+                new ShardedFazebook(remote, pool)};
+        for (ShardedFazebook fb : sharded) {
+            List<Map.Entry<String, String>> pairs = new ArrayList<>();
+            for (String line : lines) {
+                String[] words = line.split(" ");
+                if (words[0].equals("adduser"))
+                    assertTrue(fb.addUser(words[1]));
+                else
+                    pairs.add(Map.entry(words[1], words[2]));
+            }
+            assertEquals(pairs.size(), fb.addFriendsBatch(pairs));
+            assertFalse(fb.addUser("person1"));
+            assertTrue(TestData.compareColl(single.getAllUsers(),
+                    fb.getAllUsers()));
+            for (String user : single.getAllUsers()) {
+                assertTrue(TestData.compareColl(single.getFriends(user),
+                        fb.getFriends(user)));
+                assertTrue(TestData.compareColl(
+                        single.peopleYouMayWannaKnow(user),
+                        fb.peopleYouMayWannaKnow(user)));
+            }
+            assertTrue(fb.getFriends("nobody").isEmpty());
+            assertTrue(fb.peopleYouMayWannaKnow("nobody").isEmpty());
+            // a friendship across partitions is held by both
+            String user1 = "person1";
+            String user2 = "person2";
+            for (int i = 3; fb.getShard(user1) == fb.getShard(user2); i++)
+                user2 = "person" + i;
+            assertTrue(fb.addFriends(user1, user2));
+            assertTrue(fb.areFriends(user1, user2));
+            assertTrue(fb.areFriends(user2, user1));
+            assertTrue(fb.unfriend(user1, user2));
+            assertFalse(fb.areFriends(user1, user2));
+            assertFalse(fb.unfriend(user1, user2));
+        }
+        pool.shutdown();
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test public void studentTest29() throws Exception {
+        File dir = Files.createTempDirectory("follow").toFile();
+        File commands = new File(dir, "commands.txt");
+        String offsets = new File(dir, "offsets").getPath();
+        Files.write(commands.toPath(), ("adduser a\nadduser b\n"
+                + "addfriends a b\naddfriends a c\nunfriend a c\n")
+                .getBytes());
+        Fazebook fb = new Fazebook(EWDGraph.Storage.COMPACT);
+        TailFollower follower = new TailFollower(fb,
+                List.of(commands.getPath()), offsets);
+        assertEquals(5, follower.poll());
+        assertTrue(fb.areFriends("a", "b"));
+        assertFalse(fb.areFriends("a", "c"));
+        assertTrue(fb.areFriends("c", "a"));
+        // an incomplete line waits for its newline
+        append(commands, "unfriend a b\nunfriend c a\naddfriends c");
+        assertEquals(2, follower.poll());
+        assertFalse(fb.areFriends("a", "b"));
+        assertFalse(fb.areFriends("c", "a"));
+        long offset = follower.getOffset(commands.getPath());
+        assertEquals(commands.length() - "addfriends c".length(), offset);
+        append(commands, " a\n");
+        assertEquals(1, follower.poll());
+        assertTrue(fb.areFriends("c", "a"));
+        assertEquals(0, follower.poll());
+        assertEquals(8, follower.getCommandsApplied());
+
+        // a new follower resumes from the saved offsets
+        TailFollower resumed = new TailFollower(fb,
+                List.of(commands.getPath()), offsets);
+        assertEquals(commands.length(),
+                resumed.getOffset(commands.getPath()));
+        append(commands, "adduser d\n");
+        assertEquals(1, resumed.poll());
+        assertTrue(fb.getAllUsers().contains("d"));
+
+        // the followed file is read as it grows, and by the Scanner parser
+        Fazebook followed = new Fazebook();
+        File later = new File(dir, "later.txt");
+        TailFollower running = followed.followSocialNetworkData(
+                List.of(later.getPath()), null);
+        append(later, "addfriends x y\nunfriend x y\naddfriends x y\n");
+        for (int i = 0; i < 500 && running.getCommandsApplied() < 3; i++)
+            Thread.sleep(20);
+        running.close();
+        assertEquals(3, running.getCommandsApplied());
+        assertTrue(followed.areFriends("x", "y"));
+        Fazebook scanned = new Fazebook();
+        new Reader(scanned, later.getPath(), 0, Long.MAX_VALUE,
+                Reader.Parser.SCANNER).process();
+        assertTrue(TestData.compareColl(followed.getFriends("x"),
+                scanned.getFriends("x")));
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test public void studentTest30() throws Exception {
+        EWDGraph<String> graph = new EWDGraph<>(new StringComparator(),
+                EWDGraph.Storage.VERSIONED);
+        for (int i = 0; i < 100; i++)
+            graph.newEWDGraphEdge("u" + i, "u" + (i + 1) % 100, 1);
+        long before = graph.estimatedHeapBytes();
+        EWDGraphSnapshot<String> snapshot = graph.snapshot();
+        for (int i = 0; i < 100; i += 2)
+            graph.removeEWDGraphEdge("u" + i, "u" + (i + 1));
+        graph.newEWDGraphEdge("u0", "new", 2);
+        // the snapshot still holds the graph as it was
+        assertEquals(100, snapshot.getNumEWDGraphEdges());
+        assertEquals(100, snapshot.getNumEWDGraphVertices());
+        assertTrue(snapshot.isEWDGraphEdge("u0", "u1"));
+        assertFalse(snapshot.isEWDGraphVertex("new"));
+        assertEquals(List.of("u1"), snapshot.getNeighborsOfVertex("u0"));
+        assertEquals(1,
+                new ConnectedComponents<>(snapshot).getComponentCount());
+        assertFalse(graph.isEWDGraphEdge("u0", "u1"));
+        assertEquals(51, graph.getNumEWDGraphEdges());
+        try {
+            snapshot.newEWDGraphEdge("u0", "u2", 1);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // snapshots are read-only
+        }
+        long held = graph.estimatedHeapBytes();
+        assertTrue(held > before);
+        snapshot.close();
+        // closing the snapshot drops the versions that only it read
+        assertTrue(graph.estimatedHeapBytes() < held);
+
+        // every snapshot is of one point in time while a writer goes on
+        EWDGraph<String> written = new EWDGraph<>(new StringComparator(),
+                EWDGraph.Storage.VERSIONED);
+        Fazebook fb = new Fazebook(EWDGraph.Storage.VERSIONED);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                String user1 = "w" + i % 500;
+                String user2 = "w" + (i * 7 + 1) % 500;
+                written.addEdges(List.of(Map.entry(user1, user2),
+                        Map.entry(user1, "x" + i % 50)), 1);
+                fb.addFriends(user1, user2);
+                if (i % 3 == 0) {
+                    written.removeEWDGraphEdge(user1, user2);
+                    fb.unfriend(user1, user2);
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            long degrees = 0;
+            long edges;
+            try (EWDGraphSnapshot<String> view = written.snapshot()) {
+                for (String user : view.getEWDGraphVertices())
+                    degrees += view.degree(user);
+                edges = view.getNumEWDGraphEdges();
+            }
+            assertEquals(edges, degrees);
+            fb.findFriendGroups();
+            fb.peopleYouMayWannaKnow("w1");
+        }
+        writer.join();
+    }
+
+    @Test public void studentTest31() {
+        EWDGraph<String> compact = new EWDGraph<>(new StringComparator(),
+                EWDGraph.Storage.COMPACT);
+        EWDGraph<String> hash = new EWDGraph<>(new StringComparator());
+        // hubs whose neighbors span a full bitmap container and array
+        // containers past the first 65536 IDs, with a few heavier edges
+        for (int i = 0; i < 70000; i++) {
+            for (EWDGraph<String> graph : List.of(compact, hash)) {
+                graph.newEWDGraphEdge("hub", "v" + i, i % 1000 == 0 ? 3 : 1);
+                if (i % 7 == 0)
+                    graph.newEWDGraphEdge("other", "v" + i, 1);
+                if (i % 50 == 0)
+                    graph.newEWDGraphEdge("small", "v" + i, 1);
+            }
+        }
+        EWDGraph<String> empty = new EWDGraph<>(new StringComparator(),
+                EWDGraph.Storage.COMPACT);
+        for (String user : compact.getEWDGraphVertices())
+            empty.newEWDGraphVertex(user);
+        long edgeBytes = compact.estimatedHeapBytes()
+                - empty.estimatedHeapBytes();
+        long edges = compact.getNumEWDGraphEdges();
+        Random random = new Random(31);
+        for (int i = 0; i < 20000; i++) {
+            String user = List.of("hub", "other", "small").get(
+                    random.nextInt(3));
+            String friend = "v" + random.nextInt(70000);
+            for (EWDGraph<String> graph : List.of(compact, hash)) {
+                if (i % 2 == 0)
+                    graph.removeEWDGraphEdge(user, friend);
+                else
+                    graph.newEWDGraphEdge(user, friend, 1 + i % 3);
+            }
+        }
+        for (String user : List.of("hub", "other", "small")) {
+            assertEquals(hash.degree(user), compact.degree(user));
+            assertTrue(TestData.compareColl(hash.getNeighborsOfVertex(user),
+                    compact.getNeighborsOfVertex(user)));
+            assertEquals(hash.degree(user), new ArrayList<>(
+                    compact.getNeighborsOfVertexView(user)).size());
+            for (int i = 0; i < 70000; i += 97)
+                assertEquals(hash.getEWDGraphEdgeWeight(user, "v" + i),
+                        compact.getEWDGraphEdgeWeight(user, "v" + i));
+        }
+        for (List<String> pair : List.of(List.of("hub", "other"),
+                List.of("other", "small"), List.of("hub", "small"))) {
+            assertEquals(hash.countCommonNeighbors(pair.get(0), pair.get(1)),
+                    compact.countCommonNeighbors(pair.get(0), pair.get(1)));
+            assertTrue(TestData.compareColl(
+                    hash.getCommonNeighbors(pair.get(0), pair.get(1)),
+                    compact.getCommonNeighbors(pair.get(1), pair.get(0))));
+        }
+        assertTrue(TestData.compareColl(
+                hash.getNeighborsOfAny(List.of("hub", "other", "missing")),
+                compact.getNeighborsOfAny(List.of("hub", "other",
+                        "missing"))));
+        assertEquals(0, compact.countCommonNeighbors("hub", "missing"));
+        // hubs cost a fraction of the 8 bytes per edge of sorted arrays
+        assertTrue(edgeBytes < 2 * edges);
+        // a hub that loses most of its friends goes back to arrays
+        for (int i = 0; i < 70000; i++) {
+            compact.removeEWDGraphEdge("hub", "v" + i);
+            hash.removeEWDGraphEdge("hub", "v" + i);
+        }
+        compact.newEWDGraphEdge("hub", "v1", 2);
+        assertTrue(TestData.compareColl(List.of("v1"),
+                compact.getNeighborsOfVertex("hub")));
+        assertEquals(2, compact.getEWDGraphEdgeWeight("hub", "v1"));
+
+        Fazebook fb = new Fazebook(EWDGraph.Storage.COMPACT);
+        for (int i = 0; i < 3000; i++) {
+            fb.addFriends("star", "fan" + i);
+            if (i % 3 == 0)
+                fb.addFriends("fan" + i, "fan" + (i + 1));
+        }
+        fb.addFriends("a", "star");
+        fb.addFriends("a", "fan0");
+        assertTrue(fb.areFriends("star", "fan2999"));
+        assertEquals(2, fb.countMutualFriends("a", "fan1"));
+        assertTrue(TestData.compareColl(List.of("star", "fan0"),
+                fb.getMutualFriends("a", "fan1")));
+        Collection<String> suggested = fb.peopleYouMayWannaKnow("a");
+        assertEquals(3001, suggested.size());
+        assertFalse(suggested.contains("a"));
+        assertNull(fb.getMutualFriends(null, "a"));
+    }
+
+    @Test public void studentTest32() throws IOException {
+        EWDGraph<String> names = new EWDGraph<>(new StringComparator(),
+                EWDGraph.Storage.DICTIONARY);
+        EWDGraph<String> compact = new EWDGraph<>(new StringComparator(),
+                EWDGraph.Storage.COMPACT);
+        String unicode = "Zo\u00eb \u4e16\u754c";
+        String longName = "x".repeat(200);
+        for (EWDGraph<String> graph : List.of(names, compact)) {
+            for (int i = 0; i < 20000; i++)
+                graph.newEWDGraphEdge("person" + i, "person" + (i + 1) % 20000,
+                        1 + i % 3);
+            graph.newEWDGraphEdge(unicode, longName, 2);
+            graph.newEWDGraphEdge(longName, "person7", 1);
+        }
+        assertEquals(20002, names.getNumEWDGraphVertices());
+        assertTrue(names.isEWDGraphVertex(unicode));
+        assertTrue(names.isEWDGraphVertex(longName));
+        assertFalse(names.isEWDGraphVertex("x".repeat(199)));
+        assertFalse(names.isEWDGraphVertex("person20000"));
+        assertFalse(names.newEWDGraphVertex("person5"));
+        assertEquals(2, names.getEWDGraphEdgeWeight(unicode, longName));
+        assertEquals(3, names.getEWDGraphEdgeWeight("person2", "person3"));
+        assertTrue(TestData.compareColl(List.of(longName),
+                names.getNeighborsOfVertex(unicode)));
+        assertTrue(TestData.compareColl(compact.getEWDGraphVertices(),
+                names.getEWDGraphVertices()));
+
+        Fazebook socialNetwork = TestData.exampleSocialNetwork2();
+        File file = File.createTempFile("fazebook", ".snapshot");
+        file.deleteOnExit();
+        socialNetwork.saveSnapshot(file.getPath());
+        Fazebook loaded = Fazebook.loadSnapshot(file.getPath(),
+                EWDGraph.Storage.DICTIONARY);
+        assertTrue(TestData.compareColl(loaded.getAllUsers(),
+                socialNetwork.getAllUsers()));
+        for (String user : socialNetwork.getAllUsers()) {
+            assertTrue(TestData.compareColl(loaded.getFriends(user),
+                    socialNetwork.getFriends(user)));
+            assertTrue(TestData.compareColl(
+                    loaded.peopleYouMayWannaKnow(user),
+                    socialNetwork.peopleYouMayWannaKnow(user)));
+        }
+        assertTrue(loaded.addFriends("Sheep", "Walrus"));
+        assertTrue(loaded.areFriends("Walrus", "Sheep"));
+    }
+
+    @Test public void studentTest33() throws IOException {
+        File commands = File.createTempFile("fazebook", ".txt");
+        commands.deleteOnExit();
+        Files.write(commands.toPath(), ("adduser Loner\naddfriends a b\n"
+                + "addfriends b a\naddfriends a b\naddfriends Me Me\n"
+                + "addfriends b c\naddfriends c d\nunfriend c d\n")
+                .getBytes());
+        List<String> files = Arrays.asList("data-public7+8", "data-public9",
+                commands.getPath());
+        Fazebook expected = new Fazebook();
+        expected.readSocialNetworkData(files);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Fazebook loaded;
+        try {
+            // 16 byte chunks split the files into one or two lines per chunk
+            loaded = new BulkLoader(pool, 16).load(files);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(TestData.compareColl(loaded.getAllUsers(),
+                expected.getAllUsers()));
+        for (String user : expected.getAllUsers()) {
+            assertTrue(TestData.compareColl(loaded.getFriends(user),
+                    expected.getFriends(user)));
+            assertTrue(TestData.compareColl(
+                    loaded.peopleYouMayWannaKnow(user),
+                    expected.peopleYouMayWannaKnow(user)));
+        }
+        assertTrue(loaded.getAllUsers().contains("Loner"));
+        assertFalse(loaded.getAllUsers().contains("Me"));
+        assertTrue(TestData.compareColl(loaded.getFriends("b"),
+                Arrays.asList("a", "c")));
+        assertTrue(TestData.compareColl(loaded.getFriends("c"),
+                Arrays.asList("b")));
+        assertTrue(TestData.compareColl(loaded.getFriends("d"),
+                Arrays.asList("c")));
+
+        // later changes are served on top of the loaded friendships
+        assertTrue(loaded.addFriends("Loner", "a"));
+        assertTrue(loaded.unfriend("a", "b"));
+        assertTrue(TestData.compareColl(loaded.getFriends("a"),
+                Arrays.asList("Loner")));
+        assertTrue(TestData.compareColl(loaded.getFriends("b"),
+                Arrays.asList("a", "c")));
+
+        Fazebook convenient = Fazebook.loadSocialNetworkData(files);
+        assertTrue(TestData.compareColl(convenient.getAllUsers(),
+                expected.getAllUsers()));
+        try {
+            Fazebook.loadSocialNetworkData(Arrays.asList("no-such-file"));
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    @Test public void studentTest34() throws IOException {
+        for (EWDGraph.Storage storage : EWDGraph.Storage.values()) {
+            EWDGraph<String> graph = new EWDGraph<>(new StringComparator(),
+                    storage);
+            long weights = 0;
+            for (int i = 0; i < 3000; i++) {
+                // person0 becomes a hub with more than 1024 neighbors
+                graph.newEWDGraphEdge("person" + i % 2000,
+                        "person" + (i * 7 + 1) % 2000, 1 + i % 3);
+                graph.newEWDGraphEdge("person0", "person" + (i + 1), 2);
+            }
+            for (String vertex : graph.getEWDGraphVertices()) {
+                for (String neighbor : graph.getNeighborsOfVertex(vertex))
+                    weights += graph.getEWDGraphEdgeWeight(vertex, neighbor);
+            }
+
+            assertTrue(TestData.compareColl(graph.getEWDGraphVertices(),
+                    graph.vertices().parallel().collect(Collectors.toList())));
+            assertEquals(graph.getNumEWDGraphVertices(),
+                    graph.vertices().spliterator().estimateSize());
+            assertEquals(graph.getNumEWDGraphEdges(),
+                    graph.edges().spliterator().estimateSize());
+            assertEquals(graph.getNumEWDGraphEdges(),
+                    graph.edges().parallel().count());
+            assertEquals(weights, graph.edges().parallel()
+                    .mapToLong(Edge::getWeight).sum());
+            for (Edge<String> edge : graph.edges()
+                    .collect(Collectors.toList())) {
+                assertEquals(edge.getWeight(), graph.getEWDGraphEdgeWeight(
+                        edge.getSource(), edge.getDestination()));
+            }
+            // the halves of a split hand out every edge between them
+            Spliterator<Edge<String>> edges = graph.edges().spliterator();
+            Spliterator<Edge<String>> prefix = edges.trySplit();
+            assertNotNull(prefix);
+            long[] count = new long[1];
+            prefix.forEachRemaining(edge -> count[0]++);
+            while (edges.tryAdvance(edge -> count[0]++));
+            assertEquals(graph.getNumEWDGraphEdges(), count[0]);
+        }
+
+        Fazebook socialNetwork = new Fazebook(EWDGraph.Storage.VERSIONED);
+        socialNetwork.readSocialNetworkData(Arrays.asList("data-public7+8"));
+        try (Stream<String> users = socialNetwork.users()) {
+            // a change after the snapshot is taken is not seen
+            socialNetwork.addUser("Latecomer");
+            assertTrue(TestData.compareColl(socialNetwork.getAllUsers()
+                    .stream().filter(user -> !user.equals("Latecomer"))
+                    .collect(Collectors.toList()),
+                    users.collect(Collectors.toList())));
+        }
+        Map<String, Long> degrees = socialNetwork.friendships().parallel()
+                .collect(Collectors.groupingBy(Edge::getSource,
+                        Collectors.counting()));
+        for (String user : socialNetwork.getAllUsers()) {
+            assertEquals(socialNetwork.getFriendCount(user),
+                    degrees.getOrDefault(user, 0L).intValue());
+        }
+
+        Fazebook loaded = Fazebook.loadSocialNetworkData(
+                Arrays.asList("data-public7+8"));
+        loaded.addFriends("Loner", "Sheep");
+        assertTrue(TestData.compareColl(loaded.getAllUsers(),
+                loaded.users().parallel().collect(Collectors.toList())));
+        assertEquals(loaded.getAllUsers().stream()
+                .mapToLong(loaded::getFriendCount).sum(),
+                loaded.friendships().parallel().count());
+    }
+
+    @Test public void studentTest35() throws Exception {
+        Fazebook socialNetwork = new Fazebook();
+        socialNetwork.readSocialNetworkData(Arrays.asList("data-public7+8"));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AsyncFazebook async = new AsyncFazebook(socialNetwork, pool);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // the only worker is blocked, so every query stays in flight
+            pool.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            });
+            List<CompletableFuture<Collection<String>>> friends =
+                    new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+                friends.add(async.getFriends("Numbat"));
+            CompletableFuture<Collection<String>> late =
+                    async.getFriends("Numbat", 50);
+            CompletableFuture<Collection<String>> cancelled =
+                    async.peopleYouMayWannaKnow("Sheep");
+            CompletableFuture<Collection<String>> suggested =
+                    async.peopleYouMayWannaKnow("Lion");
+            assertEquals(3, async.getInFlightCount());
+            assertEquals(10, async.getCoalescedCount());
+
+            assertTrue(cancelled.cancel(true));
+            assertEquals(2, async.getInFlightCount());
+            try {
+                late.join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            release.countDown();
+
+            for (CompletableFuture<Collection<String>> future : friends) {
+                assertTrue(TestData.compareColl(future.get(),
+                        socialNetwork.getFriends("Numbat")));
+            }
+            assertSame(friends.get(0).get(), friends.get(9).get());
+            assertTrue(TestData.compareColl(suggested.get(),
+                    socialNetwork.peopleYouMayWannaKnow("Lion")));
+            try {
+                suggested.get().clear();
+                fail();
+            } catch (UnsupportedOperationException e) {
+            }
+            // the cancelled query was skipped rather than computed
+            assertEquals(2, async.getComputationCount());
+            assertEquals(0, async.getInFlightCount());
+            assertNull(async.getFriends(null).get());
+
+            // a query after the first completed is computed again
+            socialNetwork.addFriends("Numbat", "Koala");
+            assertTrue(async.getFriends("Numbat").get().contains("Koala"));
+            assertEquals(3, async.getComputationCount());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test public void studentTest36() throws Exception {
+        File commands = File.createTempFile("fazebook", ".txt");
+        commands.deleteOnExit();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("addfriends hub p").append(i).append('\n');
+            text.append("addfriends p").append(i).append(" p")
+                    .append((i * 31 + 7) % 20000).append('\n');
+        }
+        Files.write(commands.toPath(), text.toString().getBytes());
+        Fazebook socialNetwork = new Fazebook(EWDGraph.Storage.HASH);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        AsyncFazebook async = new AsyncFazebook(socialNetwork, pool);
+        try {
+            // the queries lock the same graph as the batches of the load,
+            // so none of them sees a HashMap in the middle of a change
+            Thread loader = new Thread(() -> socialNetwork
+                    .readSocialNetworkData(List.of(commands.getPath())));
+            loader.start();
+            while (loader.isAlive()) {
+                int friends = async.getFriends("hub").get().size();
+                assertTrue(friends <= 20000);
+                async.peopleYouMayWannaKnow("p1").get();
+            }
+            loader.join();
+
+            assertEquals(20000, async.getFriends("hub").get().size());
+            assertTrue(TestData.compareColl(
+                    async.peopleYouMayWannaKnow("p1").get(),
+                    socialNetwork.peopleYouMayWannaKnow("p1")));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test public void studentTest37() throws Exception {
+        Fazebook socialNetwork = new Fazebook(EWDGraph.Storage.HASH);
+        socialNetwork.readSocialNetworkData(Arrays.asList("data-public7+8"));
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        AsyncFazebook async = new AsyncFazebook(socialNetwork, pool);
+        CompletableFuture<Collection<String>> first;
+        CompletableFuture<Collection<String>> joined;
+        CompletableFuture<Collection<String>> after;
+        try {
+            // the query starts, then waits for the lock of the graph
+            synchronized (socialNetwork.getLock()) {
+                first = async.getFriends("Numbat");
+                while (async.getComputationCount() == 0)
+                    Thread.sleep(1);
+                joined = async.getFriends("Numbat");
+                assertEquals(1, async.getCoalescedCount());
+                assertEquals(1, async.getInFlightCount());
+
+                // a change made since the query started is not joined
+                socialNetwork.addFriends("Numbat", "Koala");
+                after = async.getFriends("Numbat");
+                assertEquals(1, async.getCoalescedCount());
+            }
+            assertSame(first.get(), joined.get());
+            assertTrue(after.get().contains("Koala"));
+            assertEquals(2, async.getComputationCount());
+            assertEquals(0, async.getInFlightCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
 }